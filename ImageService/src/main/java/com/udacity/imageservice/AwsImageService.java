@@ -17,6 +17,7 @@ import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collections;
 import java.util.Properties;
 import java.util.stream.Collectors;
 
@@ -43,15 +44,23 @@ public class AwsImageService implements IService {
     public AwsImageService() {
         Properties props = new Properties();
         try (InputStream is = getClass().getClassLoader().getResourceAsStream("config.properties")) {
+            if (is == null) {
+                log.error("Unable to initialize AWS Rekognition, no properties file found");
+                return;
+            }
             props.load(is);
         } catch (IOException ioe ) {
-            log.error("Unable to initialize AWS Rekognition, no properties file found", ioe);
+            log.error("Unable to initialize AWS Rekognition, properties file could not be read", ioe);
             return;
         }
 
         String awsId = props.getProperty("aws.id");
         String awsSecret = props.getProperty("aws.secret");
         String awsRegion = props.getProperty("aws.region");
+        if (awsId == null || awsSecret == null || awsRegion == null) {
+            log.error("Unable to initialize AWS Rekognition, aws.id, aws.secret and aws.region are all required");
+            return;
+        }
 
         AwsCredentials awsCredentials = AwsBasicCredentials.create(awsId, awsSecret);
         rekognitionClient = RekognitionClient.builder()
@@ -60,6 +69,14 @@ public class AwsImageService implements IService {
                 .build();
     }
 
+    /**
+     * @return whether the Rekognition client was set up. Calls on an unconfigured service throw
+     * IllegalStateException.
+     */
+    public boolean isConfigured() {
+        return rekognitionClient != null;
+    }
+
     /**
      * Returns true if the provided image contains a cat.
      * @param image Image to scan
@@ -68,18 +85,55 @@ public class AwsImageService implements IService {
      */
     @Override
     public boolean imageContainsCat(BufferedImage image, float confidenceThreshhold) {
+        DetectLabelsResponse response = detectLabels(image, confidenceThreshhold);
+        return response != null && response.labels().stream().anyMatch(l -> l.name().toLowerCase().contains("cat"));
+    }
+
+    /**
+     * Returns the confidence of the most confident cat label, or 0 if there is none above the threshhold.
+     */
+    @Override
+    public float getCatConfidence(BufferedImage image, float confidenceThreshhold) {
+        DetectLabelsResponse response = detectLabels(image, confidenceThreshhold);
+        return response == null ? 0.0f : catConfidence(response);
+    }
+
+    /**
+     * Returns the cat confidence and the name of every label above the threshhold.
+     */
+    @Override
+    public Recognition recognize(BufferedImage image, float confidenceThreshhold) {
+        DetectLabelsResponse response = detectLabels(image, confidenceThreshhold);
+        if (response == null) {
+            return new Recognition(0.0f, Collections.emptyList());
+        }
+        return new Recognition(catConfidence(response),
+                response.labels().stream().map(l -> l.name()).collect(Collectors.toList()));
+    }
+
+    private static float catConfidence(DetectLabelsResponse response) {
+        return (float) response.labels().stream()
+                .filter(l -> l.name().toLowerCase().contains("cat"))
+                .mapToDouble(l -> l.confidence())
+                .max().orElse(0.0);
+    }
+
+    private DetectLabelsResponse detectLabels(BufferedImage image, float confidenceThreshhold) {
         Image awsImage = null;
         try (ByteArrayOutputStream os = new ByteArrayOutputStream()) {
             ImageIO.write(image, "jpg", os);
             awsImage = Image.builder().bytes(SdkBytes.fromByteArray(os.toByteArray())).build();
         } catch (IOException ioe) {
             log.error("Error building image byte array", ioe);
-            return false;
+            return null;
+        }
+        if (rekognitionClient == null) {
+            throw new IllegalStateException("AWS Rekognition is not configured, see config.properties");
         }
         DetectLabelsRequest detectLabelsRequest = DetectLabelsRequest.builder().image(awsImage).minConfidence(confidenceThreshhold).build();
         DetectLabelsResponse response = rekognitionClient.detectLabels(detectLabelsRequest);
         logLabelsForFun(response);
-        return response.labels().stream().filter(l -> l.name().toLowerCase().contains("cat")).findFirst().isPresent();
+        return response;
     }
 
     private void logLabelsForFun(DetectLabelsResponse response) {
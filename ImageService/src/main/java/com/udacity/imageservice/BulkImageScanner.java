@@ -0,0 +1,225 @@
+package com.udacity.imageservice;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Classifies every image below a directory, for re-scanning archives of camera snapshots.
+ *
+ * Files are streamed from a directory walk and decoded and classified on a fixed pool of worker
+ * threads. Only a couple of files per worker are in flight at any time, so memory stays bounded no
+ * matter how large the archive is. Each verdict is written to the report as soon as it's known,
+ * so the report is in completion order, not directory order.
+ */
+public class BulkImageScanner {
+
+    public enum ReportFormat {
+        CSV, JSON
+    }
+
+    /**
+     * Totals for a finished scan.
+     */
+    public static final class Summary {
+        private final int scanned;
+        private final int cats;
+        private final int failures;
+        private final long elapsedMillis;
+
+        Summary(int scanned, int cats, int failures, long elapsedMillis) {
+            this.scanned = scanned;
+            this.cats = cats;
+            this.failures = failures;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public int getScanned() {
+            return scanned;
+        }
+
+        public int getCats() {
+            return cats;
+        }
+
+        public int getFailures() {
+            return failures;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+    }
+
+    private final IService imageService;
+    private final ImagePreparer imagePreparer;
+    private final int parallelism;
+    private final float confidenceThreshhold;
+
+    /**
+     * @param imageService Service that decides whether each image contains a cat. Must be safe to call from several threads.
+     * @param imagePreparer Decodes files to the resolution the image service works at
+     * @param parallelism Number of worker threads
+     * @param confidenceThreshhold Passed to the image service for every image
+     */
+    public BulkImageScanner(IService imageService, ImagePreparer imagePreparer, int parallelism, float confidenceThreshhold) {
+        this.imageService = imageService;
+        this.imagePreparer = imagePreparer;
+        this.parallelism = parallelism;
+        this.confidenceThreshhold = confidenceThreshhold;
+    }
+
+    /**
+     * Scans every image file below the directory and writes one report entry per file.
+     * @param directory Root of the archive to scan
+     * @param report Destination for the report. Not closed.
+     * @param format Report format
+     */
+    public Summary scan(Path directory, Writer report, ReportFormat format) throws IOException {
+        long start = System.nanoTime();
+        ReportWriter out = new ReportWriter(report, format);
+        AtomicInteger scanned = new AtomicInteger();
+        AtomicInteger cats = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+
+        int maxInFlight = parallelism * 2;
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread t = new Thread(r, "bulk-image-scan");
+            t.setDaemon(true);
+            return t;
+        });
+
+        out.begin();
+        try (Stream<Path> files = Files.walk(directory)) {
+            Iterator<Path> it = files.filter(Files::isRegularFile).filter(BulkImageScanner::isImage).iterator();
+            while (it.hasNext()) {
+                Path file = it.next();
+                inFlight.acquire();
+                workers.execute(() -> {
+                    try {
+                        long fileStart = System.nanoTime();
+                        String error = null;
+                        boolean cat = false;
+                        try {
+                            cat = classify(file);
+                        } catch (IOException | RuntimeException e) {
+                            error = e.toString();
+                            failures.incrementAndGet();
+                        }
+                        if (cat) {
+                            cats.incrementAndGet();
+                        }
+                        scanned.incrementAndGet();
+                        out.entry(directory.relativize(file).toString(), cat, error, (System.nanoTime() - fileStart) / 1_000_000);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+            //wait for the last files to finish
+            inFlight.acquire(maxInFlight);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Scan of " + directory + " interrupted");
+        } catch (UncheckedIOException uioe) {
+            throw uioe.getCause();
+        } finally {
+            workers.shutdownNow();
+        }
+        out.end();
+        return new Summary(scanned.get(), cats.get(), failures.get(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private boolean classify(Path file) throws IOException {
+        BufferedImage frame = imagePreparer.prepare(file.toFile());
+        try {
+            return imageService.imageContainsCat(frame, confidenceThreshhold);
+        } finally {
+            imagePreparer.release(frame);
+        }
+    }
+
+    private static boolean isImage(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".jpg") || name.endsWith(".jpeg") || name.endsWith(".png")
+                || name.endsWith(".bmp") || name.endsWith(".gif");
+    }
+
+    /**
+     * Serializes report entries from the worker threads.
+     */
+    private static final class ReportWriter {
+        private final Writer writer;
+        private final ReportFormat format;
+        private boolean first = true;
+        private IOException failure;
+
+        ReportWriter(Writer writer, ReportFormat format) {
+            this.writer = writer;
+            this.format = format;
+        }
+
+        synchronized void begin() throws IOException {
+            writer.write(format == ReportFormat.CSV ? "file,cat,millis,error\n" : "[\n");
+        }
+
+        synchronized void entry(String file, boolean cat, String error, long millis) {
+            if (failure != null) {
+                return;
+            }
+            try {
+                if (format == ReportFormat.CSV) {
+                    writer.write(csv(file) + "," + cat + "," + millis + "," + (error == null ? "" : csv(error)) + "\n");
+                } else {
+                    writer.write((first ? "" : ",\n") + "  {\"file\": " + json(file) + ", \"cat\": " + cat
+                            + ", \"millis\": " + millis + ", \"error\": " + (error == null ? "null" : json(error)) + "}");
+                }
+                first = false;
+            } catch (IOException ioe) {
+                //reported from end(), so a broken report doesn't kill the worker threads
+                failure = ioe;
+            }
+        }
+
+        synchronized void end() throws IOException {
+            if (failure != null) {
+                throw failure;
+            }
+            if (format == ReportFormat.JSON) {
+                writer.write("\n]\n");
+            }
+            writer.flush();
+        }
+
+        private static String csv(String value) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+
+        private static String json(String value) {
+            StringBuilder sb = new StringBuilder("\"");
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"' || c == '\\') {
+                    sb.append('\\').append(c);
+                } else if (c < 0x20) {
+                    sb.append(String.format("\\u%04x", (int) c));
+                } else {
+                    sb.append(c);
+                }
+            }
+            return sb.append('"').toString();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.udacity.imageservice;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Image service that answers images it has seen before from a {@link RecognitionCache} and only
+ * passes new ones on to the wrapped service. A still camera sends the same frame over and over,
+ * so most of those frames never reach the remote service.
+ *
+ * The cache is keyed by the decoded pixels, so the same frame loaded twice is a hit while the
+ * same scene with a little sensor noise is not.
+ */
+public class CachingImageService implements IService {
+
+    private final IService delegate;
+    private final RecognitionCache cache;
+
+    public CachingImageService(IService delegate, RecognitionCache cache) {
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    @Override
+    public boolean imageContainsCat(BufferedImage image, float confidenceThreshhold) {
+        return recognize(image, confidenceThreshhold).containsCat(confidenceThreshhold);
+    }
+
+    @Override
+    public float getCatConfidence(BufferedImage image, float confidenceThreshhold) {
+        return recognize(image, confidenceThreshhold).getCatConfidence();
+    }
+
+    @Override
+    public Recognition recognize(BufferedImage image, float confidenceThreshhold) {
+        long[] digest = RecognitionCache.digest(image);
+        Recognition recognition = cache.get(digest, confidenceThreshhold);
+        if (recognition == null) {
+            //two threads may both miss on the same image; the second put just replaces the first
+            recognition = delegate.recognize(image, confidenceThreshhold);
+            cache.put(digest, confidenceThreshhold, recognition);
+        }
+        return recognition;
+    }
+}
@@ -0,0 +1,76 @@
+package com.udacity.imageservice;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Image service that screens every image with a cheap local service and only asks the expensive
+ * remote one when the local confidence lands close to the threshhold.
+ *
+ * A local confidence at least {@code uncertaintyBand} points from the threshhold decides on its
+ * own. Anything closer goes to the remote service, whose answer is final. A band of 0 never
+ * escalates and a band above 100 always does.
+ */
+public class CascadingImageService implements IService {
+
+    private final IService local;
+    private final IService remote;
+    private final float uncertaintyBand;
+
+    private final LongAdder localDecisions = new LongAdder();
+    private final LongAdder remoteDecisions = new LongAdder();
+
+    /**
+     * @param local Fast service, should report a real confidence rather than just yes or no
+     * @param remote Accurate service for the uncertain cases
+     * @param uncertaintyBand How many confidence points either side of the threshhold to escalate
+     */
+    public CascadingImageService(IService local, IService remote, float uncertaintyBand) {
+        if (uncertaintyBand < 0) {
+            throw new IllegalArgumentException("uncertaintyBand must not be negative");
+        }
+        this.local = local;
+        this.remote = remote;
+        this.uncertaintyBand = uncertaintyBand;
+    }
+
+    @Override
+    public boolean imageContainsCat(BufferedImage image, float confidenceThreshhold) {
+        float confidence = local.getCatConfidence(image, confidenceThreshhold);
+        if (isCertain(confidence, confidenceThreshhold)) {
+            localDecisions.increment();
+            return confidence >= confidenceThreshhold;
+        }
+        remoteDecisions.increment();
+        return remote.imageContainsCat(image, confidenceThreshhold);
+    }
+
+    @Override
+    public float getCatConfidence(BufferedImage image, float confidenceThreshhold) {
+        float confidence = local.getCatConfidence(image, confidenceThreshhold);
+        if (isCertain(confidence, confidenceThreshhold)) {
+            localDecisions.increment();
+            return confidence;
+        }
+        remoteDecisions.increment();
+        return remote.getCatConfidence(image, confidenceThreshhold);
+    }
+
+    /**
+     * @return images decided by the local service alone
+     */
+    public long getLocalDecisions() {
+        return localDecisions.sum();
+    }
+
+    /**
+     * @return images that were escalated to the remote service
+     */
+    public long getRemoteDecisions() {
+        return remoteDecisions.sum();
+    }
+
+    private boolean isCertain(float confidence, float confidenceThreshhold) {
+        return Math.abs(confidence - confidenceThreshhold) >= uncertaintyBand;
+    }
+}
@@ -0,0 +1,115 @@
+package com.udacity.imageservice;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Image service for a single camera that only passes a frame on when the scene has changed since
+ * the last frame that was passed on, and otherwise repeats that frame's result.
+ *
+ * Frames are compared as grayscale, shrunk by {@code downsampleFactor}, in squares of
+ * {@code block} shrunk pixels. A square has changed when its mean difference is above
+ * {@code pixelThreshold}, and the scene has changed when at least {@code changedBlocks} squares
+ * have. A change of frame size or threshhold always counts as a change.
+ */
+public class ChangeDetectingImageService implements IService {
+
+    private final IService delegate;
+    private final int downsampleFactor;
+    private final int block;
+    private final int pixelThreshold;
+    private final int changedBlocks;
+
+    private final LongAdder forwarded = new LongAdder();
+    private final LongAdder unchanged = new LongAdder();
+
+    //last frame passed on and its result, guarded by this
+    private byte[] reference;
+    private int referenceWidth;
+    private int referenceHeight;
+    private float referenceThreshhold;
+    private Recognition referenceRecognition;
+
+    /**
+     * Compares frames shrunk by 4 in squares of 8, so 32 x 32 source pixels, and passes a frame on
+     * when 2 squares differ by more than 12 grey levels on average.
+     */
+    public ChangeDetectingImageService(IService delegate) {
+        this(delegate, 4, 8, 12, 2);
+    }
+
+    public ChangeDetectingImageService(IService delegate, int downsampleFactor, int block, int pixelThreshold, int changedBlocks) {
+        if (downsampleFactor <= 0 || block <= 0 || changedBlocks <= 0) {
+            throw new IllegalArgumentException("downsampleFactor, block and changedBlocks must be positive");
+        }
+        this.delegate = delegate;
+        this.downsampleFactor = downsampleFactor;
+        this.block = block;
+        this.pixelThreshold = pixelThreshold;
+        this.changedBlocks = changedBlocks;
+    }
+
+    @Override
+    public boolean imageContainsCat(BufferedImage image, float confidenceThreshhold) {
+        return recognize(image, confidenceThreshhold).containsCat(confidenceThreshhold);
+    }
+
+    @Override
+    public float getCatConfidence(BufferedImage image, float confidenceThreshhold) {
+        return recognize(image, confidenceThreshhold).getCatConfidence();
+    }
+
+    @Override
+    public Recognition recognize(BufferedImage image, float confidenceThreshhold) {
+        int width = image.getWidth() / downsampleFactor;
+        int height = image.getHeight() / downsampleFactor;
+        byte[] gray = ImageKernels.downsample(ImageKernels.grayscale(image, null),
+                image.getWidth(), image.getHeight(), downsampleFactor, null);
+        synchronized (this) {
+            if (referenceRecognition != null && width == referenceWidth && height == referenceHeight
+                    && confidenceThreshhold == referenceThreshhold && !changed(gray, width, height)) {
+                unchanged.increment();
+                return referenceRecognition;
+            }
+        }
+        Recognition recognition = delegate.recognize(image, confidenceThreshhold);
+        forwarded.increment();
+        synchronized (this) {
+            reference = gray;
+            referenceWidth = width;
+            referenceHeight = height;
+            referenceThreshhold = confidenceThreshhold;
+            referenceRecognition = recognition;
+        }
+        return recognition;
+    }
+
+    /**
+     * @return frames passed on to the wrapped service
+     */
+    public long getForwarded() {
+        return forwarded.sum();
+    }
+
+    /**
+     * @return frames answered with the previous result because nothing had changed
+     */
+    public long getUnchanged() {
+        return unchanged.sum();
+    }
+
+    private boolean changed(byte[] gray, int width, int height) {
+        int[] differences = ImageKernels.blockDifferences(reference, gray, width, height, block, null);
+        if (differences.length == 0) {
+            //too small to compare
+            return true;
+        }
+        int count = 0;
+        for (int difference : differences) {
+            if (difference > pixelThreshold && ++count >= changedBlocks) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
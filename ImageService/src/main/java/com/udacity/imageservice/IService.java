@@ -1,7 +1,27 @@
 package com.udacity.imageservice;
 
 import java.awt.image.BufferedImage;
+import java.util.Collections;
 
 public interface IService {
     public boolean imageContainsCat(BufferedImage image, float confidenceThreshhold);
+
+    /**
+     * Returns how confident the service is that the image contains a cat, from 0 to 100.
+     * Services that can only answer yes or no report 100 or 0.
+     * @param image Image to scan
+     * @param confidenceThreshhold The threshhold the caller will compare the result to. Services may
+     *                             ignore labels below it, in which case they report 0.
+     */
+    default float getCatConfidence(BufferedImage image, float confidenceThreshhold) {
+        return imageContainsCat(image, confidenceThreshhold) ? 100.0f : 0.0f;
+    }
+
+    /**
+     * Returns the cat confidence together with the labels found in the image. Services that don't
+     * label images report no labels.
+     */
+    default Recognition recognize(BufferedImage image, float confidenceThreshhold) {
+        return new Recognition(getCatConfidence(image, confidenceThreshhold), Collections.emptyList());
+    }
 }
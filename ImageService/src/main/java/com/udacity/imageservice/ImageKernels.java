@@ -0,0 +1,302 @@
+package com.udacity.imageservice;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * Per-pixel work shared by the stages that look at frames before they are recognized: grayscale
+ * conversion, downsampling, block differences between frames and a 64 bit perceptual hash.
+ *
+ * Pixels are read straight from the raster's backing array for the common image types instead of
+ * one {@link BufferedImage#getRGB} call per pixel, which goes through the colour model every time.
+ * The inner loops are plain counted loops over primitive arrays with no branches or calls, the
+ * shape the JIT compiles to SIMD instructions. Other image types fall back to reading rows with
+ * getRGB and give the same results, only slower.
+ *
+ * Grayscale images are byte arrays of width * height luminance values, row by row.
+ */
+public final class ImageKernels {
+
+    //getRGB converts the linear gray samples of TYPE_BYTE_GRAY to sRGB, so the fast path looks the same values up
+    private static final byte[] GRAY_LUMA = grayLuma();
+
+    private ImageKernels() {
+    }
+
+    /**
+     * Luminance of a packed RGB pixel, 0 to 255, with the usual integer weights.
+     */
+    public static int luma(int rgb) {
+        return (((rgb >> 16) & 0xff) * 77 + ((rgb >> 8) & 0xff) * 150 + (rgb & 0xff) * 29) >> 8;
+    }
+
+    /**
+     * Converts the image to grayscale.
+     * @param out Array of at least width * height bytes, or null to allocate one
+     * @return the grayscale image
+     */
+    public static byte[] grayscale(BufferedImage image, byte[] out) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int length = width * height;
+        if (out == null || out.length < length) {
+            out = new byte[length];
+        }
+        int[] ints = intPixels(image);
+        byte[] bytes = ints == null ? bytePixels(image) : null;
+        switch (ints != null ? BufferedImage.TYPE_INT_RGB : bytes != null ? image.getType() : BufferedImage.TYPE_CUSTOM) {
+            case BufferedImage.TYPE_INT_RGB:
+                for (int i = 0; i < length; i++) {
+                    int p = ints[i];
+                    out[i] = (byte) ((((p >> 16) & 0xff) * 77 + ((p >> 8) & 0xff) * 150 + (p & 0xff) * 29) >> 8);
+                }
+                break;
+            case BufferedImage.TYPE_BYTE_GRAY:
+                for (int i = 0; i < length; i++) {
+                    out[i] = GRAY_LUMA[bytes[i] & 0xff];
+                }
+                break;
+            case BufferedImage.TYPE_3BYTE_BGR:
+                for (int i = 0; i < length; i++) {
+                    int j = i * 3;
+                    out[i] = (byte) (((bytes[j + 2] & 0xff) * 77 + (bytes[j + 1] & 0xff) * 150 + (bytes[j] & 0xff) * 29) >> 8);
+                }
+                break;
+            case BufferedImage.TYPE_4BYTE_ABGR:
+                for (int i = 0; i < length; i++) {
+                    int j = i * 4;
+                    out[i] = (byte) (((bytes[j + 3] & 0xff) * 77 + (bytes[j + 2] & 0xff) * 150 + (bytes[j + 1] & 0xff) * 29) >> 8);
+                }
+                break;
+            default:
+                int[] row = new int[width];
+                for (int y = 0; y < height; y++) {
+                    image.getRGB(0, y, width, 1, row, 0, width);
+                    int base = y * width;
+                    for (int x = 0; x < width; x++) {
+                        out[base + x] = (byte) luma(row[x]);
+                    }
+                }
+        }
+        return out;
+    }
+
+    /**
+     * Shrinks a grayscale image by averaging each factor x factor square of pixels. Pixels past the
+     * last whole square on the right and bottom edges are dropped.
+     * @param out Array of at least (width / factor) * (height / factor) bytes, or null to allocate one
+     * @return the smaller grayscale image
+     */
+    public static byte[] downsample(byte[] gray, int width, int height, int factor, byte[] out) {
+        if (factor <= 0) {
+            throw new IllegalArgumentException("factor must be positive");
+        }
+        int outWidth = width / factor;
+        int outHeight = height / factor;
+        if (out == null || out.length < outWidth * outHeight) {
+            out = new byte[outWidth * outHeight];
+        }
+        //add up whole columns of each band of rows first, which vectorizes, then the squares
+        int[] columns = new int[outWidth * factor];
+        int area = factor * factor;
+        for (int oy = 0; oy < outHeight; oy++) {
+            for (int x = 0; x < columns.length; x++) {
+                columns[x] = 0;
+            }
+            for (int y = oy * factor; y < (oy + 1) * factor; y++) {
+                int row = y * width;
+                for (int x = 0; x < columns.length; x++) {
+                    columns[x] += gray[row + x] & 0xff;
+                }
+            }
+            int base = oy * outWidth;
+            for (int ox = 0; ox < outWidth; ox++) {
+                int sum = 0;
+                for (int x = ox * factor; x < (ox + 1) * factor; x++) {
+                    sum += columns[x];
+                }
+                out[base + ox] = (byte) ((sum + area / 2) / area);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Sum of the absolute differences between two grayscale images, or two parts of them.
+     */
+    public static long sumOfAbsoluteDifferences(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+        long total = 0;
+        int i = 0;
+        //in chunks, so the int partial sums can't overflow
+        while (i < length) {
+            int end = Math.min(length, i + (1 << 23));
+            int sum = 0;
+            for (; i < end; i++) {
+                sum += Math.abs((a[aOffset + i] & 0xff) - (b[bOffset + i] & 0xff));
+            }
+            total += sum;
+        }
+        return total;
+    }
+
+    /**
+     * Mean absolute difference between two grayscale images of the same size over each
+     * block x block square, row by row. Squares past the right and bottom edges are dropped.
+     * @param out Array of at least (width / block) * (height / block) ints, or null to allocate one
+     * @return the mean difference of each square, 0 to 255
+     */
+    public static int[] blockDifferences(byte[] a, byte[] b, int width, int height, int block, int[] out) {
+        if (block <= 0) {
+            throw new IllegalArgumentException("block must be positive");
+        }
+        int blocksWide = width / block;
+        int blocksHigh = height / block;
+        if (out == null || out.length < blocksWide * blocksHigh) {
+            out = new int[blocksWide * blocksHigh];
+        }
+        int[] columns = new int[blocksWide * block];
+        int area = block * block;
+        for (int by = 0; by < blocksHigh; by++) {
+            for (int x = 0; x < columns.length; x++) {
+                columns[x] = 0;
+            }
+            for (int y = by * block; y < (by + 1) * block; y++) {
+                int row = y * width;
+                for (int x = 0; x < columns.length; x++) {
+                    columns[x] += Math.abs((a[row + x] & 0xff) - (b[row + x] & 0xff));
+                }
+            }
+            int base = by * blocksWide;
+            for (int bx = 0; bx < blocksWide; bx++) {
+                int sum = 0;
+                for (int x = bx * block; x < (bx + 1) * block; x++) {
+                    sum += columns[x];
+                }
+                out[base + bx] = sum / area;
+            }
+        }
+        return out;
+    }
+
+    /**
+     * 64 bit difference hash of the image: it is shrunk to 9 x 8 pixels of grayscale and each bit
+     * says whether a pixel is brighter than its right neighbour. Images that look alike have hashes
+     * a small {@link #hammingDistance} apart, whatever their size, encoding or small changes in
+     * brightness.
+     */
+    public static long differenceHash(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        byte[] gray = grayscale(image, null);
+        //average whole cells of the grid; images smaller than the grid repeat pixels
+        int[] columns = new int[width];
+        for (int x = 0; x < width; x++) {
+            columns[x] = x * 9 / width;
+        }
+        long[] cells = new long[9 * 8];
+        int[] counts = new int[9 * 8];
+        for (int y = 0; y < height; y++) {
+            int cy = y * 8 / height * 9;
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                cells[cy + columns[x]] += gray[row + x] & 0xff;
+                counts[cy + columns[x]]++;
+            }
+        }
+        long hash = 0;
+        for (int cy = 0; cy < 8; cy++) {
+            for (int cx = 0; cx < 8; cx++) {
+                long here = cell(cells, counts, cy * 9 + cx);
+                long right = cell(cells, counts, cy * 9 + cx + 1);
+                hash = hash << 1 | (here > right ? 1 : 0);
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Number of bits that differ between two hashes, 0 to 64.
+     */
+    public static int hammingDistance(long hash, long otherHash) {
+        return Long.bitCount(hash ^ otherHash);
+    }
+
+    private static long cell(long[] cells, int[] counts, int cell) {
+        if (counts[cell] > 0) {
+            return (cells[cell] << 8) / counts[cell];
+        }
+        //tiny image: borrow the nearest filled cell to the left, or the right
+        for (int left = cell - 1; left >= cell - cell % 9; left--) {
+            if (counts[left] > 0) {
+                return (cells[left] << 8) / counts[left];
+            }
+        }
+        for (int right = cell + 1; right < cell - cell % 9 + 9; right++) {
+            if (counts[right] > 0) {
+                return (cells[right] << 8) / counts[right];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return the backing array of a packed RGB image that fills it exactly, or null
+     */
+    static int[] intPixels(BufferedImage image) {
+        int type = image.getType();
+        if (type != BufferedImage.TYPE_INT_RGB && type != BufferedImage.TYPE_INT_ARGB) {
+            return null;
+        }
+        WritableRaster raster = image.getRaster();
+        SampleModel model = raster.getSampleModel();
+        if (!isWhole(raster) || !(raster.getDataBuffer() instanceof DataBufferInt)
+                || !(model instanceof SinglePixelPackedSampleModel)
+                || ((SinglePixelPackedSampleModel) model).getScanlineStride() != image.getWidth()) {
+            return null;
+        }
+        return ((DataBufferInt) raster.getDataBuffer()).getData();
+    }
+
+    /**
+     * @return the backing array of an interleaved byte image that fills it exactly, or null
+     */
+    static byte[] bytePixels(BufferedImage image) {
+        int type = image.getType();
+        if (type != BufferedImage.TYPE_BYTE_GRAY && type != BufferedImage.TYPE_3BYTE_BGR
+                && type != BufferedImage.TYPE_4BYTE_ABGR) {
+            return null;
+        }
+        WritableRaster raster = image.getRaster();
+        SampleModel model = raster.getSampleModel();
+        if (!isWhole(raster) || !(raster.getDataBuffer() instanceof DataBufferByte)
+                || !(model instanceof ComponentSampleModel)
+                || ((ComponentSampleModel) model).getScanlineStride() != image.getWidth() * model.getNumBands()) {
+            return null;
+        }
+        return ((DataBufferByte) raster.getDataBuffer()).getData();
+    }
+
+    private static byte[] grayLuma() {
+        BufferedImage ramp = new BufferedImage(256, 1, BufferedImage.TYPE_BYTE_GRAY);
+        for (int x = 0; x < 256; x++) {
+            ramp.getRaster().setSample(x, 0, 0, x);
+        }
+        byte[] table = new byte[256];
+        for (int x = 0; x < 256; x++) {
+            table[x] = (byte) luma(ramp.getRGB(x, 0));
+        }
+        return table;
+    }
+
+    private static boolean isWhole(WritableRaster raster) {
+        DataBuffer buffer = raster.getDataBuffer();
+        return raster.getParent() == null && raster.getSampleModelTranslateX() == 0
+                && raster.getSampleModelTranslateY() == 0 && buffer.getNumBanks() == 1 && buffer.getOffset() == 0;
+    }
+}
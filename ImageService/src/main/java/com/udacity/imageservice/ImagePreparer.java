@@ -0,0 +1,140 @@
+package com.udacity.imageservice;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Turns encoded camera images into frames at a single working resolution, to be shared by the
+ * display and the image service.
+ *
+ * Large images are subsampled while they are decoded, so the full-resolution image is never
+ * built, and then scaled once to the working size with bilinear interpolation. Both the decode
+ * buffer and the output frames come from a {@link RasterPool}; hand frames back with
+ * {@link #release(BufferedImage)} once nothing displays or analyzes them anymore.
+ */
+public class ImagePreparer {
+
+    private final int width;
+    private final int height;
+    private final RasterPool pool;
+
+    public ImagePreparer(int width, int height) {
+        this(width, height, new RasterPool(4));
+    }
+
+    public ImagePreparer(int width, int height, RasterPool pool) {
+        this.width = width;
+        this.height = height;
+        this.pool = pool;
+    }
+
+    /**
+     * Decodes the image file into a working-size frame.
+     * @throws IOException if the file can't be read or is not a supported image format
+     */
+    public BufferedImage prepare(File file) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            if (in == null) {
+                throw new IOException("Unable to open " + file);
+            }
+            return prepare(in);
+        }
+    }
+
+    /**
+     * Decodes the image from the stream into a working-size frame. The stream is not closed.
+     * @throws IOException if the stream can't be read or is not a supported image format
+     */
+    public BufferedImage prepare(ImageInputStream in) throws IOException {
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+        if (!readers.hasNext()) {
+            throw new IOException("Unsupported image format");
+        }
+        ImageReader reader = readers.next();
+        try {
+            reader.setInput(in, true, true);
+            int sourceWidth = reader.getWidth(0);
+            int sourceHeight = reader.getHeight(0);
+
+            //skip whole source pixels while decoding, but never go below the working resolution
+            int step = Math.max(1, Math.min(sourceWidth / width, sourceHeight / height));
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceSubsampling(step, step, 0, 0);
+
+            //decode into a pooled buffer when the reader supports a standard image type
+            BufferedImage buffer = null;
+            int bufferType = pooledType(reader);
+            if (bufferType != BufferedImage.TYPE_CUSTOM) {
+                buffer = pool.acquire((sourceWidth + step - 1) / step, (sourceHeight + step - 1) / step, bufferType);
+                param.setDestination(buffer);
+            }
+
+            BufferedImage decoded = reader.read(0, param);
+            try {
+                return prepare(decoded);
+            } finally {
+                if (decoded == buffer) {
+                    pool.release(buffer);
+                }
+            }
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    /**
+     * @return the first standard type the reader can decode into that carries its colours in the
+     * pixels. Indexed types are skipped: a pooled image of one has the default palette rather than
+     * the file's, so GIF and palette PNG colours would come out wrong.
+     */
+    private static int pooledType(ImageReader reader) throws IOException {
+        Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+        while (types.hasNext()) {
+            int type = types.next().getBufferedImageType();
+            if (type != BufferedImage.TYPE_CUSTOM && type != BufferedImage.TYPE_BYTE_INDEXED
+                    && type != BufferedImage.TYPE_BYTE_BINARY) {
+                return type;
+            }
+        }
+        return BufferedImage.TYPE_CUSTOM;
+    }
+
+    /**
+     * Scales an already decoded image to the working resolution.
+     */
+    public BufferedImage prepare(BufferedImage image) {
+        BufferedImage frame = pool.acquire(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = frame.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return frame;
+    }
+
+    /**
+     * Returns a frame produced by this preparer to the pool.
+     */
+    public void release(BufferedImage frame) {
+        pool.release(frame);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
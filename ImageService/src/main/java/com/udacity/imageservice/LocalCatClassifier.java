@@ -0,0 +1,139 @@
+package com.udacity.imageservice;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cheap local cat classifier. It doesn't know anything about cats by itself: it is trained with
+ * labelled example images, ideally frames from the same cameras, and compares new images against
+ * them by colour distribution and edge structure.
+ *
+ * Each image is reduced to a small feature vector by sampling a fixed grid of pixels, so
+ * classifying costs the same few thousand pixel reads whatever the image size. The confidence is
+ * 100 when the image is right on a cat example, 0 when it is right on a non-cat example and 50
+ * when it is equally far from both. Without examples of both kinds it always reports 50.
+ */
+public class LocalCatClassifier implements IService {
+
+    private static final int GRID = 32;
+    private static final int COLOUR_BINS = 64; //4 levels per channel
+    private static final int EDGE_CELLS = 8;
+    private static final int FEATURES = COLOUR_BINS + EDGE_CELLS * EDGE_CELLS;
+
+    private final List<float[]> cats = new ArrayList<>();
+    private final List<float[]> notCats = new ArrayList<>();
+
+    /**
+     * Trains a classifier with the images in the {@code cat} and {@code not-cat} folders of the
+     * directory. Files that aren't images are skipped.
+     * @throws IOException if a folder can't be read or has no images
+     */
+    public static LocalCatClassifier trainFrom(Path directory) throws IOException {
+        LocalCatClassifier classifier = new LocalCatClassifier();
+        classifier.trainAll(directory.resolve("cat"), true);
+        classifier.trainAll(directory.resolve("not-cat"), false);
+        return classifier;
+    }
+
+    private void trainAll(Path folder, boolean containsCat) throws IOException {
+        int trained = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder)) {
+            for (Path file : files) {
+                BufferedImage image = Files.isRegularFile(file) ? ImageIO.read(file.toFile()) : null;
+                if (image != null) {
+                    train(image, containsCat);
+                    trained++;
+                }
+            }
+        }
+        if (trained == 0) {
+            throw new IOException("No example images in " + folder);
+        }
+    }
+
+    /**
+     * Adds a labelled example. Safe to call while other threads classify.
+     */
+    public synchronized void train(BufferedImage image, boolean containsCat) {
+        (containsCat ? cats : notCats).add(features(image));
+    }
+
+    @Override
+    public boolean imageContainsCat(BufferedImage image, float confidenceThreshhold) {
+        return getCatConfidence(image, confidenceThreshhold) >= confidenceThreshhold;
+    }
+
+    @Override
+    public float getCatConfidence(BufferedImage image, float confidenceThreshhold) {
+        float[] features = features(image);
+        float toCat;
+        float toNotCat;
+        synchronized (this) {
+            if (cats.isEmpty() || notCats.isEmpty()) {
+                return 50.0f;
+            }
+            toCat = nearest(cats, features);
+            toNotCat = nearest(notCats, features);
+        }
+        float total = toCat + toNotCat;
+        return total == 0 ? 50.0f : 100.0f * toNotCat / total;
+    }
+
+    private static float nearest(List<float[]> examples, float[] features) {
+        float best = Float.MAX_VALUE;
+        for (float[] example : examples) {
+            float distance = 0;
+            for (int i = 0; i < FEATURES && distance < best; i++) {
+                distance += Math.abs(example[i] - features[i]);
+            }
+            best = Math.min(best, distance);
+        }
+        return best;
+    }
+
+    /**
+     * Samples a GRID x GRID lattice of pixels into a normalised colour histogram followed by the
+     * mean luminance gradient of each of the EDGE_CELLS x EDGE_CELLS regions.
+     */
+    static float[] features(BufferedImage image) {
+        int[] luma = new int[GRID * GRID];
+        float[] features = new float[FEATURES];
+        int width = image.getWidth();
+        int height = image.getHeight();
+        for (int gy = 0; gy < GRID; gy++) {
+            int y = (gy * 2 + 1) * height / (GRID * 2);
+            for (int gx = 0; gx < GRID; gx++) {
+                int rgb = image.getRGB((gx * 2 + 1) * width / (GRID * 2), y);
+                int r = (rgb >> 16) & 0xff;
+                int g = (rgb >> 8) & 0xff;
+                int b = rgb & 0xff;
+                features[(r >> 6) << 4 | (g >> 6) << 2 | (b >> 6)]++;
+                luma[gy * GRID + gx] = ImageKernels.luma(rgb);
+            }
+        }
+        for (int i = 0; i < COLOUR_BINS; i++) {
+            features[i] /= GRID * GRID;
+        }
+
+        int cell = GRID / EDGE_CELLS;
+        for (int gy = 0; gy < GRID - 1; gy++) {
+            for (int gx = 0; gx < GRID - 1; gx++) {
+                int here = luma[gy * GRID + gx];
+                int gradient = Math.abs(luma[gy * GRID + gx + 1] - here) + Math.abs(luma[(gy + 1) * GRID + gx] - here);
+                features[COLOUR_BINS + (gy / cell) * EDGE_CELLS + gx / cell] += gradient;
+            }
+        }
+        //scale so a fully textured region weighs about as much as the whole colour histogram
+        float edgeScale = 1.0f / (cell * cell * 510.0f * EDGE_CELLS);
+        for (int i = COLOUR_BINS; i < FEATURES; i++) {
+            features[i] *= edgeScale;
+        }
+        return features;
+    }
+}
@@ -0,0 +1,53 @@
+package com.udacity.imageservice;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Small pool of reusable BufferedImages, keyed by size and image type. Frames from the same
+ * camera are always the same size, so after the first few frames decoding and scaling stop
+ * allocating new rasters.
+ */
+public class RasterPool {
+
+    private final int maxPerSize;
+    private final Map<Long, ArrayDeque<BufferedImage>> free = new HashMap<>();
+
+    /**
+     * @param maxPerSize Maximum number of idle images kept for each size and type
+     */
+    public RasterPool(int maxPerSize) {
+        this.maxPerSize = maxPerSize;
+    }
+
+    /**
+     * Returns an idle image of the requested size and type, or a new one if none is free.
+     * The contents of a reused image are whatever the previous user left in it.
+     * @param imageType One of the BufferedImage.TYPE_* constants, other than TYPE_CUSTOM
+     */
+    public synchronized BufferedImage acquire(int width, int height, int imageType) {
+        ArrayDeque<BufferedImage> images = free.get(key(width, height, imageType));
+        BufferedImage image = images == null ? null : images.pollFirst();
+        return image != null ? image : new BufferedImage(width, height, imageType);
+    }
+
+    /**
+     * Hands an image back to the pool. The caller must not use it afterwards.
+     */
+    public synchronized void release(BufferedImage image) {
+        if (image == null || image.getType() == BufferedImage.TYPE_CUSTOM) {
+            return;
+        }
+        ArrayDeque<BufferedImage> images = free.computeIfAbsent(
+                key(image.getWidth(), image.getHeight(), image.getType()), k -> new ArrayDeque<>());
+        if (images.size() < maxPerSize) {
+            images.addFirst(image);
+        }
+    }
+
+    private static long key(int width, int height, int imageType) {
+        return ((long) width << 40) | ((long) height << 16) | imageType;
+    }
+}
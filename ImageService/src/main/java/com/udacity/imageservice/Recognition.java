@@ -0,0 +1,34 @@
+package com.udacity.imageservice;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What an image service saw in an image: its confidence that there is a cat, from 0 to 100, and
+ * the names of every label it found above the threshhold it was asked with.
+ */
+public final class Recognition {
+
+    private final float catConfidence;
+    private final List<String> labels;
+
+    public Recognition(float catConfidence, List<String> labels) {
+        this.catConfidence = catConfidence;
+        this.labels = Collections.unmodifiableList(labels);
+    }
+
+    public float getCatConfidence() {
+        return catConfidence;
+    }
+
+    public List<String> getLabels() {
+        return labels;
+    }
+
+    /**
+     * @return whether the cat confidence reaches the threshhold
+     */
+    public boolean containsCat(float confidenceThreshhold) {
+        return catConfidence > 0 && catConfidence >= confidenceThreshhold;
+    }
+}
@@ -0,0 +1,353 @@
+package com.udacity.imageservice;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Recognition results kept in a memory mapped file, keyed by a 128 bit digest of the image
+ * pixels, so an image that was already sent to the image service is answered from disk even
+ * after a restart.
+ *
+ * The file is a fixed size hash table. A digest picks a bucket of eight slots; a lookup reads
+ * those slots and nothing else, and a new entry replaces the least recently used slot of its
+ * bucket once the bucket is full. Each entry holds the threshhold it was recognized with, the cat
+ * confidence and as many labels as fit in the slot. An entry only answers lookups made with the
+ * same threshhold, since the labels the service returns depend on it.
+ *
+ * Safe to use from several threads. A file that was written with a different layout is cleared.
+ */
+public class RecognitionCache implements AutoCloseable {
+
+    private static final int MAGIC = 0x43505243; //"CPRC"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int WAYS = 8;
+    private static final int SLOT_SIZE = 256;
+    private static final int LOCKS = 64;
+
+    //slot layout
+    private static final int DIGEST_HI = 0;
+    private static final int DIGEST_LO = 8;
+    private static final int LAST_USED = 16;
+    private static final int THRESHHOLD = 24;
+    private static final int CONFIDENCE = 28;
+    private static final int CHECKSUM = 32;
+    private static final int LABELS_LENGTH = 36;
+    private static final int LABELS = 38;
+    private static final int MAX_LABELS_LENGTH = SLOT_SIZE - LABELS;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer map;
+    private final int bucketMask;
+    private final Object[] locks = new Object[LOCKS];
+    private final AtomicLong clock = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Opens or creates the cache file.
+     * @param entries Number of results to keep, rounded up to a power of two. A file created with
+     *                a different size is cleared.
+     */
+    public RecognitionCache(Path file, int entries) throws IOException {
+        if (entries <= 0) {
+            throw new IllegalArgumentException("entries must be positive");
+        }
+        int wanted = (entries + WAYS - 1) / WAYS;
+        int buckets = wanted == 1 ? 1 : Integer.highestOneBit(wanted - 1) << 1;
+        bucketMask = buckets - 1;
+        for (int i = 0; i < LOCKS; i++) {
+            locks[i] = new Object();
+        }
+        long size = HEADER_SIZE + (long) buckets * WAYS * SLOT_SIZE;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many entries: " + entries);
+        }
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            boolean compatible = channel.size() == size;
+            map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            compatible = compatible && map.getInt(0) == MAGIC && map.getInt(4) == VERSION
+                    && map.getInt(8) == buckets && map.getInt(12) == WAYS && map.getInt(16) == SLOT_SIZE;
+            if (compatible) {
+                long newest = 0;
+                for (int slot = 0; slot < buckets * WAYS; slot++) {
+                    newest = Math.max(newest, map.getLong(HEADER_SIZE + slot * SLOT_SIZE + LAST_USED));
+                }
+                clock.set(newest);
+            } else {
+                clear(buckets);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens the cache with room for 32768 results, about 8MB on disk.
+     */
+    public RecognitionCache(Path file) throws IOException {
+        this(file, 32768);
+    }
+
+    /**
+     * Returns the result stored for the image digest and threshhold, or null if there is none.
+     * @param digest Digest from {@link #digest(BufferedImage)}
+     */
+    public Recognition get(long[] digest, float confidenceThreshhold) {
+        long hi = digest[0];
+        long lo = digest[1] | 1;
+        int bucket = (int) (lo >>> 1 ^ hi) & bucketMask;
+        synchronized (locks[bucket & (LOCKS - 1)]) {
+            int slot = find(bucket, hi, lo);
+            if (slot >= 0 && map.getFloat(slot + THRESHHOLD) == confidenceThreshhold) {
+                Recognition recognition = read(slot);
+                if (recognition != null) {
+                    map.putLong(slot + LAST_USED, clock.incrementAndGet());
+                    hits.increment();
+                    return recognition;
+                }
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Stores the result for the image digest and threshhold, replacing any earlier one. Labels
+     * that don't fit in the slot are left out.
+     */
+    public void put(long[] digest, float confidenceThreshhold, Recognition recognition) {
+        byte[] labels = encode(recognition.getLabels());
+        long hi = digest[0];
+        long lo = digest[1] | 1;
+        int bucket = (int) (lo >>> 1 ^ hi) & bucketMask;
+        synchronized (locks[bucket & (LOCKS - 1)]) {
+            int slot = find(bucket, hi, lo);
+            if (slot < 0) {
+                slot = victim(bucket);
+            }
+            //the digest goes last, so a half written slot never matches
+            map.putLong(slot + DIGEST_LO, 0);
+            map.putFloat(slot + THRESHHOLD, confidenceThreshhold);
+            map.putFloat(slot + CONFIDENCE, recognition.getCatConfidence());
+            map.putShort(slot + LABELS_LENGTH, (short) labels.length);
+            for (int i = 0; i < labels.length; i++) {
+                map.put(slot + LABELS + i, labels[i]);
+            }
+            map.putInt(slot + CHECKSUM, checksum(confidenceThreshhold, recognition.getCatConfidence(), labels, labels.length));
+            map.putLong(slot + LAST_USED, clock.incrementAndGet());
+            map.putLong(slot + DIGEST_HI, hi);
+            map.putLong(slot + DIGEST_LO, lo);
+        }
+    }
+
+    /**
+     * Writes the cache to disk.
+     */
+    public void force() {
+        map.force();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    /**
+     * Digest of the image's size and pixels. Two images with the same pixels in the same image
+     * type have the same digest however they were encoded or loaded. Indexed and custom images
+     * are digested by their colours rather than their samples, since the same samples can stand
+     * for different colours in them.
+     * @return Two longs, the high and low halves of the digest
+     */
+    public static long[] digest(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        long h1 = 0x9E3779B97F4A7C15L ^ ((long) width << 32 | height);
+        long h2 = 0xC2B2AE3D27D4EB4FL ^ image.getType();
+        WritableRaster raster = image.getRaster();
+        DataBuffer buffer = raster.getDataBuffer();
+        SampleModel model = raster.getSampleModel();
+        //the other standard types fix the colour model, so equal samples mean equal colours
+        int type = image.getType();
+        boolean whole = type != BufferedImage.TYPE_CUSTOM && type != BufferedImage.TYPE_BYTE_INDEXED
+                && raster.getParent() == null && raster.getSampleModelTranslateX() == 0
+                && raster.getSampleModelTranslateY() == 0 && buffer.getNumBanks() == 1 && buffer.getOffset() == 0;
+        if (whole && buffer instanceof DataBufferInt && model instanceof SinglePixelPackedSampleModel
+                && ((SinglePixelPackedSampleModel) model).getScanlineStride() == width) {
+            int[] data = ((DataBufferInt) buffer).getData();
+            int end = width * height;
+            for (int i = 0; i < end; i++) {
+                h1 = (h1 ^ data[i]) * 0x100000001B3L;
+                h2 = Long.rotateLeft(h2 ^ data[i], 29) * 0x9E3779B97F4A7C15L;
+            }
+        } else if (whole && buffer instanceof DataBufferByte && model instanceof ComponentSampleModel
+                && ((ComponentSampleModel) model).getScanlineStride() == width * model.getNumBands()) {
+            byte[] data = ((DataBufferByte) buffer).getData();
+            int end = width * height * model.getNumBands();
+            int i = 0;
+            for (; i + 3 < end; i += 4) {
+                int word = (data[i] & 0xFF) | (data[i + 1] & 0xFF) << 8 | (data[i + 2] & 0xFF) << 16 | data[i + 3] << 24;
+                h1 = (h1 ^ word) * 0x100000001B3L;
+                h2 = Long.rotateLeft(h2 ^ word, 29) * 0x9E3779B97F4A7C15L;
+            }
+            for (; i < end; i++) {
+                h1 = (h1 ^ data[i]) * 0x100000001B3L;
+                h2 = Long.rotateLeft(h2 ^ data[i], 29) * 0x9E3779B97F4A7C15L;
+            }
+        } else {
+            int[] row = new int[width];
+            for (int y = 0; y < height; y++) {
+                image.getRGB(0, y, width, 1, row, 0, width);
+                for (int x = 0; x < width; x++) {
+                    h1 = (h1 ^ row[x]) * 0x100000001B3L;
+                    h2 = Long.rotateLeft(h2 ^ row[x], 29) * 0x9E3779B97F4A7C15L;
+                }
+            }
+        }
+        return new long[]{mix(h1 ^ h2 >>> 31), mix(h2 ^ h1 >>> 29)};
+    }
+
+    private int find(int bucket, long hi, long lo) {
+        int base = HEADER_SIZE + bucket * WAYS * SLOT_SIZE;
+        for (int way = 0; way < WAYS; way++) {
+            int slot = base + way * SLOT_SIZE;
+            if (map.getLong(slot + DIGEST_LO) == lo && map.getLong(slot + DIGEST_HI) == hi) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns an empty slot of the bucket, or else its least recently used one.
+     */
+    private int victim(int bucket) {
+        int base = HEADER_SIZE + bucket * WAYS * SLOT_SIZE;
+        int oldest = base;
+        long oldestUse = Long.MAX_VALUE;
+        for (int way = 0; way < WAYS; way++) {
+            int slot = base + way * SLOT_SIZE;
+            if (map.getLong(slot + DIGEST_LO) == 0) {
+                return slot;
+            }
+            long lastUsed = map.getLong(slot + LAST_USED);
+            if (lastUsed < oldestUse) {
+                oldestUse = lastUsed;
+                oldest = slot;
+            }
+        }
+        evictions.increment();
+        return oldest;
+    }
+
+    /**
+     * @return the stored result, or null if the slot doesn't match its checksum
+     */
+    private Recognition read(int slot) {
+        float threshhold = map.getFloat(slot + THRESHHOLD);
+        float confidence = map.getFloat(slot + CONFIDENCE);
+        int length = map.getShort(slot + LABELS_LENGTH);
+        if (length < 0 || length > MAX_LABELS_LENGTH) {
+            return null;
+        }
+        byte[] labels = new byte[length];
+        for (int i = 0; i < length; i++) {
+            labels[i] = map.get(slot + LABELS + i);
+        }
+        if (map.getInt(slot + CHECKSUM) != checksum(threshhold, confidence, labels, length)) {
+            return null;
+        }
+        if (length == 0) {
+            return new Recognition(confidence, Collections.emptyList());
+        }
+        List<String> names = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i <= length; i++) {
+            if (i == length || labels[i] == '\n') {
+                names.add(new String(labels, start, i - start, StandardCharsets.UTF_8));
+                start = i + 1;
+            }
+        }
+        return new Recognition(confidence, names);
+    }
+
+    /**
+     * Joins the labels with newlines, stopping at the last whole label that fits.
+     */
+    private static byte[] encode(List<String> labels) {
+        byte[] joined = String.join("\n", labels).getBytes(StandardCharsets.UTF_8);
+        if (joined.length <= MAX_LABELS_LENGTH) {
+            return joined;
+        }
+        int end = MAX_LABELS_LENGTH;
+        while (end > 0 && joined[end] != '\n') {
+            end--;
+        }
+        byte[] truncated = new byte[end];
+        System.arraycopy(joined, 0, truncated, 0, end);
+        return truncated;
+    }
+
+    private static int checksum(float threshhold, float confidence, byte[] labels, int length) {
+        int sum = Float.floatToIntBits(threshhold) * 31 + Float.floatToIntBits(confidence);
+        for (int i = 0; i < length; i++) {
+            sum = sum * 31 + labels[i];
+        }
+        return sum;
+    }
+
+    private void clear(int buckets) {
+        for (int i = 0; i < map.capacity(); i += 8) {
+            map.putLong(i, 0);
+        }
+        map.putInt(0, MAGIC);
+        map.putInt(4, VERSION);
+        map.putInt(8, buckets);
+        map.putInt(12, WAYS);
+        map.putInt(16, SLOT_SIZE);
+        map.force();
+    }
+
+    private static long mix(long h) {
+        h = (h ^ h >>> 33) * 0xFF51AFD7ED558CCDL;
+        h = (h ^ h >>> 33) * 0xC4CEB9FE1A85EC53L;
+        return h ^ h >>> 33;
+    }
+}
@@ -0,0 +1,322 @@
+package com.udacity.imageservice;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Wraps an image service, typically the remote {@link AwsImageService}, so a slow or failing backend
+ * can't hold up the caller. Services are tried in order, the primary first and then each fallback:
+ * <ul>
+ *     <li>each attempt has a deadline, after which it is abandoned and the next service is tried</li>
+ *     <li>if an attempt is slower than the service's recent 95th percentile, a second identical
+ *     request is sent and whichever answers first wins</li>
+ *     <li>after {@code failureThreshold} failures in a row a service's circuit opens and it is
+ *     skipped until {@code openMillis} have passed, then a single trial call decides whether it
+ *     closes again</li>
+ * </ul>
+ * So a call takes at most the deadline times the number of services. If every service fails, the
+ * image is reported as not containing a cat, like {@link AwsImageService} does when it can't encode
+ * the image. The same goes for a call made while all worker threads are busy; that is load shed
+ * here rather than a fault of the service, so it doesn't count towards opening its circuit.
+ */
+public class ResilientImageService implements IService, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ResilientImageService.class);
+
+    private static final int MAX_THREADS = 32;
+    private static final int LATENCY_SAMPLES = 64;
+    private static final int MIN_SAMPLES_FOR_HEDGING = 16;
+
+    private final List<Backend> backends = new ArrayList<>();
+    private final long timeoutNanos;
+    private final ThreadPoolExecutor executor;
+
+    private final LongAdder hedgedRequests = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+    private final LongAdder exhausted = new LongAdder();
+    private final LongAdder shed = new LongAdder();
+
+    /**
+     * Uses a circuit that opens after 5 failures in a row and stays open for 30 seconds.
+     */
+    public ResilientImageService(IService primary, long timeoutMillis, IService... fallbacks) {
+        this(primary, timeoutMillis, 5, 30_000, fallbacks);
+    }
+
+    /**
+     * @param primary Service to try first
+     * @param timeoutMillis Deadline for each service attempt, hedged requests included
+     * @param failureThreshold Failures in a row that open a service's circuit
+     * @param openMillis How long an open circuit skips the service before trying it again
+     * @param fallbacks Services to try in order when the ones before them fail or are skipped
+     */
+    public ResilientImageService(IService primary, long timeoutMillis, int failureThreshold, long openMillis, IService... fallbacks) {
+        if (timeoutMillis <= 0 || failureThreshold <= 0) {
+            throw new IllegalArgumentException("timeoutMillis and failureThreshold must be positive");
+        }
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        backends.add(new Backend(primary, failureThreshold, TimeUnit.MILLISECONDS.toNanos(openMillis)));
+        for (IService fallback : fallbacks) {
+            backends.add(new Backend(fallback, failureThreshold, TimeUnit.MILLISECONDS.toNanos(openMillis)));
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(0, MAX_THREADS, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+            Thread thread = new Thread(r, "image-service-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public boolean imageContainsCat(BufferedImage image, float confidenceThreshhold) {
+        Boolean result = call(service -> service.imageContainsCat(image, confidenceThreshhold));
+        return result != null && result;
+    }
+
+    @Override
+    public float getCatConfidence(BufferedImage image, float confidenceThreshhold) {
+        Float result = call(service -> service.getCatConfidence(image, confidenceThreshhold));
+        return result == null ? 0.0f : result;
+    }
+
+    /**
+     * @return extra requests sent because the first one was slower than usual
+     */
+    public long getHedgedRequests() {
+        return hedgedRequests.sum();
+    }
+
+    /**
+     * @return service attempts abandoned at the deadline
+     */
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    /**
+     * @return calls answered by a fallback rather than the primary service
+     */
+    public long getFallbacks() {
+        return fallbacks.sum();
+    }
+
+    /**
+     * @return calls for which no service gave an answer
+     */
+    public long getExhausted() {
+        return exhausted.sum();
+    }
+
+    /**
+     * @return calls turned away because every worker thread was busy
+     */
+    public long getShed() {
+        return shed.sum();
+    }
+
+    /**
+     * @param index 0 for the primary, then the fallbacks in order
+     * @return whether the service is currently being skipped
+     */
+    public boolean isCircuitOpen(int index) {
+        return backends.get(index).isOpen(System.nanoTime());
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private <T> T call(Function<IService, T> request) {
+        for (int i = 0; i < backends.size(); i++) {
+            Backend backend = backends.get(i);
+            if (!backend.tryAcquire(System.nanoTime())) {
+                continue;
+            }
+            try {
+                T result = attempt(backend, request);
+                backend.onSuccess();
+                if (i > 0) {
+                    fallbacks.increment();
+                }
+                return result;
+            } catch (TimeoutException te) {
+                timeouts.increment();
+                backend.onFailure(System.nanoTime());
+                log.warn("Image service {} timed out", backend.service.getClass().getSimpleName());
+            } catch (ExecutionException e) {
+                backend.onFailure(System.nanoTime());
+                log.warn("Image service {} failed", backend.service.getClass().getSimpleName(), e.getCause());
+            } catch (RejectedExecutionException e) {
+                //our own threads are saturated, the other services would be turned away too
+                backend.onAbandoned();
+                shed.increment();
+                return null;
+            } catch (InterruptedException ie) {
+                backend.onAbandoned();
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        exhausted.increment();
+        return null;
+    }
+
+    /**
+     * Sends the request, and a hedged copy if the first is slow, and returns the first answer.
+     */
+    private <T> T attempt(Backend backend, Function<IService, T> request)
+            throws TimeoutException, ExecutionException, InterruptedException {
+        long start = System.nanoTime();
+        long deadline = start + timeoutNanos;
+        CompletableFuture<T> answer = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(1);
+        List<Future<?>> requests = new ArrayList<>(2);
+        requests.add(submit(backend, request, answer, pending));
+        try {
+            long hedgeDelay = backend.hedgeDelay(timeoutNanos);
+            if (hedgeDelay < timeoutNanos) {
+                try {
+                    return answer.get(hedgeDelay, TimeUnit.NANOSECONDS);
+                } catch (TimeoutException te) {
+                    //slower than usual, race a second request against the first
+                    if (pending.incrementAndGet() > 1) {
+                        try {
+                            requests.add(submit(backend, request, answer, pending));
+                            hedgedRequests.increment();
+                        } catch (RejectedExecutionException e) {
+                            //no thread to spare, keep waiting for the first request
+                            if (pending.decrementAndGet() == 0) {
+                                //which failed in the meantime, without completing the answer
+                                answer.completeExceptionally(e);
+                            }
+                        }
+                    }
+                }
+            }
+            T result = answer.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            backend.recordLatency(System.nanoTime() - start);
+            return result;
+        } finally {
+            for (Future<?> future : requests) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private <T> Future<?> submit(Backend backend, Function<IService, T> request, CompletableFuture<T> answer, AtomicInteger pending) {
+        return executor.submit(() -> {
+            try {
+                answer.complete(request.apply(backend.service));
+            } catch (RuntimeException e) {
+                //only fail the call once every request sent for it has failed
+                if (pending.decrementAndGet() == 0) {
+                    answer.completeExceptionally(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * A service with its circuit breaker state and recent latencies.
+     */
+    private static class Backend {
+        private final IService service;
+        private final int failureThreshold;
+        private final long openNanos;
+
+        private final long[] latencies = new long[LATENCY_SAMPLES];
+        private int nextLatency;
+        private int latencySamples;
+
+        private int consecutiveFailures;
+        private long openUntil;
+        private boolean trialInProgress;
+        private boolean open;
+
+        Backend(IService service, int failureThreshold, long openNanos) {
+            this.service = service;
+            this.failureThreshold = failureThreshold;
+            this.openNanos = openNanos;
+        }
+
+        /**
+         * @return whether the service may be called now. Once an open circuit has waited long
+         * enough, only one caller at a time gets through to try it.
+         */
+        synchronized boolean tryAcquire(long now) {
+            if (!open) {
+                return true;
+            }
+            if (trialInProgress || now - openUntil < 0) {
+                return false;
+            }
+            trialInProgress = true;
+            return true;
+        }
+
+        synchronized boolean isOpen(long now) {
+            return open && (trialInProgress || now - openUntil < 0);
+        }
+
+        synchronized void onSuccess() {
+            consecutiveFailures = 0;
+            open = false;
+            trialInProgress = false;
+        }
+
+        synchronized void onFailure(long now) {
+            consecutiveFailures++;
+            if (trialInProgress || consecutiveFailures >= failureThreshold) {
+                if (!open) {
+                    log.warn("Opening circuit for image service {}", service.getClass().getSimpleName());
+                }
+                open = true;
+                openUntil = now + openNanos;
+            }
+            trialInProgress = false;
+        }
+
+        synchronized void onAbandoned() {
+            trialInProgress = false;
+        }
+
+        synchronized void recordLatency(long nanos) {
+            latencies[nextLatency] = nanos;
+            nextLatency = (nextLatency + 1) % LATENCY_SAMPLES;
+            latencySamples = Math.min(latencySamples + 1, LATENCY_SAMPLES);
+        }
+
+        /**
+         * @return the 95th percentile of recent latencies, or half the timeout until there are
+         * enough of them
+         */
+        synchronized long hedgeDelay(long timeoutNanos) {
+            int samples = latencySamples;
+            if (samples < MIN_SAMPLES_FOR_HEDGING) {
+                return timeoutNanos / 2;
+            }
+            long[] sorted = Arrays.copyOf(latencies, samples);
+            Arrays.sort(sorted);
+            return sorted[(int) Math.ceil(samples * 0.95) - 1];
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.udacity.imageservice;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+
+public class CachingImageServiceTest {
+
+    private static final float THRESHOLD = 50.0f;
+
+    private final CountingService delegate = new CountingService();
+
+    @Test
+    void checkThatNewImageIsPassedOn(@TempDir Path directory) throws IOException {
+        try (RecognitionCache cache = new RecognitionCache(directory.resolve("cache.bin"), 64)) {
+            CachingImageService service = new CachingImageService(delegate, cache);
+            assertTrue(service.imageContainsCat(image(Color.ORANGE), THRESHOLD));
+            assertFalse(service.imageContainsCat(image(Color.BLUE), THRESHOLD));
+
+            assertEquals(2, delegate.calls);
+            assertEquals(2, cache.getMisses());
+            assertEquals(0, cache.getHits());
+        }
+    }
+
+    /**
+     * The same pixels loaded into a second image are answered from the cache
+     */
+    @Test
+    void checkThatSeenImageIsAnsweredFromCache(@TempDir Path directory) throws IOException {
+        try (RecognitionCache cache = new RecognitionCache(directory.resolve("cache.bin"), 64)) {
+            CachingImageService service = new CachingImageService(delegate, cache);
+            Recognition first = service.recognize(image(Color.ORANGE), THRESHOLD);
+            Recognition second = service.recognize(image(Color.ORANGE), THRESHOLD);
+
+            assertEquals(1, delegate.calls);
+            assertEquals(1, cache.getHits());
+            assertEquals(first.getCatConfidence(), second.getCatConfidence());
+            assertEquals(first.getLabels(), second.getLabels());
+            assertEquals(90.0f, service.getCatConfidence(image(Color.ORANGE), THRESHOLD));
+            assertEquals(1, delegate.calls);
+        }
+    }
+
+    /**
+     * A result recognized with one threshold isn't reused for another, as the labels depend on it
+     */
+    @Test
+    void checkThatOtherThresholdIsPassedOn(@TempDir Path directory) throws IOException {
+        try (RecognitionCache cache = new RecognitionCache(directory.resolve("cache.bin"), 64)) {
+            CachingImageService service = new CachingImageService(delegate, cache);
+            assertTrue(service.imageContainsCat(image(Color.ORANGE), THRESHOLD));
+            assertFalse(service.imageContainsCat(image(Color.ORANGE), 95.0f));
+
+            assertEquals(2, delegate.calls);
+            assertEquals(0, cache.getHits());
+        }
+    }
+
+    /**
+     * Sees a cat in orange images with 90% confidence
+     */
+    private static class CountingService implements IService {
+        private int calls;
+
+        @Override
+        public boolean imageContainsCat(BufferedImage image, float confidenceThreshhold) {
+            return recognize(image, confidenceThreshhold).containsCat(confidenceThreshhold);
+        }
+
+        @Override
+        public Recognition recognize(BufferedImage image, float confidenceThreshhold) {
+            calls++;
+            boolean orange = image.getRGB(0, 0) == Color.ORANGE.getRGB();
+            return orange && confidenceThreshhold <= 90.0f
+                    ? new Recognition(90.0f, Collections.singletonList("Cat"))
+                    : new Recognition(0.0f, Collections.<String>emptyList());
+        }
+    }
+
+    private static BufferedImage image(Color color) {
+        BufferedImage image = new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(color);
+        graphics.fillRect(0, 0, 16, 16);
+        graphics.dispose();
+        return image;
+    }
+}
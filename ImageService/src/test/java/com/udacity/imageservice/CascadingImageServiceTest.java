@@ -0,0 +1,114 @@
+package com.udacity.imageservice;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CascadingImageServiceTest {
+
+    private static final float THRESHOLD = 50.0f;
+    private static final BufferedImage IMAGE = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+
+    private final AtomicInteger remoteCalls = new AtomicInteger();
+
+    /**
+     * Local confidences at least the band away from the threshold are decided locally
+     */
+    @ParameterizedTest
+    @ValueSource(floats = {0.0f, 20.0f, 35.0f, 65.0f, 80.0f, 100.0f})
+    void checkThatConfidentLocalVerdictIsFinal(float confidence) {
+        CascadingImageService cascade = new CascadingImageService(local(confidence), remote(false, 0.0f), 15.0f);
+        assertEquals(confidence >= THRESHOLD, cascade.imageContainsCat(IMAGE, THRESHOLD));
+        assertEquals(0, remoteCalls.get());
+        assertEquals(1, cascade.getLocalDecisions());
+        assertEquals(0, cascade.getRemoteDecisions());
+    }
+
+    /**
+     * Local confidences inside the band go to the remote service, whose answer wins even
+     * when the local one leans the other way
+     */
+    @ParameterizedTest
+    @ValueSource(floats = {35.1f, 45.0f, 50.0f, 55.0f, 64.9f})
+    void checkThatUncertainLocalVerdictIsEscalated(float confidence) {
+        boolean remoteVerdict = confidence < THRESHOLD;
+        CascadingImageService cascade = new CascadingImageService(local(confidence), remote(remoteVerdict, 0.0f), 15.0f);
+        assertEquals(remoteVerdict, cascade.imageContainsCat(IMAGE, THRESHOLD));
+        assertEquals(1, remoteCalls.get());
+        assertEquals(0, cascade.getLocalDecisions());
+        assertEquals(1, cascade.getRemoteDecisions());
+    }
+
+    @Test
+    void checkThatEscalatedConfidenceComesFromRemote() {
+        CascadingImageService cascade = new CascadingImageService(local(48.0f), remote(true, 97.0f), 15.0f);
+        assertEquals(97.0f, cascade.getCatConfidence(IMAGE, THRESHOLD));
+    }
+
+    @Test
+    void checkThatConfidentConfidenceComesFromLocal() {
+        CascadingImageService cascade = new CascadingImageService(local(90.0f), remote(false, 3.0f), 15.0f);
+        assertEquals(90.0f, cascade.getCatConfidence(IMAGE, THRESHOLD));
+        assertEquals(0, remoteCalls.get());
+    }
+
+    /**
+     * A band of 0 never escalates, not even a confidence right on the threshold
+     */
+    @Test
+    void checkThatZeroBandNeverEscalates() {
+        CascadingImageService cascade = new CascadingImageService(local(THRESHOLD), remote(false, 0.0f), 0.0f);
+        assertTrue(cascade.imageContainsCat(IMAGE, THRESHOLD));
+        assertEquals(0, remoteCalls.get());
+    }
+
+    /**
+     * A band wider than the whole confidence range always escalates
+     */
+    @ParameterizedTest
+    @ValueSource(floats = {0.0f, 50.0f, 100.0f})
+    void checkThatWideBandAlwaysEscalates(float confidence) {
+        CascadingImageService cascade = new CascadingImageService(local(confidence), remote(true, 0.0f), 101.0f);
+        cascade.imageContainsCat(IMAGE, THRESHOLD);
+        assertEquals(1, remoteCalls.get());
+    }
+
+    @Test
+    void checkThatNegativeBandIsRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new CascadingImageService(local(0.0f), remote(false, 0.0f), -1.0f));
+    }
+
+    private static IService local(float confidence) {
+        return new IService() {
+            @Override
+            public boolean imageContainsCat(BufferedImage image, float confidenceThreshhold) {
+                return confidence >= confidenceThreshhold;
+            }
+
+            @Override
+            public float getCatConfidence(BufferedImage image, float confidenceThreshhold) {
+                return confidence;
+            }
+        };
+    }
+
+    private IService remote(boolean verdict, float confidence) {
+        return new IService() {
+            @Override
+            public boolean imageContainsCat(BufferedImage image, float confidenceThreshhold) {
+                remoteCalls.incrementAndGet();
+                return verdict;
+            }
+
+            @Override
+            public float getCatConfidence(BufferedImage image, float confidenceThreshhold) {
+                remoteCalls.incrementAndGet();
+                return confidence;
+            }
+        };
+    }
+}
@@ -0,0 +1,201 @@
+package com.udacity.imageservice;
+
+import java.awt.image.BufferedImage;
+import java.util.SplittableRandom;
+import java.util.function.Supplier;
+
+/**
+ * Times the {@link ImageKernels} against the same work done the straightforward way, one
+ * {@link BufferedImage#getRGB(int, int)} call per pixel, on synthetic camera frames.
+ *
+ * Usage: {@code ImageKernelBenchmark [--width n] [--height n] [--iterations n] [--warmup n]}
+ *
+ * Each kernel is run for the warmup iterations first so the JIT has compiled it, then timed over
+ * the measured iterations, for a packed int frame, a 3 byte BGR frame like ImageIO decodes
+ * JPEGs into and a gray frame like infrared cameras send. The results of both versions are
+ * compared, so a kernel that got faster by being wrong fails the run.
+ *
+ * It lives with the tests so it stays out of the jars but is compiled against the kernels on every
+ * build. Run it from the test classpath; it is not a JUnit test.
+ */
+public class ImageKernelBenchmark {
+
+    private int width = 640;
+    private int height = 480;
+    private int iterations = 200;
+    private int warmup = 200;
+    //results are stored here so the JIT can't drop the work
+    private volatile Object sink;
+
+    public static void main(String[] args) {
+        ImageKernelBenchmark benchmark = new ImageKernelBenchmark();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--width":
+                    benchmark.width = Integer.parseInt(args[++i]);
+                    break;
+                case "--height":
+                    benchmark.height = Integer.parseInt(args[++i]);
+                    break;
+                case "--iterations":
+                    benchmark.iterations = Integer.parseInt(args[++i]);
+                    break;
+                case "--warmup":
+                    benchmark.warmup = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        benchmark.run(BufferedImage.TYPE_INT_RGB);
+        benchmark.run(BufferedImage.TYPE_3BYTE_BGR);
+        benchmark.run(BufferedImage.TYPE_BYTE_GRAY);
+    }
+
+    private void run(int imageType) {
+        BufferedImage frame = frame(imageType, 1);
+        BufferedImage next = frame(imageType, 2);
+        String typeName = imageType == BufferedImage.TYPE_INT_RGB ? "INT_RGB"
+                : imageType == BufferedImage.TYPE_3BYTE_BGR ? "3BYTE_BGR" : "BYTE_GRAY";
+        System.out.printf("%dx%d %s%n", width, height, typeName);
+
+        byte[] gray = new byte[width * height];
+        byte[] nextGray = ImageKernels.grayscale(next, null);
+        compare("grayscale",
+                () -> scalarGrayscale(frame),
+                () -> ImageKernels.grayscale(frame, gray));
+        ImageKernels.grayscale(frame, gray);
+        byte[] small = new byte[(width / 4) * (height / 4)];
+        compare("downsample x4",
+                () -> scalarDownsample(gray, 4),
+                () -> ImageKernels.downsample(gray, width, height, 4, small));
+        int[] blocks = new int[(width / 16) * (height / 16)];
+        compare("block differences 16",
+                () -> scalarBlockDifferences(gray, nextGray, 16),
+                () -> ImageKernels.blockDifferences(gray, nextGray, width, height, 16, blocks));
+        compare("difference hash",
+                () -> scalarDifferenceHash(frame),
+                () -> ImageKernels.differenceHash(frame));
+    }
+
+    private void compare(String name, Supplier<Object> scalar, Supplier<Object> kernel) {
+        for (int i = 0; i < warmup; i++) {
+            scalar.get();
+            kernel.get();
+        }
+        long expected = checksum(scalar.get());
+        long actual = checksum(kernel.get());
+        if (expected != actual) {
+            throw new IllegalStateException(name + " gives " + actual + " instead of " + expected);
+        }
+        double scalarMicros = time(scalar);
+        double kernelMicros = time(kernel);
+        System.out.printf("  %-22s getRGB %9.1f us   kernel %8.1f us   %5.1fx%n",
+                name, scalarMicros, kernelMicros, scalarMicros / kernelMicros);
+    }
+
+    private double time(Supplier<Object> work) {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink = work.get();
+        }
+        return (System.nanoTime() - start) / 1e3 / iterations;
+    }
+
+    /**
+     * Gradient with blobs and noise, so neither version can take shortcuts on flat areas.
+     */
+    private BufferedImage frame(int imageType, long seed) {
+        BufferedImage image = new BufferedImage(width, height, imageType);
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int r = (x * 255 / width + random.nextInt(16)) & 0xff;
+                int g = (y * 255 / height + random.nextInt(16)) & 0xff;
+                int b = ((x / 40 + y / 40) % 2 == 0 ? 200 : 40) + random.nextInt(16);
+                image.setRGB(x, y, r << 16 | g << 8 | b);
+            }
+        }
+        return image;
+    }
+
+    private byte[] scalarGrayscale(BufferedImage image) {
+        byte[] gray = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                gray[y * width + x] = (byte) ImageKernels.luma(image.getRGB(x, y));
+            }
+        }
+        return gray;
+    }
+
+    private byte[] scalarDownsample(byte[] gray, int factor) {
+        int outWidth = width / factor;
+        int outHeight = height / factor;
+        byte[] out = new byte[outWidth * outHeight];
+        for (int oy = 0; oy < outHeight; oy++) {
+            for (int ox = 0; ox < outWidth; ox++) {
+                int sum = 0;
+                for (int y = 0; y < factor; y++) {
+                    for (int x = 0; x < factor; x++) {
+                        sum += gray[(oy * factor + y) * width + ox * factor + x] & 0xff;
+                    }
+                }
+                out[oy * outWidth + ox] = (byte) ((sum + factor * factor / 2) / (factor * factor));
+            }
+        }
+        return out;
+    }
+
+    private int[] scalarBlockDifferences(byte[] a, byte[] b, int block) {
+        int blocksWide = width / block;
+        int[] out = new int[blocksWide * (height / block)];
+        for (int y = 0; y < height / block * block; y++) {
+            for (int x = 0; x < blocksWide * block; x++) {
+                out[(y / block) * blocksWide + x / block] += Math.abs((a[y * width + x] & 0xff) - (b[y * width + x] & 0xff));
+            }
+        }
+        for (int i = 0; i < out.length; i++) {
+            out[i] /= block * block;
+        }
+        return out;
+    }
+
+    private long scalarDifferenceHash(BufferedImage image) {
+        long[] cells = new long[9 * 8];
+        int[] counts = new int[9 * 8];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int cell = y * 8 / height * 9 + x * 9 / width;
+                cells[cell] += ImageKernels.luma(image.getRGB(x, y));
+                counts[cell]++;
+            }
+        }
+        long hash = 0;
+        for (int cy = 0; cy < 8; cy++) {
+            for (int cx = 0; cx < 8; cx++) {
+                int cell = cy * 9 + cx;
+                long here = (cells[cell] << 8) / counts[cell];
+                long right = (cells[cell + 1] << 8) / counts[cell + 1];
+                hash = hash << 1 | (here > right ? 1 : 0);
+            }
+        }
+        return hash;
+    }
+
+    private static long checksum(Object values) {
+        long sum = 0;
+        if (values instanceof byte[]) {
+            for (byte value : (byte[]) values) {
+                sum = sum * 31 + value;
+            }
+        } else if (values instanceof int[]) {
+            for (int value : (int[]) values) {
+                sum = sum * 31 + value;
+            }
+        } else {
+            sum = (Long) values;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,194 @@
+package com.udacity.imageservice;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.IndexColorModel;
+import java.awt.Transparency;
+
+public class ImageKernelsTest {
+
+    private static final int RED = 0xff0000;
+    private static final int GREEN = 0x00ff00;
+    private static final int BLUE = 0x0000ff;
+    private static final int WHITE = 0xffffff;
+    //77 * 255 >> 8, 150 * 255 >> 8, 29 * 255 >> 8
+    private static final byte[] RGBW_LUMA = {76, (byte) 149, 28, (byte) 255};
+
+    @Test
+    void checkThatLumaUsesIntegerWeights() {
+        assertEquals(76, ImageKernels.luma(RED));
+        assertEquals(149, ImageKernels.luma(GREEN));
+        assertEquals(28, ImageKernels.luma(BLUE));
+        assertEquals(255, ImageKernels.luma(WHITE));
+        assertEquals(128, ImageKernels.luma(0x808080));
+    }
+
+    @Test
+    void checkThatPackedAndInterleavedImagesGiveTheSameGrayscale() {
+        int[] types = {BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB,
+                BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR};
+        for (int type : types) {
+            assertArrayEquals(RGBW_LUMA, ImageKernels.grayscale(rgbw(type), null), "type " + type);
+        }
+    }
+
+    /**
+     * The fast path for gray images gives what getRGB would, which is gamma corrected
+     */
+    @Test
+    void checkThatGrayImageMatchesGetRgb() {
+        BufferedImage image = new BufferedImage(256, 1, BufferedImage.TYPE_BYTE_GRAY);
+        for (int x = 0; x < 256; x++) {
+            image.getRaster().setSample(x, 0, 0, x);
+        }
+        byte[] gray = ImageKernels.grayscale(image, null);
+        assertEquals(0, gray[0]);
+        assertEquals((byte) 255, gray[255]);
+        for (int x = 0; x < 256; x++) {
+            assertEquals(ImageKernels.luma(image.getRGB(x, 0)), gray[x] & 0xff, "sample " + x);
+        }
+    }
+
+    @Test
+    void checkThatIndexedImageUsesItsPalette() {
+        byte[] reds = {0, (byte) 255, 0, 0};
+        byte[] greens = {0, 0, (byte) 255, 0};
+        byte[] blues = {0, 0, 0, (byte) 255};
+        BufferedImage image = new BufferedImage(2, 2, BufferedImage.TYPE_BYTE_INDEXED,
+                new IndexColorModel(8, 4, reds, greens, blues));
+        image.getRaster().setSample(0, 0, 0, 0);
+        image.getRaster().setSample(1, 0, 0, 1);
+        image.getRaster().setSample(0, 1, 0, 2);
+        image.getRaster().setSample(1, 1, 0, 3);
+        assertArrayEquals(new byte[]{0, 76, (byte) 149, 28}, ImageKernels.grayscale(image, null));
+    }
+
+    /**
+     * RGB bytes in red, green, blue order don't match a standard type and are read with getRGB
+     */
+    @Test
+    void checkThatCustomImageFallsBackToGetRgb() {
+        ColorModel model = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB), false, false,
+                Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+        BufferedImage image = new BufferedImage(model, model.createCompatibleWritableRaster(2, 2), false, null);
+        assertEquals(BufferedImage.TYPE_CUSTOM, image.getType());
+        fill(image);
+        assertArrayEquals(RGBW_LUMA, ImageKernels.grayscale(image, null));
+    }
+
+    /**
+     * A subimage shares its parent's array, so the fast path would read the wrong pixels
+     */
+    @Test
+    void checkThatSubimageReadsOnlyItsOwnPixels() {
+        BufferedImage parent = new BufferedImage(3, 3, BufferedImage.TYPE_INT_RGB);
+        parent.setRGB(1, 1, RED);
+        parent.setRGB(2, 1, GREEN);
+        parent.setRGB(1, 2, BLUE);
+        parent.setRGB(2, 2, WHITE);
+        assertArrayEquals(RGBW_LUMA, ImageKernels.grayscale(parent.getSubimage(1, 1, 2, 2), null));
+    }
+
+    @Test
+    void checkThatGrayscaleReusesLargeEnoughArray() {
+        byte[] out = new byte[8];
+        assertSame(out, ImageKernels.grayscale(rgbw(BufferedImage.TYPE_INT_RGB), out));
+        assertNotSame(out, ImageKernels.grayscale(new BufferedImage(3, 3, BufferedImage.TYPE_INT_RGB), out));
+    }
+
+    @Test
+    void checkThatDownsampleRoundsSquareAverages() {
+        byte[] gray = {
+                0, 10, 1, 2, (byte) 200, (byte) 200, 99,
+                40, 50, 2, 2, (byte) 200, (byte) 201, 99,
+                99, 99, 99, 99, 99, 99, 99
+        };
+        //(100 + 2) / 4, (7 + 2) / 4, (801 + 2) / 4, and the odd column and row are dropped
+        assertArrayEquals(new byte[]{25, 2, (byte) 200}, ImageKernels.downsample(gray, 7, 3, 2, null));
+        assertThrows(IllegalArgumentException.class, () -> ImageKernels.downsample(gray, 7, 3, 0, null));
+    }
+
+    @Test
+    void checkThatBlockDifferencesAreTruncatedMeans() {
+        byte[] a = {
+                (byte) 255, 0, 10, 10,
+                0, (byte) 255, 10, 13
+        };
+        byte[] b = {
+                0, (byte) 255, 10, 10,
+                (byte) 255, 0, 10, 10
+        };
+        assertArrayEquals(new int[]{255, 0}, ImageKernels.blockDifferences(a, b, 4, 2, 2, null));
+        assertEquals(1023, ImageKernels.sumOfAbsoluteDifferences(a, 0, b, 0, 8));
+        assertEquals(3, ImageKernels.sumOfAbsoluteDifferences(a, 6, b, 6, 2));
+    }
+
+    /**
+     * Each pixel of a 9 x 8 image is a cell of the grid, so pixels brighter than their right
+     * neighbour set the bit
+     */
+    @Test
+    void checkThatDifferenceHashComparesNeighbours() {
+        assertEquals(0xaaaaaaaaaaaaaaaaL, ImageKernels.differenceHash(stripes(1, BufferedImage.TYPE_INT_RGB)));
+        //the same picture larger and in gray still hashes the same
+        assertEquals(0xaaaaaaaaaaaaaaaaL, ImageKernels.differenceHash(stripes(3, BufferedImage.TYPE_INT_RGB)));
+        assertEquals(0xaaaaaaaaaaaaaaaaL, ImageKernels.differenceHash(stripes(2, BufferedImage.TYPE_BYTE_GRAY)));
+
+        BufferedImage darkening = new BufferedImage(9, 8, BufferedImage.TYPE_3BYTE_BGR);
+        for (int y = 0; y < 8; y++) {
+            for (int x = 0; x < 9; x++) {
+                darkening.setRGB(x, y, (250 - x * 20) * 0x010101);
+            }
+        }
+        assertEquals(-1L, ImageKernels.differenceHash(darkening));
+        assertEquals(32, ImageKernels.hammingDistance(0xaaaaaaaaaaaaaaaaL, -1L));
+    }
+
+    /**
+     * An image narrower than the grid leaves cells empty, which borrow the nearest filled cell
+     */
+    @Test
+    void checkThatNarrowImageHashes() {
+        BufferedImage image = new BufferedImage(2, 8, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < 8; y++) {
+            image.setRGB(0, y, WHITE);
+        }
+        //the pixels land in cells 0 and 4, so cells 0 to 3 are white and 4 to 8 black
+        assertEquals(0x1010101010101010L, ImageKernels.differenceHash(image));
+    }
+
+    /**
+     * @return a 2 x 2 image of red, green, blue and white
+     */
+    private static BufferedImage rgbw(int type) {
+        BufferedImage image = new BufferedImage(2, 2, type);
+        fill(image);
+        return image;
+    }
+
+    private static void fill(BufferedImage image) {
+        image.setRGB(0, 0, RED);
+        image.setRGB(1, 0, GREEN);
+        image.setRGB(0, 1, BLUE);
+        image.setRGB(1, 1, WHITE);
+    }
+
+    /**
+     * @return vertical stripes alternating bright and dark, each scale pixels wide, 9 stripes by
+     * 8 * scale pixels
+     */
+    private static BufferedImage stripes(int scale, int type) {
+        BufferedImage image = new BufferedImage(9 * scale, 8 * scale, type);
+        for (int y = 0; y < 8 * scale; y++) {
+            for (int x = 0; x < 9 * scale; x++) {
+                image.setRGB(x, y, (x / scale % 2 == 0 ? 200 : 100) * 0x010101);
+            }
+        }
+        return image;
+    }
+}
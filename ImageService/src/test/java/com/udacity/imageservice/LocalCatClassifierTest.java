@@ -0,0 +1,64 @@
+package com.udacity.imageservice;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class LocalCatClassifierTest {
+
+    private static final float THRESHOLD = 50.0f;
+
+    @Test
+    void checkThatUntrainedClassifierIsUndecided() {
+        assertEquals(50.0f, new LocalCatClassifier().getCatConfidence(image(Color.ORANGE), THRESHOLD));
+    }
+
+    @Test
+    void checkThatImagesNearExamplesTakeTheirLabel() {
+        LocalCatClassifier classifier = new LocalCatClassifier();
+        classifier.train(image(Color.ORANGE), true);
+        classifier.train(image(Color.BLUE), false);
+        assertEquals(100.0f, classifier.getCatConfidence(image(Color.ORANGE), THRESHOLD));
+        assertEquals(0.0f, classifier.getCatConfidence(image(Color.BLUE), THRESHOLD));
+        assertTrue(classifier.imageContainsCat(image(new Color(250, 190, 10)), THRESHOLD));
+        assertFalse(classifier.imageContainsCat(image(new Color(10, 10, 240)), THRESHOLD));
+    }
+
+    @Test
+    void checkThatClassifierTrainsFromFolders(@TempDir Path directory) throws IOException {
+        write(directory.resolve("cat"), Color.ORANGE);
+        write(directory.resolve("not-cat"), Color.BLUE);
+        Files.write(directory.resolve("cat").resolve("notes.txt"), new byte[]{'x'});
+        LocalCatClassifier classifier = LocalCatClassifier.trainFrom(directory);
+        assertTrue(classifier.imageContainsCat(image(Color.ORANGE), THRESHOLD));
+        assertFalse(classifier.imageContainsCat(image(Color.BLUE), THRESHOLD));
+    }
+
+    @Test
+    void checkThatFolderWithoutImagesIsRejected(@TempDir Path directory) throws IOException {
+        write(directory.resolve("cat"), Color.ORANGE);
+        Files.createDirectories(directory.resolve("not-cat"));
+        assertThrows(IOException.class, () -> LocalCatClassifier.trainFrom(directory));
+    }
+
+    private static void write(Path folder, Color color) throws IOException {
+        Files.createDirectories(folder);
+        ImageIO.write(image(color), "png", folder.resolve("example.png").toFile());
+    }
+
+    private static BufferedImage image(Color color) {
+        BufferedImage image = new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(color);
+        g.fillRect(0, 0, 64, 48);
+        g.dispose();
+        return image;
+    }
+}
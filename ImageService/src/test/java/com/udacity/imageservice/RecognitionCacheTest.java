@@ -0,0 +1,169 @@
+package com.udacity.imageservice;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class RecognitionCacheTest {
+
+    private static final float THRESHOLD = 50.0f;
+
+    @Test
+    void checkThatStoredResultIsFound(@TempDir Path directory) throws IOException {
+        try (RecognitionCache cache = new RecognitionCache(directory.resolve("cache.bin"), 64)) {
+            long[] digest = RecognitionCache.digest(image(Color.ORANGE));
+            assertNull(cache.get(digest, THRESHOLD));
+            cache.put(digest, THRESHOLD, new Recognition(87.5f, Arrays.asList("Cat", "Whiskers")));
+
+            Recognition found = cache.get(digest, THRESHOLD);
+            assertEquals(87.5f, found.getCatConfidence());
+            assertEquals(Arrays.asList("Cat", "Whiskers"), found.getLabels());
+            assertEquals(1, cache.getHits());
+            assertEquals(1, cache.getMisses());
+        }
+    }
+
+    /**
+     * The labels the service returns depend on the threshold, so a result only answers lookups
+     * made with the threshold it was stored with
+     */
+    @Test
+    void checkThatOtherThresholdMisses(@TempDir Path directory) throws IOException {
+        try (RecognitionCache cache = new RecognitionCache(directory.resolve("cache.bin"), 64)) {
+            long[] digest = digest(1);
+            cache.put(digest, THRESHOLD, new Recognition(60.0f, Collections.singletonList("Cat")));
+            assertNull(cache.get(digest, 70.0f));
+            assertNotNull(cache.get(digest, THRESHOLD));
+
+            //storing with the other threshold replaces the result rather than adding a second one
+            cache.put(digest, 70.0f, new Recognition(60.0f, Collections.emptyList()));
+            assertNull(cache.get(digest, THRESHOLD));
+            assertEquals(Collections.emptyList(), cache.get(digest, 70.0f).getLabels());
+        }
+    }
+
+    /**
+     * With eight entries there is a single bucket, so the ninth result evicts the one used least
+     * recently rather than the one stored first
+     */
+    @Test
+    void checkThatFullBucketEvictsLeastRecentlyUsed(@TempDir Path directory) throws IOException {
+        try (RecognitionCache cache = new RecognitionCache(directory.resolve("cache.bin"), 8)) {
+            for (int i = 0; i < 8; i++) {
+                cache.put(digest(i), THRESHOLD, new Recognition(i, Collections.emptyList()));
+            }
+            assertNotNull(cache.get(digest(0), THRESHOLD));
+            cache.put(digest(8), THRESHOLD, new Recognition(8, Collections.emptyList()));
+
+            assertEquals(1, cache.getEvictions());
+            assertNull(cache.get(digest(1), THRESHOLD));
+            for (int i = 0; i <= 8; i++) {
+                if (i != 1) {
+                    assertEquals(i, cache.get(digest(i), THRESHOLD).getCatConfidence(), "entry " + i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Results and their recency survive closing and reopening the file
+     */
+    @Test
+    void checkThatReopenedCacheKeepsResults(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("cache.bin");
+        try (RecognitionCache cache = new RecognitionCache(file, 8)) {
+            for (int i = 0; i < 8; i++) {
+                cache.put(digest(i), THRESHOLD, new Recognition(i, Collections.singletonList("label " + i)));
+            }
+            assertNotNull(cache.get(digest(0), THRESHOLD));
+        }
+        try (RecognitionCache cache = new RecognitionCache(file, 8)) {
+            for (int i = 0; i < 8; i++) {
+                assertEquals(Collections.singletonList("label " + i), cache.get(digest(i), THRESHOLD).getLabels());
+            }
+            //every entry was just used in order, so the first one is now the oldest
+            cache.put(digest(8), THRESHOLD, new Recognition(8, Collections.emptyList()));
+            assertNull(cache.get(digest(0), THRESHOLD));
+            assertNotNull(cache.get(digest(7), THRESHOLD));
+        }
+    }
+
+    @Test
+    void checkThatFileWithOtherLayoutIsCleared(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("cache.bin");
+        try (RecognitionCache cache = new RecognitionCache(file, 8)) {
+            cache.put(digest(1), THRESHOLD, new Recognition(60.0f, Collections.emptyList()));
+        }
+        try (RecognitionCache cache = new RecognitionCache(file, 64)) {
+            assertNull(cache.get(digest(1), THRESHOLD));
+            cache.put(digest(2), THRESHOLD, new Recognition(60.0f, Collections.emptyList()));
+        }
+        try (RecognitionCache cache = new RecognitionCache(file, 64)) {
+            assertNotNull(cache.get(digest(2), THRESHOLD));
+        }
+    }
+
+    @Test
+    void checkThatLabelsThatDoNotFitAreLeftOut(@TempDir Path directory) throws IOException {
+        char[] longName = new char[100];
+        Arrays.fill(longName, 'x');
+        String label = new String(longName);
+        try (RecognitionCache cache = new RecognitionCache(directory.resolve("cache.bin"), 8)) {
+            cache.put(digest(1), THRESHOLD, new Recognition(60.0f, Arrays.asList(label, label, label)));
+            assertEquals(Arrays.asList(label, label), cache.get(digest(1), THRESHOLD).getLabels());
+        }
+    }
+
+    @Test
+    void checkThatDigestFollowsPixels() {
+        assertArrayEquals(RecognitionCache.digest(image(Color.ORANGE)), RecognitionCache.digest(image(Color.ORANGE)));
+        assertFalse(Arrays.equals(RecognitionCache.digest(image(Color.ORANGE)), RecognitionCache.digest(image(Color.BLUE))));
+
+        BufferedImage gray = new BufferedImage(64, 48, BufferedImage.TYPE_BYTE_GRAY);
+        BufferedImage brighter = new BufferedImage(64, 48, BufferedImage.TYPE_BYTE_GRAY);
+        brighter.getRaster().setSample(63, 47, 0, 1);
+        assertFalse(Arrays.equals(RecognitionCache.digest(gray), RecognitionCache.digest(brighter)));
+    }
+
+    /**
+     * Indexed images with the same samples but different palettes are different pictures
+     */
+    @Test
+    void checkThatIndexedImagesWithOtherPalettesDiffer() {
+        BufferedImage red = indexed(Color.RED);
+        BufferedImage blue = indexed(Color.BLUE);
+        assertFalse(Arrays.equals(RecognitionCache.digest(red), RecognitionCache.digest(blue)));
+        assertArrayEquals(RecognitionCache.digest(red), RecognitionCache.digest(indexed(Color.RED)));
+    }
+
+    private static long[] digest(int i) {
+        return new long[]{i * 0x9E3779B97F4A7C15L, i + 1};
+    }
+
+    private static BufferedImage image(Color color) {
+        BufferedImage image = new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(color);
+        g.fillRect(0, 0, 64, 48);
+        g.dispose();
+        return image;
+    }
+
+    /**
+     * An image of palette entry zero, which is the given colour
+     */
+    private static BufferedImage indexed(Color color) {
+        byte[] r = {(byte) color.getRed(), 0};
+        byte[] g = {(byte) color.getGreen(), 0};
+        byte[] b = {(byte) color.getBlue(), 0};
+        return new BufferedImage(64, 48, BufferedImage.TYPE_BYTE_INDEXED, new IndexColorModel(8, 2, r, g, b));
+    }
+}
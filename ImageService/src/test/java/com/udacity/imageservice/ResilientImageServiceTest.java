@@ -0,0 +1,78 @@
+package com.udacity.imageservice;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class ResilientImageServiceTest {
+
+    private static final BufferedImage IMAGE = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+
+    @Test
+    void checkThatFailuresOpenTheCircuit() {
+        IService failing = (image, threshold) -> {
+            throw new IllegalStateException("backend down");
+        };
+        try (ResilientImageService service = new ResilientImageService(failing, 1_000, 2, 60_000)) {
+            assertFalse(service.imageContainsCat(IMAGE, 50));
+            assertFalse(service.isCircuitOpen(0));
+            assertFalse(service.imageContainsCat(IMAGE, 50));
+            assertTrue(service.isCircuitOpen(0));
+            assertEquals(2, service.getExhausted());
+        }
+    }
+
+    @Test
+    void checkThatFallbackAnswersWhenPrimaryFails() {
+        IService failing = (image, threshold) -> {
+            throw new IllegalStateException("backend down");
+        };
+        try (ResilientImageService service = new ResilientImageService(failing, 1_000, (image, threshold) -> true)) {
+            assertTrue(service.imageContainsCat(IMAGE, 50));
+            assertEquals(1, service.getFallbacks());
+        }
+    }
+
+    /**
+     * A call turned away because every worker thread is busy is shed, and doesn't count against
+     * a healthy backend's circuit
+     */
+    @Test
+    void checkThatSaturatedPoolShedsWithoutOpeningTheCircuit() throws InterruptedException {
+        CountDownLatch busy = new CountDownLatch(32);
+        CountDownLatch release = new CountDownLatch(1);
+        IService slow = (image, threshold) -> {
+            busy.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return true;
+        };
+        try (ResilientImageService service = new ResilientImageService(slow, 30_000, 1, 60_000)) {
+            List<Thread> callers = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                Thread caller = new Thread(() -> service.imageContainsCat(IMAGE, 50));
+                caller.start();
+                callers.add(caller);
+            }
+            assertTrue(busy.await(10, TimeUnit.SECONDS));
+
+            assertFalse(service.imageContainsCat(IMAGE, 50));
+            assertEquals(1, service.getShed());
+            assertEquals(0, service.getExhausted());
+            assertFalse(service.isCircuitOpen(0));
+
+            release.countDown();
+            for (Thread caller : callers) {
+                caller.join(10_000);
+            }
+            assertTrue(service.imageContainsCat(IMAGE, 50));
+        }
+    }
+}
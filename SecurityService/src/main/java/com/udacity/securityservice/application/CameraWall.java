@@ -0,0 +1,327 @@
+package com.udacity.securityservice.application;
+
+import com.udacity.securityservice.service.StyleService;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Grid of live camera thumbnails, for watching many feeds at once.
+ *
+ * Frames can be handed over from any thread with {@link #updateFrame}. They are scaled to the
+ * cell size on background threads, so the event dispatch thread only ever copies ready thumbnails
+ * to the screen. When a camera sends frames faster than they can be scaled, only its newest frame
+ * is scaled and the ones in between are skipped. Frames are numbered as they arrive, so when two
+ * frames of a camera are scaled at once the older one never replaces the newer one's thumbnail.
+ *
+ * Thumbnails are images compatible with the screen, which Java2D keeps in video memory once they
+ * have been drawn, and are reused once replaced. They are kept in a least recently updated cache
+ * bounded by memory; a camera whose thumbnail was evicted shows as having no signal until its
+ * next frame. Cells are repainted at most {@code framesPerSecond} times a second, and only the
+ * cells whose thumbnail changed.
+ */
+public class CameraWall extends JPanel {
+
+    private static final int GAP = 4;
+    private static final int CAPTION_HEIGHT = 16;
+
+    private final int columns;
+    private final int thumbnailWidth;
+    private final int thumbnailHeight;
+    private final int maxThumbnails;
+    private final int scalerThreads;
+    private final ExecutorService scalers;
+    private final Timer repaintTimer;
+
+    //newest unscaled frame of each camera, removed when a scaler picks it up
+    private final ConcurrentHashMap<String, Frame> pending = new ConcurrentHashMap<>();
+    private final AtomicLong frames = new AtomicLong();
+
+    //guarded by thumbnails
+    private final LinkedHashMap<String, BufferedImage> thumbnails = new LinkedHashMap<>();
+    private final ArrayDeque<BufferedImage> free = new ArrayDeque<>();
+    private final List<String> cameras = new ArrayList<>();
+    private final Set<String> dirty = new HashSet<>();
+    //number of the frame each camera's thumbnail was scaled from
+    private final Map<String, Long> shown = new HashMap<>();
+
+    private final LongAdder scaled = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder repaints = new LongAdder();
+
+    /**
+     * A wall 6 cameras wide of 160 x 120 thumbnails, with 32MB of thumbnails at 30 frames per second.
+     */
+    public CameraWall() {
+        this(6, 160, 120, 32L * 1024 * 1024, 30);
+    }
+
+    /**
+     * @param columns Cameras per row
+     * @param thumbnailWidth Width of each camera's cell
+     * @param thumbnailHeight Height of each camera's cell, without its caption
+     * @param cacheBytes Memory the thumbnails may take, counting 4 bytes per pixel
+     * @param framesPerSecond Most repaints per second
+     */
+    public CameraWall(int columns, int thumbnailWidth, int thumbnailHeight, long cacheBytes, int framesPerSecond) {
+        this(columns, thumbnailWidth, thumbnailHeight, cacheBytes, framesPerSecond,
+                Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    /**
+     * @param scalerThreads Frames scaled at the same time
+     */
+    public CameraWall(int columns, int thumbnailWidth, int thumbnailHeight, long cacheBytes, int framesPerSecond,
+                      int scalerThreads) {
+        if (columns <= 0 || thumbnailWidth <= 0 || thumbnailHeight <= 0 || framesPerSecond <= 0 || scalerThreads <= 0) {
+            throw new IllegalArgumentException("columns, thumbnail size, framesPerSecond and scalerThreads must be positive");
+        }
+        this.columns = columns;
+        this.thumbnailWidth = thumbnailWidth;
+        this.thumbnailHeight = thumbnailHeight;
+        this.maxThumbnails = (int) Math.max(1, Math.min(Integer.MAX_VALUE, cacheBytes / (4L * thumbnailWidth * thumbnailHeight)));
+        setBackground(Color.DARK_GRAY);
+        setOpaque(true);
+
+        AtomicInteger count = new AtomicInteger();
+        this.scalerThreads = scalerThreads;
+        scalers = Executors.newFixedThreadPool(scalerThreads, runnable -> {
+            Thread thread = new Thread(runnable, "camera-wall-scaler-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        repaintTimer = new Timer(1000 / framesPerSecond, e -> repaintDirty());
+        repaintTimer.setCoalesce(true);
+        repaintTimer.start();
+    }
+
+    /**
+     * Shows a new frame from the camera, adding the camera to the wall if it is new. The wall reads
+     * the frame until it has been scaled, so the caller must not draw into it afterwards.
+     */
+    public void updateFrame(String cameraId, BufferedImage frame) {
+        if (pending.put(cameraId, new Frame(frame, frames.incrementAndGet())) != null) {
+            //the scaler that's queued for this camera will take the newer frame
+            skipped.increment();
+            return;
+        }
+        try {
+            scalers.execute(() -> scale(cameraId));
+        } catch (RejectedExecutionException e) {
+            //closed
+            pending.remove(cameraId);
+        }
+    }
+
+    /**
+     * Stops the scaler threads and repaints. Frames passed in afterwards are ignored.
+     */
+    public void close() {
+        repaintTimer.stop();
+        scalers.shutdownNow();
+    }
+
+    /**
+     * @return frames scaled into thumbnails
+     */
+    public long getScaled() {
+        return scaled.sum();
+    }
+
+    /**
+     * @return frames skipped because a newer frame of the same camera arrived before they were
+     * scaled, or was shown before they finished scaling
+     */
+    public long getSkipped() {
+        return skipped.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return timer ticks that repainted at least one cell
+     */
+    public long getRepaints() {
+        return repaints.sum();
+    }
+
+    /**
+     * @return the camera's current thumbnail, or null if it has none
+     */
+    BufferedImage getThumbnail(String cameraId) {
+        synchronized (thumbnails) {
+            return thumbnails.get(cameraId);
+        }
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        int count;
+        synchronized (thumbnails) {
+            count = Math.max(1, cameras.size());
+        }
+        int rows = (count + columns - 1) / columns;
+        return new Dimension(Math.min(count, columns) * cellWidth() + GAP, rows * cellHeight() + GAP);
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        Rectangle clip = g.getClipBounds();
+        g.setFont(StyleService.CAPTION_FONT);
+        //held while drawing, so a thumbnail isn't reused for a new frame halfway through
+        synchronized (thumbnails) {
+            for (int i = 0; i < cameras.size(); i++) {
+                Rectangle cell = cell(i);
+                if (clip != null && !clip.intersects(cell)) {
+                    continue;
+                }
+                String cameraId = cameras.get(i);
+                BufferedImage thumbnail = thumbnails.get(cameraId);
+                if (thumbnail != null) {
+                    g.drawImage(thumbnail, cell.x, cell.y, null);
+                } else {
+                    g.setColor(Color.BLACK);
+                    g.fillRect(cell.x, cell.y, thumbnailWidth, thumbnailHeight);
+                    g.setColor(Color.GRAY);
+                    g.drawString("No signal", cell.x + 8, cell.y + thumbnailHeight / 2);
+                }
+                g.setColor(Color.WHITE);
+                g.drawString(cameraId, cell.x + 2, cell.y + thumbnailHeight + CAPTION_HEIGHT - 4);
+            }
+        }
+    }
+
+    private void scale(String cameraId) {
+        Frame frame = pending.remove(cameraId);
+        if (frame == null) {
+            return;
+        }
+        BufferedImage thumbnail;
+        synchronized (thumbnails) {
+            thumbnail = free.pollFirst();
+        }
+        if (thumbnail == null) {
+            thumbnail = createThumbnail();
+        }
+        Graphics2D g = thumbnail.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(frame.image, 0, 0, thumbnailWidth, thumbnailHeight, null);
+        } finally {
+            g.dispose();
+        }
+        scaled.increment();
+
+        boolean added = false;
+        synchronized (thumbnails) {
+            Long shownFrame = shown.get(cameraId);
+            if (shownFrame != null && shownFrame > frame.sequence) {
+                //another scaler already showed a newer frame of this camera
+                skipped.increment();
+                if (free.size() < scalerThreads) {
+                    free.addFirst(thumbnail);
+                }
+                return;
+            }
+            shown.put(cameraId, frame.sequence);
+            if (!cameras.contains(cameraId)) {
+                cameras.add(cameraId);
+                added = true;
+            }
+            //removed first so the camera moves to the most recently updated end
+            BufferedImage previous = thumbnails.remove(cameraId);
+            thumbnails.put(cameraId, thumbnail);
+            if (previous != null) {
+                free.addFirst(previous);
+            }
+            Iterator<Map.Entry<String, BufferedImage>> eldest = thumbnails.entrySet().iterator();
+            while (thumbnails.size() > maxThumbnails) {
+                Map.Entry<String, BufferedImage> evicted = eldest.next();
+                free.addFirst(evicted.getValue());
+                dirty.add(evicted.getKey());
+                eldest.remove();
+                evictions.increment();
+            }
+            //keep no more spares than one per scaler
+            while (free.size() > scalerThreads) {
+                free.pollLast();
+            }
+            dirty.add(cameraId);
+        }
+        if (added) {
+            SwingUtilities.invokeLater(this::revalidate);
+        }
+    }
+
+    /**
+     * Runs on the EDT at the frame rate, repainting only the cells that changed since the last tick.
+     */
+    private void repaintDirty() {
+        List<Rectangle> cells = new ArrayList<>();
+        synchronized (thumbnails) {
+            if (dirty.isEmpty()) {
+                return;
+            }
+            for (String cameraId : dirty) {
+                cells.add(cell(cameras.indexOf(cameraId)));
+            }
+            dirty.clear();
+        }
+        cells.forEach(this::repaint);
+        repaints.increment();
+    }
+
+    private BufferedImage createThumbnail() {
+        GraphicsConfiguration configuration = getGraphicsConfiguration();
+        if (configuration == null && !GraphicsEnvironment.isHeadless()) {
+            configuration = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+        }
+        return configuration != null
+                ? configuration.createCompatibleImage(thumbnailWidth, thumbnailHeight)
+                : new BufferedImage(thumbnailWidth, thumbnailHeight, BufferedImage.TYPE_INT_RGB);
+    }
+
+    private Rectangle cell(int index) {
+        return new Rectangle(GAP + (index % columns) * cellWidth(), GAP + (index / columns) * cellHeight(),
+                thumbnailWidth, thumbnailHeight + CAPTION_HEIGHT);
+    }
+
+    private int cellWidth() {
+        return thumbnailWidth + GAP;
+    }
+
+    private int cellHeight() {
+        return thumbnailHeight + CAPTION_HEIGHT + GAP;
+    }
+
+    private static final class Frame {
+        private final BufferedImage image;
+        private final long sequence;
+
+        private Frame(BufferedImage image, long sequence) {
+            this.image = image;
+            this.sequence = sequence;
+        }
+    }
+}
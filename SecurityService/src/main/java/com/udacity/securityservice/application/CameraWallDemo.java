@@ -0,0 +1,100 @@
+package com.udacity.securityservice.application;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Opens a {@link CameraWall} fed by synthetic cameras, to see how the wall and the event dispatch
+ * thread hold up with many live feeds.
+ *
+ * Usage:
+ * <pre>
+ *   CameraWallDemo [--cameras n] [--camera-fps n] [--wall-fps n] [--columns n] [--cache-mb n]
+ * </pre>
+ * Every camera sends 640 x 480 frames of a box moving over a gradient. Once a second the demo
+ * prints how many frames were scaled and skipped, how many repaints ran, and the longest time a
+ * task waited for the event dispatch thread in that second.
+ */
+public class CameraWallDemo {
+
+    private static final int FRAME_WIDTH = 640;
+    private static final int FRAME_HEIGHT = 480;
+
+    public static void main(String[] args) {
+        int cameras = 36;
+        int cameraFps = 15;
+        int wallFps = 30;
+        int columns = 6;
+        long cacheMb = 32;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--cameras" -> cameras = Integer.parseInt(args[++i]);
+                case "--camera-fps" -> cameraFps = Integer.parseInt(args[++i]);
+                case "--wall-fps" -> wallFps = Integer.parseInt(args[++i]);
+                case "--columns" -> columns = Integer.parseInt(args[++i]);
+                case "--cache-mb" -> cacheMb = Long.parseLong(args[++i]);
+                default -> {
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(2);
+                }
+            }
+        }
+        if (GraphicsEnvironment.isHeadless()) {
+            System.err.println("CameraWallDemo needs a display");
+            System.exit(2);
+        }
+
+        CameraWall wall = new CameraWall(columns, 160, 120, cacheMb * 1024 * 1024, wallFps);
+        SwingUtilities.invokeLater(() -> {
+            JFrame frame = new JFrame("Camera Wall");
+            frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+            frame.getContentPane().add(new JScrollPane(wall));
+            frame.setSize(1024, 768);
+            frame.setVisible(true);
+        });
+
+        ScheduledExecutorService feeds = Executors.newScheduledThreadPool(2);
+        for (int c = 0; c < cameras; c++) {
+            String cameraId = "camera-" + c;
+            int phase = c * 37;
+            long[] tick = {0};
+            feeds.scheduleAtFixedRate(() -> wall.updateFrame(cameraId, frame(phase + (int) tick[0]++ * 4)),
+                    c * 7L, 1000 / cameraFps, TimeUnit.MILLISECONDS);
+        }
+
+        //how long a task posted to the EDT waits before it runs
+        AtomicLong maxEdtWait = new AtomicLong();
+        feeds.scheduleAtFixedRate(() -> {
+            long posted = System.nanoTime();
+            SwingUtilities.invokeLater(() -> maxEdtWait.accumulateAndGet(System.nanoTime() - posted, Math::max));
+        }, 0, 10, TimeUnit.MILLISECONDS);
+        long[] last = new long[3];
+        feeds.scheduleAtFixedRate(() -> {
+            System.out.printf("scaled %d/s, skipped %d/s, repaints %d/s, evictions %d, max EDT wait %.1f ms%n",
+                    wall.getScaled() - last[0], wall.getSkipped() - last[1], wall.getRepaints() - last[2],
+                    wall.getEvictions(), maxEdtWait.getAndSet(0) / 1e6);
+            last[0] = wall.getScaled();
+            last[1] = wall.getSkipped();
+            last[2] = wall.getRepaints();
+        }, 1, 1, TimeUnit.SECONDS);
+    }
+
+    private static BufferedImage frame(int position) {
+        BufferedImage image = new BufferedImage(FRAME_WIDTH, FRAME_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setPaint(new GradientPaint(0, 0, Color.DARK_GRAY, FRAME_WIDTH, FRAME_HEIGHT, Color.LIGHT_GRAY));
+            g.fillRect(0, 0, FRAME_WIDTH, FRAME_HEIGHT);
+            g.setColor(Color.ORANGE);
+            g.fillRect(position % (FRAME_WIDTH - 80), (position / 3) % (FRAME_HEIGHT - 80), 80, 80);
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+}
@@ -2,12 +2,42 @@ package com.udacity.securityservice.application;
 
 
 import com.udacity.imageservice.*;
+import com.udacity.securityservice.data.InMemorySecurityRepositoryImpl;
+import com.udacity.securityservice.data.PreferencesMigration;
 import com.udacity.securityservice.data.PretendDatabaseSecurityRepositoryImpl;
 import com.udacity.securityservice.data.SecurityRepository;
+import com.udacity.securityservice.data.SqlSecurityRepositoryImpl;
+import com.udacity.securityservice.data.StateSnapshot;
+import com.udacity.securityservice.data.WriteBehindSecurityRepository;
+import com.udacity.securityservice.data.ZoneTree;
+import com.udacity.securityservice.gateway.SensorGateway;
+import com.udacity.securityservice.gateway.SensorReadingPublisher;
+import com.udacity.securityservice.gateway.SensorSequenceFilter;
+import com.udacity.securityservice.notification.AlarmNotifier;
+import com.udacity.securityservice.notification.NotificationDispatcher;
+import com.udacity.securityservice.service.FrameSampler;
+import com.udacity.securityservice.service.PreAlarmRecorder;
+import com.udacity.securityservice.service.PriorityScheduler;
+import com.udacity.securityservice.service.SecurityFlows;
 import com.udacity.securityservice.service.SecurityService;
+import com.udacity.securityservice.service.StateStore;
+import com.udacity.securityservice.telemetry.SensorTelemetry;
 import net.miginfocom.swing.MigLayout;
 
 import javax.swing.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * This is the primary JFrame for the application that contains all the top-level JPanels.
@@ -17,7 +47,7 @@ import javax.swing.*;
  */
 public class CatpointGui extends JFrame {
 
-
+    private static final Path STATE_DIRECTORY = Paths.get(System.getProperty("user.home"), ".catpoint");
 
     public CatpointGui() {
         setLocation(100, 100);
@@ -25,14 +55,51 @@ public class CatpointGui extends JFrame {
         setTitle("Very Secure App");
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
-        IService imageService = new FakeImageService();
+        IService imageService = createImageService();
+
+        //start from the binary snapshot if we have one, otherwise fall back to the preferences
+        StateStore stateStore = null;
+        StateSnapshot snapshot = null;
+        try {
+            stateStore = new StateStore(STATE_DIRECTORY);
+            snapshot = stateStore.loadSnapshot();
+        } catch (IOException ioe) {
+            //unreadable snapshot, load from preferences instead
+        }
 
-        SecurityRepository securityRepository = new PretendDatabaseSecurityRepositoryImpl();
+        SqlSecurityRepositoryImpl database = openSqlRepository();
+        SecurityRepository storage;
+        if (database != null) {
+            //the database sits behind the write-behind repository, so a crash can leave it a batch short of
+            //the snapshot and journal; seed it from the snapshot and let the journal replay the rest
+            if (snapshot != null) {
+                database.importFrom(new InMemorySecurityRepositoryImpl(snapshot));
+            }
+            storage = database;
+        } else {
+            storage = snapshot == null
+                    ? new PretendDatabaseSecurityRepositoryImpl()
+                    : new PretendDatabaseSecurityRepositoryImpl(snapshot);
+        }
+        //keep storage writes off the event path
+        WriteBehindSecurityRepository securityRepository = new WriteBehindSecurityRepository(storage);
         SecurityService securityService = new SecurityService(securityRepository, imageService);
+        //sensors start without a zone, the tree only spares alarm decisions from scanning every sensor
+        securityService.setZoneTree(new ZoneTree("Home"));
+        trackState(stateStore, securityService, snapshot, securityRepository);
+        //sensor readings and camera verdicts reach the service on the EDT, sensor readings first
+        PriorityScheduler scheduler = new PriorityScheduler(securityService, SwingUtilities::invokeLater, 2, 4, 64);
+        //camera frames are sampled more often the more the system has to watch for
+        FrameSampler frameSampler = new FrameSampler(securityService);
+        securityService.addStatusListener(frameSampler);
+        scheduler.setFrameSampler(frameSampler);
+        trackTelemetry(securityService, scheduler);
+        startSensorGateway(securityService, scheduler);
+        startNotifications(securityService);
         DisplayPanel displayPanel = new DisplayPanel(securityService);
         ControlPanel controlPanel = new ControlPanel(securityService);
         SensorPanel sensorPanel = new SensorPanel(securityService);
-        ImagePanel imagePanel = new ImagePanel(securityService);
+        ImagePanel imagePanel = new ImagePanel(securityService, startPreAlarmRecorder(securityService), scheduler);
 
         JPanel mainPanel = new JPanel();
         mainPanel.setLayout(new MigLayout());
@@ -44,4 +111,220 @@ public class CatpointGui extends JFrame {
         getContentPane().add(mainPanel);
 
     }
+
+    /**
+     * The image service, screened by a local classifier if the catpoint.classifier system property
+     * names a folder of examples with cat and not-cat subfolders. The image service is then only
+     * asked about images the classifier is unsure of, within catpoint.classifier.band confidence
+     * points of the threshold.
+     *
+     * If the catpoint.recognitionCache system property names a file, results are kept there and
+     * an image seen before, even in an earlier run, isn't recognized again.
+     *
+     * If the catpoint.changeDetection system property is "true", a camera frame is only recognized
+     * when the scene has changed since the last recognized frame.
+     */
+    private IService createImageService() {
+        IService imageService = cacheRecognitions(screenWithClassifier(new FakeImageService()));
+        if (Boolean.getBoolean("catpoint.changeDetection")) {
+            imageService = new ChangeDetectingImageService(imageService);
+        }
+        return imageService;
+    }
+
+    private IService cacheRecognitions(IService imageService) {
+        String cacheFile = System.getProperty("catpoint.recognitionCache");
+        if (cacheFile == null) {
+            return imageService;
+        }
+        try {
+            RecognitionCache cache = new RecognitionCache(Paths.get(cacheFile));
+            addWindowListener(new WindowAdapter() {
+                @Override
+                public void windowClosing(WindowEvent e) {
+                    try {
+                        cache.close();
+                    } catch (IOException ioe) {
+                        //results since the last write are recognized again next time
+                    }
+                }
+            });
+            return new CachingImageService(imageService, cache);
+        } catch (IOException | IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(null, "Unable to open the recognition cache " + cacheFile + ".");
+            return imageService;
+        }
+    }
+
+    private IService screenWithClassifier(IService imageService) {
+        String examples = System.getProperty("catpoint.classifier");
+        if (examples == null) {
+            return imageService;
+        }
+        try {
+            float band = Float.parseFloat(System.getProperty("catpoint.classifier.band", "15"));
+            return new CascadingImageService(LocalCatClassifier.trainFrom(Paths.get(examples)), imageService, band);
+        } catch (IOException | IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(null, "Unable to train the local classifier from " + examples + ".");
+            return imageService;
+        }
+    }
+
+    /**
+     * Opens the SQL database if the catpoint.repository system property is "sql", copying the
+     * preferences into it the first time.
+     * @return null to keep using the preferences
+     */
+    private SqlSecurityRepositoryImpl openSqlRepository() {
+        if (!"sql".equals(System.getProperty("catpoint.repository"))) {
+            return null;
+        }
+        Path database = STATE_DIRECTORY.resolve("catpoint");
+        try {
+            //left open for the write-behind repository's last batch, H2 closes it when the process exits
+            return Files.exists(database.resolveSibling("catpoint.mv.db"))
+                    ? new SqlSecurityRepositoryImpl(database)
+                    : PreferencesMigration.migrate(database);
+        } catch (SQLException e) {
+            JOptionPane.showMessageDialog(null, "Unable to open the sensor database, using preferences instead.");
+            return null;
+        }
+    }
+
+    /**
+     * Keeps the history of sensor state changes across runs in telemetry.bin, recorded in the
+     * scheduler's telemetry lane.
+     */
+    private void trackTelemetry(SecurityService securityService, PriorityScheduler scheduler) {
+        Path file = STATE_DIRECTORY.resolve("telemetry.bin");
+        SensorTelemetry telemetry = new SensorTelemetry();
+        if (Files.exists(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                telemetry = SensorTelemetry.readFrom(in);
+            } catch (IOException ioe) {
+                //start a new history rather than lose the new events too
+            }
+        }
+        SensorTelemetry sensorTelemetry = telemetry;
+        securityService.setSensorTelemetry(sensorTelemetry, scheduler.telemetryExecutor());
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                try (OutputStream out = Files.newOutputStream(file)) {
+                    sensorTelemetry.writeTo(out);
+                } catch (IOException ioe) {
+                    //history since the last save is lost, the system state isn't affected
+                }
+            }
+        });
+    }
+
+    /**
+     * Keeps the last 30 seconds of camera images, saved to the clips folder when the alarm goes off.
+     * @return null if the recorder can't be set up
+     */
+    private PreAlarmRecorder startPreAlarmRecorder(SecurityService securityService) {
+        try {
+            PreAlarmRecorder recorder = new PreAlarmRecorder(STATE_DIRECTORY.resolve("clips"), 8 * 1024 * 1024, 30_000);
+            securityService.addStatusListener(recorder);
+            addWindowListener(new WindowAdapter() {
+                @Override
+                public void windowClosing(WindowEvent e) {
+                    try {
+                        recorder.close();
+                    } catch (IOException ioe) {
+                        //the ring files go away with the process anyway
+                    }
+                }
+            });
+            return recorder;
+        } catch (IOException ioe) {
+            return null;
+        }
+    }
+
+    /**
+     * Posts alarm notifications to the webhook URL in the catpoint.webhook system property, if set.
+     * Notifications not yet delivered when the window closes are sent on the next start.
+     */
+    private void startNotifications(SecurityService securityService) {
+        String webhook = System.getProperty("catpoint.webhook");
+        if (webhook == null) {
+            return;
+        }
+        try {
+            NotificationDispatcher dispatcher = new NotificationDispatcher(STATE_DIRECTORY.resolve("notifications.queue"),
+                    List.of(URI.create(webhook)), 1, 5, 100);
+            dispatcher.start();
+            securityService.addStatusListener(new AlarmNotifier(dispatcher, "home"));
+            addWindowListener(new WindowAdapter() {
+                @Override
+                public void windowClosing(WindowEvent e) {
+                    try {
+                        dispatcher.close();
+                    } catch (IOException ioe) {
+                        //whatever was queued before the last sync is still sent on the next start
+                    }
+                }
+            });
+        } catch (IOException | IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(null, "Unable to send alarm notifications to " + webhook + ".");
+        }
+    }
+
+    /**
+     * Listens for networked sensor events if the catpoint.gateway.port system property is set.
+     * Events are applied on the event dispatch thread, like clicks in the sensor panel, and the
+     * gateway stops reading while the event dispatch thread has a backlog of them.
+     */
+    private void startSensorGateway(SecurityService securityService, PriorityScheduler scheduler) {
+        Integer port = Integer.getInteger("catpoint.gateway.port");
+        if (port == null) {
+            return;
+        }
+        try {
+            SensorReadingPublisher readings = new SensorReadingPublisher();
+            SecurityFlows flows = new SecurityFlows(securityService, scheduler.criticalExecutor(),
+                    ForkJoinPool.commonPool(), 256);
+            //UDP can duplicate and reorder frames, so stale readings are dropped before they reach the service
+            SensorSequenceFilter sequenceFilter = new SensorSequenceFilter();
+            readings.subscribe(sequenceFilter);
+            sequenceFilter.subscribe(flows.sensorInput());
+            SensorGateway gateway = new SensorGateway(new InetSocketAddress(port), readings);
+            gateway.start();
+        } catch (IOException ioe) {
+            JOptionPane.showMessageDialog(null, "Unable to listen for sensors on port " + port + ".");
+        }
+    }
+
+    /**
+     * Replays any events journaled since the snapshot. When the window closes, writes a new
+     * checkpoint and the last batch of pending repository changes.
+     */
+    private void trackState(StateStore stateStore, SecurityService securityService, StateSnapshot snapshot,
+                            WriteBehindSecurityRepository securityRepository) {
+        boolean recovered = false;
+        if (stateStore != null) {
+            try {
+                stateStore.recover(securityService, snapshot);
+                recovered = true;
+            } catch (IOException ioe) {
+                JOptionPane.showMessageDialog(null, "Unable to recover saved system state.");
+            }
+        }
+        boolean checkpoint = recovered;
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                if (checkpoint) {
+                    try {
+                        stateStore.checkpoint(securityService);
+                    } catch (IOException ioe) {
+                        //preferences still hold the latest state, so the next start can fall back on them
+                    }
+                }
+                securityRepository.close();
+            }
+        });
+    }
 }
@@ -1,23 +1,30 @@
 package com.udacity.securityservice.application;
 
 
+import com.udacity.imageservice.BulkImageScanner;
+import com.udacity.imageservice.ImagePreparer;
 import com.udacity.securityservice.data.AlarmStatus;
+import com.udacity.securityservice.service.PreAlarmRecorder;
+import com.udacity.securityservice.service.PriorityScheduler;
 import com.udacity.securityservice.service.SecurityService;
 import com.udacity.securityservice.service.StyleService;
 import net.miginfocom.swing.MigLayout;
 
-import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
 
 /** Panel containing the 'camera' output. Allows users to 'refresh' the camera
  * by uploading their own picture, and 'scan' the picture, sending it for image analysis
  */
 public class ImagePanel extends JPanel implements StatusListener {
     private SecurityService securityService;
+    private PreAlarmRecorder preAlarmRecorder;
+    private PriorityScheduler scheduler;
 
     private JLabel cameraHeader;
     private JLabel cameraLabel;
@@ -26,8 +33,29 @@ public class ImagePanel extends JPanel implements StatusListener {
     private int IMAGE_WIDTH = 300;
     private int IMAGE_HEIGHT = 225;
 
+    //the same frame is displayed and sent for analysis, so it's only decoded and scaled once
+    private final ImagePreparer imagePreparer = new ImagePreparer(IMAGE_WIDTH, IMAGE_HEIGHT);
+
     public ImagePanel(SecurityService securityService) {
+        this(securityService, null);
+    }
+
+    /**
+     * @param preAlarmRecorder Keeps every camera image for the footage saved on alarm, may be null
+     */
+    public ImagePanel(SecurityService securityService, PreAlarmRecorder preAlarmRecorder) {
+        this(securityService, preAlarmRecorder, null);
+    }
+
+    /**
+     * @param preAlarmRecorder Keeps every camera image for the footage saved on alarm, may be null
+     * @param scheduler Recognizes scanned pictures off the EDT, skipping those its frame sampler
+     *                  doesn't want. May be null to scan every picture on the EDT.
+     */
+    public ImagePanel(SecurityService securityService, PreAlarmRecorder preAlarmRecorder, PriorityScheduler scheduler) {
         super();
+        this.preAlarmRecorder = preAlarmRecorder;
+        this.scheduler = scheduler;
         setLayout(new MigLayout());
         this.securityService = securityService;
         securityService.addStatusListener(this);
@@ -51,13 +79,15 @@ public class ImagePanel extends JPanel implements StatusListener {
                 return;
             }
             try {
-                currentCameraImage = ImageIO.read(chooser.getSelectedFile());
-                Image tmp = new ImageIcon(currentCameraImage).getImage();
-                cameraLabel.setIcon(new ImageIcon(tmp.getScaledInstance(IMAGE_WIDTH, IMAGE_HEIGHT, Image.SCALE_SMOOTH)));
+                BufferedImage previousImage = currentCameraImage;
+                currentCameraImage = imagePreparer.prepare(chooser.getSelectedFile());
+                cameraLabel.setIcon(new ImageIcon(currentCameraImage));
+                imagePreparer.release(previousImage);
+                if (preAlarmRecorder != null) {
+                    preAlarmRecorder.record("camera", currentCameraImage);
+                }
             } catch (IOException ioe) {
                 JOptionPane.showMessageDialog(null, "Invalid image selected.");
-            } catch (NullPointerException ioe) {
-                JOptionPane.showMessageDialog(null, "Invalid image selected.");
             }
             repaint();
         });
@@ -65,13 +95,65 @@ public class ImagePanel extends JPanel implements StatusListener {
         //button that sends the image to the image service
         JButton scanPictureButton = new JButton("Scan Picture");
         scanPictureButton.addActionListener(e -> {
-            securityService.processImage(currentCameraImage);
+            if (currentCameraImage == null) {
+                //nothing loaded yet, and prepare would hand back a pooled frame holding old pixels
+                return;
+            }
+            if (scheduler == null) {
+                securityService.processImage(currentCameraImage);
+            } else {
+                //the displayed frame goes back to the pool when the next one loads, so scan a copy,
+                //but only once the sampler wants this frame
+                if (!scheduler.processFrame("camera", () -> imagePreparer.prepare(currentCameraImage))) {
+                    cameraHeader.setText("Camera Feed - Scan Skipped");
+                }
+            }
+        });
+
+        //button that classifies a whole folder of archived snapshots in the background
+        JButton scanFolderButton = new JButton("Scan Folder");
+        scanFolderButton.addActionListener(e -> {
+            JFileChooser chooser = new JFileChooser();
+            chooser.setCurrentDirectory(new File("."));
+            chooser.setDialogTitle("Select Folder");
+            chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+            if(chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+                return;
+            }
+            scanFolder(chooser.getSelectedFile().toPath(), scanFolderButton);
         });
 
         add(cameraHeader, "span 3, wrap");
         add(cameraLabel, "span 3, wrap");
         add(addPictureButton);
         add(scanPictureButton);
+        add(scanFolderButton);
+    }
+
+    /**
+     * Scans the folder off the event dispatch thread and writes cat-scan-report.csv into it.
+     */
+    private void scanFolder(Path directory, JButton scanFolderButton) {
+        Path report = directory.resolve("cat-scan-report.csv");
+        scanFolderButton.setEnabled(false);
+        new SwingWorker<BulkImageScanner.Summary, Void>() {
+            @Override
+            protected BulkImageScanner.Summary doInBackground() throws IOException {
+                return securityService.scanDirectory(directory, report, new ImagePreparer(IMAGE_WIDTH, IMAGE_HEIGHT));
+            }
+
+            @Override
+            protected void done() {
+                scanFolderButton.setEnabled(true);
+                try {
+                    BulkImageScanner.Summary summary = get();
+                    JOptionPane.showMessageDialog(null, String.format("Scanned %d images in %.1fs: %d cats, %d failed.%nReport written to %s",
+                            summary.getScanned(), summary.getElapsedMillis() / 1000.0, summary.getCats(), summary.getFailures(), report));
+                } catch (InterruptedException | ExecutionException ex) {
+                    JOptionPane.showMessageDialog(null, "Unable to scan folder.");
+                }
+            }
+        }.execute();
     }
 
     @Override
@@ -2,6 +2,8 @@ package com.udacity.securityservice.application;
 
 
 import com.udacity.securityservice.data.AlarmStatus;
+import com.udacity.securityservice.data.ArmingStatus;
+import com.udacity.securityservice.data.Sensor;
 
 /**
  * Identifies a component that should be notified whenever the system status changes
@@ -10,4 +12,23 @@ public interface StatusListener {
     void notify(AlarmStatus status);
     void catDetected(boolean catDetected);
     void sensorStatusChanged();
+
+    /**
+     * Called once the new arming status has been applied.
+     */
+    default void armingStatusChanged(ArmingStatus status) {
+    }
+
+    /**
+     * Called whenever a sensor reports itself active, even if it already was.
+     */
+    default void sensorActivated(Sensor sensor) {
+    }
+
+    /**
+     * Called once a sensor's new active state has been applied, whether the sensor reported it
+     * or arming the system changed it.
+     */
+    default void sensorChanged(Sensor sensor) {
+    }
 }
@@ -0,0 +1,137 @@
+package com.udacity.securityservice.cluster;
+
+import com.udacity.imageservice.FakeImageService;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+/**
+ * Headless nodes and router for trying site partitioning with several processes on one machine.
+ *
+ * Usage:
+ * <pre>
+ *   ClusterDemo node port [--stripes n]
+ *   ClusterDemo router host:port host:port [host:port...] [--sites n] [--sensors-per-site n]
+ *                      [--events n] [--image-every n] [--seed n]
+ * </pre>
+ * The router starts with the first two nodes and sends random sensor events, plus an image every
+ * so often, to random sites. A third of the way through it adds the remaining nodes, and two thirds
+ * of the way through it removes the first node, so sites are handed off both ways while events keep
+ * arriving. At the end it asks every site how many events it recorded and checks that the total
+ * matches what was sent: one event per sensor event and image, plus one for each sensor the nodes
+ * had to add.
+ */
+public class ClusterDemo {
+
+    public static void main(String[] args) throws Exception {
+        int stripes = Runtime.getRuntime().availableProcessors();
+        int sites = 1000;
+        int sensorsPerSite = 20;
+        long events = 1_000_000;
+        int imageEvery = 1000;
+        long seed = 42;
+        List<String> positional = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--stripes" -> stripes = Integer.parseInt(args[++i]);
+                case "--sites" -> sites = Integer.parseInt(args[++i]);
+                case "--sensors-per-site" -> sensorsPerSite = Integer.parseInt(args[++i]);
+                case "--events" -> events = Long.parseLong(args[++i]);
+                case "--image-every" -> imageEvery = Integer.parseInt(args[++i]);
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                default -> positional.add(args[i]);
+            }
+        }
+        if (positional.size() == 2 && positional.get(0).equals("node")) {
+            runNode(Integer.parseInt(positional.get(1)), stripes);
+        } else if (positional.size() >= 3 && positional.get(0).equals("router")) {
+            List<InetSocketAddress> nodes = new ArrayList<>();
+            for (String node : positional.subList(1, positional.size())) {
+                int colon = node.lastIndexOf(':');
+                nodes.add(new InetSocketAddress(node.substring(0, colon), Integer.parseInt(node.substring(colon + 1))));
+            }
+            boolean passed = runRouter(nodes, sites, sensorsPerSite, events, imageEvery, seed);
+            System.exit(passed ? 0 : 1);
+        } else {
+            System.err.println("Usage: ClusterDemo node port [--stripes n] | router host:port host:port [host:port...]");
+            System.exit(2);
+        }
+    }
+
+    private static void runNode(int port, int stripes) throws Exception {
+        SiteNode node = new SiteNode(new InetSocketAddress(port), stripes, new FakeImageService());
+        node.start();
+        System.out.println("Node listening on port " + node.getPort() + " with " + stripes + " stripes");
+        while (true) {
+            Thread.sleep(1000);
+            System.out.println("sites=" + node.getSiteCount());
+        }
+    }
+
+    private static boolean runRouter(List<InetSocketAddress> nodes, int sites, int sensorsPerSite, long events,
+                                     int imageEvery, long seed) throws Exception {
+        SplittableRandom random = new SplittableRandom(seed);
+        byte[] image = encodedImage();
+        Set<String> sensorsSeen = new HashSet<>();
+        long sent = 0;
+
+        try (SiteRouter router = new SiteRouter(128)) {
+            router.addNode(nodes.get(0));
+            router.addNode(nodes.get(1));
+            long start = System.nanoTime();
+            for (long n = 0; n < events; n++) {
+                if (n == events / 3) {
+                    for (InetSocketAddress node : nodes.subList(2, nodes.size())) {
+                        long moveStart = System.nanoTime();
+                        router.addNode(node);
+                        System.out.printf("Added %s, %d sites moved so far, %.1f ms%n", node, router.getSitesMoved(),
+                                (System.nanoTime() - moveStart) / 1e6);
+                    }
+                } else if (n == 2 * events / 3) {
+                    long moveStart = System.nanoTime();
+                    router.removeNode(nodes.get(0));
+                    System.out.printf("Removed %s, %d sites moved so far, %.1f ms%n", nodes.get(0), router.getSitesMoved(),
+                            (System.nanoTime() - moveStart) / 1e6);
+                }
+                String siteId = "site-" + random.nextInt(sites);
+                if (imageEvery > 0 && n % imageEvery == 0) {
+                    router.image(siteId, image);
+                } else {
+                    int sensor = random.nextInt(sensorsPerSite);
+                    if (sensorsSeen.add(siteId + "/" + sensor)) {
+                        sent++;
+                    }
+                    router.sensorEvent(siteId, new UUID(siteId.hashCode(), sensor), random.nextBoolean());
+                }
+                sent++;
+            }
+            router.flush();
+
+            long recorded = 0;
+            for (int s = 0; s < sites; s++) {
+                recorded += Math.max(0, router.querySequence("site-" + s));
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%d events routed and applied in %.2f s, %.0f events/s, %d sites moved%n",
+                    events, seconds, events / seconds, router.getSitesMoved());
+            System.out.printf("expected %d recorded events, nodes recorded %d: %s%n",
+                    sent, recorded, sent == recorded ? "OK" : "LOST EVENTS");
+            return sent == recorded;
+        }
+    }
+
+    private static byte[] encodedImage() throws Exception {
+        BufferedImage image = new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", bytes);
+        return bytes.toByteArray();
+    }
+}
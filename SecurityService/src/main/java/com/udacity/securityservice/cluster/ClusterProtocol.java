@@ -0,0 +1,35 @@
+package com.udacity.securityservice.cluster;
+
+/**
+ * Messages between the {@link SiteRouter} and {@link SiteNode}s, and between nodes during a
+ * handoff, as DataOutput primitives over TCP. Every message starts with its type byte.
+ * <pre>
+ *   SENSOR       site utf, sensor id msb long, lsb long, active boolean
+ *   IMAGE        site utf, int length, that many bytes of encoded image
+ *   TRANSFER     site utf, target host utf, target port int, request id long
+ *   HANDOFF      site utf, int length, StateSnapshot bytes, request id long
+ *   QUERY        site utf, request id long
+ *   REPLY        request id long, value long        (node to sender)
+ * </pre>
+ * A TRANSFER or HANDOFF that fails is answered with {@link #FAILED} as the value.
+ */
+final class ClusterProtocol {
+
+    static final byte SENSOR = 1;
+    static final byte IMAGE = 2;
+    static final byte TRANSFER = 3;
+    static final byte HANDOFF = 4;
+    static final byte QUERY = 5;
+    static final byte REPLY = 6;
+
+    static final long FAILED = Long.MIN_VALUE;
+
+    //how long the router waits for a reply
+    static final long REQUEST_TIMEOUT_MILLIS = 30_000;
+    //a handoff holds up the site's stripe, and has to give up well before the router stops waiting for it
+    static final int HANDOFF_CONNECT_MILLIS = 5_000;
+    static final int HANDOFF_READ_MILLIS = 20_000;
+
+    private ClusterProtocol() {
+    }
+}
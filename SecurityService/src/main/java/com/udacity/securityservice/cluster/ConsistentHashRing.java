@@ -0,0 +1,91 @@
+package com.udacity.securityservice.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Consistent-hash ring that assigns keys, such as site ids, to nodes. Each node is placed on the
+ * ring at {@code virtualNodes} points, so keys spread evenly and adding or removing a node only
+ * moves about 1/n of them, all to or from that node.
+ */
+public class ConsistentHashRing<N> {
+
+    private final int virtualNodes;
+    private final TreeMap<Long, N> ring = new TreeMap<>();
+    private final Set<N> nodes = new HashSet<>();
+
+    public ConsistentHashRing(int virtualNodes) {
+        if (virtualNodes <= 0) {
+            throw new IllegalArgumentException("virtualNodes must be positive");
+        }
+        this.virtualNodes = virtualNodes;
+    }
+
+    public void add(N node) {
+        if (nodes.add(node)) {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.put(hash(node + "#" + i), node);
+            }
+        }
+    }
+
+    public void remove(N node) {
+        if (nodes.remove(node)) {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.remove(hash(node + "#" + i), node);
+            }
+        }
+    }
+
+    public Set<N> getNodes() {
+        return new HashSet<>(nodes);
+    }
+
+    /**
+     * @return the node owning the key, or null if the ring is empty
+     */
+    public N owner(String key) {
+        if (ring.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Long, N> entry = ring.ceilingEntry(hash(key));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    /**
+     * @return the keys whose owner is different in the other ring
+     */
+    public List<String> moved(Collection<String> keys, ConsistentHashRing<N> other) {
+        List<String> moved = new ArrayList<>();
+        for (String key : keys) {
+            N owner = owner(key);
+            if (owner == null ? other.owner(key) != null : !owner.equals(other.owner(key))) {
+                moved.add(key);
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * 64-bit FNV-1a followed by a murmur finalizer, so similar keys land far apart.
+     */
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,272 @@
+package com.udacity.securityservice.cluster;
+
+import com.udacity.imageservice.IService;
+import com.udacity.securityservice.data.InMemorySecurityRepositoryImpl;
+import com.udacity.securityservice.data.Sensor;
+import com.udacity.securityservice.data.SensorType;
+import com.udacity.securityservice.data.StateSnapshot;
+import com.udacity.securityservice.service.SecurityService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Process that hosts the SecurityServices of many sites, as assigned by a {@link SiteRouter}.
+ *
+ * Each site lives on one of a fixed set of single-threaded stripes, chosen by its id, so a site's
+ * events are applied in the order they arrived while different sites run in parallel. Sites are
+ * created on their first event, and sensors the first time an event names them.
+ *
+ * When the router moves a site away, the node waits for the site's queued events, sends its
+ * snapshot straight to the new owner and forgets the site once the new owner has it. The event
+ * count travels with the snapshot as its sequence number, so the new owner carries on counting.
+ */
+public class SiteNode implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(SiteNode.class);
+
+    private final IService imageService;
+    private final ServerSocket serverSocket;
+    private final ExecutorService[] stripes;
+    private final ConcurrentHashMap<String, SecurityService> sites = new ConcurrentHashMap<>();
+    private final Thread acceptThread;
+    private volatile boolean running;
+
+    /**
+     * @param address Address to listen on. Port 0 picks a free port, see {@link #getPort()}.
+     * @param stripes Threads to spread the sites over
+     * @param imageService Shared by all sites, so it must be thread safe
+     */
+    public SiteNode(InetSocketAddress address, int stripes, IService imageService) throws IOException {
+        this.imageService = imageService;
+        serverSocket = new ServerSocket();
+        serverSocket.bind(address);
+        this.stripes = new ExecutorService[stripes];
+        for (int i = 0; i < stripes; i++) {
+            String name = "site-stripe-" + i;
+            this.stripes[i] = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        acceptThread = new Thread(this::acceptConnections, "site-node");
+        acceptThread.setDaemon(true);
+    }
+
+    public void start() {
+        running = true;
+        acceptThread.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public int getSiteCount() {
+        return sites.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        serverSocket.close();
+        for (ExecutorService stripe : stripes) {
+            stripe.shutdownNow();
+        }
+    }
+
+    private void acceptConnections() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread reader = new Thread(() -> serve(socket), "site-node-connection");
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException ioe) {
+                if (running) {
+                    log.error("Unable to accept connection", ioe);
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket s = socket) {
+            s.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream(), 64 * 1024));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+            while (true) {
+                byte type = in.readByte();
+                String siteId = in.readUTF();
+                switch (type) {
+                    case ClusterProtocol.SENSOR -> {
+                        UUID sensorId = new UUID(in.readLong(), in.readLong());
+                        boolean active = in.readBoolean();
+                        stripe(siteId).execute(() -> sensorEvent(siteId, sensorId, active));
+                    }
+                    case ClusterProtocol.IMAGE -> {
+                        byte[] image = new byte[in.readInt()];
+                        in.readFully(image);
+                        stripe(siteId).execute(() -> imageEvent(siteId, image));
+                    }
+                    case ClusterProtocol.TRANSFER -> {
+                        String host = in.readUTF();
+                        int port = in.readInt();
+                        long requestId = in.readLong();
+                        InetSocketAddress target = new InetSocketAddress(host, port);
+                        stripe(siteId).execute(() -> reply(out, requestId, transfer(siteId, target)));
+                    }
+                    case ClusterProtocol.HANDOFF -> {
+                        byte[] snapshot = new byte[in.readInt()];
+                        in.readFully(snapshot);
+                        long requestId = in.readLong();
+                        stripe(siteId).execute(() -> reply(out, requestId, accept(siteId, snapshot)));
+                    }
+                    case ClusterProtocol.QUERY -> {
+                        long requestId = in.readLong();
+                        stripe(siteId).execute(() -> {
+                            SecurityService site = sites.get(siteId);
+                            reply(out, requestId, site == null ? -1 : site.getEventSequence());
+                        });
+                    }
+                    default -> throw new IOException("Unknown message type " + type);
+                }
+            }
+        } catch (EOFException eof) {
+            //sender closed the connection
+        } catch (IOException ioe) {
+            if (running) {
+                log.warn("Connection from {} failed", socket.getRemoteSocketAddress(), ioe);
+            }
+        }
+    }
+
+    private ExecutorService stripe(String siteId) {
+        return stripes[Math.floorMod(siteId.hashCode(), stripes.length)];
+    }
+
+    private SecurityService site(String siteId) {
+        return sites.computeIfAbsent(siteId, id -> newSite());
+    }
+
+    private SecurityService newSite() {
+        SecurityService site = new SecurityService(new InMemorySecurityRepositoryImpl(), imageService);
+        //with a listener the service numbers its events, and that count is handed off with the site
+        site.addEventListener(event -> { });
+        return site;
+    }
+
+    private void sensorEvent(String siteId, UUID sensorId, boolean active) {
+        SecurityService site = site(siteId);
+        Sensor sensor = site.getSensor(sensorId);
+        if (sensor == null) {
+            sensor = new Sensor(sensorId, "sensor-" + sensorId, SensorType.DOOR, false);
+            site.addSensor(sensor);
+        }
+        site.changeSensorActivationStatus(sensor, active);
+    }
+
+    private void imageEvent(String siteId, byte[] image) {
+        try {
+            BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(image));
+            if (decoded != null) {
+                site(siteId).processImage(decoded);
+            }
+        } catch (IOException ioe) {
+            log.warn("Unreadable image for site {}", siteId, ioe);
+        }
+    }
+
+    /**
+     * Sends the site to the target node and forgets it here. Runs on the site's stripe, so every
+     * event received before the transfer request has been applied. A target that doesn't connect or
+     * answer in time fails the transfer, so the stripe is freed and the router hears back before its
+     * own timeout.
+     * @return the site's event sequence, -1 if this node didn't have the site, or
+     * {@link ClusterProtocol#FAILED} if the target didn't take it
+     */
+    private long transfer(String siteId, InetSocketAddress target) {
+        SecurityService site = sites.get(siteId);
+        if (site == null) {
+            return -1;
+        }
+        StateSnapshot snapshot = site.snapshot();
+        try (Socket socket = new Socket()) {
+            socket.connect(target, ClusterProtocol.HANDOFF_CONNECT_MILLIS);
+            socket.setSoTimeout(ClusterProtocol.HANDOFF_READ_MILLIS);
+            socket.setTcpNoDelay(true);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            snapshot.writeTo(bytes);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeByte(ClusterProtocol.HANDOFF);
+            out.writeUTF(siteId);
+            out.writeInt(bytes.size());
+            bytes.writeTo(out);
+            out.writeLong(0);
+            out.flush();
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            if (in.readByte() != ClusterProtocol.REPLY) {
+                throw new IOException("Unexpected handoff reply");
+            }
+            in.readLong();
+            if (in.readLong() == ClusterProtocol.FAILED) {
+                throw new IOException("Target rejected the site");
+            }
+        } catch (IOException ioe) {
+            //keep the site, the router leaves it here
+            log.error("Unable to hand off site {} to {}", siteId, target, ioe);
+            return ClusterProtocol.FAILED;
+        }
+        sites.remove(siteId);
+        return snapshot.getSequence();
+    }
+
+    /**
+     * Takes over a site handed off by another node.
+     * @return the site's event sequence, or {@link ClusterProtocol#FAILED} if the snapshot is corrupt
+     */
+    private long accept(String siteId, byte[] snapshotBytes) {
+        try {
+            StateSnapshot snapshot = StateSnapshot.readFrom(new ByteArrayInputStream(snapshotBytes));
+            SecurityService site = newSite();
+            site.load(snapshot);
+            sites.put(siteId, site);
+            return snapshot.getSequence();
+        } catch (IOException ioe) {
+            log.error("Corrupt handoff for site {}", siteId, ioe);
+            return ClusterProtocol.FAILED;
+        }
+    }
+
+    private void reply(DataOutputStream out, long requestId, long value) {
+        synchronized (out) {
+            try {
+                out.writeByte(ClusterProtocol.REPLY);
+                out.writeLong(requestId);
+                out.writeLong(value);
+                out.flush();
+            } catch (IOException ioe) {
+                log.warn("Unable to reply to request {}", requestId, ioe);
+            }
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package com.udacity.securityservice.cluster;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends each site's sensor and image events to the {@link SiteNode} that owns the site, as decided
+ * by a {@link ConsistentHashRing} of the nodes.
+ *
+ * Events are written to a buffered connection per node and flushed every few milliseconds, or
+ * straight away by {@link #flush()}. A site's events always go down one connection, so they reach
+ * its node in order.
+ *
+ * When a node is added or removed, each site whose owner changes is moved before any more events
+ * are routed: the old owner is asked to hand the site to the new one and the router waits until it
+ * has. The old owner applies everything it was sent before handing off, so no event is lost or
+ * applied out of order. Moving sites away from a node that has crashed is not possible; pair each
+ * node with a standby for that, see {@link com.udacity.securityservice.replication.ReplicationStandby}.
+ *
+ * Methods are synchronized, the router is meant to be fed by a single ingest thread or a few.
+ */
+public class SiteRouter implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(SiteRouter.class);
+
+    private static final long FLUSH_MILLIS = 5;
+
+    private final ConsistentHashRing<InetSocketAddress> ring;
+    private final Map<InetSocketAddress, NodeConnection> connections = new HashMap<>();
+    //the node each site's events have been sent to so far
+    private final Map<String, InetSocketAddress> placements = new HashMap<>();
+    private final AtomicLong requestIds = new AtomicLong();
+    private final Thread flusher;
+    private volatile boolean running = true;
+    private long sitesMoved;
+
+    public SiteRouter(int virtualNodes) {
+        ring = new ConsistentHashRing<>(virtualNodes);
+        flusher = new Thread(this::flushPeriodically, "site-router-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Connects to the node and moves to it the sites it now owns.
+     */
+    public synchronized void addNode(InetSocketAddress node) throws IOException {
+        if (connections.containsKey(node)) {
+            return;
+        }
+        connections.put(node, new NodeConnection(node));
+        ring.add(node);
+        rebalance();
+    }
+
+    /**
+     * Moves the node's sites to the remaining nodes, then disconnects from it. If a site can't be
+     * moved the node stays connected and keeps the sites it still has; removing it again retries.
+     * @throws IllegalStateException if it is the last node and it has sites
+     */
+    public synchronized void removeNode(InetSocketAddress node) throws IOException {
+        NodeConnection connection = connections.get(node);
+        if (connection == null) {
+            return;
+        }
+        if (ring.getNodes().size() == 1 && placements.containsValue(node)) {
+            throw new IllegalStateException("Can't remove the last node while it has sites");
+        }
+        ring.remove(node);
+        rebalance();
+        connections.remove(node).close();
+    }
+
+    public synchronized void sensorEvent(String siteId, UUID sensorId, boolean active) throws IOException {
+        DataOutputStream out = route(siteId).out;
+        out.writeByte(ClusterProtocol.SENSOR);
+        out.writeUTF(siteId);
+        out.writeLong(sensorId.getMostSignificantBits());
+        out.writeLong(sensorId.getLeastSignificantBits());
+        out.writeBoolean(active);
+    }
+
+    /**
+     * @param image Encoded image, in any format ImageIO reads
+     */
+    public synchronized void image(String siteId, byte[] image) throws IOException {
+        DataOutputStream out = route(siteId).out;
+        out.writeByte(ClusterProtocol.IMAGE);
+        out.writeUTF(siteId);
+        out.writeInt(image.length);
+        out.write(image);
+    }
+
+    /**
+     * Waits for the owning node to apply every event sent so far for the site.
+     * @return how many events the site has recorded, or -1 if no node has it
+     */
+    public synchronized long querySequence(String siteId) throws IOException {
+        NodeConnection connection = route(siteId);
+        long requestId = requestIds.incrementAndGet();
+        CompletableFuture<Long> reply = connection.expect(requestId);
+        connection.out.writeByte(ClusterProtocol.QUERY);
+        connection.out.writeUTF(siteId);
+        connection.out.writeLong(requestId);
+        connection.out.flush();
+        return connection.await(reply);
+    }
+
+    public synchronized void flush() throws IOException {
+        for (NodeConnection connection : connections.values()) {
+            connection.out.flush();
+        }
+    }
+
+    public synchronized InetSocketAddress getOwner(String siteId) {
+        return ring.owner(siteId);
+    }
+
+    public synchronized long getSitesMoved() {
+        return sitesMoved;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        running = false;
+        flusher.interrupt();
+        for (NodeConnection connection : connections.values()) {
+            connection.close();
+        }
+        connections.clear();
+    }
+
+    /**
+     * @return the connection to the node holding the site, placing it on its ring owner if it's new
+     */
+    private NodeConnection route(String siteId) {
+        InetSocketAddress node = placements.get(siteId);
+        if (node == null) {
+            node = ring.owner(siteId);
+            if (node == null) {
+                throw new IllegalStateException("No nodes to route site " + siteId + " to");
+            }
+            placements.put(siteId, node);
+        }
+        return connections.get(node);
+    }
+
+    /**
+     * Moves every placed site whose owner has changed, one at a time.
+     */
+    private void rebalance() throws IOException {
+        flush();
+        List<String> moving = new ArrayList<>();
+        for (Map.Entry<String, InetSocketAddress> placement : placements.entrySet()) {
+            if (!placement.getValue().equals(ring.owner(placement.getKey()))) {
+                moving.add(placement.getKey());
+            }
+        }
+        for (String siteId : moving) {
+            InetSocketAddress from = placements.get(siteId);
+            InetSocketAddress to = ring.owner(siteId);
+            NodeConnection connection = connections.get(from);
+            long requestId = requestIds.incrementAndGet();
+            CompletableFuture<Long> reply = connection.expect(requestId);
+            connection.out.writeByte(ClusterProtocol.TRANSFER);
+            connection.out.writeUTF(siteId);
+            connection.out.writeUTF(to.getHostString());
+            connection.out.writeInt(to.getPort());
+            connection.out.writeLong(requestId);
+            connection.out.flush();
+            long sequence = connection.await(reply);
+            if (sequence == ClusterProtocol.FAILED) {
+                //the site stays where it is and keeps receiving its events there, the next rebalance retries
+                throw new IOException("Unable to move site " + siteId + " from " + from + " to " + to);
+            }
+            placements.put(siteId, to);
+            sitesMoved++;
+            log.debug("Moved site {} from {} to {} at event {}", siteId, from, to, sequence);
+        }
+        if (!moving.isEmpty()) {
+            log.info("Moved {} sites, {} nodes", moving.size(), connections.size());
+        }
+    }
+
+    private void flushPeriodically() {
+        while (running) {
+            try {
+                Thread.sleep(FLUSH_MILLIS);
+                flush();
+            } catch (InterruptedException ie) {
+                return;
+            } catch (IOException ioe) {
+                log.warn("Unable to flush events", ioe);
+            }
+        }
+    }
+
+    /**
+     * Buffered connection to one node, with a thread matching its replies to pending requests.
+     */
+    private static class NodeConnection {
+        private final InetSocketAddress address;
+        private final Socket socket;
+        private final DataOutputStream out;
+        private final ConcurrentHashMap<Long, CompletableFuture<Long>> pending = new ConcurrentHashMap<>();
+
+        NodeConnection(InetSocketAddress address) throws IOException {
+            this.address = address;
+            socket = new Socket(address.getAddress(), address.getPort());
+            socket.setTcpNoDelay(true);
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024));
+            Thread reader = new Thread(this::readReplies, "site-router-replies");
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        CompletableFuture<Long> expect(long requestId) {
+            CompletableFuture<Long> reply = new CompletableFuture<>();
+            pending.put(requestId, reply);
+            return reply;
+        }
+
+        long await(CompletableFuture<Long> reply) throws IOException {
+            try {
+                return reply.get(ClusterProtocol.REQUEST_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted waiting for " + address, ie);
+            } catch (ExecutionException | TimeoutException e) {
+                throw new IOException("No reply from " + address, e);
+            }
+        }
+
+        void close() throws IOException {
+            out.flush();
+            socket.close();
+        }
+
+        private void readReplies() {
+            try {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                while (true) {
+                    if (in.readByte() != ClusterProtocol.REPLY) {
+                        throw new IOException("Unexpected message from " + address);
+                    }
+                    CompletableFuture<Long> reply = pending.remove(in.readLong());
+                    long value = in.readLong();
+                    if (reply != null) {
+                        reply.complete(value);
+                    }
+                }
+            } catch (IOException ioe) {
+                pending.values().forEach(f -> f.completeExceptionally(ioe));
+            }
+        }
+    }
+}
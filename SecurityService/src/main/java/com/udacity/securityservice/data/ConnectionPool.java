@@ -0,0 +1,132 @@
+package com.udacity.securityservice.data;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fixed number of JDBC connections opened up front and handed out one caller at a time. A
+ * connection that fails and no longer answers a validity check is replaced with a new one.
+ */
+class ConnectionPool implements AutoCloseable {
+
+    private static final long BORROW_TIMEOUT_SECONDS = 30;
+
+    /**
+     * Work done with a borrowed connection.
+     */
+    interface SqlWork<T> {
+        T apply(Connection connection) throws SQLException;
+    }
+
+    private final String url;
+    private final BlockingQueue<Connection> idle;
+    private final List<Connection> all = new ArrayList<>();
+
+    ConnectionPool(String url, int size) throws SQLException {
+        if (size <= 0) {
+            throw new IllegalArgumentException("size must be positive");
+        }
+        this.url = url;
+        idle = new ArrayBlockingQueue<>(size);
+        try {
+            for (int i = 0; i < size; i++) {
+                Connection connection = DriverManager.getConnection(url);
+                all.add(connection);
+                idle.add(connection);
+            }
+        } catch (SQLException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Runs the work with a connection in auto-commit mode.
+     */
+    <T> T call(SqlWork<T> work) throws SQLException {
+        Connection connection = borrow();
+        boolean broken = false;
+        try {
+            return work.apply(connection);
+        } catch (SQLException e) {
+            broken = !connection.isValid(1);
+            throw e;
+        } finally {
+            release(connection, broken);
+        }
+    }
+
+    /**
+     * Runs the work as one transaction, committed if it returns and rolled back if it throws.
+     */
+    <T> T transaction(SqlWork<T> work) throws SQLException {
+        return call(connection -> {
+            connection.setAutoCommit(false);
+            try {
+                T result = work.apply(connection);
+                connection.commit();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        });
+    }
+
+    @Override
+    public synchronized void close() {
+        for (Connection connection : all) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                //closing anyway
+            }
+        }
+        all.clear();
+        idle.clear();
+    }
+
+    private Connection borrow() throws SQLException {
+        try {
+            Connection connection = idle.poll(BORROW_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            if (connection == null) {
+                throw new SQLException("Timed out waiting for a connection to " + url);
+            }
+            return connection;
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted waiting for a connection to " + url, ie);
+        }
+    }
+
+    private synchronized void release(Connection connection, boolean broken) {
+        if (!all.contains(connection)) {
+            //pool was closed while the connection was out
+            return;
+        }
+        if (broken) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                //replacing it anyway
+            }
+            all.remove(connection);
+            try {
+                connection = DriverManager.getConnection(url);
+                all.add(connection);
+            } catch (SQLException e) {
+                //the pool shrinks until the database is reachable again
+                return;
+            }
+        }
+        idle.add(connection);
+    }
+}
@@ -0,0 +1,76 @@
+package com.udacity.securityservice.data;
+
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Repository implementation that only keeps state in memory. Useful for replaying recorded
+ * events offline, where we want the rules to run as fast as possible and nothing should
+ * be written to user preferences.
+ */
+public class InMemorySecurityRepositoryImpl implements SecurityRepository {
+
+    private final SensorRegistry sensors = new SensorRegistry();
+    private AlarmStatus alarmStatus = AlarmStatus.NO_ALARM;
+    private ArmingStatus armingStatus = ArmingStatus.DISARMED;
+
+    public InMemorySecurityRepositoryImpl() {
+
+    }
+
+    public InMemorySecurityRepositoryImpl(StateSnapshot snapshot) {
+        sensors.addAll(snapshot.getSensors());
+        alarmStatus = snapshot.getAlarmStatus();
+        armingStatus = snapshot.getArmingStatus();
+    }
+
+    @Override
+    public void addSensor(Sensor sensor) {
+        sensors.add(sensor);
+    }
+
+    @Override
+    public void removeSensor(Sensor sensor) {
+        sensors.remove(sensor);
+    }
+
+    @Override
+    public void updateSensor(Sensor sensor) {
+        sensors.update(sensor);
+    }
+
+    @Override
+    public void setAlarmStatus(AlarmStatus alarmStatus) {
+        this.alarmStatus = alarmStatus;
+    }
+
+    @Override
+    public void setArmingStatus(ArmingStatus armingStatus) {
+        this.armingStatus = armingStatus;
+    }
+
+    @Override
+    public Set<Sensor> getSensors() {
+        return sensors;
+    }
+
+    @Override
+    public Sensor getSensor(UUID sensorId) {
+        return sensors.get(sensorId);
+    }
+
+    @Override
+    public Set<Sensor> getActiveSensors(SensorType sensorType) {
+        return sensors.getActive(sensorType);
+    }
+
+    @Override
+    public AlarmStatus getAlarmStatus() {
+        return alarmStatus;
+    }
+
+    @Override
+    public ArmingStatus getArmingStatus() {
+        return armingStatus;
+    }
+}
@@ -0,0 +1,55 @@
+package com.udacity.securityservice.data;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.prefs.Preferences;
+
+/**
+ * Copies the sensors and statuses kept in user preferences by
+ * {@link PretendDatabaseSecurityRepositoryImpl} into a {@link SqlSecurityRepositoryImpl} database.
+ * Older JSON sensor data is converted on the way. The preferences are left as they were.
+ *
+ * Usage:
+ * <pre>
+ *   PreferencesMigration [database]
+ * </pre>
+ * The database defaults to ~/.catpoint/catpoint.
+ */
+public class PreferencesMigration {
+
+    public static final Path DEFAULT_DATABASE = Paths.get(System.getProperty("user.home"), ".catpoint", "catpoint");
+
+    public static void main(String[] args) throws SQLException {
+        Path database = args.length > 0 ? Paths.get(args[0]) : DEFAULT_DATABASE;
+        try (SqlSecurityRepositoryImpl repository = migrate(database)) {
+            System.out.println("Migrated " + repository.getSensors().size() + " sensors to " + database
+                    + ", alarm " + repository.getAlarmStatus() + ", " + repository.getArmingStatus());
+        }
+    }
+
+    /**
+     * Opens the database, creating it if needed, and replaces its contents with the state kept in
+     * the preferences.
+     * @return the migrated repository, open
+     */
+    public static SqlSecurityRepositoryImpl migrate(Path database) throws SQLException {
+        return migrate(database, Preferences.userNodeForPackage(PretendDatabaseSecurityRepositoryImpl.class));
+    }
+
+    /**
+     * Like {@link #migrate(Path)}, from the state kept in the given preferences node.
+     */
+    public static SqlSecurityRepositoryImpl migrate(Path database, Preferences preferences) throws SQLException {
+        try {
+            Files.createDirectories(database.toAbsolutePath().getParent());
+        } catch (IOException ioe) {
+            throw new SQLException("Unable to create " + database.getParent(), ioe);
+        }
+        SqlSecurityRepositoryImpl repository = new SqlSecurityRepositoryImpl(database);
+        repository.importFrom(new PretendDatabaseSecurityRepositoryImpl(preferences));
+        return repository;
+    }
+}
@@ -1,11 +1,9 @@
 package com.udacity.securityservice.data;
 
-import com.google.common.reflect.TypeToken;
-import com.google.gson.Gson;
-
-import java.lang.reflect.Type;
+import java.util.Collection;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.UUID;
+import java.util.prefs.BackingStoreException;
 import java.util.prefs.Preferences;
 
 /**
@@ -15,52 +13,95 @@ import java.util.prefs.Preferences;
  */
 public class PretendDatabaseSecurityRepositoryImpl implements SecurityRepository{
 
-    private Set<Sensor> sensors;
+    private final SensorRegistry sensors;
     private AlarmStatus alarmStatus;
     private ArmingStatus armingStatus;
 
     //preference keys
-    private static final String SENSORS = "SENSORS";
+    private static final String SENSORS = "SENSORS"; //legacy JSON, only read for migration
+    private static final String SENSOR_DATA = "SENSOR_DATA";
     private static final String ALARM_STATUS = "ALARM_STATUS";
     private static final String ARMING_STATUS = "ARMING_STATUS";
 
-    private static final Preferences prefs = Preferences.userNodeForPackage(PretendDatabaseSecurityRepositoryImpl.class);
-    private static final Gson gson = new Gson(); //used to serialize objects into JSON
+    private final Preferences prefs;
 
     public PretendDatabaseSecurityRepositoryImpl() {
+        this(Preferences.userNodeForPackage(PretendDatabaseSecurityRepositoryImpl.class));
+    }
+
+    /**
+     * @param prefs Preferences node to load the state from and write changes to
+     */
+    public PretendDatabaseSecurityRepositoryImpl(Preferences prefs) {
+        this.prefs = prefs;
         //load system state from prefs, or else default
         alarmStatus = AlarmStatus.valueOf(prefs.get(ALARM_STATUS, AlarmStatus.NO_ALARM.toString()));
         armingStatus = ArmingStatus.valueOf(prefs.get(ARMING_STATUS, ArmingStatus.DISARMED.toString()));
 
         //we've serialized our sensor objects for storage, which should be a good warning sign that
         // this is likely an impractical solution for a real system
-        String sensorString = prefs.get(SENSORS, null);
-        if(sensorString == null) {
-            sensors = new TreeSet<>();
+        sensors = new SensorRegistry();
+        byte[] sensorData = prefs.getByteArray(SENSOR_DATA, null);
+        if(sensorData != null) {
+            sensors.addAll(SensorCodec.decode(sensorData));
         } else {
-            Type type = new TypeToken<Set<Sensor>>() {
-            }.getType();
-            sensors = gson.fromJson(sensorString, type);
+            //migrate sensors saved as JSON by older versions to the binary encoding
+            String sensorString = prefs.get(SENSORS, null);
+            if(sensorString != null) {
+                sensors.addAll(SensorCodec.fromLegacyJson(sensorString));
+                saveSensors();
+                prefs.remove(SENSORS);
+            }
         }
     }
 
+    /**
+     * Seeds the repository from a binary snapshot instead of parsing the preferences.
+     * Changes are still written through to user preferences.
+     * @param snapshot Snapshot to load state from
+     */
+    public PretendDatabaseSecurityRepositoryImpl(StateSnapshot snapshot) {
+        prefs = Preferences.userNodeForPackage(PretendDatabaseSecurityRepositoryImpl.class);
+        alarmStatus = snapshot.getAlarmStatus();
+        armingStatus = snapshot.getArmingStatus();
+        sensors = new SensorRegistry(snapshot.getSensors());
+    }
+
     @Override
     public void addSensor(Sensor sensor) {
         sensors.add(sensor);
-        prefs.put(SENSORS, gson.toJson(sensors));
+        saveSensors();
     }
 
     @Override
     public void removeSensor(Sensor sensor) {
         sensors.remove(sensor);
-        prefs.put(SENSORS, gson.toJson(sensors));
+        saveSensors();
     }
 
     @Override
     public void updateSensor(Sensor sensor) {
-        sensors.remove(sensor);
-        sensors.add(sensor);
-        prefs.put(SENSORS, gson.toJson(sensors));
+        sensors.update(sensor);
+        saveSensors();
+    }
+
+    @Override
+    public void updateSensors(Collection<Sensor> changed) {
+        changed.forEach(sensors::update);
+        saveSensors();
+    }
+
+    @Override
+    public void flush() {
+        try {
+            prefs.flush();
+        } catch (BackingStoreException bse) {
+            throw new IllegalStateException("Unable to flush preferences", bse);
+        }
+    }
+
+    private void saveSensors() {
+        prefs.putByteArray(SENSOR_DATA, SensorCodec.encode(sensors));
     }
 
     @Override
@@ -80,6 +121,16 @@ public class PretendDatabaseSecurityRepositoryImpl implements SecurityRepository
         return sensors;
     }
 
+    @Override
+    public Sensor getSensor(UUID sensorId) {
+        return sensors.get(sensorId);
+    }
+
+    @Override
+    public Set<Sensor> getActiveSensors(SensorType sensorType) {
+        return sensors.getActive(sensorType);
+    }
+
     @Override
     public AlarmStatus getAlarmStatus() {
         return alarmStatus;
@@ -1,6 +1,9 @@
 package com.udacity.securityservice.data;
 
+import java.util.Collection;
 import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
 
 /**
  * Interface showing the methods our security repository will need to support
@@ -15,5 +18,36 @@ public interface SecurityRepository {
     AlarmStatus getAlarmStatus();
     ArmingStatus getArmingStatus();
 
+    /**
+     * Look up a sensor by its id. The default implementation scans all sensors.
+     * @return the sensor, or null if there is none with that id
+     */
+    default Sensor getSensor(UUID sensorId) {
+        return getSensors().stream().filter(s -> s.getSensorId().equals(sensorId)).findFirst().orElse(null);
+    }
+
+    /**
+     * The currently active sensors of one type. The default implementation scans all sensors.
+     */
+    default Set<Sensor> getActiveSensors(SensorType sensorType) {
+        return getSensors().stream()
+                .filter(s -> s.getSensorType() == sensorType && s.getActive())
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * Apply several sensor changes at once. Repositories that write every change through
+     * to storage should override this to write only once for the whole batch.
+     */
+    default void updateSensors(Collection<Sensor> sensors) {
+        sensors.forEach(this::updateSensor);
+    }
+
+    /**
+     * Force any changes that have been accepted but not yet stored out to durable storage.
+     */
+    default void flush() {
+
+    }
 
 }
@@ -1,29 +1,57 @@
 package com.udacity.securityservice.data;
 
 
-import com.google.common.collect.ComparisonChain;
-
 import java.util.Objects;
 import java.util.UUID;
 
 /**
  * Sensor POJO. Needs to know how to sort itself for display purposes.
+ *
+ * The id, name and type never change, so a sensor's hash code and sort position are computed
+ * once up front and it stays put in any sorted or hashed collection. Only the active flag is
+ * mutable, and it takes no part in equality or ordering.
  */
 public class Sensor implements Comparable<Sensor> {
-    private UUID sensorId;
-    private String name;
-    private Boolean active;
-    private SensorType sensorType;
+    private final UUID sensorId;
+    private final String name;
+    private final SensorType sensorType;
+    private volatile boolean active;
 
-    public Sensor() {
+    //precomputed for compareTo and hashCode
+    private final long namePrefix;
+    private final int hash;
 
+    public Sensor(String name, SensorType sensorType) {
+        this(UUID.randomUUID(), name, sensorType, Boolean.FALSE);
     }
 
-    public Sensor(String name, SensorType sensorType) {
-        this.name = name;
-        this.sensorType = sensorType;
-        this.sensorId = UUID.randomUUID();
-        this.active = Boolean.FALSE;
+    public Sensor(UUID sensorId, String name, SensorType sensorType, Boolean active) {
+        this.sensorId = Objects.requireNonNull(sensorId);
+        this.name = Objects.requireNonNull(name);
+        this.sensorType = Objects.requireNonNull(sensorType);
+        this.active = active;
+        this.namePrefix = prefixOf(name);
+        this.hash = sensorId.hashCode();
+    }
+
+    /**
+     * Packs the first four UTF-16 chars of the name into a long, so that comparing two prefixes as
+     * unsigned longs orders names the same way String.compareTo does whenever the prefixes differ.
+     */
+    private static long prefixOf(String name) {
+        long prefix = 0;
+        for (int i = 0; i < 4; i++) {
+            prefix = (prefix << 16) | (i < name.length() ? name.charAt(i) : 0);
+        }
+        return prefix;
+    }
+
+    /**
+     * @return a new sensor with the same id, name, type and current active flag. The service changes
+     * its sensors in place, so this is how to keep one's state as of now.
+     */
+    public Sensor copy() {
+        return new Sensor(sensorId, name, sensorType, active);
     }
 
     @Override
@@ -31,22 +59,18 @@ public class Sensor implements Comparable<Sensor> {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Sensor sensor = (Sensor) o;
-        return sensorId.equals(sensor.sensorId);
+        return hash == sensor.hash && sensorId.equals(sensor.sensorId);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(sensorId);
+        return hash;
     }
 
     public String getName() {
         return name;
     }
 
-    public void setName(String name) {
-        this.name = name;
-    }
-
     public Boolean getActive() {
         return active;
     }
@@ -59,24 +83,25 @@ public class Sensor implements Comparable<Sensor> {
         return sensorType;
     }
 
-    public void setSensorType(SensorType sensorType) {
-        this.sensorType = sensorType;
-    }
-
     public UUID getSensorId() {
         return sensorId;
     }
 
-    public void setSensorId(UUID sensorId) {
-        this.sensorId = sensorId;
-    }
-
     @Override
     public int compareTo(Sensor o) {
-        return ComparisonChain.start()
-                .compare(this.name, o.name)
-                .compare(this.sensorType.toString(), o.sensorType.toString())
-                .compare(this.sensorId, o.sensorId)
-                .result();
+        if (this == o) {
+            return 0;
+        }
+        int result = Long.compareUnsigned(namePrefix, o.namePrefix);
+        if (result == 0) {
+            result = name.compareTo(o.name);
+        }
+        if (result == 0) {
+            result = sensorType.compareTo(o.sensorType);
+        }
+        if (result == 0) {
+            result = sensorId.compareTo(o.sensorId);
+        }
+        return result;
     }
 }
@@ -0,0 +1,139 @@
+package com.udacity.securityservice.data;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Hand-written binary encoding for sensors, replacing the reflective Gson serialization.
+ *
+ * Layout: a version byte and varint sensor count, then for each sensor the 16-byte UUID,
+ * a type byte, a flag byte (bit 0 = active) and the varint-length UTF-8 name.
+ */
+public final class SensorCodec {
+
+    public static final byte VERSION = 1;
+
+    private static final int FLAG_ACTIVE = 1;
+
+    private SensorCodec() {
+
+    }
+
+    /**
+     * Encodes the sensors into a new array sized exactly for the payload.
+     * @param sensors Sensors to encode
+     */
+    public static byte[] encode(Collection<Sensor> sensors) {
+        //encode the names once up front so the output array can be sized exactly
+        byte[][] names = new byte[sensors.size()][];
+        int size = 1 + varIntSize(sensors.size());
+        int i = 0;
+        for (Sensor sensor : sensors) {
+            names[i] = sensor.getName().getBytes(StandardCharsets.UTF_8);
+            size += 18 + varIntSize(names[i].length) + names[i].length;
+            i++;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(VERSION);
+        putVarInt(buffer, sensors.size());
+        i = 0;
+        for (Sensor sensor : sensors) {
+            buffer.putLong(sensor.getSensorId().getMostSignificantBits());
+            buffer.putLong(sensor.getSensorId().getLeastSignificantBits());
+            buffer.put((byte) sensor.getSensorType().ordinal());
+            buffer.put((byte) (sensor.getActive() ? FLAG_ACTIVE : 0));
+            putVarInt(buffer, names[i].length);
+            buffer.put(names[i]);
+            i++;
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Decodes sensors previously written by {@link #encode(Collection)}.
+     * @param bytes Encoded sensors
+     * @throws IllegalArgumentException if the payload is truncated or written by an unknown version
+     */
+    public static List<Sensor> decode(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        try {
+            byte version = buffer.get();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported sensor encoding version " + version);
+            }
+            int count = getVarInt(buffer);
+            //every sensor takes at least 19 bytes, so a corrupt count fails here rather than in the allocation
+            if (count < 0 || count > buffer.remaining() / 19) {
+                throw new IllegalArgumentException("Corrupt sensor count " + count);
+            }
+            List<Sensor> sensors = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                UUID id = new UUID(buffer.getLong(), buffer.getLong());
+                SensorType type = SensorType.values()[buffer.get()];
+                boolean active = (buffer.get() & FLAG_ACTIVE) != 0;
+                int length = getVarInt(buffer);
+                String name = new String(bytes, buffer.position(), length, StandardCharsets.UTF_8);
+                buffer.position(buffer.position() + length);
+                sensors.add(new Sensor(id, name, type, active));
+            }
+            return sensors;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated sensor encoding", e);
+        }
+    }
+
+    /**
+     * Migration path for sensors stored by older versions as a Gson JSON array.
+     * Parses the JSON tree directly, so no reflective access to Sensor is needed.
+     * @param json JSON array of sensors as written by Gson
+     */
+    public static List<Sensor> fromLegacyJson(String json) {
+        List<Sensor> sensors = new ArrayList<>();
+        for (JsonElement element : JsonParser.parseString(json).getAsJsonArray()) {
+            JsonObject o = element.getAsJsonObject();
+            sensors.add(new Sensor(UUID.fromString(o.get("sensorId").getAsString()),
+                    o.get("name").getAsString(),
+                    SensorType.valueOf(o.get("sensorType").getAsString()),
+                    o.has("active") && o.get("active").getAsBoolean()));
+        }
+        return sensors;
+    }
+
+    private static int varIntSize(int value) {
+        int size = 1;
+        while ((value >>>= 7) != 0) {
+            size++;
+        }
+        return size;
+    }
+
+    private static void putVarInt(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static int getVarInt(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+}
@@ -0,0 +1,205 @@
+package com.udacity.securityservice.data;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Set of sensors indexed by id, by type and by active state. Lookups by id and the
+ * per-type queries never scan the whole set. Iteration is in display order, but the
+ * sorted view is only rebuilt the next time someone iterates after a sensor was added
+ * or removed.
+ *
+ * Sensors are usually activated in place, so call {@link #update(Sensor)} after changing
+ * a sensor's active state to keep the active index current.
+ */
+public class SensorRegistry extends AbstractSet<Sensor> {
+
+    private final Map<UUID, Sensor> byId = new HashMap<>();
+    private final Map<SensorType, Set<Sensor>> byType = new EnumMap<>(SensorType.class);
+    private final Map<SensorType, Set<Sensor>> activeByType = new EnumMap<>(SensorType.class);
+    private int activeCount;
+
+    //lazily rebuilt display order, null whenever membership has changed
+    private List<Sensor> sorted;
+
+    public SensorRegistry() {
+        for (SensorType type : SensorType.values()) {
+            byType.put(type, new HashSet<>());
+            activeByType.put(type, new HashSet<>());
+        }
+    }
+
+    public SensorRegistry(Collection<Sensor> sensors) {
+        this();
+        addAll(sensors);
+    }
+
+    /**
+     * Adds the sensor, replacing any sensor already registered with the same id.
+     * @return true if no sensor with this id was registered before
+     */
+    @Override
+    public boolean add(Sensor sensor) {
+        Sensor previous = byId.put(sensor.getSensorId(), sensor);
+        if (previous != null) {
+            unindex(previous);
+        }
+        byType.get(sensor.getSensorType()).add(sensor);
+        if (sensor.getActive()) {
+            activeByType.get(sensor.getSensorType()).add(sensor);
+            activeCount++;
+        }
+        sorted = null;
+        return previous == null;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (!(o instanceof Sensor)) {
+            return false;
+        }
+        Sensor previous = byId.remove(((Sensor) o).getSensorId());
+        if (previous == null) {
+            return false;
+        }
+        unindex(previous);
+        sorted = null;
+        return true;
+    }
+
+    /**
+     * Stores the latest version of a sensor and refreshes its entry in the active index.
+     * Unlike remove followed by add, this keeps the sorted view when the sensor is already known.
+     * @param sensor Sensor whose state changed
+     */
+    public void update(Sensor sensor) {
+        Sensor previous = byId.get(sensor.getSensorId());
+        if (previous == null || previous.getSensorType() != sensor.getSensorType()
+                || !previous.getName().equals(sensor.getName())) {
+            add(sensor);
+            return;
+        }
+        if (previous != sensor) {
+            //same identity and sort position, swap in the new instance
+            byId.put(sensor.getSensorId(), sensor);
+            Set<Sensor> ofType = byType.get(sensor.getSensorType());
+            ofType.remove(previous);
+            ofType.add(sensor);
+            sorted = null;
+        }
+        Set<Sensor> active = activeByType.get(sensor.getSensorType());
+        boolean wasActive = active.remove(previous);
+        if (sensor.getActive()) {
+            active.add(sensor);
+        }
+        activeCount += (sensor.getActive() ? 1 : 0) - (wasActive ? 1 : 0);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Sensor && byId.containsKey(((Sensor) o).getSensorId());
+    }
+
+    @Override
+    public int size() {
+        return byId.size();
+    }
+
+    @Override
+    public void clear() {
+        byId.clear();
+        byType.values().forEach(Set::clear);
+        activeByType.values().forEach(Set::clear);
+        activeCount = 0;
+        sorted = null;
+    }
+
+    /**
+     * Iterates in display order. Removing through the iterator removes from the registry.
+     */
+    @Override
+    public Iterator<Sensor> iterator() {
+        Iterator<Sensor> it = sortedView().iterator();
+        return new Iterator<>() {
+            private Sensor current;
+
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public Sensor next() {
+                current = it.next();
+                return current;
+            }
+
+            @Override
+            public void remove() {
+                if (current == null) {
+                    throw new IllegalStateException();
+                }
+                it.remove();
+                List<Sensor> view = sorted;
+                SensorRegistry.this.remove(current);
+                //the view we're iterating just had the same element removed, so it is still valid
+                sorted = view;
+                current = null;
+            }
+        };
+    }
+
+    /**
+     * @return the sensor with the given id, or null if there is none
+     */
+    public Sensor get(UUID sensorId) {
+        return byId.get(sensorId);
+    }
+
+    /**
+     * @return all sensors of the given type
+     */
+    public Set<Sensor> getByType(SensorType type) {
+        return Collections.unmodifiableSet(byType.get(type));
+    }
+
+    /**
+     * @return the active sensors of the given type
+     */
+    public Set<Sensor> getActive(SensorType type) {
+        return Collections.unmodifiableSet(activeByType.get(type));
+    }
+
+    /**
+     * @return the number of active sensors of any type
+     */
+    public int getActiveCount() {
+        return activeCount;
+    }
+
+    private void unindex(Sensor sensor) {
+        byType.get(sensor.getSensorType()).remove(sensor);
+        if (activeByType.get(sensor.getSensorType()).remove(sensor)) {
+            activeCount--;
+        }
+    }
+
+    private List<Sensor> sortedView() {
+        if (sorted == null) {
+            List<Sensor> view = new ArrayList<>(byId.values());
+            Collections.sort(view);
+            sorted = view;
+        }
+        return sorted;
+    }
+}
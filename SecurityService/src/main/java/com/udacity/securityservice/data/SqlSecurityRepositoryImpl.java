@@ -0,0 +1,319 @@
+package com.udacity.securityservice.data;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Repository backed by an embedded SQL database, H2 by default. Each sensor is a row in the
+ * {@code sensors} table keyed by its UUID, so a change writes one row instead of the whole sensor
+ * list, and the number of sensors is only limited by the disk.
+ *
+ * Every write is committed before the method returns. Bulk changes go through prepared statements
+ * in JDBC batches inside a single transaction. Reads are served from an in-memory copy loaded at
+ * startup, so the service never waits on a query.
+ *
+ * The schema is versioned and upgraded on open. Use {@link PreferencesMigration} to copy the state
+ * kept by {@link PretendDatabaseSecurityRepositoryImpl} into a new database. Like the other
+ * repositories it isn't thread safe; wrap it in a {@link WriteBehindSecurityRepository} to keep
+ * the writes off the caller's thread.
+ */
+public class SqlSecurityRepositoryImpl implements SecurityRepository, AutoCloseable {
+
+    /**
+     * Statements that bring the schema from each version to the next. Only append to this.
+     */
+    private static final String[][] MIGRATIONS = {
+            {
+                    "CREATE TABLE sensors (sensor_id CHAR(36) PRIMARY KEY, name VARCHAR(255) NOT NULL,"
+                            + " sensor_type VARCHAR(16) NOT NULL, active BOOLEAN NOT NULL)",
+                    "CREATE INDEX sensors_type_active ON sensors (sensor_type, active)",
+                    "CREATE TABLE system_status (name VARCHAR(32) PRIMARY KEY, status VARCHAR(32) NOT NULL)"
+            }
+    };
+
+    private static final String SELECT_SENSORS = "SELECT sensor_id, name, sensor_type, active FROM sensors";
+    private static final String INSERT_SENSOR = "INSERT INTO sensors (name, sensor_type, active, sensor_id) VALUES (?, ?, ?, ?)";
+    private static final String UPDATE_SENSOR = "UPDATE sensors SET name = ?, sensor_type = ?, active = ? WHERE sensor_id = ?";
+    private static final String DELETE_SENSOR = "DELETE FROM sensors WHERE sensor_id = ?";
+    private static final String SELECT_STATUS = "SELECT status FROM system_status WHERE name = ?";
+    private static final String UPDATE_STATUS = "UPDATE system_status SET status = ? WHERE name = ?";
+    private static final String INSERT_STATUS = "INSERT INTO system_status (status, name) VALUES (?, ?)";
+
+    private static final String ALARM_STATUS = "ALARM_STATUS";
+    private static final String ARMING_STATUS = "ARMING_STATUS";
+
+    private final ConnectionPool pool;
+    private final SensorRegistry sensors = new SensorRegistry();
+    private AlarmStatus alarmStatus;
+    private ArmingStatus armingStatus;
+
+    /**
+     * Opens or creates an H2 database in the given file, with a pool of two connections.
+     * @param databaseFile Path of the database without H2's .mv.db extension
+     */
+    public SqlSecurityRepositoryImpl(Path databaseFile) throws SQLException {
+        this("jdbc:h2:file:" + databaseFile.toAbsolutePath(), 2);
+    }
+
+    /**
+     * @param jdbcUrl Database to open. Its driver must be on the class path.
+     * @param poolSize Connections to keep open
+     */
+    public SqlSecurityRepositoryImpl(String jdbcUrl, int poolSize) throws SQLException {
+        pool = new ConnectionPool(jdbcUrl, poolSize);
+        try {
+            pool.transaction(this::migrate);
+            load();
+        } catch (SQLException e) {
+            pool.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void addSensor(Sensor sensor) {
+        addSensors(Collections.singletonList(sensor));
+    }
+
+    @Override
+    public void removeSensor(Sensor sensor) {
+        try {
+            pool.call(connection -> {
+                try (PreparedStatement delete = connection.prepareStatement(DELETE_SENSOR)) {
+                    delete.setString(1, sensor.getSensorId().toString());
+                    return delete.executeUpdate();
+                }
+            });
+        } catch (SQLException e) {
+            throw new IllegalStateException("Unable to remove sensor " + sensor.getSensorId(), e);
+        }
+        sensors.remove(sensor);
+    }
+
+    @Override
+    public void updateSensor(Sensor sensor) {
+        updateSensors(Collections.singletonList(sensor));
+    }
+
+    /**
+     * Writes all the sensors in one transaction, adding any that aren't stored yet.
+     */
+    @Override
+    public void updateSensors(Collection<Sensor> changed) {
+        try {
+            pool.transaction(connection -> {
+                upsert(connection, changed);
+                return null;
+            });
+        } catch (SQLException e) {
+            throw new IllegalStateException("Unable to store " + changed.size() + " sensors", e);
+        }
+        changed.forEach(sensors::update);
+    }
+
+    /**
+     * Stores new sensors in one transaction. Sensors that are already stored are updated instead.
+     */
+    public void addSensors(Collection<Sensor> added) {
+        try {
+            pool.transaction(connection -> {
+                upsert(connection, added);
+                return null;
+            });
+        } catch (SQLException e) {
+            throw new IllegalStateException("Unable to store " + added.size() + " sensors", e);
+        }
+        sensors.addAll(added);
+    }
+
+    /**
+     * Replaces the whole state with that of the other repository in one transaction.
+     */
+    public void importFrom(SecurityRepository source) {
+        List<Sensor> imported = new ArrayList<>(source.getSensors());
+        try {
+            pool.transaction(connection -> {
+                try (Statement statement = connection.createStatement()) {
+                    statement.executeUpdate("DELETE FROM sensors");
+                }
+                upsert(connection, imported);
+                setStatus(connection, ALARM_STATUS, source.getAlarmStatus().name());
+                setStatus(connection, ARMING_STATUS, source.getArmingStatus().name());
+                return null;
+            });
+        } catch (SQLException e) {
+            throw new IllegalStateException("Unable to import " + imported.size() + " sensors", e);
+        }
+        sensors.clear();
+        sensors.addAll(imported);
+        alarmStatus = source.getAlarmStatus();
+        armingStatus = source.getArmingStatus();
+    }
+
+    @Override
+    public void setAlarmStatus(AlarmStatus alarmStatus) {
+        storeStatus(ALARM_STATUS, alarmStatus.name());
+        this.alarmStatus = alarmStatus;
+    }
+
+    @Override
+    public void setArmingStatus(ArmingStatus armingStatus) {
+        storeStatus(ARMING_STATUS, armingStatus.name());
+        this.armingStatus = armingStatus;
+    }
+
+    @Override
+    public Set<Sensor> getSensors() {
+        return sensors;
+    }
+
+    @Override
+    public Sensor getSensor(UUID sensorId) {
+        return sensors.get(sensorId);
+    }
+
+    @Override
+    public Set<Sensor> getActiveSensors(SensorType sensorType) {
+        return sensors.getActive(sensorType);
+    }
+
+    @Override
+    public AlarmStatus getAlarmStatus() {
+        return alarmStatus;
+    }
+
+    @Override
+    public ArmingStatus getArmingStatus() {
+        return armingStatus;
+    }
+
+    @Override
+    public void close() {
+        pool.close();
+    }
+
+    /**
+     * Updates each sensor in one batch, then inserts the ones the update didn't find in a second.
+     */
+    private static void upsert(Connection connection, Collection<Sensor> batch) throws SQLException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<Sensor> missing = new ArrayList<>();
+        try (PreparedStatement update = connection.prepareStatement(UPDATE_SENSOR)) {
+            List<Sensor> ordered = new ArrayList<>(batch);
+            for (Sensor sensor : ordered) {
+                bindSensor(update, sensor);
+                update.addBatch();
+            }
+            int[] counts = update.executeBatch();
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == 0) {
+                    missing.add(ordered.get(i));
+                }
+            }
+        }
+        if (!missing.isEmpty()) {
+            try (PreparedStatement insert = connection.prepareStatement(INSERT_SENSOR)) {
+                for (Sensor sensor : missing) {
+                    bindSensor(insert, sensor);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+        }
+    }
+
+    /**
+     * Binds name, type, active, id; the order shared by the insert and update statements.
+     */
+    private static void bindSensor(PreparedStatement statement, Sensor sensor) throws SQLException {
+        statement.setString(1, sensor.getName());
+        statement.setString(2, sensor.getSensorType().name());
+        statement.setBoolean(3, sensor.getActive());
+        statement.setString(4, sensor.getSensorId().toString());
+    }
+
+    private void storeStatus(String name, String status) {
+        try {
+            pool.call(connection -> {
+                setStatus(connection, name, status);
+                return null;
+            });
+        } catch (SQLException e) {
+            throw new IllegalStateException("Unable to store " + name, e);
+        }
+    }
+
+    private static void setStatus(Connection connection, String name, String status) throws SQLException {
+        try (PreparedStatement update = connection.prepareStatement(UPDATE_STATUS)) {
+            update.setString(1, status);
+            update.setString(2, name);
+            if (update.executeUpdate() > 0) {
+                return;
+            }
+        }
+        try (PreparedStatement insert = connection.prepareStatement(INSERT_STATUS)) {
+            insert.setString(1, status);
+            insert.setString(2, name);
+            insert.executeUpdate();
+        }
+    }
+
+    /**
+     * Applies the migrations the database hasn't had yet, recording the version reached.
+     */
+    private Integer migrate(Connection connection) throws SQLException {
+        int version;
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS schema_version (version INT NOT NULL)");
+            try (ResultSet result = statement.executeQuery("SELECT MAX(version) FROM schema_version")) {
+                version = result.next() ? result.getInt(1) : 0;
+            }
+            if (version > MIGRATIONS.length) {
+                throw new SQLException("Database schema version " + version + " is newer than this application");
+            }
+            for (int v = version; v < MIGRATIONS.length; v++) {
+                for (String sql : MIGRATIONS[v]) {
+                    statement.executeUpdate(sql);
+                }
+                statement.executeUpdate("INSERT INTO schema_version (version) VALUES (" + (v + 1) + ")");
+            }
+        }
+        return version;
+    }
+
+    private void load() throws SQLException {
+        pool.call(connection -> {
+            try (Statement statement = connection.createStatement();
+                 ResultSet result = statement.executeQuery(SELECT_SENSORS)) {
+                while (result.next()) {
+                    sensors.add(new Sensor(UUID.fromString(result.getString(1)), result.getString(2),
+                            SensorType.valueOf(result.getString(3)), result.getBoolean(4)));
+                }
+            }
+            alarmStatus = AlarmStatus.valueOf(loadStatus(connection, ALARM_STATUS, AlarmStatus.NO_ALARM.name()));
+            armingStatus = ArmingStatus.valueOf(loadStatus(connection, ARMING_STATUS, ArmingStatus.DISARMED.name()));
+            return null;
+        });
+    }
+
+    private static String loadStatus(Connection connection, String name, String defaultStatus) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement(SELECT_STATUS)) {
+            select.setString(1, name);
+            try (ResultSet result = select.executeQuery()) {
+                return result.next() ? result.getString(1) : defaultStatus;
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.udacity.securityservice.data;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Point-in-time image of the whole security system: sensors, arming status, alarm status
+ * and whether the camera last saw a cat. Snapshots are written in a compact binary format
+ * so the application can start from one instead of deserializing the preferences JSON.
+ *
+ * The sequence number is the id of the last event applied before the snapshot was taken,
+ * so any journaled events after it can be replayed on top.
+ */
+public final class StateSnapshot {
+
+    private static final int MAGIC = 0x43505353; // "CPSS"
+    private static final byte VERSION = 2;
+    //far more than any real system, so a corrupt length can't make us allocate gigabytes
+    private static final int MAX_SENSOR_DATA = 64 * 1024 * 1024;
+
+    private final List<Sensor> sensors;
+    private final ArmingStatus armingStatus;
+    private final AlarmStatus alarmStatus;
+    private final boolean catSeen;
+    private final long sequence;
+
+    public StateSnapshot(Collection<Sensor> sensors, ArmingStatus armingStatus, AlarmStatus alarmStatus,
+                         boolean catSeen, long sequence) {
+        //copy the sensors so later changes to the live objects don't leak into the snapshot
+        List<Sensor> copies = new ArrayList<>(sensors.size());
+        sensors.forEach(s -> copies.add(s.copy()));
+        this.sensors = Collections.unmodifiableList(copies);
+        this.armingStatus = armingStatus;
+        this.alarmStatus = alarmStatus;
+        this.catSeen = catSeen;
+        this.sequence = sequence;
+    }
+
+    /**
+     * Writes this snapshot to the provided stream. The stream is not closed.
+     * @param out Stream to write to
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeByte(VERSION);
+        data.writeLong(sequence);
+        data.writeByte(armingStatus.ordinal());
+        data.writeByte(alarmStatus.ordinal());
+        data.writeBoolean(catSeen);
+        byte[] sensorData = SensorCodec.encode(sensors);
+        data.writeInt(sensorData.length);
+        data.write(sensorData);
+        data.flush();
+    }
+
+    /**
+     * Reads a snapshot previously written by {@link #writeTo(OutputStream)}.
+     * @param in Stream to read from. The stream is not closed.
+     * @throws IOException if the stream is not a snapshot, is corrupt or was written by an unknown version
+     */
+    public static StateSnapshot readFrom(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a security state snapshot");
+        }
+        byte version = data.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot version " + version);
+        }
+        long sequence = data.readLong();
+        ArmingStatus armingStatus = readEnum(data, ArmingStatus.values());
+        AlarmStatus alarmStatus = readEnum(data, AlarmStatus.values());
+        boolean catSeen = data.readBoolean();
+        int length = data.readInt();
+        if (length < 0 || length > MAX_SENSOR_DATA) {
+            throw new IOException("Corrupt snapshot, sensor data of " + length + " bytes");
+        }
+        byte[] sensorData = new byte[length];
+        data.readFully(sensorData);
+        try {
+            return new StateSnapshot(SensorCodec.decode(sensorData), armingStatus, alarmStatus, catSeen, sequence);
+        } catch (IllegalArgumentException iae) {
+            throw new IOException("Corrupt sensor data in snapshot", iae);
+        }
+    }
+
+    private static <E extends Enum<E>> E readEnum(DataInputStream data, E[] values) throws IOException {
+        int ordinal = data.readUnsignedByte();
+        if (ordinal >= values.length) {
+            throw new IOException("Corrupt snapshot, no " + values[0].getDeclaringClass().getSimpleName() + " " + ordinal);
+        }
+        return values[ordinal];
+    }
+
+    public List<Sensor> getSensors() {
+        return sensors;
+    }
+
+    public ArmingStatus getArmingStatus() {
+        return armingStatus;
+    }
+
+    public AlarmStatus getAlarmStatus() {
+        return alarmStatus;
+    }
+
+    public boolean isCatSeen() {
+        return catSeen;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+}
@@ -0,0 +1,272 @@
+package com.udacity.securityservice.data;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Repository decorator that keeps the authoritative state in memory and writes changes to the
+ * wrapped repository from a background thread. Changes to the same key are coalesced, so only the
+ * latest value of each sensor, the alarm status and the arming status is written, and each flush
+ * commits everything that is dirty as one group.
+ *
+ * A flush happens once {@code maxBatchSize} changes are pending, or {@code maxDelayMillis} after the
+ * previous one, whichever comes first. Call {@link #close()} on shutdown to write the last batch.
+ */
+public class WriteBehindSecurityRepository implements SecurityRepository, AutoCloseable {
+
+    /**
+     * How much work a flush does to make a batch durable.
+     */
+    public enum DurabilityMode {
+        /** Hand the batch to the wrapped repository and let it persist in its own time. */
+        ASYNC,
+        /** Also call {@link SecurityRepository#flush()} on the wrapped repository after every batch. */
+        FSYNC_PER_BATCH
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(WriteBehindSecurityRepository.class);
+
+    private final SecurityRepository delegate;
+    private final DurabilityMode durabilityMode;
+    private final int maxBatchSize;
+    private final ScheduledExecutorService flusher;
+    private final Object commitLock = new Object();
+
+    //authoritative state
+    private final SensorRegistry sensors;
+    private volatile AlarmStatus alarmStatus;
+    private volatile ArmingStatus armingStatus;
+
+    //dirty keys waiting for the next flush, guarded by this. a null sensor copy marks a removal
+    private Map<Sensor, Sensor> dirtySensors = new LinkedHashMap<>();
+    private boolean alarmStatusDirty;
+    private boolean armingStatusDirty;
+    private int pendingChanges;
+    private boolean flushRequested;
+
+    private final AtomicLong batchesCommitted = new AtomicLong();
+
+    public WriteBehindSecurityRepository(SecurityRepository delegate) {
+        this(delegate, DurabilityMode.ASYNC, 64, 200);
+    }
+
+    /**
+     * @param delegate Repository that changes are eventually written to. Its current state is loaded up front.
+     * @param durabilityMode Whether to flush the wrapped repository after every batch
+     * @param maxBatchSize Number of pending changes that triggers an early flush
+     * @param maxDelayMillis Longest time a change waits before it is written
+     */
+    public WriteBehindSecurityRepository(SecurityRepository delegate, DurabilityMode durabilityMode,
+                                         int maxBatchSize, long maxDelayMillis) {
+        this.delegate = delegate;
+        this.durabilityMode = durabilityMode;
+        this.maxBatchSize = maxBatchSize;
+        this.sensors = new SensorRegistry(delegate.getSensors());
+        this.alarmStatus = delegate.getAlarmStatus();
+        this.armingStatus = delegate.getArmingStatus();
+
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "repository-write-behind");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, maxDelayMillis, maxDelayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void addSensor(Sensor sensor) {
+        sensors.add(sensor);
+        //the service mutates sensors in place, so capture the value at the time of the change
+        markDirty(sensor, sensor.copy());
+    }
+
+    @Override
+    public synchronized void removeSensor(Sensor sensor) {
+        sensors.remove(sensor);
+        markDirty(sensor, null);
+    }
+
+    @Override
+    public synchronized void updateSensor(Sensor sensor) {
+        sensors.update(sensor);
+        markDirty(sensor, sensor.copy());
+    }
+
+    @Override
+    public synchronized void setAlarmStatus(AlarmStatus alarmStatus) {
+        this.alarmStatus = alarmStatus;
+        alarmStatusDirty = true;
+        changed();
+    }
+
+    @Override
+    public synchronized void setArmingStatus(ArmingStatus armingStatus) {
+        this.armingStatus = armingStatus;
+        armingStatusDirty = true;
+        changed();
+    }
+
+    @Override
+    public Set<Sensor> getSensors() {
+        return sensors;
+    }
+
+    @Override
+    public Sensor getSensor(UUID sensorId) {
+        return sensors.get(sensorId);
+    }
+
+    @Override
+    public Set<Sensor> getActiveSensors(SensorType sensorType) {
+        return sensors.getActive(sensorType);
+    }
+
+    @Override
+    public AlarmStatus getAlarmStatus() {
+        return alarmStatus;
+    }
+
+    @Override
+    public ArmingStatus getArmingStatus() {
+        return armingStatus;
+    }
+
+    /**
+     * Writes everything that is currently dirty to the wrapped repository and flushes it,
+     * regardless of the durability mode.
+     */
+    @Override
+    public void flush() {
+        commitBatch();
+        delegate.flush();
+    }
+
+    /**
+     * Writes and flushes the final batch and stops the background thread.
+     */
+    @Override
+    public void close() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    /**
+     * @return the number of changes accepted but not yet written to the wrapped repository
+     */
+    public synchronized int getPendingChanges() {
+        return pendingChanges;
+    }
+
+    public long getBatchesCommitted() {
+        return batchesCommitted.get();
+    }
+
+    private void markDirty(Sensor key, Sensor copy) {
+        dirtySensors.put(key, copy);
+        changed();
+    }
+
+    private void changed() {
+        pendingChanges++;
+        if (pendingChanges >= maxBatchSize && !flushRequested && !flusher.isShutdown()) {
+            flushRequested = true;
+            flusher.execute(this::flushQuietly);
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            commitBatch();
+        } catch (RuntimeException e) {
+            log.error("Unable to write batch to repository, will retry", e);
+        }
+    }
+
+    /**
+     * Takes the current dirty set and writes it to the wrapped repository outside of the lock,
+     * so callers changing state never wait on storage. Only one batch is written at a time.
+     */
+    private void commitBatch() {
+        synchronized (commitLock) {
+            Map<Sensor, Sensor> batch;
+            AlarmStatus alarm = null;
+            ArmingStatus arming = null;
+            synchronized (this) {
+                flushRequested = false;
+                if (pendingChanges == 0) {
+                    return;
+                }
+                batch = dirtySensors;
+                dirtySensors = new LinkedHashMap<>();
+                if (alarmStatusDirty) {
+                    alarm = alarmStatus;
+                }
+                if (armingStatusDirty) {
+                    arming = armingStatus;
+                }
+                alarmStatusDirty = false;
+                armingStatusDirty = false;
+                pendingChanges = 0;
+            }
+
+            try {
+                List<Sensor> updated = new ArrayList<>(batch.size());
+                batch.forEach((key, copy) -> {
+                    if (copy == null) {
+                        delegate.removeSensor(key);
+                    } else {
+                        updated.add(copy);
+                    }
+                });
+                if (!updated.isEmpty()) {
+                    delegate.updateSensors(updated);
+                }
+                if (alarm != null) {
+                    delegate.setAlarmStatus(alarm);
+                }
+                if (arming != null) {
+                    delegate.setArmingStatus(arming);
+                }
+                if (durabilityMode == DurabilityMode.FSYNC_PER_BATCH) {
+                    delegate.flush();
+                }
+                batchesCommitted.incrementAndGet();
+            } catch (RuntimeException e) {
+                requeue(batch, alarm, arming);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Puts a failed batch back so the next flush retries it, without overwriting anything that changed since.
+     */
+    private synchronized void requeue(Map<Sensor, Sensor> batch, AlarmStatus alarm, ArmingStatus arming) {
+        //containsKey rather than putIfAbsent, which would overwrite a removal marked by a null copy
+        batch.forEach((key, copy) -> {
+            if (!dirtySensors.containsKey(key)) {
+                dirtySensors.put(key, copy);
+            }
+        });
+        alarmStatusDirty |= alarm != null;
+        armingStatusDirty |= arming != null;
+        //keys changed again since the batch was taken are already counted, so count the dirty keys instead
+        pendingChanges = dirtySensors.size() + (alarmStatusDirty ? 1 : 0) + (armingStatusDirty ? 1 : 0);
+    }
+}
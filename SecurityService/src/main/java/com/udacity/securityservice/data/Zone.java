@@ -0,0 +1,157 @@
+package com.udacity.securityservice.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A place in a {@link ZoneTree}, such as a floor or a room, that sensors can be assigned to.
+ * Each zone counts the sensors below it and how many of them are active, and the tree keeps those
+ * counts current as sensors change, so asking whether anything in a zone is active never looks at
+ * the sensors themselves.
+ *
+ * A zone can be taken out of the arming, which also takes out every zone below it. Activations in
+ * a zone that isn't armed don't raise the alarm. Each zone also counts the active sensors below it
+ * that are still armed, so arming changes cost the depth of the tree plus the zone's children.
+ */
+public final class Zone {
+
+    private final ZoneTree tree;
+    private final String name;
+    private final Zone parent;
+    private final List<Zone> children = new ArrayList<>();
+    private final int depth;
+
+    private int sensorCount;
+    private int activeCount;
+    //active sensors assigned to this zone itself, not below it
+    private int ownActiveCount;
+    private int armedActiveCount;
+    private boolean armed = true;
+
+    Zone(ZoneTree tree, String name, Zone parent) {
+        this.tree = tree;
+        this.name = name;
+        this.parent = parent;
+        this.depth = parent == null ? 0 : parent.depth + 1;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the enclosing zone, or null for the site
+     */
+    public Zone getParent() {
+        return parent;
+    }
+
+    public List<Zone> getChildren() {
+        return Collections.unmodifiableList(children);
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return sensors assigned to this zone or any zone below it
+     */
+    public int getSensorCount() {
+        return sensorCount;
+    }
+
+    /**
+     * @return active sensors in this zone or any zone below it
+     */
+    public int getActiveCount() {
+        return activeCount;
+    }
+
+    public boolean isAnyActive() {
+        return activeCount > 0;
+    }
+
+    /**
+     * @return active sensors in this zone or below it with every zone on the way up to this one
+     * armed, or 0 if this zone isn't armed
+     */
+    public int getArmedActiveCount() {
+        return armedActiveCount;
+    }
+
+    /**
+     * @return whether this zone and every zone above it is part of the arming
+     */
+    public boolean isArmed() {
+        for (Zone zone = this; zone != null; zone = zone.parent) {
+            if (!zone.armed) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Takes the zone and everything below it out of the arming, or puts it back.
+     */
+    public void setArmed(boolean armed) {
+        if (armed == this.armed) {
+            return;
+        }
+        this.armed = armed;
+        int before = armedActiveCount;
+        armedActiveCount = 0;
+        if (armed) {
+            armedActiveCount = ownActiveCount;
+            for (Zone child : children) {
+                armedActiveCount += child.armedActiveCount;
+            }
+        }
+        int change = armedActiveCount - before;
+        for (Zone zone = parent; zone != null && zone.armed; zone = zone.parent) {
+            zone.armedActiveCount += change;
+        }
+    }
+
+    /**
+     * @return the zone names from the site down to this zone, separated by '/'
+     */
+    public String getPath() {
+        return parent == null ? name : parent.getPath() + "/" + name;
+    }
+
+    ZoneTree getTree() {
+        return tree;
+    }
+
+    void addChild(Zone child) {
+        children.add(child);
+    }
+
+    void removeChild(Zone child) {
+        children.remove(child);
+    }
+
+    /**
+     * Applies a change in the counts to this zone and every zone above it.
+     */
+    void adjust(int sensors, int active) {
+        ownActiveCount += active;
+        boolean armedPath = true;
+        for (Zone zone = this; zone != null; zone = zone.parent) {
+            zone.sensorCount += sensors;
+            zone.activeCount += active;
+            armedPath &= zone.armed;
+            if (armedPath) {
+                zone.armedActiveCount += active;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getPath();
+    }
+}
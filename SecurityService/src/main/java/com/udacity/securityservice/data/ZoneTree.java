@@ -0,0 +1,152 @@
+package com.udacity.securityservice.data;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Hierarchy of zones for an installation, site then floors then rooms or however deep it needs
+ * to go, and which zone each sensor is in.
+ *
+ * The tree remembers the last active state it saw for every assigned sensor, and
+ * {@link #update(Sensor)} moves the counts of the sensor's zone and all the zones above it by the
+ * difference. Keeping the counts current costs the depth of the tree per change, however many
+ * sensors there are.
+ *
+ * Sensors the tree is told about through {@link #update(Sensor)} without being assigned a zone are
+ * tracked too, so {@link #getArmedActiveCount()} answers whether anything that can raise the alarm
+ * is active without looking at any sensor.
+ */
+public class ZoneTree {
+
+    private final Zone site;
+    private final Map<UUID, Membership> memberships = new HashMap<>();
+    private int unzonedActiveCount;
+
+    public ZoneTree(String siteName) {
+        site = new Zone(this, siteName, null);
+    }
+
+    public Zone getSite() {
+        return site;
+    }
+
+    public Zone addZone(Zone parent, String name) {
+        checkOwned(parent);
+        Zone zone = new Zone(this, name, parent);
+        parent.addChild(zone);
+        return zone;
+    }
+
+    /**
+     * Removes a zone that no longer has sensors in it.
+     * @throws IllegalStateException if sensors are still assigned to the zone or below it
+     */
+    public void removeZone(Zone zone) {
+        checkOwned(zone);
+        if (zone == site) {
+            throw new IllegalArgumentException("The site can't be removed");
+        }
+        if (zone.getSensorCount() > 0) {
+            throw new IllegalStateException(zone + " still has sensors");
+        }
+        zone.getParent().removeChild(zone);
+    }
+
+    /**
+     * Puts the sensor in the zone, moving it out of any zone it was in before.
+     */
+    public void assign(Sensor sensor, Zone zone) {
+        checkOwned(zone);
+        remove(sensor);
+        boolean active = sensor.getActive();
+        Membership membership = new Membership(zone, active);
+        memberships.put(sensor.getSensorId(), membership);
+        membership.adjust(1, active ? 1 : 0);
+    }
+
+    /**
+     * Takes the sensor out of its zone, if it has one.
+     */
+    public void remove(Sensor sensor) {
+        Membership membership = memberships.remove(sensor.getSensorId());
+        if (membership != null) {
+            membership.adjust(-1, membership.active ? -1 : 0);
+        }
+    }
+
+    /**
+     * Brings the active counts up to date after the sensor's active state may have changed.
+     * A sensor the tree hasn't seen before is tracked without a zone.
+     */
+    public void update(Sensor sensor) {
+        boolean active = sensor.getActive();
+        Membership membership = memberships.get(sensor.getSensorId());
+        if (membership == null) {
+            membership = new Membership(null, active);
+            memberships.put(sensor.getSensorId(), membership);
+            membership.adjust(1, active ? 1 : 0);
+        } else if (active != membership.active) {
+            membership.active = active;
+            membership.adjust(0, active ? 1 : -1);
+        }
+    }
+
+    /**
+     * @return the sensor's zone, or null if it hasn't been assigned one
+     */
+    public Zone getZone(Sensor sensor) {
+        Membership membership = memberships.get(sensor.getSensorId());
+        return membership == null ? null : membership.zone;
+    }
+
+    /**
+     * @return whether activations of the sensor count towards the alarm. Sensors without a zone
+     * always do.
+     */
+    public boolean isArmed(Sensor sensor) {
+        Zone zone = getZone(sensor);
+        return zone == null || zone.isArmed();
+    }
+
+    /**
+     * @return whether the tree last saw the sensor active and its activations count towards the alarm
+     */
+    public boolean isArmedActive(Sensor sensor) {
+        Membership membership = memberships.get(sensor.getSensorId());
+        return membership != null && membership.active && (membership.zone == null || membership.zone.isArmed());
+    }
+
+    /**
+     * @return active sensors whose activations count towards the alarm, those in armed zones and
+     * those without a zone
+     */
+    public int getArmedActiveCount() {
+        return site.getArmedActiveCount() + unzonedActiveCount;
+    }
+
+    private void checkOwned(Zone zone) {
+        if (zone.getTree() != this) {
+            throw new IllegalArgumentException(zone + " belongs to another zone tree");
+        }
+    }
+
+    private class Membership {
+        //null for sensors without a zone
+        private final Zone zone;
+        private boolean active;
+
+        Membership(Zone zone, boolean active) {
+            this.zone = zone;
+            this.active = active;
+        }
+
+        void adjust(int sensors, int active) {
+            if (zone != null) {
+                zone.adjust(sensors, active);
+            } else {
+                unzonedActiveCount += active;
+            }
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.udacity.securityservice.gateway;
+
+/**
+ * Receives the sensor events decoded by the {@link SensorGateway}. Called on the gateway's
+ * network thread, so implementations should return quickly.
+ */
+public interface SensorEventHandler {
+    void onSensorEvent(long sensorIdMsb, long sensorIdLsb, boolean active, long timestamp, long sequence);
+}
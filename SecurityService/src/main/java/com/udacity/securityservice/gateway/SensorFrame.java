@@ -0,0 +1,59 @@
+package com.udacity.securityservice.gateway;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Wire format for sensor events sent to the {@link SensorGateway}. Every frame is exactly
+ * {@link #SIZE} bytes, big-endian:
+ *
+ * <pre>
+ *  0  version   (1 byte)
+ *  1  state     (1 byte, 1 = active, 0 = inactive)
+ *  2  sequence  (8 bytes, increasing per sensor)
+ * 10  timestamp (8 bytes, epoch millis at the sensor)
+ * 18  sensor id (16 bytes, UUID most then least significant bits)
+ * </pre>
+ *
+ * Fixed-size frames mean a TCP stream needs no length prefix, and a UDP datagram may carry
+ * any whole number of frames. Fields are read with absolute gets so decoding never allocates.
+ */
+public final class SensorFrame {
+
+    public static final byte VERSION = 1;
+    public static final int SIZE = 34;
+
+    private static final int STATE = 1;
+    private static final int SEQUENCE = 2;
+    private static final int TIMESTAMP = 10;
+    private static final int ID_MSB = 18;
+    private static final int ID_LSB = 26;
+
+    private SensorFrame() {
+
+    }
+
+    /**
+     * Writes one frame at the buffer's position and advances it.
+     */
+    public static void encode(ByteBuffer buffer, long sensorIdMsb, long sensorIdLsb, boolean active, long timestamp, long sequence) {
+        buffer.put(VERSION);
+        buffer.put((byte) (active ? 1 : 0));
+        buffer.putLong(sequence);
+        buffer.putLong(timestamp);
+        buffer.putLong(sensorIdMsb);
+        buffer.putLong(sensorIdLsb);
+    }
+
+    /**
+     * Decodes the frame starting at the given offset and passes its fields to the handler.
+     * @return false if the frame has an unknown version and was skipped
+     */
+    static boolean decode(ByteBuffer buffer, int offset, SensorEventHandler handler) {
+        if (buffer.get(offset) != VERSION) {
+            return false;
+        }
+        handler.onSensorEvent(buffer.getLong(offset + ID_MSB), buffer.getLong(offset + ID_LSB),
+                buffer.get(offset + STATE) != 0, buffer.getLong(offset + TIMESTAMP), buffer.getLong(offset + SEQUENCE));
+        return true;
+    }
+}
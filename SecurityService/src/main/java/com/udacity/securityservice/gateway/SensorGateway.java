@@ -0,0 +1,215 @@
+package com.udacity.securityservice.gateway;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Network ingest for sensor events. Accepts {@link SensorFrame}s over TCP and UDP on the same
+ * port, using a single non-blocking selector thread.
+ *
+ * Each TCP connection reads into a pooled direct buffer, and frames are decoded in place and handed
+ * to the {@link SensorEventHandler} as primitives. Apart from accepting connections, the steady
+ * state allocates nothing per message.
+ */
+public class SensorGateway implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(SensorGateway.class);
+
+    private static final int CONNECTION_BUFFER_SIZE = SensorFrame.SIZE * 1024;
+    private static final int DATAGRAM_BUFFER_SIZE = 65536;
+
+    private final SensorEventHandler handler;
+    private final Selector selector;
+    private final ServerSocketChannel tcpChannel;
+    private final DatagramChannel udpChannel;
+    private final ByteBuffer datagramBuffer = ByteBuffer.allocateDirect(DATAGRAM_BUFFER_SIZE);
+    private final ArrayDeque<ByteBuffer> bufferPool = new ArrayDeque<>(); //only used on the gateway thread
+    private final Thread thread;
+    private volatile boolean running;
+
+    private final LongAdder framesReceived = new LongAdder();
+    private final LongAdder framesRejected = new LongAdder();
+    private final AtomicInteger openConnections = new AtomicInteger();
+
+    /**
+     * Binds the TCP and UDP listeners. Call {@link #start()} to begin accepting events.
+     * @param address Address to listen on. Port 0 picks a free port, see {@link #getPort()}.
+     * @param handler Receives every decoded event on the gateway thread
+     */
+    public SensorGateway(InetSocketAddress address, SensorEventHandler handler) throws IOException {
+        this.handler = handler;
+        selector = Selector.open();
+        tcpChannel = ServerSocketChannel.open();
+        tcpChannel.bind(address);
+        tcpChannel.configureBlocking(false);
+        tcpChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        //udp shares the port tcp ended up on
+        udpChannel = DatagramChannel.open();
+        udpChannel.bind(new InetSocketAddress(address.getAddress(), getPort()));
+        udpChannel.configureBlocking(false);
+        udpChannel.register(selector, SelectionKey.OP_READ);
+
+        thread = new Thread(this::run, "sensor-gateway");
+        thread.setDaemon(true);
+    }
+
+    public void start() {
+        running = true;
+        thread.start();
+    }
+
+    public int getPort() {
+        return tcpChannel.socket().getLocalPort();
+    }
+
+    public long getFramesReceived() {
+        return framesReceived.sum();
+    }
+
+    /**
+     * @return frames skipped because of an unknown version or because the handler failed on them
+     */
+    public long getFramesRejected() {
+        return framesRejected.sum();
+    }
+
+    public int getOpenConnections() {
+        return openConnections.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else if (key.channel() == udpChannel) {
+                        readDatagrams();
+                    } else {
+                        readStream(key);
+                    }
+                }
+            } catch (IOException ioe) {
+                if (running) {
+                    log.error("Sensor gateway I/O failure", ioe);
+                }
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = tcpChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        ByteBuffer buffer = bufferPool.isEmpty() ? ByteBuffer.allocateDirect(CONNECTION_BUFFER_SIZE) : bufferPool.pop();
+        channel.register(selector, SelectionKey.OP_READ, buffer);
+        openConnections.incrementAndGet();
+    }
+
+    private void readStream(SelectionKey key) {
+        SocketChannel channel = (SocketChannel) key.channel();
+        ByteBuffer buffer = (ByteBuffer) key.attachment();
+        int read;
+        try {
+            read = channel.read(buffer);
+        } catch (IOException ioe) {
+            read = -1;
+        }
+        if (read < 0) {
+            disconnect(key, buffer);
+            return;
+        }
+        buffer.flip();
+        buffer.position(decodeFrames(buffer, buffer.limit()));
+        //keep any partial frame for the next read
+        buffer.compact();
+    }
+
+    private void readDatagrams() throws IOException {
+        while (true) {
+            datagramBuffer.clear();
+            if (udpChannel.receive(datagramBuffer) == null) {
+                return;
+            }
+            //a trailing partial frame in a datagram can never be completed, so it's dropped
+            decodeFrames(datagramBuffer, datagramBuffer.position());
+        }
+    }
+
+    /**
+     * Decodes all whole frames from the start of the buffer up to the limit.
+     * @return the offset just past the last whole frame
+     */
+    private int decodeFrames(ByteBuffer buffer, int limit) {
+        int offset = 0;
+        while (offset + SensorFrame.SIZE <= limit) {
+            boolean accepted;
+            try {
+                accepted = SensorFrame.decode(buffer, offset, handler);
+            } catch (RuntimeException e) {
+                log.warn("Sensor event handler failed", e);
+                accepted = false;
+            }
+            if (accepted) {
+                framesReceived.increment();
+            } else {
+                framesRejected.increment();
+            }
+            offset += SensorFrame.SIZE;
+        }
+        return offset;
+    }
+
+    private void disconnect(SelectionKey key, ByteBuffer buffer) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException ioe) {
+            //already gone
+        }
+        buffer.clear();
+        bufferPool.push(buffer);
+        openConnections.decrementAndGet();
+    }
+}
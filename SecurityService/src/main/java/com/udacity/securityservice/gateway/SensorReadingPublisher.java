@@ -0,0 +1,39 @@
+package com.udacity.securityservice.gateway;
+
+import com.udacity.securityservice.service.SensorReading;
+
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+
+/**
+ * Publishes the events decoded by a {@link SensorGateway} as {@link SensorReading}s, for example
+ * to {@link com.udacity.securityservice.service.SecurityFlows#sensorInput()}.
+ *
+ * When a subscriber's buffer is full the gateway thread waits in {@link #onSensorEvent} and stops
+ * reading its sockets. TCP flow control then holds back the sensors themselves; UDP datagrams are
+ * dropped once the socket's receive buffer fills. Readings keep the frame's sequence number but are
+ * not checked for duplicates here; subscribe a {@link SensorSequenceFilter} to drop duplicated and
+ * reordered frames as {@link ServiceSensorEventHandler} does.
+ */
+public class SensorReadingPublisher extends SubmissionPublisher<SensorReading> implements SensorEventHandler {
+
+    public SensorReadingPublisher() {
+        this(ForkJoinPool.commonPool(), Flow.defaultBufferSize());
+    }
+
+    /**
+     * @param executor Calls the subscribers
+     * @param maxBufferCapacity Readings each subscriber may fall behind by before the gateway waits
+     */
+    public SensorReadingPublisher(Executor executor, int maxBufferCapacity) {
+        super(executor, maxBufferCapacity);
+    }
+
+    @Override
+    public void onSensorEvent(long sensorIdMsb, long sensorIdLsb, boolean active, long timestamp, long sequence) {
+        submit(new SensorReading(new UUID(sensorIdMsb, sensorIdLsb), active, timestamp, sequence));
+    }
+}
@@ -0,0 +1,96 @@
+package com.udacity.securityservice.gateway;
+
+import com.udacity.securityservice.service.SensorReading;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Processor stage that drops duplicated and reordered sensor readings, which UDP can deliver. It
+ * remembers the last sequence number of each sensor and passes on only readings with a higher one,
+ * like {@link ServiceSensorEventHandler} does on the gateway thread. Readings without a sequence
+ * number are always passed on.
+ *
+ * One reading is requested at a time and the next only once the last was handed on, so a slow
+ * subscriber holds back the upstream publisher rather than filling a buffer here.
+ *
+ * Sequence numbers are kept for the {@value #MAX_SENSORS} most recently heard sensors, so frames
+ * with made up sensor ids can't grow the table without bound.
+ */
+public class SensorSequenceFilter extends SubmissionPublisher<SensorReading>
+        implements Flow.Processor<SensorReading, SensorReading> {
+
+    private static final int MAX_SENSORS = 4096;
+
+    //only touched in onNext, which the publisher never calls concurrently
+    private final Map<UUID, Long> lastSequence = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<UUID, Long> eldest) {
+            return size() > MAX_SENSORS;
+        }
+    };
+    private final LongAdder staleReadings = new LongAdder();
+    private volatile Flow.Subscription subscription;
+
+    public SensorSequenceFilter() {
+        this(ForkJoinPool.commonPool(), Flow.defaultBufferSize());
+    }
+
+    /**
+     * @param executor Calls the subscribers
+     * @param maxBufferCapacity Readings each subscriber may fall behind by before upstream is held back
+     */
+    public SensorSequenceFilter(Executor executor, int maxBufferCapacity) {
+        super(executor, maxBufferCapacity);
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (this.subscription != null) {
+            subscription.cancel();
+            return;
+        }
+        this.subscription = subscription;
+        subscription.request(1);
+    }
+
+    @Override
+    public void onNext(SensorReading reading) {
+        long sequence = reading.getSequence();
+        if (sequence != SensorReading.NO_SEQUENCE) {
+            Long last = lastSequence.get(reading.getSensorId());
+            if (last != null && sequence <= last) {
+                staleReadings.increment();
+                subscription.request(1);
+                return;
+            }
+            lastSequence.put(reading.getSensorId(), sequence);
+        }
+        //waits while a subscriber's buffer is full
+        submit(reading);
+        subscription.request(1);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        closeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        close();
+    }
+
+    /**
+     * @return readings dropped because a newer reading of the same sensor had already passed
+     */
+    public long getStaleReadings() {
+        return staleReadings.sum();
+    }
+}
@@ -0,0 +1,141 @@
+package com.udacity.securityservice.gateway;
+
+import com.udacity.imageservice.FakeImageService;
+import com.udacity.securityservice.data.InMemorySecurityRepositoryImpl;
+import com.udacity.securityservice.data.SecurityRepository;
+import com.udacity.securityservice.data.Sensor;
+import com.udacity.securityservice.data.SensorType;
+import com.udacity.securityservice.service.SecurityService;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load driver for the {@link SensorGateway}. Sends frames for a set of simulated sensors as fast as
+ * possible, or at a fixed rate, and reports the achieved throughput.
+ *
+ * Usage: {@code SensorSimulator [host port] [--sensors n] [--events n] [--rate perSecond] [--udp]}
+ *
+ * Without a host and port it starts a headless gateway in the same process, backed by an in-memory
+ * repository that already knows the simulated sensors, and also reports what the gateway received.
+ * Simulated sensor ids are {@code new UUID(SIMULATED_ID_MSB, n)} for n from 1.
+ */
+public class SensorSimulator {
+
+    public static final long SIMULATED_ID_MSB = 0x5349_4D55_4C41_5445L; // "SIMULATE"
+
+    private static final int FRAMES_PER_WRITE = 1000;
+
+    private final int sensors;
+    private final long events;
+    private final long rate;
+
+    public SensorSimulator(int sensors, long events, long rate) {
+        this.sensors = sensors;
+        this.events = events;
+        this.rate = rate;
+    }
+
+    /**
+     * Sends all events over the channel. Each sensor alternates between active and inactive
+     * with an increasing sequence number.
+     * @return the elapsed time in nanoseconds
+     */
+    public long run(WritableByteChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(SensorFrame.SIZE * FRAMES_PER_WRITE);
+        long start = System.nanoTime();
+        for (long e = 0; e < events; e++) {
+            long round = e / sensors;
+            SensorFrame.encode(buffer, SIMULATED_ID_MSB, e % sensors + 1, round % 2 == 0, System.currentTimeMillis(), round + 1);
+            if (!buffer.hasRemaining() || e == events - 1) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                buffer.clear();
+                pace(start, e + 1);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private void pace(long start, long sent) {
+        if (rate <= 0) {
+            return;
+        }
+        long due = start + TimeUnit.SECONDS.toNanos(1) * sent / rate;
+        long wait = due - System.nanoTime();
+        if (wait > 0) {
+            LockSupport.parkNanos(wait);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String host = null;
+        int port = 0;
+        int sensors = 1000;
+        long events = 1_000_000;
+        long rate = 0;
+        boolean udp = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--sensors" -> sensors = Integer.parseInt(args[++i]);
+                case "--events" -> events = Long.parseLong(args[++i]);
+                case "--rate" -> rate = Long.parseLong(args[++i]);
+                case "--udp" -> udp = true;
+                default -> {
+                    host = args[i];
+                    port = Integer.parseInt(args[++i]);
+                }
+            }
+        }
+
+        SensorGateway gateway = null;
+        ServiceSensorEventHandler handler = null;
+        if (host == null) {
+            SecurityRepository repository = new InMemorySecurityRepositoryImpl();
+            for (int n = 1; n <= sensors; n++) {
+                repository.addSensor(new Sensor(new UUID(SIMULATED_ID_MSB, n), "sim-" + n, SensorType.values()[n % SensorType.values().length], false));
+            }
+            handler = new ServiceSensorEventHandler(new SecurityService(repository, new FakeImageService()));
+            gateway = new SensorGateway(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), handler);
+            gateway.start();
+            host = InetAddress.getLoopbackAddress().getHostAddress();
+            port = gateway.getPort();
+        }
+
+        InetSocketAddress address = new InetSocketAddress(host, port);
+        long elapsed;
+        if (udp) {
+            try (DatagramChannel channel = DatagramChannel.open()) {
+                channel.connect(address);
+                elapsed = new SensorSimulator(sensors, events, rate).run(channel);
+            }
+        } else {
+            try (SocketChannel channel = SocketChannel.open(address)) {
+                elapsed = new SensorSimulator(sensors, events, rate).run(channel);
+            }
+        }
+        System.out.printf("Sent %d events for %d sensors in %.2fs (%.0f events/s)%n",
+                events, sensors, elapsed / 1e9, events / (elapsed / 1e9));
+
+        if (gateway != null) {
+            //give the gateway a moment to drain its socket buffers
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (gateway.getFramesReceived() + gateway.getFramesRejected() < events && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            System.out.printf("Gateway received %d frames, rejected %d, stale %d, unknown sensors %d%n",
+                    gateway.getFramesReceived(), gateway.getFramesRejected(), handler.getStaleFrames(), handler.getUnknownSensors());
+            gateway.close();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.udacity.securityservice.gateway;
+
+import com.udacity.securityservice.data.Sensor;
+import com.udacity.securityservice.service.SecurityService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Feeds gateway events into the SecurityService on the gateway thread, so nothing else may call
+ * the service at the same time. Use it for headless deployments; the Swing application should
+ * hand events to the event dispatch thread instead.
+ *
+ * Sensors are found through an open-addressing table keyed on the raw id bits, so looking one up
+ * doesn't create a UUID. Each hit is checked against the service's own sensor with that id, and
+ * the table is rebuilt when a sensor was removed, replaced or added since, so a removed sensor is
+ * never updated back into the repository. The table also remembers the last sequence number per
+ * sensor and drops duplicated or reordered frames, which UDP can deliver.
+ */
+public class ServiceSensorEventHandler implements SensorEventHandler {
+
+    private final SecurityService securityService;
+
+    private long[] msbs;
+    private long[] lsbs;
+    private Sensor[] sensors;
+    private long[] lastSequence;
+    private int mask;
+
+    private final LongAdder unknownSensors = new LongAdder();
+    private final LongAdder staleFrames = new LongAdder();
+
+    public ServiceSensorEventHandler(SecurityService securityService) {
+        this.securityService = securityService;
+        rebuild();
+    }
+
+    @Override
+    public void onSensorEvent(long sensorIdMsb, long sensorIdLsb, boolean active, long timestamp, long sequence) {
+        int slot = find(sensorIdMsb, sensorIdLsb);
+        if (slot >= 0 && securityService.getSensor(sensors[slot].getSensorId()) != sensors[slot]) {
+            //removed, or replaced by another object such as when a snapshot was loaded
+            rebuild();
+            slot = find(sensorIdMsb, sensorIdLsb);
+        }
+        if (slot < 0 && securityService.getSensor(new UUID(sensorIdMsb, sensorIdLsb)) != null) {
+            //added since the table was built
+            rebuild();
+            slot = find(sensorIdMsb, sensorIdLsb);
+        }
+        if (slot < 0) {
+            unknownSensors.increment();
+            return;
+        }
+        if (sequence <= lastSequence[slot]) {
+            staleFrames.increment();
+            return;
+        }
+        lastSequence[slot] = sequence;
+        //repeated activations are passed on too, since they escalate a pending alarm
+        securityService.changeSensorActivationStatus(sensors[slot], active);
+    }
+
+    /**
+     * @return frames for sensor ids the service doesn't know about
+     */
+    public long getUnknownSensors() {
+        return unknownSensors.sum();
+    }
+
+    /**
+     * @return frames dropped because a newer frame for the same sensor had already arrived
+     */
+    public long getStaleFrames() {
+        return staleFrames.sum();
+    }
+
+    private int find(long msb, long lsb) {
+        int slot = hash(msb, lsb) & mask;
+        while (sensors[slot] != null) {
+            if (msbs[slot] == msb && lsbs[slot] == lsb) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void rebuild() {
+        List<Sensor> current = new ArrayList<>(securityService.getSensors());
+        int capacity = Integer.highestOneBit(Math.max(16, current.size() * 2) - 1) << 1;
+        long[] oldMsbs = msbs;
+        long[] oldLsbs = lsbs;
+        long[] oldSequence = lastSequence;
+        int oldMask = mask;
+        Sensor[] oldSensors = sensors;
+
+        msbs = new long[capacity];
+        lsbs = new long[capacity];
+        sensors = new Sensor[capacity];
+        lastSequence = new long[capacity];
+        mask = capacity - 1;
+        for (Sensor sensor : current) {
+            long msb = sensor.getSensorId().getMostSignificantBits();
+            long lsb = sensor.getSensorId().getLeastSignificantBits();
+            int slot = hash(msb, lsb) & mask;
+            while (sensors[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            msbs[slot] = msb;
+            lsbs[slot] = lsb;
+            sensors[slot] = sensor;
+            lastSequence[slot] = Long.MIN_VALUE;
+        }
+
+        //carry sequence numbers over for sensors we already knew
+        if (oldSensors != null) {
+            for (int i = 0; i <= oldMask; i++) {
+                if (oldSensors[i] != null) {
+                    int slot = find(oldMsbs[i], oldLsbs[i]);
+                    if (slot >= 0) {
+                        lastSequence[slot] = oldSequence[i];
+                    }
+                }
+            }
+        }
+    }
+
+    private static int hash(long msb, long lsb) {
+        long h = msb ^ lsb;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+}
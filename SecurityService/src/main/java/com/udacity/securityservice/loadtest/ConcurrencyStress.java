@@ -0,0 +1,350 @@
+package com.udacity.securityservice.loadtest;
+
+import com.udacity.imageservice.IService;
+import com.udacity.securityservice.data.AlarmStatus;
+import com.udacity.securityservice.data.ArmingStatus;
+import com.udacity.securityservice.data.InMemorySecurityRepositoryImpl;
+import com.udacity.securityservice.data.SecurityRepository;
+import com.udacity.securityservice.data.Sensor;
+import com.udacity.securityservice.data.SensorType;
+import com.udacity.securityservice.service.SecurityService;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Checks what SecurityService does when it is called from several threads at once, in the style
+ * of a jcstress test: small scenarios of two or three concurrent calls to
+ * {@code changeSensorActivationStatus}, {@code setArmingStatus} and {@code processImage}, each run
+ * many times, with every end state sorted into acceptable or forbidden.
+ *
+ * The acceptable end states of a scenario are those some sequential order of its calls reaches,
+ * found by running every order on a fresh service. Anything else is forbidden: a different alarm
+ * status, arming status or set of active sensors, a sensor missing from the repository, or a call
+ * throwing.
+ *
+ * Usage: {@code ConcurrencyStress [--mode stress|interleave] [--scenarios n] [--runs n]
+ * [--seed n] [--scenario n --replay seed] [--locked] [--verbose]}
+ *
+ * <ul>
+ *     <li>stress runs the calls on real threads released together, as many times as --runs says</li>
+ *     <li>interleave runs them one step at a time with a {@link DeterministicInterleaver}, switching
+ *     threads at every repository call, trying --runs seeded interleavings. Each forbidden result
+ *     is printed with the seed that reproduces it through --scenario and --replay.</li>
+ * </ul>
+ * With --locked every stress call holds one lock, as if the calls were serialized the way the GUI
+ * does; then nothing should be forbidden, which checks the harness itself. The exit status is 1 when
+ * anything forbidden was seen.
+ */
+public class ConcurrencyStress {
+
+    private static final int SENSORS = 2;
+    private static final BufferedImage CAT = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+    private static final BufferedImage NO_CAT = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+    private static final IService IMAGE_SERVICE = (image, threshold) -> image == CAT;
+
+    private String mode = "stress";
+    private int scenarios = 200;
+    private int runs = 2000;
+    private long seed = 1;
+    private int onlyScenario = -1;
+    private long replay = -1;
+    private boolean locked;
+    private boolean verbose;
+
+    /**
+     * One call made by an actor.
+     */
+    private static final class Call {
+        private final String name;
+        private final int sensor;
+        private final boolean flag;
+        private final ArmingStatus arming;
+
+        private Call(String name, int sensor, boolean flag, ArmingStatus arming) {
+            this.name = name;
+            this.sensor = sensor;
+            this.flag = flag;
+            this.arming = arming;
+        }
+
+        private void apply(SecurityService service, List<Sensor> sensors) {
+            switch (name) {
+                case "sensor" -> service.changeSensorActivationStatus(sensors.get(sensor), flag);
+                case "arm" -> service.setArmingStatus(arming);
+                default -> service.processImage(flag ? CAT : NO_CAT);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return switch (name) {
+                case "sensor" -> "sensor" + sensor + (flag ? "+" : "-");
+                case "arm" -> arming.name();
+                default -> flag ? "cat" : "no-cat";
+            };
+        }
+    }
+
+    /**
+     * Starting state and concurrent calls.
+     */
+    private static final class Scenario {
+        private final ArmingStatus arming;
+        private final AlarmStatus alarm;
+        private final boolean[] active = new boolean[SENSORS];
+        private final boolean catSeen;
+        private final List<Call> calls = new ArrayList<>();
+        private final UUID[] ids = new UUID[SENSORS];
+
+        private Scenario(SplittableRandom random) {
+            arming = ArmingStatus.values()[random.nextInt(ArmingStatus.values().length)];
+            alarm = AlarmStatus.values()[random.nextInt(AlarmStatus.values().length)];
+            for (int i = 0; i < SENSORS; i++) {
+                active[i] = random.nextBoolean();
+                ids[i] = new UUID(0, i);
+            }
+            catSeen = random.nextBoolean();
+            int count = 2 + random.nextInt(2);
+            for (int i = 0; i < count; i++) {
+                switch (random.nextInt(3)) {
+                    case 0 -> calls.add(new Call("sensor", random.nextInt(SENSORS), random.nextBoolean(), null));
+                    case 1 -> calls.add(new Call("arm", 0, false,
+                            ArmingStatus.values()[random.nextInt(ArmingStatus.values().length)]));
+                    default -> calls.add(new Call("image", 0, random.nextBoolean(), null));
+                }
+            }
+        }
+
+        /**
+         * @return a service in the starting state, on top of the given repository
+         */
+        private SecurityService start(SecurityRepository repository, List<Sensor> sensors) {
+            SecurityService service = new SecurityService(repository, IMAGE_SERVICE);
+            for (int i = 0; i < SENSORS; i++) {
+                Sensor sensor = new Sensor(ids[i], "sensor" + i, SensorType.DOOR, active[i]);
+                service.addSensor(sensor);
+                sensors.add(sensor);
+            }
+            //the verdict sets catSeen, the statuses are then put back as the scenario wants them
+            service.processImage(catSeen ? CAT : NO_CAT);
+            repository.setArmingStatus(arming);
+            repository.setAlarmStatus(alarm);
+            return service;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sensors = new StringBuilder();
+            for (boolean a : active) {
+                sensors.append(a ? '1' : '0');
+            }
+            return arming + "/" + alarm + " sensors " + sensors + (catSeen ? " cat seen" : "") + ", calls " + calls;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        ConcurrencyStress stress = new ConcurrencyStress();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--mode" -> stress.mode = args[++i];
+                case "--scenarios" -> stress.scenarios = Integer.parseInt(args[++i]);
+                case "--runs" -> stress.runs = Integer.parseInt(args[++i]);
+                case "--seed" -> stress.seed = Long.parseLong(args[++i]);
+                case "--scenario" -> stress.onlyScenario = Integer.parseInt(args[++i]);
+                case "--replay" -> stress.replay = Long.parseLong(args[++i]);
+                case "--locked" -> stress.locked = true;
+                case "--verbose" -> stress.verbose = true;
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (!stress.mode.equals("stress") && !stress.mode.equals("interleave")) {
+            throw new IllegalArgumentException("Unknown mode " + stress.mode);
+        }
+        if (stress.locked && stress.mode.equals("interleave")) {
+            //an actor switched out while holding the lock would block the one switched in
+            throw new IllegalArgumentException("--locked only applies to stress mode");
+        }
+        System.exit(stress.run() ? 0 : 1);
+    }
+
+    /**
+     * @return true if nothing forbidden was seen
+     */
+    public boolean run() throws Exception {
+        //the service prints blank lines for repeated activations
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(new ByteArrayOutputStream()));
+        int failedScenarios = 0;
+        long forbiddenRuns = 0;
+        long totalRuns = 0;
+        SplittableRandom random = new SplittableRandom(seed);
+        ExecutorService threads = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "stress-actor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            for (int s = 0; s < scenarios; s++) {
+                Scenario scenario = new Scenario(random.split());
+                if (onlyScenario >= 0 && s != onlyScenario) {
+                    continue;
+                }
+                Set<String> acceptable = acceptableOutcomes(scenario);
+                Map<String, Long> outcomes = new TreeMap<>();
+                Map<String, Long> firstSeed = new TreeMap<>();
+                int scenarioRuns = replay >= 0 ? 1 : runs;
+                for (int r = 0; r < scenarioRuns; r++) {
+                    long runSeed = replay >= 0 ? replay : r;
+                    String outcome = mode.equals("stress") ? stressRun(scenario, threads) : interleavedRun(scenario, runSeed);
+                    outcomes.merge(outcome, 1L, Long::sum);
+                    firstSeed.putIfAbsent(outcome, runSeed);
+                }
+                totalRuns += scenarioRuns;
+                long forbidden = outcomes.entrySet().stream()
+                        .filter(e -> !acceptable.contains(e.getKey())).mapToLong(Map.Entry::getValue).sum();
+                forbiddenRuns += forbidden;
+                if (forbidden > 0) {
+                    failedScenarios++;
+                }
+                if (forbidden > 0 || verbose) {
+                    out.printf("Scenario %d: %s%n", s, scenario);
+                    outcomes.forEach((outcome, count) -> {
+                        boolean ok = acceptable.contains(outcome);
+                        out.printf("  %-10s %8d  %s%s%n", ok ? "ACCEPTABLE" : "FORBIDDEN", count, outcome,
+                                ok || !mode.equals("interleave") ? "" : "  (--replay " + firstSeed.get(outcome) + ")");
+                    });
+                }
+            }
+        } finally {
+            threads.shutdownNow();
+            System.setOut(out);
+        }
+        out.printf("%s%s: %d runs, %d forbidden, in %d of %d scenarios%n", mode, locked ? " (locked)" : "",
+                totalRuns, forbiddenRuns, failedScenarios, onlyScenario >= 0 ? 1 : scenarios);
+        return forbiddenRuns == 0;
+    }
+
+    /**
+     * Runs every order of the scenario's calls one after the other.
+     */
+    private Set<String> acceptableOutcomes(Scenario scenario) {
+        Set<String> outcomes = new TreeSet<>();
+        for (List<Integer> order : permutations(scenario.calls.size())) {
+            List<Sensor> sensors = new ArrayList<>();
+            SecurityRepository repository = new InMemorySecurityRepositoryImpl();
+            SecurityService service = scenario.start(repository, sensors);
+            for (int call : order) {
+                scenario.calls.get(call).apply(service, sensors);
+            }
+            outcomes.add(outcome(repository, Collections.nCopies(order.size(), null)));
+        }
+        return outcomes;
+    }
+
+    private String stressRun(Scenario scenario, ExecutorService threads) throws InterruptedException {
+        List<Sensor> sensors = new ArrayList<>();
+        SecurityRepository repository = new InMemorySecurityRepositoryImpl();
+        SecurityService service = scenario.start(repository, sensors);
+        CountDownLatch ready = new CountDownLatch(scenario.calls.size());
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (Call call : scenario.calls) {
+            futures.add(threads.submit(() -> {
+                ready.countDown();
+                go.await();
+                apply(call, service, sensors);
+                return null;
+            }));
+        }
+        ready.await();
+        go.countDown();
+        List<Throwable> errors = new ArrayList<>();
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+                errors.add(null);
+            } catch (ExecutionException e) {
+                errors.add(e.getCause());
+            }
+        }
+        return outcome(repository, errors);
+    }
+
+    private String interleavedRun(Scenario scenario, long runSeed) throws InterruptedException {
+        List<Sensor> sensors = new ArrayList<>();
+        InMemorySecurityRepositoryImpl repository = new InMemorySecurityRepositoryImpl();
+        DeterministicInterleaver interleaver = new DeterministicInterleaver(runSeed);
+        SecurityService service = scenario.start(interleaver.wrap(repository), sensors);
+        List<Runnable> actors = new ArrayList<>();
+        for (Call call : scenario.calls) {
+            actors.add(() -> apply(call, service, sensors));
+        }
+        return outcome(repository, interleaver.run(actors));
+    }
+
+    private void apply(Call call, SecurityService service, List<Sensor> sensors) {
+        if (locked) {
+            synchronized (service) {
+                call.apply(service, sensors);
+            }
+        } else {
+            call.apply(service, sensors);
+        }
+    }
+
+    /**
+     * Alarm and arming status, the active flag of each sensor by id, and any errors.
+     */
+    private static String outcome(SecurityRepository repository, List<Throwable> errors) {
+        StringBuilder outcome = new StringBuilder()
+                .append(repository.getAlarmStatus()).append(' ').append(repository.getArmingStatus()).append(" sensors ");
+        for (int i = 0; i < SENSORS; i++) {
+            Sensor sensor = repository.getSensor(new UUID(0, i));
+            outcome.append(sensor == null ? '?' : sensor.getActive() ? '1' : '0');
+        }
+        for (Throwable error : errors) {
+            if (error != null) {
+                outcome.append(' ').append(error.getClass().getSimpleName());
+            }
+        }
+        return outcome.toString();
+    }
+
+    private static List<List<Integer>> permutations(int n) {
+        List<List<Integer>> result = new ArrayList<>();
+        permute(new ArrayList<>(), new boolean[n], result);
+        return result;
+    }
+
+    private static void permute(List<Integer> prefix, boolean[] used, List<List<Integer>> result) {
+        if (prefix.size() == used.length) {
+            result.add(new ArrayList<>(prefix));
+            return;
+        }
+        for (int i = 0; i < used.length; i++) {
+            if (!used[i]) {
+                used[i] = true;
+                prefix.add(i);
+                permute(prefix, used, result);
+                prefix.remove(prefix.size() - 1);
+                used[i] = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.udacity.securityservice.loadtest;
+
+import com.udacity.securityservice.data.AlarmStatus;
+import com.udacity.securityservice.data.ArmingStatus;
+import com.udacity.securityservice.data.SecurityRepository;
+import com.udacity.securityservice.data.Sensor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a few actors on their own threads but lets only one of them run at a time, switching
+ * between them at every call they make into a repository wrapped with {@link #wrap}. Which actor
+ * goes next is drawn from a seeded random number generator, so a seed always gives the same
+ * interleaving and a failure found with it can be replayed.
+ *
+ * Code between two repository calls runs without interruption, so the interleavings tried are
+ * the ones that can be told apart by the repository state each actor sees.
+ */
+class DeterministicInterleaver {
+
+    private static final long STEP_TIMEOUT_SECONDS = 10;
+
+    private final SplittableRandom random;
+    private final ThreadLocal<Integer> actorId = new ThreadLocal<>();
+    private final StringBuilder trace = new StringBuilder();
+
+    //guarded by this
+    private boolean[] finished;
+    private int running = -1;
+
+    DeterministicInterleaver(long seed) {
+        random = new SplittableRandom(seed);
+    }
+
+    /**
+     * Runs every actor to completion, one step at a time.
+     * @return the error thrown by each actor, null for the ones that finished normally
+     */
+    List<Throwable> run(List<Runnable> actors) throws InterruptedException {
+        int count = actors.size();
+        Throwable[] errors = new Throwable[count];
+        List<Thread> threads = new ArrayList<>();
+        synchronized (this) {
+            finished = new boolean[count];
+            running = pick();
+        }
+        for (int i = 0; i < count; i++) {
+            int id = i;
+            Thread thread = new Thread(() -> {
+                actorId.set(id);
+                try {
+                    awaitTurn(id);
+                    actors.get(id).run();
+                } catch (Throwable t) {
+                    errors[id] = t;
+                } finally {
+                    finish(id);
+                }
+            }, "actor-" + i);
+            thread.setDaemon(true);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(STEP_TIMEOUT_SECONDS * 10));
+            if (thread.isAlive()) {
+                throw new IllegalStateException("Actor " + thread.getName() + " never finished, trace " + trace);
+            }
+        }
+        List<Throwable> result = new ArrayList<>();
+        for (Throwable error : errors) {
+            result.add(error);
+        }
+        return result;
+    }
+
+    /**
+     * @return the actor chosen at each step, as a string of actor numbers
+     */
+    synchronized String getTrace() {
+        return trace.toString();
+    }
+
+    /**
+     * Wraps the repository so every call is a point where another actor may be switched in.
+     * Calls from threads that aren't actors, such as during setup, go straight through.
+     */
+    SecurityRepository wrap(SecurityRepository repository) {
+        return new SecurityRepository() {
+            @Override
+            public void addSensor(Sensor sensor) {
+                step();
+                repository.addSensor(sensor);
+            }
+
+            @Override
+            public void removeSensor(Sensor sensor) {
+                step();
+                repository.removeSensor(sensor);
+            }
+
+            @Override
+            public void updateSensor(Sensor sensor) {
+                step();
+                repository.updateSensor(sensor);
+            }
+
+            @Override
+            public void setAlarmStatus(AlarmStatus alarmStatus) {
+                step();
+                repository.setAlarmStatus(alarmStatus);
+            }
+
+            @Override
+            public void setArmingStatus(ArmingStatus armingStatus) {
+                step();
+                repository.setArmingStatus(armingStatus);
+            }
+
+            @Override
+            public Set<Sensor> getSensors() {
+                step();
+                return repository.getSensors();
+            }
+
+            @Override
+            public AlarmStatus getAlarmStatus() {
+                step();
+                return repository.getAlarmStatus();
+            }
+
+            @Override
+            public ArmingStatus getArmingStatus() {
+                step();
+                return repository.getArmingStatus();
+            }
+        };
+    }
+
+    private void step() {
+        Integer id = actorId.get();
+        if (id == null) {
+            return;
+        }
+        synchronized (this) {
+            running = pick();
+            notifyAll();
+        }
+        awaitTurn(id);
+    }
+
+    private synchronized void awaitTurn(int id) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(STEP_TIMEOUT_SECONDS);
+        while (running != id) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0) {
+                throw new IllegalStateException("Actor " + id + " starved, trace " + trace);
+            }
+            try {
+                TimeUnit.NANOSECONDS.timedWait(this, left);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted", ie);
+            }
+        }
+    }
+
+    private synchronized void finish(int id) {
+        finished[id] = true;
+        running = pick();
+        notifyAll();
+    }
+
+    /**
+     * Draws the next actor among the unfinished ones, or -1 once all are done. Call holding the lock.
+     */
+    private int pick() {
+        int left = 0;
+        for (boolean done : finished) {
+            left += done ? 0 : 1;
+        }
+        if (left == 0) {
+            return -1;
+        }
+        int choice = random.nextInt(left);
+        for (int i = 0; i < finished.length; i++) {
+            if (!finished[i] && choice-- == 0) {
+                trace.append(i);
+                return i;
+            }
+        }
+        throw new AssertionError();
+    }
+}
@@ -0,0 +1,293 @@
+package com.udacity.securityservice.loadtest;
+
+import com.udacity.imageservice.FakeImageService;
+import com.udacity.imageservice.IService;
+import com.udacity.imageservice.ImagePreparer;
+import com.udacity.securityservice.data.ArmingStatus;
+import com.udacity.securityservice.data.InMemorySecurityRepositoryImpl;
+import com.udacity.securityservice.data.SecurityRepository;
+import com.udacity.securityservice.data.Sensor;
+import com.udacity.securityservice.data.SensorType;
+import com.udacity.securityservice.data.WriteBehindSecurityRepository;
+import com.udacity.securityservice.service.FrameSampler;
+import com.udacity.securityservice.service.SecurityService;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Soak test for the SecurityService. Drives it with a synthetic population of sensors, a camera feed
+ * built from the sample images and a rotating arming schedule, at fixed rates, and prints throughput,
+ * latency percentiles, heap and GC figures at every report interval.
+ *
+ * Usage: {@code SoakTest [--sensors-per-type n] [--sensor-rate perSecond] [--camera-rate perSecond]
+ * [--cat-ratio 0..1] [--arming-period seconds] [--duration seconds] [--report-interval seconds]
+ * [--cat-image file] [--not-cat-image file] [--cameras n] [--adaptive-sampling] [--write-behind]
+ * [--fake-image-service] [--seed n]}
+ *
+ * The load is open-loop: every operation has a due time, and its latency is measured from that due
+ * time rather than from when the driver got around to it, so a stall shows up in the percentiles of
+ * everything queued behind it. All calls are made from one thread, as the service isn't thread safe.
+ * Camera frames are spread round-robin over the cameras, and with adaptive sampling a
+ * {@link FrameSampler} decides which of them reach the service.
+ */
+public class SoakTest {
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final ArmingStatus[] ARMING_SCHEDULE = {ArmingStatus.DISARMED, ArmingStatus.ARMED_HOME, ArmingStatus.ARMED_AWAY};
+
+    private int sensorsPerType = 1000;
+    private long sensorRate = 10_000;
+    private long cameraRate = 10;
+    private double catRatio = 0.2;
+    private long armingPeriodSeconds = 10;
+    private long durationSeconds = 60;
+    private long reportIntervalSeconds = 5;
+    private File catImage = new File("sample-cat.jpg");
+    private File notCatImage = new File("sample-not-cat.jpg");
+    private int cameras = 4;
+    private boolean adaptiveSampling;
+    private boolean writeBehind;
+    private boolean fakeImageService;
+    private long seed = 42;
+
+    private final LatencyHistogram sensorLatency = new LatencyHistogram();
+    private final LatencyHistogram cameraLatency = new LatencyHistogram();
+    private final LatencyHistogram armingLatency = new LatencyHistogram();
+    private final LatencyHistogram totalSensorLatency = new LatencyHistogram();
+    private final LatencyHistogram totalCameraLatency = new LatencyHistogram();
+    private final LatencyHistogram totalArmingLatency = new LatencyHistogram();
+
+    private long lastGcCount;
+    private long lastGcMillis;
+    private long totalGcCount;
+    private long totalGcMillis;
+
+    public static void main(String[] args) throws IOException {
+        SoakTest test = new SoakTest();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--sensors-per-type" -> test.sensorsPerType = Integer.parseInt(args[++i]);
+                case "--sensor-rate" -> test.sensorRate = Long.parseLong(args[++i]);
+                case "--camera-rate" -> test.cameraRate = Long.parseLong(args[++i]);
+                case "--cat-ratio" -> test.catRatio = Double.parseDouble(args[++i]);
+                case "--arming-period" -> test.armingPeriodSeconds = Long.parseLong(args[++i]);
+                case "--duration" -> test.durationSeconds = Long.parseLong(args[++i]);
+                case "--report-interval" -> test.reportIntervalSeconds = Long.parseLong(args[++i]);
+                case "--cat-image" -> test.catImage = new File(args[++i]);
+                case "--not-cat-image" -> test.notCatImage = new File(args[++i]);
+                case "--cameras" -> test.cameras = Integer.parseInt(args[++i]);
+                case "--adaptive-sampling" -> test.adaptiveSampling = true;
+                case "--write-behind" -> test.writeBehind = true;
+                case "--fake-image-service" -> test.fakeImageService = true;
+                case "--seed" -> test.seed = Long.parseLong(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        test.run();
+    }
+
+    public void run() throws IOException {
+        ImagePreparer imagePreparer = new ImagePreparer(300, 225);
+        BufferedImage catFrame = imagePreparer.prepare(catImage);
+        BufferedImage notCatFrame = imagePreparer.prepare(notCatImage);
+        //the frames are recognised by identity, so the run measures the service rather than a classifier
+        IService imageService = fakeImageService ? new FakeImageService() : (image, threshold) -> image == catFrame;
+
+        SecurityRepository repository = new InMemorySecurityRepositoryImpl();
+        WriteBehindSecurityRepository writeBehindRepository = null;
+        if (writeBehind) {
+            writeBehindRepository = new WriteBehindSecurityRepository(repository);
+            repository = writeBehindRepository;
+        }
+        SecurityService securityService = new SecurityService(repository, imageService);
+        FrameSampler frameSampler = null;
+        if (adaptiveSampling) {
+            frameSampler = new FrameSampler(securityService);
+            securityService.addStatusListener(frameSampler);
+        }
+        String[] cameraIds = new String[cameras];
+        for (int c = 0; c < cameras; c++) {
+            cameraIds[c] = "camera-" + c;
+        }
+        long cameraFrame = 0;
+        List<Sensor> sensors = new ArrayList<>();
+        for (SensorType type : SensorType.values()) {
+            for (int n = 0; n < sensorsPerType; n++) {
+                Sensor sensor = new Sensor(UUID.randomUUID(), type + "-" + n, type, false);
+                securityService.addSensor(sensor);
+                sensors.add(sensor);
+            }
+        }
+
+        System.out.printf("Soak test: %d sensors, %d sensor events/s, %d frames/s, arming change every %ds, %ds%s%n",
+                sensors.size(), sensorRate, cameraRate, armingPeriodSeconds, durationSeconds,
+                writeBehind ? ", write-behind repository" : "");
+        System.out.printf("%8s %10s %10s %10s %10s %10s %10s %10s %8s %8s%n",
+                "time", "ops/s", "sensor p50", "p99", "p99.9", "camera p99", "arming p99", "heap MB", "gc", "gc ms");
+
+        SplittableRandom random = new SplittableRandom(seed);
+        long sensorInterval = sensorRate > 0 ? NANOS_PER_SECOND / sensorRate : Long.MAX_VALUE;
+        long cameraInterval = cameraRate > 0 ? NANOS_PER_SECOND / cameraRate : Long.MAX_VALUE;
+        long armingInterval = armingPeriodSeconds > 0 ? TimeUnit.SECONDS.toNanos(armingPeriodSeconds) : Long.MAX_VALUE;
+        long reportInterval = TimeUnit.SECONDS.toNanos(reportIntervalSeconds);
+
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(durationSeconds);
+        //a disabled stream is never due
+        long nextSensor = sensorRate > 0 ? start : Long.MAX_VALUE;
+        long nextCamera = cameraRate > 0 ? start : Long.MAX_VALUE;
+        long nextArming = armingPeriodSeconds > 0 ? start : Long.MAX_VALUE;
+        long nextReport = start + reportInterval;
+        long lastReport = start;
+        int armingStep = 0;
+        long operations = 0;
+        long heapAtStart = heapAfterGc();
+        sampleGc();
+
+        while (true) {
+            long due = Math.min(Math.min(nextSensor, nextCamera), Math.min(nextArming, nextReport));
+            if (due >= end) {
+                break;
+            }
+            waitUntil(due);
+            if (due == nextReport) {
+                long now = System.nanoTime();
+                report(now - start, operations * NANOS_PER_SECOND / Math.max(1, now - lastReport));
+                operations = 0;
+                lastReport = now;
+                nextReport += reportInterval;
+                continue;
+            }
+            if (due == nextArming) {
+                securityService.setArmingStatus(ARMING_SCHEDULE[armingStep++ % ARMING_SCHEDULE.length]);
+                armingLatency.record(System.nanoTime() - due);
+                nextArming += armingInterval;
+            } else if (due == nextCamera) {
+                String cameraId = cameraIds[(int) (cameraFrame++ % cameras)];
+                boolean cat = random.nextDouble() < catRatio;
+                if (frameSampler == null || frameSampler.shouldAnalyze(cameraId)) {
+                    securityService.processImage(cat ? catFrame : notCatFrame);
+                }
+                cameraLatency.record(System.nanoTime() - due);
+                nextCamera += cameraInterval;
+            } else {
+                Sensor sensor = sensors.get(random.nextInt(sensors.size()));
+                securityService.changeSensorActivationStatus(sensor, !sensor.getActive());
+                sensorLatency.record(System.nanoTime() - due);
+                nextSensor += sensorInterval;
+            }
+            operations++;
+        }
+
+        if (writeBehindRepository != null) {
+            writeBehindRepository.close();
+        }
+        long elapsed = System.nanoTime() - start;
+        report(elapsed, operations * NANOS_PER_SECOND / Math.max(1, System.nanoTime() - lastReport));
+        long heapAtEnd = heapAfterGc();
+
+        System.out.printf("%nTotals over %.1fs%n", elapsed / 1e9);
+        summarize("sensor events", totalSensorLatency, elapsed);
+        summarize("camera frames", totalCameraLatency, elapsed);
+        summarize("arming changes", totalArmingLatency, elapsed);
+        if (totalGcCount > 0) {
+            System.out.printf("  heap after gc: %.1f MB at start, %.1f MB at end (%+.1f MB)%n",
+                    heapAtStart / 1e6, heapAtEnd / 1e6, (heapAtEnd - heapAtStart) / 1e6);
+        } else {
+            System.out.printf("  heap: no collections during the run, %.1f MB in use%n",
+                    ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() / 1e6);
+        }
+        System.out.printf("  gc: %d collections, %d ms total (%.2f%% of run time)%n",
+                totalGcCount, totalGcMillis, totalGcMillis * 100.0 / TimeUnit.NANOSECONDS.toMillis(elapsed));
+        if (frameSampler != null) {
+            System.out.printf("  adaptive sampling: %d frames analyzed, %d skipped%n", frameSampler.getAnalyzed(), frameSampler.getSkipped());
+        }
+        System.out.printf("  final state: %s, %s%n", securityService.getArmingStatus(), securityService.getAlarmStatus());
+    }
+
+    private void report(long elapsed, long opsPerSecond) {
+        long[] gc = sampleGc();
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        System.out.printf("%7.0fs %10d %10s %10s %10s %10s %10s %10.1f %8d %8d%n",
+                elapsed / 1e9, opsPerSecond,
+                micros(sensorLatency.percentile(50)), micros(sensorLatency.percentile(99)), micros(sensorLatency.percentile(99.9)),
+                micros(cameraLatency.percentile(99)), micros(armingLatency.percentile(99)),
+                heap.getUsed() / 1e6, gc[0], gc[1]);
+        merge(sensorLatency, totalSensorLatency);
+        merge(cameraLatency, totalCameraLatency);
+        merge(armingLatency, totalArmingLatency);
+    }
+
+    private static void summarize(String name, LatencyHistogram histogram, long elapsed) {
+        System.out.printf("  %-15s %10d ops %10.0f/s  p50 %s  p90 %s  p99 %s  p99.9 %s  max %s%n",
+                name, histogram.getCount(), histogram.getCount() * 1e9 / elapsed,
+                micros(histogram.percentile(50)), micros(histogram.percentile(90)), micros(histogram.percentile(99)),
+                micros(histogram.percentile(99.9)), micros(histogram.getMax()));
+    }
+
+    /**
+     * Moves an interval's latencies into the run totals. Percentiles of the totals are then only as
+     * precise as the interval histograms, which is the same bucket precision.
+     */
+    private static void merge(LatencyHistogram interval, LatencyHistogram total) {
+        total.add(interval);
+        interval.reset();
+    }
+
+    /**
+     * @return collections and milliseconds spent collecting since the previous sample
+     */
+    private long[] sampleGc() {
+        long count = 0;
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        long[] delta = {count - lastGcCount, millis - lastGcMillis};
+        lastGcCount = count;
+        lastGcMillis = millis;
+        totalGcCount += delta[0];
+        totalGcMillis += delta[1];
+        return delta;
+    }
+
+    /**
+     * @return heap still in use after the most recent collection of each pool, which unlike the
+     * current usage doesn't include garbage waiting to be collected
+     */
+    private static long heapAfterGc() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            MemoryUsage usage = pool.getCollectionUsage();
+            if (pool.getType() == MemoryType.HEAP && usage != null) {
+                used += usage.getUsed();
+            }
+        }
+        return used;
+    }
+
+    private static void waitUntil(long due) {
+        long wait;
+        while ((wait = due - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(wait);
+        }
+    }
+
+    private static String micros(long nanos) {
+        return nanos >= 10_000_000 ? (nanos / 1_000_000) + "ms" : (nanos / 1000) + "us";
+    }
+}
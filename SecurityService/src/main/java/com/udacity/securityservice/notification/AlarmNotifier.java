@@ -0,0 +1,40 @@
+package com.udacity.securityservice.notification;
+
+import com.udacity.securityservice.application.StatusListener;
+import com.udacity.securityservice.data.AlarmStatus;
+
+/**
+ * Sends a notification through the dispatcher when a site's alarm goes off, and again when an
+ * alarm is cleared. Pending alarms are not reported. Register one per SecurityService.
+ */
+public class AlarmNotifier implements StatusListener {
+
+    private final NotificationDispatcher dispatcher;
+    private final String site;
+    private AlarmStatus lastStatus = AlarmStatus.NO_ALARM;
+
+    public AlarmNotifier(NotificationDispatcher dispatcher, String site) {
+        this.dispatcher = dispatcher;
+        this.site = site;
+    }
+
+    @Override
+    public void notify(AlarmStatus status) {
+        AlarmStatus previous = lastStatus;
+        lastStatus = status;
+        if (status == AlarmStatus.ALARM && previous != AlarmStatus.ALARM
+                || status == AlarmStatus.NO_ALARM && previous == AlarmStatus.ALARM) {
+            dispatcher.enqueue(site, status);
+        }
+    }
+
+    @Override
+    public void catDetected(boolean catDetected) {
+        //no behavior necessary
+    }
+
+    @Override
+    public void sensorStatusChanged() {
+        //no behavior necessary
+    }
+}
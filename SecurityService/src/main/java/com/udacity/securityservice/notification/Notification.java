@@ -0,0 +1,40 @@
+package com.udacity.securityservice.notification;
+
+import com.udacity.securityservice.data.AlarmStatus;
+
+/**
+ * An alarm status change at one site, waiting to be sent to every destination.
+ */
+public final class Notification {
+
+    private final long id;
+    private final String site;
+    private final AlarmStatus status;
+    private final long timestamp;
+
+    Notification(long id, String site, AlarmStatus status, long timestamp) {
+        this.id = id;
+        this.site = site;
+        this.status = status;
+        this.timestamp = timestamp;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getSite() {
+        return site;
+    }
+
+    public AlarmStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * @return epoch millis at which the status changed
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
@@ -0,0 +1,144 @@
+package com.udacity.securityservice.notification;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpServer;
+import com.udacity.imageservice.FakeImageService;
+import com.udacity.securityservice.data.AlarmStatus;
+import com.udacity.securityservice.data.InMemorySecurityRepositoryImpl;
+import com.udacity.securityservice.service.SecurityService;
+
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sets off the alarm at many sites at once and delivers the notifications to a local stand-in
+ * webhook server.
+ *
+ * Usage:
+ * <pre>
+ *   NotificationDemo [--sites n] [--rate requestsPerSecond] [--burst n] [--max-batch n]
+ *                    [--fail-first n] [--delay millis]
+ * </pre>
+ * The server answers 503 to its first requests and can be made slow, to exercise retries. Halfway
+ * through delivery the dispatcher is closed and a new one opened on the same queue file, as if the
+ * process had restarted. At the end the demo checks that every site was delivered at least once.
+ *
+ * The server needs the jdk.httpserver module, which the application itself doesn't require, so on
+ * the module path run the demo with {@code --add-modules jdk.httpserver}.
+ */
+public class NotificationDemo {
+
+    public static void main(String[] args) throws Exception {
+        int sites = 5000;
+        double rate = 20;
+        int burst = 5;
+        int maxBatch = 500;
+        int failFirst = 3;
+        long delay = 20;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--sites" -> sites = Integer.parseInt(args[++i]);
+                case "--rate" -> rate = Double.parseDouble(args[++i]);
+                case "--burst" -> burst = Integer.parseInt(args[++i]);
+                case "--max-batch" -> maxBatch = Integer.parseInt(args[++i]);
+                case "--fail-first" -> failFirst = Integer.parseInt(args[++i]);
+                case "--delay" -> delay = Long.parseLong(args[++i]);
+                default -> {
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(2);
+                }
+            }
+        }
+
+        //stand-in webhook receiver
+        boolean[] seen = new boolean[sites];
+        AtomicLong received = new AtomicLong();
+        AtomicInteger requests = new AtomicInteger();
+        int failures = failFirst;
+        long serverDelay = delay;
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/alarms", exchange -> {
+            try (InputStream body = exchange.getRequestBody()) {
+                String json = new String(body.readAllBytes(), StandardCharsets.UTF_8);
+                Thread.sleep(serverDelay);
+                if (requests.incrementAndGet() <= failures) {
+                    exchange.sendResponseHeaders(503, -1);
+                    return;
+                }
+                JsonObject digest = JsonParser.parseString(json).getAsJsonObject();
+                digest.getAsJsonArray("notifications").forEach(n -> {
+                    String site = n.getAsJsonObject().get("site").getAsString();
+                    synchronized (seen) {
+                        seen[Integer.parseInt(site.substring("site-".length()))] = true;
+                    }
+                });
+                received.addAndGet(digest.get("count").getAsLong());
+                exchange.sendResponseHeaders(204, -1);
+            } catch (InterruptedException ie) {
+                exchange.sendResponseHeaders(500, -1);
+            } finally {
+                exchange.close();
+            }
+        });
+        server.setExecutor(Executors.newFixedThreadPool(4));
+        server.start();
+        List<URI> destinations = List.of(URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/alarms"));
+        Path queueFile = Files.createTempFile("notifications", ".queue");
+
+        NotificationDispatcher dispatcher = new NotificationDispatcher(queueFile, destinations, rate, burst, maxBatch);
+        dispatcher.start();
+        List<SecurityService> services = new ArrayList<>();
+        for (int s = 0; s < sites; s++) {
+            SecurityService service = new SecurityService(new InMemorySecurityRepositoryImpl(), new FakeImageService());
+            service.addStatusListener(new AlarmNotifier(dispatcher, "site-" + s));
+            services.add(service);
+        }
+
+        long start = System.nanoTime();
+        long[] latencies = new long[sites];
+        for (int s = 0; s < sites; s++) {
+            long before = System.nanoTime();
+            services.get(s).setAlarmStatus(AlarmStatus.ALARM);
+            latencies[s] = System.nanoTime() - before;
+        }
+        long raised = System.nanoTime() - start;
+        Arrays.sort(latencies);
+        System.out.printf("Raised %d alarms in %.1f ms, setAlarmStatus p50 %.1f us, p99 %.1f us, max %.1f us%n",
+                sites, raised / 1e6, latencies[sites / 2] / 1e3, latencies[sites * 99 / 100] / 1e3, latencies[sites - 1] / 1e3);
+
+        while (dispatcher.getDelivered() < sites / 2) {
+            Thread.sleep(10);
+        }
+        dispatcher.close();
+        System.out.printf("Restarting after %d delivered in %d requests (%d failed)%n",
+                dispatcher.getDelivered(), dispatcher.getRequests(), dispatcher.getFailedRequests());
+        dispatcher = new NotificationDispatcher(queueFile, destinations, rate, burst, maxBatch);
+        System.out.printf("Recovered %d undelivered notifications%n", dispatcher.getOutstanding());
+        dispatcher.start();
+        while (dispatcher.getOutstanding() > 0) {
+            Thread.sleep(10);
+        }
+        dispatcher.close();
+
+        int missing = 0;
+        for (boolean delivered : seen) {
+            missing += delivered ? 0 : 1;
+        }
+        System.out.printf("Delivered %d notifications for %d sites in %d requests over %.2f s, %d sites missing%n",
+                received.get(), sites, requests.get(), (System.nanoTime() - start) / 1e9, missing);
+        server.stop(0);
+        Files.deleteIfExists(queueFile);
+        System.exit(missing == 0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,361 @@
+package com.udacity.securityservice.notification;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.udacity.securityservice.data.AlarmStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Delivers alarm notifications to webhook destinations as JSON POSTs.
+ *
+ * {@link #enqueue} only adds to a lock-free queue and wakes the dispatcher thread, so raising an
+ * alarm never waits on the network or the disk. The dispatcher thread writes each notification to
+ * the {@link NotificationQueue} and forces it to disk before sending it anywhere, and marks it
+ * delivered per destination once the destination answers with a 2xx status. Anything not yet
+ * acknowledged when the process stops is sent again on the next start, so a destination may see
+ * a notification twice but never misses one.
+ *
+ * Each destination has its own token bucket, allowing {@code requestsPerSecond} requests with bursts
+ * of up to {@code burst}, and up to {@value #MAX_IN_FLIGHT} requests in flight at once over the
+ * shared HttpClient. Notifications that arrive while a destination is out of tokens wait and go
+ * out together in one digest of up to {@code maxBatch}, so a burst of alarms becomes a few requests.
+ * A failed request puts its notifications back at the front and pauses the destination, for half a
+ * second at first and doubling up to a minute while failures continue.
+ *
+ * Every request body has the form
+ * <pre>
+ *   {"count": 2, "notifications": [{"id": 7, "site": "home", "status": "ALARM", "timestamp": 1700000000000}, ...]}
+ * </pre>
+ */
+public class NotificationDispatcher implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(NotificationDispatcher.class);
+
+    private static final int MAX_IN_FLIGHT = 4;
+    private static final long MIN_BACKOFF_MILLIS = 500;
+    private static final long MAX_BACKOFF_MILLIS = 60_000;
+    private static final long IDLE_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long COMPACT_BYTES = 1024 * 1024;
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
+
+    private final HttpClient client;
+    private final NotificationQueue queue;
+    private final List<Destination> destinations = new ArrayList<>();
+    private final double requestsPerSecond;
+    private final int burst;
+    private final int maxBatch;
+    private final AtomicLong nextId;
+    private final ConcurrentLinkedQueue<Notification> incoming = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Result> results = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    private volatile boolean running;
+
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder failedRequests = new LongAdder();
+    private volatile long outstanding;
+
+    /**
+     * Opens the queue file, picking up anything left undelivered by a previous run for destinations
+     * that are still configured. Call {@link #start()} to begin sending.
+     * @param queueFile Where to keep undelivered notifications
+     * @param destinations Webhook URIs, each sent every notification
+     * @param requestsPerSecond Steady request rate allowed per destination
+     * @param burst Requests a destination may be sent back to back after being idle
+     * @param maxBatch Most notifications sent in one request
+     */
+    public NotificationDispatcher(Path queueFile, List<URI> destinations, double requestsPerSecond, int burst,
+                                  int maxBatch) throws IOException {
+        if (requestsPerSecond <= 0 || burst <= 0 || maxBatch <= 0) {
+            throw new IllegalArgumentException("requestsPerSecond, burst and maxBatch must be positive");
+        }
+        this.requestsPerSecond = requestsPerSecond;
+        this.burst = burst;
+        this.maxBatch = maxBatch;
+        client = HttpClient.newBuilder()
+                .connectTimeout(REQUEST_TIMEOUT)
+                .build();
+        queue = new NotificationQueue(queueFile);
+        nextId = new AtomicLong(queue.getLastId());
+
+        Map<String, Destination> byKey = new HashMap<>();
+        long now = System.nanoTime();
+        for (URI uri : destinations) {
+            Destination destination = new Destination(uri, burst, now);
+            this.destinations.add(destination);
+            byKey.put(destination.key, destination);
+        }
+        for (NotificationQueue.Entry entry : queue.getRecovered()) {
+            Destination destination = byKey.get(entry.destination);
+            if (destination != null) {
+                destination.pending.add(entry.notification);
+            } else {
+                //the destination is gone, so is the obligation to deliver to it
+                queue.delivered(entry.destination, entry.notification.getId());
+            }
+        }
+        updateOutstanding();
+
+        thread = new Thread(this::run, "notification-dispatcher");
+        thread.setDaemon(true);
+    }
+
+    public void start() {
+        running = true;
+        thread.start();
+    }
+
+    /**
+     * Queues a notification for every destination. Never blocks.
+     */
+    public void enqueue(String site, AlarmStatus status) {
+        incoming.add(new Notification(nextId.incrementAndGet(), site, status, System.currentTimeMillis()));
+        enqueued.increment();
+        LockSupport.unpark(thread);
+    }
+
+    public long getEnqueued() {
+        return enqueued.sum();
+    }
+
+    /**
+     * @return notifications acknowledged, counted once per destination
+     */
+    public long getDelivered() {
+        return delivered.sum();
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getFailedRequests() {
+        return failedRequests.sum();
+    }
+
+    /**
+     * @return notifications waiting or in flight, counted once per destination, as of the
+     * dispatcher's last pass. Excludes notifications enqueued since.
+     */
+    public long getOutstanding() {
+        return outstanding;
+    }
+
+    /**
+     * Stops sending and closes the queue file. Notifications not yet acknowledged stay in the file
+     * for the next start; requests still in flight are not waited for.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        queue.close();
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                long waitNanos = dispatchOnce();
+                if (running) {
+                    LockSupport.parkNanos(this, waitNanos);
+                }
+            } catch (IOException ioe) {
+                //without the queue we can't promise delivery, so stop rather than send unrecorded notifications
+                log.error("Unable to write notification queue, stopping", ioe);
+                running = false;
+            }
+        }
+        try {
+            //record the results that came back in time
+            drainResults(System.nanoTime());
+        } catch (IOException ioe) {
+            log.warn("Unable to record delivered notifications", ioe);
+        }
+    }
+
+    /**
+     * @return how long to sleep before the next pass, unless woken earlier
+     */
+    private long dispatchOnce() throws IOException {
+        Notification notification;
+        while ((notification = incoming.poll()) != null) {
+            for (Destination destination : destinations) {
+                queue.added(destination.key, notification);
+                destination.pending.add(notification);
+            }
+        }
+        //nothing is sent before it's on disk
+        queue.sync();
+
+        long now = System.nanoTime();
+        drainResults(now);
+        long waitNanos = IDLE_NANOS;
+        for (Destination destination : destinations) {
+            waitNanos = Math.min(waitNanos, dispatch(destination, now));
+        }
+        updateOutstanding();
+        if (outstanding == 0 && incoming.isEmpty() && queue.size() > COMPACT_BYTES) {
+            queue.clear();
+        }
+        return Math.max(waitNanos, 0);
+    }
+
+    private void drainResults(long now) throws IOException {
+        Result result;
+        while ((result = results.poll()) != null) {
+            Destination destination = result.destination;
+            destination.inFlight--;
+            destination.inFlightNotifications -= result.batch.size();
+            if (result.success) {
+                for (Notification notification : result.batch) {
+                    queue.delivered(destination.key, notification.getId());
+                }
+                delivered.add(result.batch.size());
+                destination.backoffMillis = 0;
+            } else {
+                failedRequests.increment();
+                for (int i = result.batch.size() - 1; i >= 0; i--) {
+                    destination.pending.addFirst(result.batch.get(i));
+                }
+                destination.backoffMillis = destination.backoffMillis == 0
+                        ? MIN_BACKOFF_MILLIS : Math.min(MAX_BACKOFF_MILLIS, destination.backoffMillis * 2);
+                destination.retryAt = now + TimeUnit.MILLISECONDS.toNanos(destination.backoffMillis);
+                log.warn("Notification to {} failed, retrying {} notifications in {} ms: {}", destination.uri,
+                        result.batch.size(), destination.backoffMillis, result.failure);
+            }
+        }
+    }
+
+    /**
+     * Sends as many batches to the destination as its tokens and in-flight limit allow.
+     * @return how long until it could send again, if it has anything to send
+     */
+    private long dispatch(Destination destination, long now) {
+        if (destination.pending.isEmpty()) {
+            return IDLE_NANOS;
+        }
+        //nanoTime values only compare by their difference
+        if (now - destination.retryAt < 0) {
+            return destination.retryAt - now;
+        }
+        destination.tokens = Math.min(burst, destination.tokens + (now - destination.refilledAt) * requestsPerSecond / 1e9);
+        destination.refilledAt = now;
+        while (!destination.pending.isEmpty() && destination.inFlight < MAX_IN_FLIGHT && destination.tokens >= 1) {
+            destination.tokens -= 1;
+            List<Notification> batch = new ArrayList<>(Math.min(maxBatch, destination.pending.size()));
+            while (batch.size() < maxBatch && !destination.pending.isEmpty()) {
+                batch.add(destination.pending.poll());
+            }
+            send(destination, batch);
+        }
+        if (destination.pending.isEmpty() || destination.inFlight >= MAX_IN_FLIGHT) {
+            //a completed request wakes us up
+            return IDLE_NANOS;
+        }
+        return (long) ((1 - destination.tokens) * 1e9 / requestsPerSecond);
+    }
+
+    private void send(Destination destination, List<Notification> batch) {
+        HttpRequest request = HttpRequest.newBuilder(destination.uri)
+                .timeout(REQUEST_TIMEOUT)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(digest(batch)))
+                .build();
+        destination.inFlight++;
+        destination.inFlightNotifications += batch.size();
+        requests.increment();
+        client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+            String failure = error != null ? error.toString()
+                    : response.statusCode() / 100 != 2 ? "HTTP " + response.statusCode() : null;
+            results.add(new Result(destination, batch, failure));
+            LockSupport.unpark(thread);
+        });
+    }
+
+    private static String digest(List<Notification> batch) {
+        JsonArray notifications = new JsonArray();
+        for (Notification notification : batch) {
+            JsonObject json = new JsonObject();
+            json.addProperty("id", notification.getId());
+            json.addProperty("site", notification.getSite());
+            json.addProperty("status", notification.getStatus().name());
+            json.addProperty("timestamp", notification.getTimestamp());
+            notifications.add(json);
+        }
+        JsonObject digest = new JsonObject();
+        digest.addProperty("count", batch.size());
+        digest.add("notifications", notifications);
+        return digest.toString();
+    }
+
+    private void updateOutstanding() {
+        long total = 0;
+        for (Destination destination : destinations) {
+            total += destination.pending.size() + destination.inFlightNotifications;
+        }
+        outstanding = total;
+    }
+
+    /**
+     * Per-destination state, only touched by the dispatcher thread.
+     */
+    private static class Destination {
+        private final URI uri;
+        private final String key;
+        private final ArrayDeque<Notification> pending = new ArrayDeque<>();
+        private double tokens;
+        private long refilledAt;
+        private int inFlight;
+        private int inFlightNotifications;
+        private long retryAt;
+        private long backoffMillis;
+
+        Destination(URI uri, int burst, long now) {
+            this.uri = uri;
+            this.key = uri.toString();
+            this.tokens = burst;
+            this.refilledAt = now;
+            this.retryAt = now;
+        }
+    }
+
+    private static class Result {
+        private final Destination destination;
+        private final List<Notification> batch;
+        private final String failure;
+        private final boolean success;
+
+        Result(Destination destination, List<Notification> batch, String failure) {
+            this.destination = destination;
+            this.batch = batch;
+            this.failure = failure;
+            this.success = failure == null;
+        }
+    }
+}
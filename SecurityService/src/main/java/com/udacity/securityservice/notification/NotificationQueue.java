@@ -0,0 +1,181 @@
+package com.udacity.securityservice.notification;
+
+import com.udacity.securityservice.data.AlarmStatus;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only log of the notifications each destination still has to receive. A notification is
+ * added once per destination, and marked delivered per destination when that destination has
+ * accepted it, so after a restart each destination only gets what it hadn't acknowledged.
+ *
+ * Records are buffered until {@link #sync()}, which forces them to disk. Only used by the
+ * dispatcher thread.
+ *
+ * Receivers tell notifications apart by id, so ids must never be reused. The file starts with a
+ * record of the highest id handed out, which compaction and {@link #clear()} keep, so ids carry on
+ * from where they were even when no notification is left in the file.
+ */
+class NotificationQueue implements Closeable {
+
+    private static final byte ADDED = 1;
+    private static final byte DELIVERED = 2;
+    private static final byte HIGH_WATER = 3;
+
+    private final Path path;
+    private final List<Entry> recovered = new ArrayList<>();
+    private long lastId;
+    //highest id added since opening
+    private long addedId;
+    private FileChannel channel;
+    private DataOutputStream out;
+    private boolean dirty;
+
+    /**
+     * A notification that a destination hasn't acknowledged yet.
+     */
+    static final class Entry {
+        final String destination;
+        final Notification notification;
+
+        Entry(String destination, Notification notification) {
+            this.destination = destination;
+            this.notification = notification;
+        }
+    }
+
+    /**
+     * Opens the queue, reading back anything left undelivered and rewriting the file with only those
+     * records. A partially written trailing record, as left behind by a crash, is ignored.
+     */
+    NotificationQueue(Path path) throws IOException {
+        this.path = path;
+        Map<String, Entry> undelivered = new LinkedHashMap<>();
+        if (Files.exists(path)) {
+            try (InputStream is = Files.newInputStream(path);
+                 DataInputStream in = new DataInputStream(new BufferedInputStream(is))) {
+                while (true) {
+                    byte type = in.readByte();
+                    long id = in.readLong();
+                    String destination = in.readUTF();
+                    if (type == ADDED) {
+                        Notification notification = new Notification(id, in.readUTF(),
+                                AlarmStatus.valueOf(in.readUTF()), in.readLong());
+                        undelivered.put(destination + "#" + id, new Entry(destination, notification));
+                    } else if (type == DELIVERED) {
+                        undelivered.remove(destination + "#" + id);
+                    } else if (type != HIGH_WATER) {
+                        throw new IOException("Corrupt notification queue " + path);
+                    }
+                    lastId = Math.max(lastId, id);
+                }
+            } catch (EOFException eof) {
+                //end of queue
+            }
+        }
+        recovered.addAll(undelivered.values());
+
+        Path compacted = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream compactOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(compacted)))) {
+            writeHighWater(compactOut, lastId);
+            for (Entry entry : recovered) {
+                writeAdded(compactOut, entry.destination, entry.notification);
+            }
+        }
+        Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+    }
+
+    /**
+     * @return the notifications that were still undelivered when the queue was opened
+     */
+    List<Entry> getRecovered() {
+        return recovered;
+    }
+
+    /**
+     * @return the highest notification id ever added to the queue, as of when it was opened
+     */
+    long getLastId() {
+        return lastId;
+    }
+
+    void added(String destination, Notification notification) throws IOException {
+        writeAdded(out, destination, notification);
+        addedId = Math.max(addedId, notification.getId());
+        dirty = true;
+    }
+
+    void delivered(String destination, long id) throws IOException {
+        out.writeByte(DELIVERED);
+        out.writeLong(id);
+        out.writeUTF(destination);
+        dirty = true;
+    }
+
+    /**
+     * Forces every record written so far to disk.
+     */
+    void sync() throws IOException {
+        if (dirty) {
+            out.flush();
+            channel.force(false);
+            dirty = false;
+        }
+    }
+
+    /**
+     * Empties the file of notifications, keeping the highest id. Only call it when nothing is left
+     * undelivered.
+     */
+    void clear() throws IOException {
+        out.flush();
+        channel.truncate(0);
+        writeHighWater(out, Math.max(lastId, addedId));
+        dirty = true;
+        sync();
+    }
+
+    long size() throws IOException {
+        return channel.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        sync();
+        out.close();
+    }
+
+    private static void writeHighWater(DataOutputStream out, long id) throws IOException {
+        out.writeByte(HIGH_WATER);
+        out.writeLong(id);
+        out.writeUTF("");
+    }
+
+    private static void writeAdded(DataOutputStream out, String destination, Notification notification) throws IOException {
+        out.writeByte(ADDED);
+        out.writeLong(notification.getId());
+        out.writeUTF(destination);
+        out.writeUTF(notification.getSite());
+        out.writeUTF(notification.getStatus().name());
+        out.writeLong(notification.getTimestamp());
+    }
+}
@@ -0,0 +1,131 @@
+package com.udacity.securityservice.replication;
+
+import com.udacity.imageservice.FakeImageService;
+import com.udacity.securityservice.data.ArmingStatus;
+import com.udacity.securityservice.data.InMemorySecurityRepositoryImpl;
+import com.udacity.securityservice.data.Sensor;
+import com.udacity.securityservice.data.SensorType;
+import com.udacity.securityservice.service.SecurityService;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Headless node for trying replication with two processes on one machine.
+ *
+ * Usage:
+ * <pre>
+ *   ReplicationNode primary port [--sensors n] [--rate eventsPerSecond]
+ *   ReplicationNode standby host port [--takeover-port port] [--rate eventsPerSecond]
+ * </pre>
+ * The primary creates the sensors, then keeps toggling random sensors and now and then changes the
+ * arming status, printing its sequence and the standby's lag every second. The standby prints what
+ * it has applied. Kill the primary and the standby takes over, reports how far it had got, then
+ * generates events itself and accepts a new standby on the takeover port.
+ */
+public class ReplicationNode {
+
+    private final ScheduledExecutorService serviceThread = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "security-service");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final SecurityService securityService = new SecurityService(new InMemorySecurityRepositoryImpl(), new FakeImageService());
+    private final SplittableRandom random = new SplittableRandom();
+    private final long rate;
+
+    private ReplicationNode(long rate) {
+        this.rate = rate;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int sensors = 1000;
+        long rate = 10_000;
+        int takeoverPort = 0;
+        List<String> positional = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--sensors" -> sensors = Integer.parseInt(args[++i]);
+                case "--rate" -> rate = Long.parseLong(args[++i]);
+                case "--takeover-port" -> takeoverPort = Integer.parseInt(args[++i]);
+                default -> positional.add(args[i]);
+            }
+        }
+        ReplicationNode node = new ReplicationNode(rate);
+        if (positional.size() == 2 && positional.get(0).equals("primary")) {
+            node.runPrimary(Integer.parseInt(positional.get(1)), sensors);
+        } else if (positional.size() == 3 && positional.get(0).equals("standby")) {
+            node.runStandby(new InetSocketAddress(positional.get(1), Integer.parseInt(positional.get(2))), takeoverPort);
+        } else {
+            System.err.println("Usage: ReplicationNode primary port | standby host port [--takeover-port port]");
+            System.exit(2);
+        }
+    }
+
+    private void runPrimary(int port, int sensors) throws Exception {
+        serviceThread.submit(() -> {
+            for (int n = 0; n < sensors; n++) {
+                securityService.addSensor(new Sensor(new UUID(0, n), "sensor-" + n, SensorType.values()[n % 3], false));
+            }
+        }).get();
+        ReplicationPrimary primary = becomePrimary(port);
+        while (true) {
+            Thread.sleep(1000);
+            System.out.printf("primary sequence %d, standby lag %d, %d events in %d batches%n",
+                    securityService.getEventSequence(), primary.getReplicationLag(), primary.getEventsSent(), primary.getBatchesSent());
+        }
+    }
+
+    private void runStandby(InetSocketAddress primaryAddress, int takeoverPort) throws Exception {
+        ReplicationStandby standby = new ReplicationStandby(securityService, serviceThread, primaryAddress, 500, () -> {
+            System.out.printf("took over at %d ms since epoch, sequence %d: %s, %s, %d sensors active%n",
+                    System.currentTimeMillis(), securityService.getEventSequence(), securityService.getArmingStatus(), securityService.getAlarmStatus(),
+                    securityService.getSensors().stream().filter(Sensor::getActive).count());
+            try {
+                becomePrimary(takeoverPort);
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        });
+        standby.start();
+        while (!standby.isPromoted()) {
+            Thread.sleep(1000);
+            System.out.printf("standby applied %d, lag %d%n", standby.getAppliedSequence(), standby.getReplicationLag());
+        }
+        while (true) {
+            Thread.sleep(1000);
+            System.out.printf("now primary, sequence %d%n", securityService.getEventSequence());
+        }
+    }
+
+    /**
+     * Accepts a standby on the port and starts generating events on the service thread.
+     */
+    private ReplicationPrimary becomePrimary(int port) throws IOException {
+        ReplicationPrimary primary = new ReplicationPrimary(securityService, serviceThread,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 100_000);
+        primary.start();
+        long perTick = Math.max(1, rate / 100);
+        serviceThread.scheduleAtFixedRate(() -> {
+            List<Sensor> sensors = new ArrayList<>(securityService.getSensors());
+            for (long i = 0; i < perTick && !sensors.isEmpty(); i++) {
+                if (random.nextInt(1000) == 0) {
+                    securityService.setArmingStatus(ArmingStatus.values()[random.nextInt(3)]);
+                } else {
+                    Sensor sensor = sensors.get(random.nextInt(sensors.size()));
+                    securityService.changeSensorActivationStatus(sensor, !sensor.getActive());
+                }
+            }
+        }, 10, 10, TimeUnit.MILLISECONDS);
+        return primary;
+    }
+}
@@ -0,0 +1,319 @@
+package com.udacity.securityservice.replication;
+
+import com.udacity.securityservice.data.StateSnapshot;
+import com.udacity.securityservice.service.SecurityEvent;
+import com.udacity.securityservice.service.SecurityEventListener;
+import com.udacity.securityservice.service.SecurityService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Streams everything the SecurityService records to a {@link ReplicationStandby}, so the standby
+ * can take over if this process dies.
+ *
+ * A standby that connects first gets a snapshot of the whole state, taken on the service thread,
+ * and then every event recorded after it. Events are sent in batches of whatever was queued while
+ * the previous batch was being written, and the standby acknowledges each batch once it has
+ * applied it. A heartbeat goes out when there has been nothing to send for
+ * {@value ReplicationProtocol#HEARTBEAT_MILLIS}ms.
+ *
+ * If the standby falls more than {@code maxLag} events behind, it is told to resync and
+ * disconnected rather than letting the queue grow, and it catches up from a fresh snapshot when it
+ * reconnects. Only one standby is served at a time; a new connection replaces the old one, which is
+ * told it has been replaced. Either way the standby hears that this primary is alive before the
+ * connection closes, so it doesn't take over.
+ */
+public class ReplicationPrimary implements SecurityEventListener, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicationPrimary.class);
+
+    private final SecurityService securityService;
+    private final Executor serviceExecutor;
+    private final long maxLag;
+    private final ServerSocket serverSocket;
+    private final Thread acceptThread;
+    private volatile boolean running;
+
+    //guarded by this
+    private final ArrayDeque<SecurityEvent> unsent = new ArrayDeque<>();
+    private Socket standby;
+    //frame to send a standby that was let go on purpose, before closing its connection
+    private final Map<Socket, Byte> farewells = new HashMap<>();
+
+    private volatile long lastSequence;
+    private volatile long ackedSequence;
+    private final LongAdder eventsSent = new LongAdder();
+    private final LongAdder batchesSent = new LongAdder();
+
+    /**
+     * @param securityService Service to replicate
+     * @param serviceExecutor Runs tasks on the thread that owns the service, such as the event
+     *                        dispatch thread
+     * @param address Address to listen for the standby on. Port 0 picks a free port, see {@link #getPort()}.
+     * @param maxLag Unacknowledged events after which the standby is disconnected
+     */
+    public ReplicationPrimary(SecurityService securityService, Executor serviceExecutor, InetSocketAddress address,
+                              long maxLag) throws IOException {
+        this.securityService = securityService;
+        this.serviceExecutor = serviceExecutor;
+        this.maxLag = maxLag;
+        serverSocket = new ServerSocket();
+        serverSocket.bind(address);
+        acceptThread = new Thread(this::acceptStandbys, "replication-primary");
+        acceptThread.setDaemon(true);
+    }
+
+    public void start() {
+        running = true;
+        serviceExecutor.execute(() -> securityService.addEventListener(this));
+        acceptThread.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public synchronized boolean isStandbyConnected() {
+        return standby != null;
+    }
+
+    /**
+     * @return events recorded but not yet applied by the standby, or -1 if none is connected
+     */
+    public long getReplicationLag() {
+        return isStandbyConnected() ? lastSequence - ackedSequence : -1;
+    }
+
+    public long getEventsSent() {
+        return eventsSent.sum();
+    }
+
+    public long getBatchesSent() {
+        return batchesSent.sum();
+    }
+
+    @Override
+    public synchronized void eventRecorded(SecurityEvent event) {
+        lastSequence = event.getSequence();
+        if (standby == null) {
+            return;
+        }
+        if (lastSequence - ackedSequence > maxLag) {
+            log.warn("Standby is more than {} events behind, disconnecting it", maxLag);
+            retire(standby, ReplicationProtocol.RESYNC);
+            return;
+        }
+        unsent.add(event);
+        notifyAll();
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        serviceExecutor.execute(() -> securityService.removeEventListener(this));
+        serverSocket.close();
+        synchronized (this) {
+            if (standby != null) {
+                disconnect(standby);
+            }
+        }
+    }
+
+    private void acceptStandbys() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread sender = new Thread(() -> serve(socket), "replication-sender");
+                sender.setDaemon(true);
+                sender.start();
+            } catch (IOException ioe) {
+                if (running) {
+                    log.error("Unable to accept standby", ioe);
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            if (in.readInt() != ReplicationProtocol.HELLO_MAGIC) {
+                socket.close();
+                return;
+            }
+            long standbySequence = in.readLong();
+
+            //the snapshot and the start of queueing happen together on the service thread, so no event is missed
+            StateSnapshot snapshot = CompletableFuture.supplyAsync(() -> attach(socket), serviceExecutor)
+                    .get(5, TimeUnit.SECONDS);
+            if (snapshot == null) {
+                return;
+            }
+            log.info("Standby {} connected at sequence {}, sending snapshot at {}",
+                    socket.getRemoteSocketAddress(), standbySequence, snapshot.getSequence());
+            ByteArrayOutputStream snapshotBytes = new ByteArrayOutputStream();
+            snapshot.writeTo(snapshotBytes);
+            out.writeByte(ReplicationProtocol.SNAPSHOT);
+            out.writeInt(snapshotBytes.size());
+            snapshotBytes.writeTo(out);
+            out.flush();
+
+            Thread ackReader = new Thread(() -> readAcks(socket, in), "replication-acks");
+            ackReader.setDaemon(true);
+            ackReader.start();
+            sendEvents(socket, out);
+            sayFarewell(socket, out);
+        } catch (IOException | ExecutionException | TimeoutException e) {
+            if (running) {
+                log.warn("Lost standby {}", socket.getRemoteSocketAddress(), e);
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } finally {
+            synchronized (this) {
+                farewells.remove(socket);
+                disconnect(socket);
+            }
+        }
+    }
+
+    private void sayFarewell(Socket socket, DataOutputStream out) throws IOException {
+        Byte farewell;
+        synchronized (this) {
+            farewell = farewells.remove(socket);
+        }
+        if (farewell != null) {
+            //a standby that has stopped reading can't hold this thread
+            CompletableFuture.delayedExecutor(ReplicationProtocol.FAREWELL_MILLIS, TimeUnit.MILLISECONDS)
+                    .execute(() -> closeQuietly(socket));
+            out.writeByte(farewell);
+            out.flush();
+        }
+    }
+
+    /**
+     * @return the snapshot to start the standby from, or null if this primary has been closed
+     */
+    private synchronized StateSnapshot attach(Socket socket) {
+        //a connection accepted while the server socket was closing must not find a live primary
+        if (!running) {
+            return null;
+        }
+        if (standby != null) {
+            log.info("Standby {} replaced by {}", standby.getRemoteSocketAddress(), socket.getRemoteSocketAddress());
+            retire(standby, ReplicationProtocol.REPLACED);
+        }
+        standby = socket;
+        unsent.clear();
+        StateSnapshot snapshot = securityService.snapshot();
+        ackedSequence = snapshot.getSequence();
+        lastSequence = snapshot.getSequence();
+        return snapshot;
+    }
+
+    private void sendEvents(Socket socket, DataOutputStream out) throws IOException, InterruptedException {
+        List<SecurityEvent> batch = new ArrayList<>(ReplicationProtocol.MAX_BATCH);
+        while (true) {
+            synchronized (this) {
+                if (unsent.isEmpty() && standby == socket) {
+                    wait(ReplicationProtocol.HEARTBEAT_MILLIS);
+                }
+                if (standby != socket) {
+                    return;
+                }
+                while (!unsent.isEmpty() && batch.size() < ReplicationProtocol.MAX_BATCH) {
+                    batch.add(unsent.poll());
+                }
+            }
+            if (batch.isEmpty()) {
+                out.writeByte(ReplicationProtocol.HEARTBEAT);
+                out.writeLong(lastSequence);
+            } else {
+                out.writeByte(ReplicationProtocol.EVENTS);
+                out.writeInt(batch.size());
+                for (SecurityEvent event : batch) {
+                    event.writeTo(out);
+                }
+                eventsSent.add(batch.size());
+                batchesSent.increment();
+                batch.clear();
+            }
+            out.flush();
+        }
+    }
+
+    private void readAcks(Socket socket, DataInputStream in) {
+        try {
+            while (true) {
+                long acked = in.readLong();
+                synchronized (this) {
+                    if (standby != socket) {
+                        return;
+                    }
+                    ackedSequence = Math.max(ackedSequence, acked);
+                }
+            }
+        } catch (IOException ioe) {
+            synchronized (this) {
+                disconnect(socket);
+            }
+        }
+    }
+
+    /**
+     * Stops serving the standby and leaves its sender to tell it why before closing the connection.
+     * Must hold the lock.
+     */
+    private void retire(Socket socket, byte farewell) {
+        if (standby == socket) {
+            standby = null;
+            unsent.clear();
+            farewells.put(socket, farewell);
+            notifyAll();
+        }
+    }
+
+    /**
+     * Must hold the lock.
+     */
+    private void disconnect(Socket socket) {
+        if (standby == socket) {
+            standby = null;
+            unsent.clear();
+            notifyAll();
+        }
+        closeQuietly(socket);
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ioe) {
+            //already gone
+        }
+    }
+}
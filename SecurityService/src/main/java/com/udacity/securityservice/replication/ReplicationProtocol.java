@@ -0,0 +1,34 @@
+package com.udacity.securityservice.replication;
+
+/**
+ * Wire format shared by {@link ReplicationPrimary} and {@link ReplicationStandby}, as
+ * DataOutput primitives over one TCP connection.
+ * <pre>
+ *   standby to primary: HELLO_MAGIC int, last applied sequence long
+ *   primary to standby: frames, each a type byte followed by
+ *       SNAPSHOT   int length, StateSnapshot bytes
+ *       EVENTS     int count, that many SecurityEvents
+ *       HEARTBEAT  primary's latest sequence long
+ *       RESYNC     nothing; the standby fell too far behind and should reconnect for a new snapshot
+ *       REPLACED   nothing; another standby has taken this one's place and this one should stop
+ *   standby to primary: the sequence of each snapshot or batch it has applied, as a long
+ * </pre>
+ */
+final class ReplicationProtocol {
+
+    static final int HELLO_MAGIC = 0x43505250; // "CPRP"
+
+    static final byte SNAPSHOT = 1;
+    static final byte EVENTS = 2;
+    static final byte HEARTBEAT = 3;
+    static final byte RESYNC = 4;
+    static final byte REPLACED = 5;
+
+    static final long HEARTBEAT_MILLIS = 100;
+    //how long a farewell frame may take to write before the connection is closed anyway
+    static final long FAREWELL_MILLIS = 1000;
+    static final int MAX_BATCH = 512;
+
+    private ReplicationProtocol() {
+    }
+}
@@ -0,0 +1,227 @@
+package com.udacity.securityservice.replication;
+
+import com.udacity.securityservice.data.StateSnapshot;
+import com.udacity.securityservice.service.SecurityEvent;
+import com.udacity.securityservice.service.SecurityService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Keeps a local SecurityService in step with a {@link ReplicationPrimary} and takes over when the
+ * primary goes away.
+ *
+ * Everything received is applied on the service thread: the snapshot with
+ * {@link SecurityService#load}, then each batch of events with {@link SecurityService#replay}. Each
+ * is acknowledged once applied. The primary sends at least a heartbeat every
+ * {@value ReplicationProtocol#HEARTBEAT_MILLIS}ms. Once the standby has been in sync, hearing
+ * nothing for {@code failoverMillis} or losing the connection makes it reconnect straight away, and
+ * only if that fails too, or brings no snapshot within {@code failoverMillis}, is it promoted: the
+ * promotion callback runs on the service thread and the standby stops. A primary that lets the
+ * standby go on purpose says so first, and the standby then reconnects for a fresh snapshot or,
+ * when another standby has replaced it, stops without taking over. Until the first snapshot arrives
+ * it just keeps trying to connect, since there is nothing to take over yet.
+ */
+public class ReplicationStandby implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicationStandby.class);
+
+    private static final long RECONNECT_MILLIS = 200;
+
+    private final SecurityService securityService;
+    private final Executor serviceExecutor;
+    private final InetSocketAddress primary;
+    private final int failoverMillis;
+    private final Runnable onPromote;
+    private final Thread thread;
+    private volatile boolean running;
+    private volatile Socket socket;
+
+    private volatile boolean synced;
+    //connection to the primary was lost and no snapshot has come in since, only used by the standby thread
+    private boolean lost;
+    private volatile boolean promoted;
+    private volatile long appliedSequence;
+    private volatile long primarySequence;
+
+    /**
+     * @param securityService Service to keep in step. Nothing else should change it while it is a standby.
+     * @param serviceExecutor Runs tasks on the thread that owns the service
+     * @param primary Address of the primary's replication port
+     * @param failoverMillis Silence after which the primary is considered dead, 500 takes over
+     *                       within about half a second
+     * @param onPromote Called on the service thread when this node takes over
+     */
+    public ReplicationStandby(SecurityService securityService, Executor serviceExecutor, InetSocketAddress primary,
+                              int failoverMillis, Runnable onPromote) {
+        this.securityService = securityService;
+        this.serviceExecutor = serviceExecutor;
+        this.primary = primary;
+        this.failoverMillis = failoverMillis;
+        this.onPromote = onPromote;
+        thread = new Thread(this::run, "replication-standby");
+        thread.setDaemon(true);
+    }
+
+    public void start() {
+        running = true;
+        thread.start();
+    }
+
+    public boolean isSynced() {
+        return synced;
+    }
+
+    public boolean isPromoted() {
+        return promoted;
+    }
+
+    /**
+     * @return the sequence of the last event applied locally
+     */
+    public long getAppliedSequence() {
+        return appliedSequence;
+    }
+
+    /**
+     * @return events the primary has recorded that haven't been applied here yet, as of the last
+     * heartbeat
+     */
+    public long getReplicationLag() {
+        return Math.max(0, primarySequence - appliedSequence);
+    }
+
+    /**
+     * Stops following the primary without taking over.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        Socket current = socket;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    private void run() {
+        while (running) {
+            try (Socket current = new Socket()) {
+                socket = current;
+                current.connect(primary, failoverMillis);
+                current.setTcpNoDelay(true);
+                current.setSoTimeout(failoverMillis);
+                follow(current);
+            } catch (IOException ioe) {
+                boolean timedOut = ioe instanceof SocketTimeoutException;
+                String reason = timedOut ? "no heartbeat" : ioe.getMessage();
+                if (running && lost) {
+                    log.warn("Primary {} still unreachable ({}), taking over", primary, reason);
+                    promote();
+                    return;
+                }
+                if (running && synced) {
+                    //a primary that dropped the connection on purpose would have said so, check it is really gone
+                    log.warn("Lost primary {} ({}), reconnecting", primary, reason);
+                    lost = true;
+                    continue;
+                }
+            } catch (ExecutionException ee) {
+                log.error("Unable to apply replicated state", ee.getCause());
+                running = false;
+                return;
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            pause();
+        }
+    }
+
+    private void follow(Socket current) throws IOException, ExecutionException, InterruptedException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(current.getOutputStream()));
+        DataInputStream in = new DataInputStream(new BufferedInputStream(current.getInputStream()));
+        out.writeInt(ReplicationProtocol.HELLO_MAGIC);
+        out.writeLong(appliedSequence);
+        out.flush();
+
+        List<SecurityEvent> batch = new ArrayList<>(ReplicationProtocol.MAX_BATCH);
+        while (running) {
+            byte type = in.readByte();
+            switch (type) {
+                case ReplicationProtocol.SNAPSHOT -> {
+                    byte[] bytes = new byte[in.readInt()];
+                    in.readFully(bytes);
+                    StateSnapshot snapshot = StateSnapshot.readFrom(new ByteArrayInputStream(bytes));
+                    onServiceThread(() -> securityService.load(snapshot));
+                    appliedSequence = snapshot.getSequence();
+                    primarySequence = Math.max(primarySequence, appliedSequence);
+                    synced = true;
+                    lost = false;
+                    acknowledge(out);
+                }
+                case ReplicationProtocol.EVENTS -> {
+                    int count = in.readInt();
+                    for (int i = 0; i < count; i++) {
+                        batch.add(SecurityEvent.readFrom(in));
+                    }
+                    List<SecurityEvent> events = new ArrayList<>(batch);
+                    batch.clear();
+                    onServiceThread(() -> securityService.replay(events));
+                    appliedSequence = events.get(events.size() - 1).getSequence();
+                    primarySequence = Math.max(primarySequence, appliedSequence);
+                    acknowledge(out);
+                }
+                case ReplicationProtocol.HEARTBEAT -> primarySequence = in.readLong();
+                case ReplicationProtocol.RESYNC -> {
+                    log.info("Fell too far behind primary {}, reconnecting for a new snapshot", primary);
+                    return;
+                }
+                case ReplicationProtocol.REPLACED -> {
+                    log.warn("Replaced by another standby of primary {}, no longer following it", primary);
+                    running = false;
+                    return;
+                }
+                default -> throw new IOException("Unknown replication frame " + type);
+            }
+        }
+    }
+
+    private void acknowledge(DataOutputStream out) throws IOException {
+        out.writeLong(appliedSequence);
+        out.flush();
+    }
+
+    private void onServiceThread(Runnable task) throws ExecutionException, InterruptedException {
+        CompletableFuture.runAsync(task, serviceExecutor).get();
+    }
+
+    private void promote() {
+        promoted = true;
+        running = false;
+        serviceExecutor.execute(onPromote);
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(RECONNECT_MILLIS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+}
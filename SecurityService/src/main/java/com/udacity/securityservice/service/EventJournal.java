@@ -0,0 +1,79 @@
+package com.udacity.securityservice.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only binary log of the inputs received by the SecurityService. Together with a
+ * {@link com.udacity.securityservice.data.StateSnapshot} it lets us rebuild the system state at
+ * startup, or replay recorded traffic offline against a different rule set or repository.
+ */
+public class EventJournal implements Closeable {
+
+    private final DataOutputStream out;
+
+    /**
+     * Opens the journal at the given path for appending, creating it if necessary.
+     * @param path Location of the journal file
+     */
+    public EventJournal(Path path) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+    }
+
+    /**
+     * Appends an event to the journal and hands it to the operating system, so it survives the process crashing.
+     * @param event The event to record
+     */
+    public synchronized void append(SecurityEvent event) {
+        try {
+            event.writeTo(out);
+            out.flush();
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to append to event journal", ioe);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    /**
+     * Reads every event recorded after the given sequence number. A partially written
+     * trailing record, as left behind by a crash, is ignored.
+     * @param path Location of the journal file
+     * @param afterSequence Only events with a greater sequence number are returned
+     * @return The events in the order they were recorded
+     */
+    public static List<SecurityEvent> read(Path path, long afterSequence) throws IOException {
+        List<SecurityEvent> events = new ArrayList<>();
+        if (!Files.exists(path)) {
+            return events;
+        }
+        try (InputStream is = Files.newInputStream(path);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(is))) {
+            while (true) {
+                SecurityEvent event = SecurityEvent.readFrom(in);
+                if (event.getSequence() > afterSequence) {
+                    events.add(event);
+                }
+            }
+        } catch (EOFException eof) {
+            //end of journal
+        }
+        return events;
+    }
+}
@@ -0,0 +1,150 @@
+package com.udacity.securityservice.service;
+
+import com.udacity.securityservice.application.StatusListener;
+import com.udacity.securityservice.data.AlarmStatus;
+import com.udacity.securityservice.data.ArmingStatus;
+import com.udacity.securityservice.data.Sensor;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides which camera frames are worth analyzing, so frames can be dropped before they are even
+ * decoded. Each camera gets at most one analyzed frame per interval, and the interval follows the
+ * state of the system:
+ * <ul>
+ *     <li>every frame while an alarm is pending or sounding, and for a while after any sensor activates</li>
+ *     <li>a frame every {@code armedAwayInterval} or {@code armedHomeInterval} while armed</li>
+ *     <li>a frame every {@code disarmedInterval} while disarmed, which still keeps track of whether a
+ *     cat is around for when the system is armed again</li>
+ * </ul>
+ * Any change of arming or alarm status makes the next frame from every camera due at once.
+ *
+ * Register it with {@link SecurityService#addStatusListener}. {@link #shouldAnalyze(String)} may be
+ * called from any thread.
+ */
+public class FrameSampler implements StatusListener {
+
+    private final long disarmedInterval;
+    private final long armedHomeInterval;
+    private final long armedAwayInterval;
+    private final long burstNanos;
+
+    private final ConcurrentHashMap<String, AtomicLong> lastAnalyzed = new ConcurrentHashMap<>();
+    private volatile ArmingStatus armingStatus;
+    private volatile AlarmStatus alarmStatus;
+    private volatile long burstUntil;
+    private volatile long stateChangedAt;
+
+    private final LongAdder analyzed = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+
+    /**
+     * Analyzes a frame a minute while disarmed, one a second when armed at home, five a second when
+     * armed away, and every frame for 10 seconds after a sensor activates.
+     */
+    public FrameSampler(SecurityService securityService) {
+        this(securityService, 60_000, 1_000, 200, 10_000);
+    }
+
+    /**
+     * @param securityService Service to take the initial state from. The sampler still has to be
+     *                        registered as a listener.
+     * @param disarmedIntervalMillis Time between analyzed frames per camera while disarmed
+     * @param armedHomeIntervalMillis Time between analyzed frames per camera while armed at home
+     * @param armedAwayIntervalMillis Time between analyzed frames per camera while armed away
+     * @param burstMillis How long to analyze every frame after a sensor activates
+     */
+    public FrameSampler(SecurityService securityService, long disarmedIntervalMillis, long armedHomeIntervalMillis,
+                        long armedAwayIntervalMillis, long burstMillis) {
+        this.disarmedInterval = TimeUnit.MILLISECONDS.toNanos(disarmedIntervalMillis);
+        this.armedHomeInterval = TimeUnit.MILLISECONDS.toNanos(armedHomeIntervalMillis);
+        this.armedAwayInterval = TimeUnit.MILLISECONDS.toNanos(armedAwayIntervalMillis);
+        this.burstNanos = TimeUnit.MILLISECONDS.toNanos(burstMillis);
+        this.armingStatus = securityService.getArmingStatus();
+        this.alarmStatus = securityService.getAlarmStatus();
+        long now = System.nanoTime();
+        this.burstUntil = now;
+        this.stateChangedAt = now;
+    }
+
+    public boolean shouldAnalyze(String cameraId) {
+        return shouldAnalyze(cameraId, System.nanoTime());
+    }
+
+    /**
+     * Claims the current frame of the camera for analysis if one is due.
+     * @param now Current {@link System#nanoTime()}
+     * @return true if the frame should be decoded and passed to {@link SecurityService#processImage}
+     */
+    public boolean shouldAnalyze(String cameraId, long now) {
+        AtomicLong last = lastAnalyzed.computeIfAbsent(cameraId, id -> new AtomicLong(stateChangedAt - 1));
+        long previous = last.get();
+        boolean due = previous - stateChangedAt < 0 || now - previous >= getInterval(now);
+        //when several threads feed one camera, only one of them gets the frame
+        if (due && last.compareAndSet(previous, now)) {
+            analyzed.increment();
+            return true;
+        }
+        skipped.increment();
+        return false;
+    }
+
+    /**
+     * @return the current time between analyzed frames per camera, in nanoseconds
+     */
+    public long getInterval(long now) {
+        if (alarmStatus != AlarmStatus.NO_ALARM || now - burstUntil < 0) {
+            return 0;
+        }
+        switch (armingStatus) {
+            case ARMED_AWAY:
+                return armedAwayInterval;
+            case ARMED_HOME:
+                return armedHomeInterval;
+            default:
+                return disarmedInterval;
+        }
+    }
+
+    public long getAnalyzed() {
+        return analyzed.sum();
+    }
+
+    public long getSkipped() {
+        return skipped.sum();
+    }
+
+    @Override
+    public void notify(AlarmStatus status) {
+        if (status != alarmStatus) {
+            alarmStatus = status;
+            stateChangedAt = System.nanoTime();
+        }
+    }
+
+    @Override
+    public void armingStatusChanged(ArmingStatus status) {
+        if (status != armingStatus) {
+            armingStatus = status;
+            stateChangedAt = System.nanoTime();
+        }
+    }
+
+    @Override
+    public void sensorActivated(Sensor sensor) {
+        burstUntil = System.nanoTime() + burstNanos;
+    }
+
+    @Override
+    public void catDetected(boolean catDetected) {
+        //no behavior necessary
+    }
+
+    @Override
+    public void sensorStatusChanged() {
+        //no behavior necessary
+    }
+}
@@ -0,0 +1,322 @@
+package com.udacity.securityservice.service;
+
+import com.udacity.securityservice.application.StatusListener;
+import com.udacity.securityservice.data.AlarmStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the last few seconds of every camera as JPEG bytes, and saves them to clip files when the
+ * alarm goes off, so there is footage of what set it off.
+ *
+ * Each camera has a fixed-size ring in a memory-mapped file, so the footage stays out of the Java
+ * heap no matter how many frames it holds. The oldest frames are overwritten when the ring is full
+ * or when they are older than the retention time. Saving a clip copies straight from the ring file
+ * to the clip file with {@link FileChannel#transferTo}, without passing the bytes through Java.
+ *
+ * Status listeners are called on the event dispatch thread, so when the alarm goes off the clips
+ * are saved on a background thread of the recorder's own.
+ *
+ * A clip is a sequence of frames, each a long timestamp in epoch millis, an int length and that
+ * many bytes of JPEG. Use {@link #readClip} to read one back.
+ */
+public class PreAlarmRecorder implements StatusListener, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(PreAlarmRecorder.class);
+
+    private static final int FRAME_HEADER = Long.BYTES + Integer.BYTES;
+    private static final int MAX_FRAMES_PER_CAMERA = 4096;
+
+    private final Path directory;
+    private final int bytesPerCamera;
+    private final long retainMillis;
+    private final ConcurrentHashMap<String, FrameRing> rings = new ConcurrentHashMap<>();
+    private final ThreadLocal<JpegBuffer> jpegBuffers = ThreadLocal.withInitial(JpegBuffer::new);
+    private final ExecutorService saver = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "pre-alarm-saver");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile AlarmStatus alarmStatus = AlarmStatus.NO_ALARM;
+
+    /**
+     * @param directory Where to keep the ring files and write the clips
+     * @param bytesPerCamera Size of each camera's ring
+     * @param retainMillis How far back to keep frames, if they fit in the ring
+     */
+    public PreAlarmRecorder(Path directory, int bytesPerCamera, long retainMillis) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.bytesPerCamera = bytesPerCamera;
+        this.retainMillis = retainMillis;
+    }
+
+    /**
+     * Encodes the frame as JPEG and adds it to the camera's ring.
+     * @return false if the encoded frame is larger than the whole ring
+     */
+    public boolean record(String cameraId, BufferedImage frame) throws IOException {
+        JpegBuffer jpeg = jpegBuffers.get();
+        jpeg.reset();
+        if (!ImageIO.write(frame, "jpg", jpeg)) {
+            throw new IOException("No JPEG writer for image type " + frame.getType());
+        }
+        return record(cameraId, jpeg.array(), jpeg.size(), System.currentTimeMillis());
+    }
+
+    /**
+     * Adds an already encoded frame to the camera's ring.
+     * @return false if the frame is larger than the whole ring
+     */
+    public boolean record(String cameraId, byte[] jpeg, int length, long timestamp) throws IOException {
+        return ring(cameraId).write(jpeg, length, timestamp, timestamp - retainMillis);
+    }
+
+    /**
+     * Writes every camera's current footage to a new clip file.
+     * @return the clips written, one per camera with frames
+     */
+    public List<Path> saveClips() throws IOException {
+        List<Path> clips = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (ConcurrentHashMap.Entry<String, FrameRing> entry : rings.entrySet()) {
+            Path clip = directory.resolve(entry.getKey() + "-" + now + ".clip");
+            if (entry.getValue().transferTo(clip, now - retainMillis)) {
+                clips.add(clip);
+            }
+        }
+        return clips;
+    }
+
+    @Override
+    public void notify(AlarmStatus status) {
+        AlarmStatus previous = alarmStatus;
+        alarmStatus = status;
+        if (status == AlarmStatus.ALARM && previous != AlarmStatus.ALARM) {
+            try {
+                saver.execute(this::saveClipsOnAlarm);
+            } catch (RejectedExecutionException e) {
+                //closed
+            }
+        }
+    }
+
+    private void saveClipsOnAlarm() {
+        try {
+            List<Path> clips = saveClips();
+            log.info("Alarm, saved {} pre-alarm clips to {}", clips.size(), directory);
+        } catch (IOException ioe) {
+            log.error("Unable to save pre-alarm clips", ioe);
+        }
+    }
+
+    @Override
+    public void catDetected(boolean catDetected) {
+        //no behavior necessary
+    }
+
+    @Override
+    public void sensorStatusChanged() {
+        //no behavior necessary
+    }
+
+    /**
+     * Finishes saving clips for an alarm that has already gone off, then closes and deletes the
+     * ring files. Saved clips are kept.
+     */
+    @Override
+    public void close() throws IOException {
+        saver.shutdown();
+        try {
+            if (!saver.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("Gave up waiting for pre-alarm clips to be saved");
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        for (FrameRing ring : rings.values()) {
+            ring.close();
+        }
+        rings.clear();
+    }
+
+    /**
+     * Receives the frames of a clip in the order they were recorded.
+     */
+    public interface FrameConsumer {
+        void accept(long timestamp, byte[] jpeg) throws IOException;
+    }
+
+    public static void readClip(Path clip, FrameConsumer consumer) throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(clip))) {
+            while (true) {
+                long timestamp;
+                try {
+                    timestamp = in.readLong();
+                } catch (EOFException eof) {
+                    return;
+                }
+                byte[] jpeg = new byte[in.readInt()];
+                in.readFully(jpeg);
+                consumer.accept(timestamp, jpeg);
+            }
+        }
+    }
+
+    private FrameRing ring(String cameraId) throws IOException {
+        try {
+            return rings.computeIfAbsent(cameraId, id -> {
+                try {
+                    return new FrameRing(directory.resolve(id + ".ring"), bytesPerCamera);
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                }
+            });
+        } catch (UncheckedIOException uioe) {
+            throw uioe.getCause();
+        }
+    }
+
+    /**
+     * Frames laid out one after another in a mapped file, wrapping to the start when the next one
+     * doesn't fit before the end. A small index of offsets and timestamps stays on the heap.
+     */
+    private static class FrameRing {
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private final int capacity;
+
+        private final int[] offsets = new int[MAX_FRAMES_PER_CAMERA];
+        private final int[] sizes = new int[MAX_FRAMES_PER_CAMERA];
+        private final long[] timestamps = new long[MAX_FRAMES_PER_CAMERA];
+        private int oldest;
+        private int count;
+        private int writeOffset;
+
+        FrameRing(Path file, int capacity) throws IOException {
+            this.capacity = capacity;
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.DELETE_ON_CLOSE);
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        }
+
+        synchronized boolean write(byte[] jpeg, int length, long timestamp, long expiredBefore) {
+            int size = FRAME_HEADER + length;
+            if (size > capacity) {
+                return false;
+            }
+            while (count > 0 && timestamps[oldest] < expiredBefore) {
+                evictOldest();
+            }
+            int offset = writeOffset;
+            if (offset + size > capacity) {
+                //the space left before the end is abandoned, so are the frames in it
+                while (count > 0 && offsets[oldest] >= writeOffset) {
+                    evictOldest();
+                }
+                offset = 0;
+            }
+            while (count > 0 && (count == MAX_FRAMES_PER_CAMERA || overlaps(oldest, offset, size))) {
+                evictOldest();
+            }
+            if (count == 0) {
+                offset = 0;
+            }
+
+            buffer.putLong(offset, timestamp);
+            buffer.putInt(offset + Long.BYTES, length);
+            ByteBuffer target = buffer.duplicate();
+            target.position(offset + FRAME_HEADER);
+            target.put(jpeg, 0, length);
+
+            int slot = (oldest + count) % MAX_FRAMES_PER_CAMERA;
+            offsets[slot] = offset;
+            sizes[slot] = size;
+            timestamps[slot] = timestamp;
+            count++;
+            writeOffset = offset + size;
+            return true;
+        }
+
+        /**
+         * Copies the frames recorded since expiredBefore to a new clip file, merging frames that are
+         * next to each other in the ring into a single transfer.
+         * @return false if there were no such frames
+         */
+        synchronized boolean transferTo(Path clip, long expiredBefore) throws IOException {
+            while (count > 0 && timestamps[oldest] < expiredBefore) {
+                evictOldest();
+            }
+            if (count == 0) {
+                return false;
+            }
+            try (FileChannel out = FileChannel.open(clip, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                int runStart = offsets[oldest];
+                int runEnd = runStart;
+                for (int i = 0; i < count; i++) {
+                    int slot = (oldest + i) % MAX_FRAMES_PER_CAMERA;
+                    if (offsets[slot] != runEnd) {
+                        transfer(out, runStart, runEnd);
+                        runStart = offsets[slot];
+                    }
+                    runEnd = offsets[slot] + sizes[slot];
+                }
+                transfer(out, runStart, runEnd);
+            }
+            return true;
+        }
+
+        synchronized void close() throws IOException {
+            channel.close();
+        }
+
+        private void transfer(FileChannel out, long from, long to) throws IOException {
+            while (from < to) {
+                from += channel.transferTo(from, to - from, out);
+            }
+        }
+
+        private boolean overlaps(int slot, int offset, int size) {
+            return offsets[slot] < offset + size && offsets[slot] + sizes[slot] > offset;
+        }
+
+        private void evictOldest() {
+            oldest = (oldest + 1) % MAX_FRAMES_PER_CAMERA;
+            count--;
+        }
+    }
+
+    /**
+     * Reusable encoding buffer that hands out its array rather than a copy.
+     */
+    private static class JpegBuffer extends ByteArrayOutputStream {
+        JpegBuffer() {
+            super(64 * 1024);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package com.udacity.securityservice.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Schedules work for a SecurityService in priority lanes, so a backlog of camera frames can never
+ * hold up a sensor event:
+ * <ul>
+ *     <li>{@link Lane#CRITICAL}: sensor, arming and alarm changes, applied in order on the service
+ *     executor ahead of anything else waiting there</li>
+ *     <li>{@link Lane#RECOGNITION}: camera frames, recognized on a bounded pool of worker threads. When
+ *     the pool's queue is full the oldest waiting frame is dropped, as a newer one shows the same
+ *     camera. The verdict is then applied on the service executor once no critical work is waiting,
+ *     unless the verdict on a newer frame was applied first.</li>
+ *     <li>{@link Lane#TELEMETRY}: best-effort work that doesn't touch the service, run on one
+ *     low-priority thread and dropped when its queue is full</li>
+ * </ul>
+ * The service executor should run tasks on the thread that owns the service, such as the event
+ * dispatch thread. Work queued here is applied from there in batches, so the thread still gets to
+ * do other things, like painting, between them. Changes made directly on the owner thread, such
+ * as from the GUI, don't go through the lanes and simply happen between batches.
+ *
+ * The queue depth, wait time and dropped count of each lane are kept for monitoring.
+ */
+public class PriorityScheduler implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(PriorityScheduler.class);
+    private static final int MAX_BATCH = 64;
+
+    public enum Lane {
+        CRITICAL, RECOGNITION, TELEMETRY
+    }
+
+    private final SecurityService securityService;
+    private final Executor serviceExecutor;
+    private final ThreadPoolExecutor recognitionPool;
+    private final ThreadPoolExecutor telemetryPool;
+    private final Map<Lane, LaneStats> stats = new EnumMap<>(Lane.class);
+    private final AtomicLong frames = new AtomicLong();
+    private final LongAdder staleVerdicts = new LongAdder();
+    private volatile FrameSampler frameSampler;
+
+    //work waiting for the service executor, guarded by this
+    private final ArrayDeque<Task> critical = new ArrayDeque<>();
+    private final ArrayDeque<Task> verdicts = new ArrayDeque<>();
+    private boolean drainScheduled;
+    //only used by drain, which never runs twice at once
+    private long lastAppliedFrame;
+
+    /**
+     * @param serviceExecutor Runs tasks on the thread that owns the service
+     * @param recognitionThreads Frames recognized at the same time
+     * @param recognitionQueue Frames that may wait for a recognition thread
+     * @param telemetryQueue Telemetry tasks that may wait before new ones are dropped
+     */
+    public PriorityScheduler(SecurityService securityService, Executor serviceExecutor, int recognitionThreads,
+                             int recognitionQueue, int telemetryQueue) {
+        this.securityService = securityService;
+        this.serviceExecutor = serviceExecutor;
+        for (Lane lane : Lane.values()) {
+            stats.put(lane, new LaneStats());
+        }
+        recognitionPool = new ThreadPoolExecutor(recognitionThreads, recognitionThreads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(recognitionQueue), threads("recognition", Thread.NORM_PRIORITY),
+                (task, pool) -> {
+                    if (pool.isShutdown()) {
+                        throw new RejectedExecutionException("Scheduler is closed");
+                    }
+                    if (pool.getQueue().poll() != null) {
+                        stats.get(Lane.RECOGNITION).dropped.increment();
+                        stats.get(Lane.RECOGNITION).queued.decrementAndGet();
+                    }
+                    pool.execute(task);
+                });
+        telemetryPool = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(telemetryQueue), threads("telemetry", Thread.MIN_PRIORITY));
+    }
+
+    /**
+     * Applies the change to the service ahead of any queued recognition work.
+     */
+    public void runCritical(Runnable change) {
+        enqueue(critical, new Task(change));
+    }
+
+    /**
+     * @return an executor that runs its tasks in the critical lane, for example to feed
+     * {@link SecurityFlows} inputs through it
+     */
+    public Executor criticalExecutor() {
+        return this::runCritical;
+    }
+
+    /**
+     * Recognizes the frame on a worker thread, then applies the verdict to the service. Frames
+     * can finish out of order on several threads, so a verdict that arrives after the verdict on a
+     * later frame is left out. The frame must not be changed until it has been recognized.
+     */
+    public void processImage(BufferedImage currentCameraImage) {
+        LaneStats laneStats = stats.get(Lane.RECOGNITION);
+        long queued = System.nanoTime();
+        long frame = frames.incrementAndGet();
+        laneStats.queued.incrementAndGet();
+        try {
+            recognitionPool.execute(() -> {
+                laneStats.waited(queued);
+                boolean cat;
+                try {
+                    cat = securityService.detectCat(currentCameraImage);
+                } catch (RuntimeException e) {
+                    log.warn("Unable to recognize camera image", e);
+                    laneStats.queued.decrementAndGet();
+                    return;
+                }
+                enqueue(verdicts, new Task(() -> {
+                    laneStats.queued.decrementAndGet();
+                    if (frame < lastAppliedFrame) {
+                        staleVerdicts.increment();
+                        return;
+                    }
+                    lastAppliedFrame = frame;
+                    securityService.applyCatDetection(cat);
+                }));
+            });
+        } catch (RejectedExecutionException e) {
+            laneStats.queued.decrementAndGet();
+            laneStats.dropped.increment();
+        }
+    }
+
+    /**
+     * Recognizes the camera's frame like {@link #processImage}, if the frame sampler says one is
+     * due. Otherwise the frame is skipped without being decoded.
+     * @param decoder Decodes the frame, only called if it is recognized
+     * @return false if the frame was skipped
+     */
+    public boolean processFrame(String cameraId, Supplier<BufferedImage> decoder) {
+        FrameSampler sampler = frameSampler;
+        if (sampler != null && !sampler.shouldAnalyze(cameraId)) {
+            return false;
+        }
+        processImage(decoder.get());
+        return true;
+    }
+
+    /**
+     * @param frameSampler Decides which frames {@link #processFrame} recognizes, null to recognize
+     *                     them all. It must be registered as a listener of the service.
+     */
+    public void setFrameSampler(FrameSampler frameSampler) {
+        this.frameSampler = frameSampler;
+    }
+
+    /**
+     * @return an executor that runs its tasks in the telemetry lane, dropping them when it is full,
+     * for example to record {@link com.udacity.securityservice.telemetry.SensorTelemetry}
+     */
+    public Executor telemetryExecutor() {
+        return this::runTelemetry;
+    }
+
+    /**
+     * Runs the task on the telemetry thread if there is room for it.
+     * @return false if the task was dropped
+     */
+    public boolean runTelemetry(Runnable task) {
+        LaneStats laneStats = stats.get(Lane.TELEMETRY);
+        long queued = System.nanoTime();
+        try {
+            telemetryPool.execute(() -> {
+                laneStats.waited(queued);
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    log.warn("Telemetry task failed", e);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            laneStats.dropped.increment();
+            return false;
+        }
+    }
+
+    /**
+     * @return tasks of the lane that are queued and not yet started. Recognition counts frames
+     * from when they are queued until their verdict is applied.
+     */
+    public int getQueueDepth(Lane lane) {
+        switch (lane) {
+            case CRITICAL:
+                synchronized (this) {
+                    return critical.size();
+                }
+            case RECOGNITION:
+                return stats.get(lane).queued.get();
+            default:
+                return telemetryPool.getQueue().size();
+        }
+    }
+
+    /**
+     * @return tasks of the lane that have started
+     */
+    public long getStarted(Lane lane) {
+        return stats.get(lane).started.sum();
+    }
+
+    /**
+     * @return tasks of the lane that were dropped because its queue was full
+     */
+    public long getDropped(Lane lane) {
+        return stats.get(lane).dropped.sum();
+    }
+
+    /**
+     * @return verdicts left out because the verdict on a later frame was already applied
+     */
+    public long getStaleVerdicts() {
+        return staleVerdicts.sum();
+    }
+
+    /**
+     * @return average time tasks of the lane waited before starting, in microseconds. Recognition
+     * counts the wait for a worker thread, not for the verdict to be applied.
+     */
+    public double getMeanWaitMicros(Lane lane) {
+        LaneStats laneStats = stats.get(lane);
+        long started = laneStats.started.sum();
+        return started == 0 ? 0 : laneStats.waitNanos.sum() / 1e3 / started;
+    }
+
+    /**
+     * @return longest time a task of the lane waited before starting, in microseconds
+     */
+    public double getMaxWaitMicros(Lane lane) {
+        return stats.get(lane).maxWaitNanos.get() / 1e3;
+    }
+
+    /**
+     * Stops the worker threads. Frames being recognized still have their verdicts applied, and
+     * changes already queued are still applied.
+     */
+    @Override
+    public void close() {
+        recognitionPool.shutdown();
+        telemetryPool.shutdown();
+    }
+
+    private void enqueue(ArrayDeque<Task> queue, Task task) {
+        boolean schedule;
+        synchronized (this) {
+            queue.addLast(task);
+            schedule = !drainScheduled;
+            drainScheduled = true;
+        }
+        if (schedule) {
+            serviceExecutor.execute(this::drain);
+        }
+    }
+
+    /**
+     * Runs on the service executor: critical changes first, then verdicts, up to a batch.
+     */
+    private void drain() {
+        for (int i = 0; i < MAX_BATCH; i++) {
+            Task task;
+            boolean isCritical;
+            synchronized (this) {
+                task = critical.pollFirst();
+                isCritical = task != null;
+                if (task == null) {
+                    task = verdicts.pollFirst();
+                }
+                if (task == null) {
+                    drainScheduled = false;
+                    return;
+                }
+            }
+            if (isCritical) {
+                stats.get(Lane.CRITICAL).waited(task.queued);
+            }
+            try {
+                task.change.run();
+            } catch (RuntimeException e) {
+                log.error("Scheduled change failed", e);
+            }
+        }
+        //more to do, but give the owner thread a turn first
+        serviceExecutor.execute(this::drain);
+    }
+
+    private static ThreadFactory threads(String name, int priority) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(priority);
+            return thread;
+        };
+    }
+
+    private static final class Task {
+        private final Runnable change;
+        private final long queued = System.nanoTime();
+
+        private Task(Runnable change) {
+            this.change = change;
+        }
+    }
+
+    private static final class LaneStats {
+        private final AtomicInteger queued = new AtomicInteger();
+        private final LongAdder started = new LongAdder();
+        private final LongAdder dropped = new LongAdder();
+        private final LongAdder waitNanos = new LongAdder();
+        private final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0);
+
+        private void waited(long queuedAt) {
+            long wait = System.nanoTime() - queuedAt;
+            started.increment();
+            waitNanos.add(wait);
+            maxWaitNanos.accumulate(wait);
+        }
+    }
+}
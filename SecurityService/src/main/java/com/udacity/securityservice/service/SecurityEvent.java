@@ -0,0 +1,179 @@
+package com.udacity.securityservice.service;
+
+import com.udacity.securityservice.data.AlarmStatus;
+import com.udacity.securityservice.data.ArmingStatus;
+import com.udacity.securityservice.data.Sensor;
+import com.udacity.securityservice.data.SensorType;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * A single input to the SecurityService, as recorded in the {@link EventJournal}. Cat detection
+ * events store the verdict of the image service rather than the image itself, so replaying them
+ * is deterministic and never calls the image service.
+ */
+public final class SecurityEvent {
+
+    public enum Type {
+        SENSOR_ADDED, SENSOR_REMOVED, SENSOR_ACTIVATION, ARMING, CAT_DETECTION, ALARM
+    }
+
+    private final long sequence;
+    private final long timestamp;
+    private final Type type;
+    private final UUID sensorId;
+    private final String sensorName;
+    private final SensorType sensorType;
+    private final boolean flag;
+    private final ArmingStatus armingStatus;
+    private final AlarmStatus alarmStatus;
+
+    private SecurityEvent(long sequence, long timestamp, Type type, UUID sensorId, String sensorName,
+                          SensorType sensorType, boolean flag, ArmingStatus armingStatus, AlarmStatus alarmStatus) {
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.type = type;
+        this.sensorId = sensorId;
+        this.sensorName = sensorName;
+        this.sensorType = sensorType;
+        this.flag = flag;
+        this.armingStatus = armingStatus;
+        this.alarmStatus = alarmStatus;
+    }
+
+    public static SecurityEvent sensorAdded(long sequence, long timestamp, Sensor sensor) {
+        return new SecurityEvent(sequence, timestamp, Type.SENSOR_ADDED, sensor.getSensorId(), sensor.getName(),
+                sensor.getSensorType(), sensor.getActive(), null, null);
+    }
+
+    public static SecurityEvent sensorRemoved(long sequence, long timestamp, UUID sensorId) {
+        return new SecurityEvent(sequence, timestamp, Type.SENSOR_REMOVED, sensorId, null, null, false, null, null);
+    }
+
+    public static SecurityEvent sensorActivation(long sequence, long timestamp, UUID sensorId, boolean active) {
+        return new SecurityEvent(sequence, timestamp, Type.SENSOR_ACTIVATION, sensorId, null, null, active, null, null);
+    }
+
+    public static SecurityEvent arming(long sequence, long timestamp, ArmingStatus armingStatus) {
+        return new SecurityEvent(sequence, timestamp, Type.ARMING, null, null, null, false, armingStatus, null);
+    }
+
+    public static SecurityEvent catDetection(long sequence, long timestamp, boolean cat) {
+        return new SecurityEvent(sequence, timestamp, Type.CAT_DETECTION, null, null, null, cat, null, null);
+    }
+
+    /**
+     * An alarm status set directly, rather than as the result of another input.
+     */
+    public static SecurityEvent alarm(long sequence, long timestamp, AlarmStatus alarmStatus) {
+        return new SecurityEvent(sequence, timestamp, Type.ALARM, null, null, null, false, null, alarmStatus);
+    }
+
+    /**
+     * Writes the event in the binary format used by the journal and replication.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeByte(type.ordinal());
+        out.writeLong(sequence);
+        out.writeLong(timestamp);
+        switch (type) {
+            case SENSOR_ADDED -> {
+                writeId(out);
+                out.writeByte(sensorType.ordinal());
+                out.writeBoolean(flag);
+                out.writeUTF(sensorName);
+            }
+            case SENSOR_REMOVED -> writeId(out);
+            case SENSOR_ACTIVATION -> {
+                writeId(out);
+                out.writeBoolean(flag);
+            }
+            case ARMING -> out.writeByte(armingStatus.ordinal());
+            case CAT_DETECTION -> out.writeBoolean(flag);
+            case ALARM -> out.writeByte(alarmStatus.ordinal());
+        }
+    }
+
+    private void writeId(DataOutput out) throws IOException {
+        out.writeLong(sensorId.getMostSignificantBits());
+        out.writeLong(sensorId.getLeastSignificantBits());
+    }
+
+    /**
+     * Reads an event written by {@link #writeTo(DataOutput)}.
+     * @throws IOException if the event is corrupt
+     */
+    public static SecurityEvent readFrom(DataInput in) throws IOException {
+        Type type = readEnum(in, Type.values());
+        long sequence = in.readLong();
+        long timestamp = in.readLong();
+        switch (type) {
+            case SENSOR_ADDED: {
+                UUID id = new UUID(in.readLong(), in.readLong());
+                SensorType sensorType = readEnum(in, SensorType.values());
+                boolean active = in.readBoolean();
+                return new SecurityEvent(sequence, timestamp, type, id, in.readUTF(), sensorType, active, null, null);
+            }
+            case SENSOR_REMOVED:
+                return sensorRemoved(sequence, timestamp, new UUID(in.readLong(), in.readLong()));
+            case SENSOR_ACTIVATION:
+                return sensorActivation(sequence, timestamp, new UUID(in.readLong(), in.readLong()), in.readBoolean());
+            case ARMING:
+                return arming(sequence, timestamp, readEnum(in, ArmingStatus.values()));
+            case ALARM:
+                return alarm(sequence, timestamp, readEnum(in, AlarmStatus.values()));
+            default:
+                return catDetection(sequence, timestamp, in.readBoolean());
+        }
+    }
+
+    private static <E extends Enum<E>> E readEnum(DataInput in, E[] values) throws IOException {
+        int ordinal = in.readUnsignedByte();
+        if (ordinal >= values.length) {
+            throw new IOException("Corrupt event, no " + values[0].getDeclaringClass().getSimpleName() + " " + ordinal);
+        }
+        return values[ordinal];
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public UUID getSensorId() {
+        return sensorId;
+    }
+
+    public String getSensorName() {
+        return sensorName;
+    }
+
+    public SensorType getSensorType() {
+        return sensorType;
+    }
+
+    /**
+     * @return the activation status for sensor events, or whether a cat was seen for cat detection events
+     */
+    public boolean getFlag() {
+        return flag;
+    }
+
+    public ArmingStatus getArmingStatus() {
+        return armingStatus;
+    }
+
+    public AlarmStatus getAlarmStatus() {
+        return alarmStatus;
+    }
+}
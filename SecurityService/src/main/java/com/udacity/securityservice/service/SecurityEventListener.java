@@ -0,0 +1,9 @@
+package com.udacity.securityservice.service;
+
+/**
+ * Receives every event the SecurityService records, in order, on the thread that called the
+ * service. Events applied by {@link SecurityService#replay} are not passed on.
+ */
+public interface SecurityEventListener {
+    void eventRecorded(SecurityEvent event);
+}
@@ -0,0 +1,305 @@
+package com.udacity.securityservice.service;
+
+import com.udacity.securityservice.application.StatusListener;
+import com.udacity.securityservice.data.AlarmStatus;
+import com.udacity.securityservice.data.ArmingStatus;
+import com.udacity.securityservice.data.Sensor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * {@link Flow} view of a SecurityService: publishers for what the service decides and subscribers
+ * for what it is fed, all honouring demand.
+ *
+ * Each output subscriber gets a buffer of the capacity given at construction. Alarm and arming
+ * statuses are never dropped: they are handed from the service thread to a publishing thread of
+ * their own, which waits for room in every subscriber's buffer, so a slow subscriber holds up
+ * later statuses rather than the service. Cat detections and sensor changes are published from the
+ * service thread, usually the event dispatch thread. Once a subscriber's buffer is full, it waits
+ * at most {@value #PUBLISH_TIMEOUT_MILLIS}ms for it to catch up, then drops the item for that
+ * subscriber and counts it. A stalled consumer can't freeze the service or the screen.
+ *
+ * Inputs are applied on the service executor, and each input subscriber only requests as many
+ * items as it has room for in its window. While the service is busy no more items are requested,
+ * and the demand signal reaches the upstream publisher and whatever feeds it, such as the sensor
+ * gateway.
+ *
+ * Create it on the service thread, or before anything else uses the service.
+ */
+public class SecurityFlows implements StatusListener, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(SecurityFlows.class);
+
+    private static final long PUBLISH_TIMEOUT_MILLIS = 10;
+
+    private final SecurityService securityService;
+    private final Executor serviceExecutor;
+    private final int window;
+    private final SubmissionPublisher<AlarmStatus> alarmStatuses;
+    private final SubmissionPublisher<ArmingStatus> armingStatuses;
+    private final SubmissionPublisher<Boolean> catDetections;
+    private final SubmissionPublisher<Sensor> sensorChanges;
+    //publishes the statuses in order, waiting for slow subscribers
+    private final ExecutorService statusPublisher;
+    private volatile boolean closing;
+    private final LongAdder unknownSensors = new LongAdder();
+    private final LongAdder inputsApplied = new LongAdder();
+    private final LongAdder outputsDropped = new LongAdder();
+
+    /**
+     * @param serviceExecutor Runs inputs on the thread that owns the service, such as the event dispatch thread
+     * @param deliveryExecutor Calls the output subscribers
+     * @param bufferCapacity Items each output subscriber may fall behind by, and each input subscriber
+     *                       may have requested but not yet applied
+     */
+    public SecurityFlows(SecurityService securityService, Executor serviceExecutor, Executor deliveryExecutor,
+                         int bufferCapacity) {
+        if (bufferCapacity <= 0) {
+            throw new IllegalArgumentException("bufferCapacity must be positive");
+        }
+        this.securityService = securityService;
+        this.serviceExecutor = serviceExecutor;
+        this.window = bufferCapacity;
+        alarmStatuses = new SubmissionPublisher<>(deliveryExecutor, bufferCapacity);
+        armingStatuses = new SubmissionPublisher<>(deliveryExecutor, bufferCapacity);
+        catDetections = new SubmissionPublisher<>(deliveryExecutor, bufferCapacity);
+        sensorChanges = new SubmissionPublisher<>(deliveryExecutor, bufferCapacity);
+        statusPublisher = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "security-flows-status");
+            thread.setDaemon(true);
+            return thread;
+        });
+        securityService.addStatusListener(this);
+    }
+
+    public Flow.Publisher<AlarmStatus> alarmStatuses() {
+        return alarmStatuses;
+    }
+
+    public Flow.Publisher<ArmingStatus> armingStatuses() {
+        return armingStatuses;
+    }
+
+    /**
+     * @return publisher of the verdict for every camera image the service processes
+     */
+    public Flow.Publisher<Boolean> catDetections() {
+        return catDetections;
+    }
+
+    /**
+     * @return publisher of a copy of each sensor as its active state changes
+     */
+    public Flow.Publisher<Sensor> sensorChanges() {
+        return sensorChanges;
+    }
+
+    /**
+     * @return a new subscriber that applies each reading to the service. Readings for sensors the
+     * service doesn't know are dropped and counted.
+     */
+    public Flow.Subscriber<SensorReading> sensorInput() {
+        return new InputSubscriber<>(reading -> {
+            Sensor sensor = securityService.getSensor(reading.getSensorId());
+            if (sensor == null) {
+                unknownSensors.increment();
+                return;
+            }
+            securityService.changeSensorActivationStatus(sensor, reading.isActive());
+        });
+    }
+
+    /**
+     * @return a new subscriber that passes each camera frame to the service's image processing
+     */
+    public Flow.Subscriber<BufferedImage> frameInput() {
+        return new InputSubscriber<>(securityService::processImage);
+    }
+
+    public long getUnknownSensors() {
+        return unknownSensors.sum();
+    }
+
+    public long getInputsApplied() {
+        return inputsApplied.sum();
+    }
+
+    /**
+     * @return cat detections and sensor changes not delivered to an output subscriber because its
+     * buffer stayed full, counted once per subscriber
+     */
+    public long getOutputsDropped() {
+        return outputsDropped.sum();
+    }
+
+    /**
+     * @return the most items any output subscriber has been published but not yet received
+     */
+    public int getMaximumLag() {
+        return Math.max(Math.max(alarmStatuses.estimateMaximumLag(), armingStatuses.estimateMaximumLag()),
+                Math.max(catDetections.estimateMaximumLag(), sensorChanges.estimateMaximumLag()));
+    }
+
+    @Override
+    public void notify(AlarmStatus status) {
+        publishStatus(alarmStatuses, status);
+    }
+
+    @Override
+    public void catDetected(boolean catDetected) {
+        publish(catDetections, catDetected);
+    }
+
+    @Override
+    public void sensorStatusChanged() {
+        //changes are published per sensor, see sensorChanged
+    }
+
+    @Override
+    public void armingStatusChanged(ArmingStatus status) {
+        publishStatus(armingStatuses, status);
+    }
+
+    @Override
+    public void sensorChanged(Sensor sensor) {
+        //the service keeps changing its own sensor, so subscribers get a copy as of now
+        publish(sensorChanges, sensor.copy());
+    }
+
+    /**
+     * Stops publishing and completes every output subscriber, after giving statuses that are still
+     * waiting for a slow subscriber a second to be delivered. Input subscribers stop once their
+     * publishers complete.
+     */
+    @Override
+    public void close() {
+        securityService.removeStatusListener(this);
+        statusPublisher.shutdown();
+        try {
+            statusPublisher.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        //statuses still waiting for a stalled subscriber are left out
+        closing = true;
+        statusPublisher.shutdownNow();
+        alarmStatuses.close();
+        armingStatuses.close();
+        catDetections.close();
+        sensorChanges.close();
+    }
+
+    private <T> void publish(SubmissionPublisher<T> publisher, T item) {
+        if (publisher.hasSubscribers()) {
+            publisher.offer(item, PUBLISH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS, (subscriber, dropped) -> {
+                outputsDropped.increment();
+                return false;
+            });
+        }
+    }
+
+    /**
+     * Publishes the status on the status thread, which waits for room rather than drop it.
+     */
+    private <T> void publishStatus(SubmissionPublisher<T> publisher, T status) {
+        if (!publisher.hasSubscribers()) {
+            return;
+        }
+        try {
+            statusPublisher.execute(() -> {
+                //submit would wait holding the publisher's lock, which hasSubscribers and close need too
+                if (!awaitRoom(publisher)) {
+                    return;
+                }
+                try {
+                    publisher.offer(status, (subscriber, dropped) -> {
+                        outputsDropped.increment();
+                        return false;
+                    });
+                } catch (IllegalStateException e) {
+                    //closed
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            //closed
+        }
+    }
+
+    /**
+     * Waits until every subscriber of the publisher has room for another item. Only the status
+     * thread publishes statuses, so the room is still there when it offers the item.
+     * @return false if the flows were closed first
+     */
+    private boolean awaitRoom(SubmissionPublisher<?> publisher) {
+        while (!closing) {
+            if (publisher.estimateMaximumLag() < publisher.getMaxBufferCapacity()) {
+                return true;
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        return false;
+    }
+
+    /**
+     * Applies items on the service executor, requesting more in batches of half the window as
+     * they are applied.
+     */
+    private class InputSubscriber<T> implements Flow.Subscriber<T> {
+        private final Consumer<T> action;
+        private final int batch = Math.max(1, window / 2);
+        private volatile Flow.Subscription subscription;
+        private int applied; //only touched on the service thread
+
+        InputSubscriber(Consumer<T> action) {
+            this.action = action;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            if (this.subscription != null) {
+                subscription.cancel();
+                return;
+            }
+            this.subscription = subscription;
+            subscription.request(window);
+        }
+
+        @Override
+        public void onNext(T item) {
+            serviceExecutor.execute(() -> {
+                try {
+                    action.accept(item);
+                    inputsApplied.increment();
+                } catch (RuntimeException e) {
+                    log.error("Unable to apply {}", item, e);
+                }
+                if (++applied == batch) {
+                    applied = 0;
+                    subscription.request(batch);
+                }
+            });
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            log.warn("Input stream failed", throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            log.debug("Input stream completed");
+        }
+    }
+}
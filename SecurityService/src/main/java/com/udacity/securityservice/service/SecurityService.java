@@ -8,11 +8,28 @@ import com.udacity.securityservice.data.AlarmStatus;
 import com.udacity.securityservice.data.ArmingStatus;
 import com.udacity.securityservice.data.SecurityRepository;
 import com.udacity.securityservice.data.Sensor;
+import com.udacity.securityservice.data.SensorType;
+import com.udacity.securityservice.data.StateSnapshot;
+import com.udacity.securityservice.data.Zone;
+import com.udacity.securityservice.data.ZoneTree;
+import com.udacity.securityservice.telemetry.SensorTelemetry;
+
 import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.function.LongFunction;
 
 
 /**
@@ -24,10 +41,19 @@ import java.util.concurrent.ConcurrentSkipListSet;
  */
 public class SecurityService {
 
+    private static final float CAT_CONFIDENCE_THRESHOLD = 50.0f;
+
     private IService imageService;
     private SecurityRepository securityRepository;
     private Set<StatusListener> statusListeners = new HashSet<>();
     private boolean catSeen = false;
+    private EventJournal eventJournal;
+    private final List<SecurityEventListener> eventListeners = new ArrayList<>();
+    private boolean replaying;
+    private SensorTelemetry sensorTelemetry;
+    private Executor telemetryExecutor = Runnable::run;
+    private ZoneTree zoneTree;
+    private long eventSequence = 0;
 
     public SecurityService(SecurityRepository securityRepository, IService imageService) {
         this.securityRepository = securityRepository;
@@ -41,14 +67,17 @@ public class SecurityService {
      */
 
     public void setArmingStatus(ArmingStatus armingStatus) {
+        record(seq -> SecurityEvent.arming(seq, System.currentTimeMillis(), armingStatus));
         if (armingStatus == ArmingStatus.ARMED_HOME && catSeen || armingStatus == ArmingStatus.ARMED_AWAY && catSeen) {
-            setAlarmStatus(AlarmStatus.ALARM);
+            applyAlarmStatus(AlarmStatus.ALARM);
         }
-        ConcurrentSkipListSet<Sensor> sensors = new ConcurrentSkipListSet<>(getSensors());
+        //copy so the repository can reorder its own collection while we update each sensor
+        List<Sensor> sensors = new ArrayList<>(getSensors());
 
         if(armingStatus == ArmingStatus.DISARMED) {
-            setAlarmStatus(AlarmStatus.NO_ALARM);
+            applyAlarmStatus(AlarmStatus.NO_ALARM);
             securityRepository.setArmingStatus(armingStatus);
+            statusListeners.forEach(sl -> sl.armingStatusChanged(armingStatus));
             return;
 
         }
@@ -57,6 +86,7 @@ public class SecurityService {
         sensors.forEach(s -> deactivateArmed(s));
         securityRepository.setArmingStatus(armingStatus);
         statusListeners.forEach(sl -> sl.sensorStatusChanged());
+        statusListeners.forEach(sl -> sl.armingStatusChanged(armingStatus));
 
 
     }
@@ -66,6 +96,7 @@ public class SecurityService {
         if (!sensor.getActive()) {
             sensor.setActive(true);
             securityRepository.updateSensor(sensor);
+            sensorStateChanged(sensor);
         }
     }
 
@@ -73,6 +104,7 @@ public class SecurityService {
         if (sensor.getActive()) {
             sensor.setActive(false);
             securityRepository.updateSensor(sensor);
+            sensorStateChanged(sensor);
         }
     }
 
@@ -86,9 +118,9 @@ public class SecurityService {
     private void catDetected(Boolean cat) {
         catSeen = cat;
         if(cat && getArmingStatus() == ArmingStatus.ARMED_HOME) {
-            setAlarmStatus(AlarmStatus.ALARM);
-        } else if (!cat && getSensors().stream().allMatch(s->s.getActive().equals(false))) {
-            setAlarmStatus(AlarmStatus.NO_ALARM);
+            applyAlarmStatus(AlarmStatus.ALARM);
+        } else if (!cat && noArmedSensorActive(null)) {
+            applyAlarmStatus(AlarmStatus.NO_ALARM);
         }
         statusListeners.forEach(sl -> sl.catDetected(cat));
     }
@@ -112,6 +144,15 @@ public class SecurityService {
      * @param status
      */
     public void setAlarmStatus(AlarmStatus status) {
+        record(seq -> SecurityEvent.alarm(seq, System.currentTimeMillis(), status));
+        applyAlarmStatus(status);
+    }
+
+    /**
+     * Alarm status change made by the rules themselves. Not recorded, as replaying the input that
+     * caused it makes the same change.
+     */
+    private void applyAlarmStatus(AlarmStatus status) {
         securityRepository.setAlarmStatus(status);
         statusListeners.forEach(sl -> sl.notify(status));
     }
@@ -119,14 +160,17 @@ public class SecurityService {
     /**
      * Internal method for updating the alarm status when a sensor has been activated.
      */
-    private void handleSensorActivated() {
+    private void handleSensorActivated(Sensor sensor) {
         if(securityRepository.getArmingStatus() == ArmingStatus.DISARMED) {
             return;
         }
+        if (zoneTree != null && !zoneTree.isArmed(sensor)) {
+            return;
+        }
         AlarmStatus currStatus = securityRepository.getAlarmStatus();
         switch(currStatus) {
-            case NO_ALARM -> setAlarmStatus(AlarmStatus.PENDING_ALARM);
-            case PENDING_ALARM -> setAlarmStatus(AlarmStatus.ALARM);
+            case NO_ALARM -> applyAlarmStatus(AlarmStatus.PENDING_ALARM);
+            case PENDING_ALARM -> applyAlarmStatus(AlarmStatus.ALARM);
             default -> System.out.println("");
         }
     }
@@ -137,32 +181,48 @@ public class SecurityService {
     private void handleSensorDeactivated(Sensor sensor) {
 
 
-        if (securityRepository.getAlarmStatus().equals(AlarmStatus.PENDING_ALARM)) {
-            Set<Sensor> sensors = securityRepository.getSensors();
-            sensors.remove(sensor);
-            if (securityRepository.getSensors().stream().noneMatch(Sensor::getActive)) {
-                setAlarmStatus(AlarmStatus.NO_ALARM);
-            }
-            sensors.add(sensor);
+        if (securityRepository.getAlarmStatus().equals(AlarmStatus.PENDING_ALARM) && noArmedSensorActive(sensor)) {
+            applyAlarmStatus(AlarmStatus.NO_ALARM);
         }
 
 
     }
 
+    /**
+     * With a zone tree, read from its counts and leave out sensors in zones that aren't armed,
+     * otherwise look at every sensor.
+     * @param except Sensor to leave out, or null
+     */
+    private boolean noArmedSensorActive(Sensor except) {
+        if (zoneTree != null) {
+            int active = zoneTree.getArmedActiveCount();
+            if (except != null && zoneTree.isArmedActive(except)) {
+                active--;
+            }
+            return active == 0;
+        }
+        return getSensors().stream().noneMatch(s -> !s.equals(except) && s.getActive());
+    }
+
     /**
      * Change the activation status for the specified sensor and update alarm status if necessary.
      * @param sensor
      * @param active
      */
     public void changeSensorActivationStatus(Sensor sensor, Boolean active) {
+        record(seq -> SecurityEvent.sensorActivation(seq, System.currentTimeMillis(), sensor.getSensorId(), active));
 
         if(!sensor.getActive() && active || sensor.getActive() && active) {
-            handleSensorActivated();
+            handleSensorActivated(sensor);
         } else if (sensor.getActive() && !active) {
             handleSensorDeactivated(sensor);
         }
         sensor.setActive(active);
         securityRepository.updateSensor(sensor);
+        sensorStateChanged(sensor);
+        if (active) {
+            statusListeners.forEach(sl -> sl.sensorActivated(sensor));
+        }
     }
 
 
@@ -173,7 +233,221 @@ public class SecurityService {
      * @param currentCameraImage
      */
     public void processImage(BufferedImage currentCameraImage) {
-        catDetected(imageService.imageContainsCat(currentCameraImage, 50.0f));
+        applyCatDetection(detectCat(currentCameraImage));
+    }
+
+    /**
+     * Ask the image service whether the image contains a cat, without changing any state. Safe to
+     * call from other threads if the image service is, so slow recognition can be kept off the
+     * service thread.
+     * @param currentCameraImage
+     * @return the verdict to pass to {@link #applyCatDetection(boolean)}
+     */
+    public boolean detectCat(BufferedImage currentCameraImage) {
+        return imageService.imageContainsCat(currentCameraImage, CAT_CONFIDENCE_THRESHOLD);
+    }
+
+    /**
+     * Update the alarm status for a verdict from {@link #detectCat(BufferedImage)}.
+     * @param cat
+     */
+    public void applyCatDetection(boolean cat) {
+        record(seq -> SecurityEvent.catDetection(seq, System.currentTimeMillis(), cat));
+        catDetected(cat);
+    }
+
+    /**
+     * Classify every image below a directory with the image service and write the verdicts to a report,
+     * using one worker per processor. Archived images don't affect the alarm status.
+     * @param directory Root of the image archive
+     * @param report Report file. Written as JSON if its name ends in .json, otherwise as CSV.
+     * @param imagePreparer Decodes each file to the resolution the image service works at
+     */
+    public BulkImageScanner.Summary scanDirectory(Path directory, Path report, ImagePreparer imagePreparer) throws IOException {
+        BulkImageScanner scanner = new BulkImageScanner(imageService, imagePreparer,
+                Runtime.getRuntime().availableProcessors(), CAT_CONFIDENCE_THRESHOLD);
+        BulkImageScanner.ReportFormat format = report.getFileName().toString().endsWith(".json")
+                ? BulkImageScanner.ReportFormat.JSON : BulkImageScanner.ReportFormat.CSV;
+        try (Writer writer = Files.newBufferedWriter(report)) {
+            return scanner.scan(directory, writer, format);
+        }
+    }
+
+    private void record(LongFunction<SecurityEvent> event) {
+        if (replaying || eventJournal == null && eventListeners.isEmpty()) {
+            return;
+        }
+        SecurityEvent recorded = event.apply(++eventSequence);
+        if (eventJournal != null) {
+            eventJournal.append(recorded);
+        }
+        eventListeners.forEach(l -> l.eventRecorded(recorded));
+    }
+
+    /**
+     * Pass every event the service records to the listener, for example to replicate it.
+     * @param eventListener
+     */
+    public void addEventListener(SecurityEventListener eventListener) {
+        eventListeners.add(eventListener);
+    }
+
+    public void removeEventListener(SecurityEventListener eventListener) {
+        eventListeners.remove(eventListener);
+    }
+
+    /**
+     * @return the sequence number of the last event recorded or replayed
+     */
+    public long getEventSequence() {
+        return eventSequence;
+    }
+
+    private void sensorStateChanged(Sensor sensor) {
+        if (sensorTelemetry != null) {
+            //the sensor keeps changing, so take its state now and only record it later
+            SensorTelemetry telemetry = sensorTelemetry;
+            UUID sensorId = sensor.getSensorId();
+            SensorType sensorType = sensor.getSensorType();
+            boolean active = sensor.getActive();
+            long now = System.currentTimeMillis();
+            telemetryExecutor.execute(() -> telemetry.record(sensorId, sensorType, now, active));
+        }
+        if (zoneTree != null) {
+            zoneTree.update(sensor);
+        }
+        statusListeners.forEach(sl -> sl.sensorChanged(sensor));
+    }
+
+    /**
+     * Use the provided zones to keep per-zone active counts and to ignore activations in zones
+     * taken out of the arming, or treat every sensor alike if null. Zone assignments belong to this
+     * service alone; they are neither journaled, nor in snapshots, nor replicated.
+     * @param zoneTree
+     */
+    public void setZoneTree(ZoneTree zoneTree) {
+        this.zoneTree = zoneTree;
+        if (zoneTree != null) {
+            getSensors().forEach(zoneTree::update);
+        }
+    }
+
+    public ZoneTree getZoneTree() {
+        return zoneTree;
+    }
+
+    /**
+     * Keep the history of every sensor state change in the provided store, or stop if null.
+     * @param sensorTelemetry
+     */
+    public void setSensorTelemetry(SensorTelemetry sensorTelemetry) {
+        setSensorTelemetry(sensorTelemetry, Runnable::run);
+    }
+
+    /**
+     * Keep the history of every sensor state change in the provided store, recording on the
+     * executor, such as {@link PriorityScheduler#telemetryExecutor()}, so it stays off the service
+     * thread. Changes the executor drops are missing from the history.
+     * @param sensorTelemetry
+     * @param telemetryExecutor
+     */
+    public void setSensorTelemetry(SensorTelemetry sensorTelemetry, Executor telemetryExecutor) {
+        this.sensorTelemetry = sensorTelemetry;
+        this.telemetryExecutor = telemetryExecutor;
+    }
+
+    /**
+     * Record every input the service receives to the provided journal, or stop recording if null.
+     * @param eventJournal
+     */
+    public void setEventJournal(EventJournal eventJournal) {
+        this.eventJournal = eventJournal;
+    }
+
+    /**
+     * Capture the full system state, including state only held by the service such as
+     * whether a cat was last seen.
+     */
+    public StateSnapshot snapshot() {
+        return new StateSnapshot(getSensors(), getArmingStatus(), getAlarmStatus(), catSeen, eventSequence);
+    }
+
+    /**
+     * Restore the state held by the service itself from a snapshot. The repository is expected
+     * to have been seeded from the same snapshot.
+     * @param snapshot
+     */
+    public void restore(StateSnapshot snapshot) {
+        catSeen = snapshot.isCatSeen();
+        eventSequence = snapshot.getSequence();
+    }
+
+    /**
+     * Replace the whole state, repository included, with the snapshot. Used to bring a standby
+     * in line with its primary. Snapshots don't hold zones, so sensors keep the zone they had here
+     * and new sensors start without one.
+     * @param snapshot
+     */
+    public void load(StateSnapshot snapshot) {
+        Map<UUID, Zone> zones = new HashMap<>();
+        new ArrayList<>(getSensors()).forEach(s -> {
+            securityRepository.removeSensor(s);
+            if (zoneTree != null) {
+                Optional.ofNullable(zoneTree.getZone(s)).ifPresent(zone -> zones.put(s.getSensorId(), zone));
+                zoneTree.remove(s);
+            }
+        });
+        snapshot.getSensors().forEach(s -> {
+            Sensor sensor = s.copy();
+            securityRepository.addSensor(sensor);
+            if (zoneTree != null) {
+                Zone zone = zones.get(sensor.getSensorId());
+                if (zone != null) {
+                    zoneTree.assign(sensor, zone);
+                } else {
+                    zoneTree.update(sensor);
+                }
+            }
+        });
+        securityRepository.setArmingStatus(snapshot.getArmingStatus());
+        applyAlarmStatus(snapshot.getAlarmStatus());
+        restore(snapshot);
+        statusListeners.forEach(sl -> sl.sensorStatusChanged());
+    }
+
+    /**
+     * Apply previously recorded events through the normal business rules. Cat detection events
+     * reuse the recorded verdict, so the image service is never called. Replayed events are not
+     * recorded again.
+     * @param events Events in the order they were recorded
+     */
+    public void replay(Iterable<SecurityEvent> events) {
+        SensorTelemetry telemetry = sensorTelemetry;
+        //replayed events happened before, they are neither recorded nor kept as telemetry again
+        replaying = true;
+        sensorTelemetry = null;
+        try {
+            for (SecurityEvent event : events) {
+                switch (event.getType()) {
+                    case SENSOR_ADDED -> addSensor(new Sensor(event.getSensorId(), event.getSensorName(),
+                            event.getSensorType(), event.getFlag()));
+                    case SENSOR_REMOVED -> findSensor(event.getSensorId()).ifPresent(this::removeSensor);
+                    case SENSOR_ACTIVATION -> findSensor(event.getSensorId())
+                            .ifPresent(s -> changeSensorActivationStatus(s, event.getFlag()));
+                    case ARMING -> setArmingStatus(event.getArmingStatus());
+                    case CAT_DETECTION -> catDetected(event.getFlag());
+                    case ALARM -> applyAlarmStatus(event.getAlarmStatus());
+                }
+                eventSequence = event.getSequence();
+            }
+        } finally {
+            replaying = false;
+            sensorTelemetry = telemetry;
+        }
+    }
+
+    private Optional<Sensor> findSensor(UUID sensorId) {
+        return Optional.ofNullable(getSensor(sensorId));
     }
 
     public AlarmStatus getAlarmStatus() {
@@ -184,12 +458,27 @@ public class SecurityService {
         return securityRepository.getSensors();
     }
 
+    /**
+     * @return the sensor with the given id, or null if there is none
+     */
+    public Sensor getSensor(UUID sensorId) {
+        return securityRepository.getSensor(sensorId);
+    }
+
     public void addSensor(Sensor sensor) {
+        record(seq -> SecurityEvent.sensorAdded(seq, System.currentTimeMillis(), sensor));
         securityRepository.addSensor(sensor);
+        if (zoneTree != null) {
+            zoneTree.update(sensor);
+        }
     }
 
     public void removeSensor(Sensor sensor) {
+        record(seq -> SecurityEvent.sensorRemoved(seq, System.currentTimeMillis(), sensor.getSensorId()));
         securityRepository.removeSensor(sensor);
+        if (zoneTree != null) {
+            zoneTree.remove(sensor);
+        }
     }
 
     public ArmingStatus getArmingStatus() {
@@ -0,0 +1,59 @@
+package com.udacity.securityservice.service;
+
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * A sensor reporting its state, as fed to {@link SecurityFlows#sensorInput()}.
+ */
+public final class SensorReading {
+
+    /**
+     * Sequence of a reading that doesn't come with one, which is never treated as a duplicate.
+     */
+    public static final long NO_SEQUENCE = Long.MIN_VALUE;
+
+    private final UUID sensorId;
+    private final boolean active;
+    private final long timestamp;
+    private final long sequence;
+
+    /**
+     * @param timestamp Epoch millis at the sensor
+     */
+    public SensorReading(UUID sensorId, boolean active, long timestamp) {
+        this(sensorId, active, timestamp, NO_SEQUENCE);
+    }
+
+    /**
+     * @param timestamp Epoch millis at the sensor
+     * @param sequence Number the sensor increases with every reading, to spot duplicated or reordered ones
+     */
+    public SensorReading(UUID sensorId, boolean active, long timestamp, long sequence) {
+        this.sensorId = Objects.requireNonNull(sensorId);
+        this.active = active;
+        this.timestamp = timestamp;
+        this.sequence = sequence;
+    }
+
+    public UUID getSensorId() {
+        return sensorId;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    @Override
+    public String toString() {
+        return "SensorReading{" + sensorId + (active ? " active" : " inactive") + " at " + timestamp + "}";
+    }
+}
@@ -0,0 +1,78 @@
+package com.udacity.securityservice.service;
+
+import com.udacity.securityservice.data.StateSnapshot;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Keeps a binary snapshot of the system state plus a journal of the events received since that
+ * snapshot was taken. Starting up is then "load snapshot + replay journal tail", and writing a
+ * checkpoint folds the journal back into a fresh snapshot.
+ */
+public class StateStore {
+
+    private static final String SNAPSHOT_FILE = "state.snapshot";
+    private static final String JOURNAL_FILE = "events.journal";
+
+    private final Path snapshotPath;
+    private final Path journalPath;
+    private EventJournal journal;
+
+    public StateStore(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        this.snapshotPath = directory.resolve(SNAPSHOT_FILE);
+        this.journalPath = directory.resolve(JOURNAL_FILE);
+    }
+
+    /**
+     * @return the last checkpointed snapshot, or null if none has been written yet
+     */
+    public StateSnapshot loadSnapshot() throws IOException {
+        if (!Files.exists(snapshotPath)) {
+            return null;
+        }
+        try (InputStream is = Files.newInputStream(snapshotPath)) {
+            return StateSnapshot.readFrom(is);
+        }
+    }
+
+    /**
+     * Brings the service up to date and starts journaling its events. If a snapshot is provided,
+     * the service's repository must already have been seeded from it; the journaled events recorded
+     * after the snapshot are then replayed on top. Without a snapshot the repository is assumed to be
+     * current and any old journal is discarded.
+     * @param securityService Service to recover
+     * @param snapshot Snapshot the repository was seeded from, or null
+     */
+    public void recover(SecurityService securityService, StateSnapshot snapshot) throws IOException {
+        if (snapshot != null) {
+            securityService.restore(snapshot);
+            securityService.replay(EventJournal.read(journalPath, snapshot.getSequence()));
+        }
+        checkpoint(securityService);
+    }
+
+    /**
+     * Atomically replaces the snapshot with the current state of the service and starts a new, empty journal.
+     * @param securityService Service to checkpoint
+     */
+    public synchronized void checkpoint(SecurityService securityService) throws IOException {
+        Path tmp = snapshotPath.resolveSibling(SNAPSHOT_FILE + ".tmp");
+        try (OutputStream os = Files.newOutputStream(tmp)) {
+            securityService.snapshot().writeTo(os);
+        }
+        Files.move(tmp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        if (journal != null) {
+            journal.close();
+        }
+        Files.deleteIfExists(journalPath);
+        journal = new EventJournal(journalPath);
+        securityService.setEventJournal(journal);
+    }
+}
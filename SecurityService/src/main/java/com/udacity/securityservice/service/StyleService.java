@@ -8,5 +8,6 @@ import java.awt.*;
 public final class StyleService {
 
     public static final Font HEADING_FONT = new Font("Sans Serif", Font.BOLD, 24);
+    public static final Font CAPTION_FONT = new Font("Sans Serif", Font.PLAIN, 11);
 
 }
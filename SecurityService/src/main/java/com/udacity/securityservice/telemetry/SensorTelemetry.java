@@ -0,0 +1,258 @@
+package com.udacity.securityservice.telemetry;
+
+import com.udacity.securityservice.data.SensorType;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * History of every sensor activation and deactivation, compressed so that months of it for a large
+ * installation fit in memory.
+ *
+ * Each sensor's events are packed into chunks of up to {@value TelemetryChunk#MAX_EVENTS}, see
+ * {@link TelemetryChunk} for the encoding. Timestamps are rounded down to the resolution given at
+ * construction, one second by default. Range scans skip every chunk outside the range without
+ * decoding it. Activations per hour and sensor type are also counted as events arrive, so hourly
+ * aggregates never touch the chunks at all.
+ *
+ * All methods are synchronized, so the store can be queried from other threads while the service
+ * records into it.
+ */
+public class SensorTelemetry {
+
+    private static final int MAGIC = 0x43505454; // "CPTT"
+    private static final byte VERSION = 1;
+    private static final long HOUR_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final long resolutionMillis;
+    private final Map<UUID, Series> series = new HashMap<>();
+    private final Map<Long, long[]> activationsByHour = new HashMap<>();
+    private long events;
+
+    public SensorTelemetry() {
+        this(1000);
+    }
+
+    /**
+     * @param resolutionMillis Precision of the stored timestamps. Coarser timestamps compress better.
+     */
+    public SensorTelemetry(long resolutionMillis) {
+        if (resolutionMillis <= 0) {
+            throw new IllegalArgumentException("resolutionMillis must be positive");
+        }
+        this.resolutionMillis = resolutionMillis;
+    }
+
+    /**
+     * Adds an event. Events for a sensor should arrive in time order; one older than the sensor's
+     * latest event is stored at the time of the latest event instead.
+     * @param timestamp Epoch millis
+     */
+    public synchronized void record(UUID sensorId, SensorType sensorType, long timestamp, boolean active) {
+        Series s = series.computeIfAbsent(sensorId, id -> new Series(sensorType));
+        long tick = Math.floorDiv(timestamp, resolutionMillis);
+        if (!s.chunks.isEmpty()) {
+            tick = Math.max(tick, s.chunks.get(s.chunks.size() - 1).getEndTick());
+        }
+        if (s.open == null || s.open.isFull()) {
+            if (s.open != null) {
+                s.open.seal();
+            }
+            s.open = new TelemetryChunk(tick);
+            s.chunks.add(s.open);
+        }
+        s.open.append(tick, active);
+        events++;
+        if (active) {
+            activationsByHour.computeIfAbsent(Math.floorDiv(tick * resolutionMillis, HOUR_MILLIS),
+                    hour -> new long[SensorType.values().length])[sensorType.ordinal()]++;
+        }
+    }
+
+    /**
+     * Receives scanned events in time order.
+     */
+    public interface EventConsumer {
+        void accept(long timestamp, boolean active);
+    }
+
+    /**
+     * Calls the consumer for each of the sensor's events from fromMillis inclusive to toMillis
+     * exclusive, oldest first.
+     */
+    public synchronized void scan(UUID sensorId, long fromMillis, long toMillis, EventConsumer consumer) {
+        Series s = series.get(sensorId);
+        if (s == null) {
+            return;
+        }
+        long fromTick = Math.floorDiv(fromMillis, resolutionMillis);
+        long toTick = Math.floorDiv(toMillis - 1, resolutionMillis) + 1;
+        for (TelemetryChunk chunk : s.chunks) {
+            if (chunk.getEndTick() < fromTick) {
+                continue;
+            }
+            if (chunk.getStartTick() >= toTick) {
+                break;
+            }
+            chunk.scan(fromTick, toTick, (tick, active) -> consumer.accept(tick * resolutionMillis, active));
+        }
+    }
+
+    /**
+     * @return how many activations sensors of the type reported in each hour, starting with the hour
+     * containing fromMillis and ending with the one containing toMillis - 1
+     */
+    public synchronized long[] getActivationsPerHour(SensorType sensorType, long fromMillis, long toMillis) {
+        long firstHour = Math.floorDiv(fromMillis, HOUR_MILLIS);
+        long lastHour = Math.floorDiv(toMillis - 1, HOUR_MILLIS);
+        long[] counts = new long[(int) Math.max(0, lastHour - firstHour + 1)];
+        for (int i = 0; i < counts.length; i++) {
+            long[] hour = activationsByHour.get(firstHour + i);
+            if (hour != null) {
+                counts[i] = hour[sensorType.ordinal()];
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * @return activations the sensor reported in the range, counted from the chunk totals where a
+     * chunk lies entirely inside it
+     */
+    public synchronized long getActivations(UUID sensorId, long fromMillis, long toMillis) {
+        Series s = series.get(sensorId);
+        if (s == null) {
+            return 0;
+        }
+        long fromTick = Math.floorDiv(fromMillis, resolutionMillis);
+        long toTick = Math.floorDiv(toMillis - 1, resolutionMillis) + 1;
+        long[] total = {0};
+        for (TelemetryChunk chunk : s.chunks) {
+            if (chunk.getEndTick() < fromTick) {
+                continue;
+            }
+            if (chunk.getStartTick() >= toTick) {
+                break;
+            }
+            if (chunk.getStartTick() >= fromTick && chunk.getEndTick() < toTick) {
+                total[0] += chunk.getActivations();
+            } else {
+                chunk.scan(fromTick, toTick, (tick, active) -> total[0] += active ? 1 : 0);
+            }
+        }
+        return total[0];
+    }
+
+    public synchronized long getEventCount() {
+        return events;
+    }
+
+    /**
+     * @return bytes taken by the packed events, excluding per-chunk headers
+     */
+    public synchronized long getCompressedBytes() {
+        long bits = 0;
+        for (Series s : series.values()) {
+            for (TelemetryChunk chunk : s.chunks) {
+                bits += chunk.getBitLength();
+            }
+        }
+        return (bits + 7) / 8;
+    }
+
+    /**
+     * Writes the whole history to the stream. The stream is not closed.
+     */
+    public synchronized void writeTo(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeByte(VERSION);
+        data.writeLong(resolutionMillis);
+        data.writeInt(series.size());
+        for (Map.Entry<UUID, Series> entry : series.entrySet()) {
+            data.writeLong(entry.getKey().getMostSignificantBits());
+            data.writeLong(entry.getKey().getLeastSignificantBits());
+            data.writeByte(entry.getValue().sensorType.ordinal());
+            data.writeInt(entry.getValue().chunks.size());
+            for (TelemetryChunk chunk : entry.getValue().chunks) {
+                chunk.writeTo(data);
+            }
+        }
+        data.writeInt(activationsByHour.size());
+        for (Map.Entry<Long, long[]> entry : activationsByHour.entrySet()) {
+            data.writeLong(entry.getKey());
+            for (long count : entry.getValue()) {
+                data.writeLong(count);
+            }
+        }
+        data.flush();
+    }
+
+    /**
+     * Reads a history written by {@link #writeTo(OutputStream)}. New events for a sensor start a
+     * new chunk rather than filling up the last one read.
+     * @param in Stream to read from. The stream is not closed.
+     * @throws IOException if the stream is not a telemetry history, is corrupt or was written by an unknown version
+     */
+    public static SensorTelemetry readFrom(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a sensor telemetry history");
+        }
+        byte version = data.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported telemetry version " + version);
+        }
+        long resolutionMillis = data.readLong();
+        if (resolutionMillis <= 0) {
+            throw new IOException("Corrupt telemetry resolution " + resolutionMillis);
+        }
+        SensorTelemetry telemetry = new SensorTelemetry(resolutionMillis);
+        SensorType[] types = SensorType.values();
+        int seriesCount = data.readInt();
+        for (int i = 0; i < seriesCount; i++) {
+            UUID sensorId = new UUID(data.readLong(), data.readLong());
+            int type = data.readUnsignedByte();
+            if (type >= types.length) {
+                throw new IOException("Corrupt telemetry sensor type " + type);
+            }
+            Series s = new Series(types[type]);
+            int chunkCount = data.readInt();
+            for (int c = 0; c < chunkCount; c++) {
+                TelemetryChunk chunk = TelemetryChunk.readFrom(data);
+                s.chunks.add(chunk);
+                telemetry.events += chunk.getCount();
+            }
+            telemetry.series.put(sensorId, s);
+        }
+        int hours = data.readInt();
+        for (int i = 0; i < hours; i++) {
+            long hour = data.readLong();
+            long[] counts = new long[types.length];
+            for (int t = 0; t < counts.length; t++) {
+                counts[t] = data.readLong();
+            }
+            telemetry.activationsByHour.put(hour, counts);
+        }
+        return telemetry;
+    }
+
+    private static class Series {
+        private final SensorType sensorType;
+        private final List<TelemetryChunk> chunks = new ArrayList<>(1);
+        private TelemetryChunk open;
+
+        Series(SensorType sensorType) {
+            this.sensorType = sensorType;
+        }
+    }
+}
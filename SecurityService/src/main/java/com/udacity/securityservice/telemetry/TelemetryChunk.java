@@ -0,0 +1,261 @@
+package com.udacity.securityservice.telemetry;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A run of events for one sensor, packed into bits the way Gorilla packs time series. The first
+ * event's time is kept as a plain field; after it every event costs one bit for the state plus
+ * the delta-of-delta of its timestamp, in ticks:
+ * <pre>
+ *   0                    delta of delta is 0
+ *   10   + 7 bits        -64 to 63
+ *   110  + 9 bits        -256 to 255
+ *   1110 + 12 bits       -2048 to 2047
+ *   11110 + 32 bits      any int
+ *   11111 + 64 bits      anything else
+ * </pre>
+ * Sensors that report on a steady rhythm cost two bits per event. The start and end times and the
+ * counts stay outside the bits, so scans can skip whole chunks.
+ */
+class TelemetryChunk {
+
+    static final int MAX_EVENTS = 1024;
+
+    private long[] words;
+    private long bitLength;
+
+    private final long startTick;
+    private long endTick;
+    private int count;
+    private int activations;
+
+    //encoder state, only meaningful while the chunk is open
+    private long lastDelta;
+
+    TelemetryChunk(long startTick) {
+        this.startTick = startTick;
+        this.endTick = startTick;
+        this.words = new long[2];
+    }
+
+    private TelemetryChunk(long startTick, long endTick, int count, int activations, long bitLength, long[] words) {
+        this.startTick = startTick;
+        this.endTick = endTick;
+        this.count = count;
+        this.activations = activations;
+        this.bitLength = bitLength;
+        this.words = words;
+    }
+
+    boolean isFull() {
+        return count == MAX_EVENTS;
+    }
+
+    /**
+     * @param tick Not before the end of the chunk
+     */
+    void append(long tick, boolean active) {
+        if (count > 0) {
+            long delta = tick - endTick;
+            writeDeltaOfDelta(delta - lastDelta);
+            lastDelta = delta;
+        }
+        writeBits(active ? 1 : 0, 1);
+        endTick = tick;
+        count++;
+        if (active) {
+            activations++;
+        }
+    }
+
+    /**
+     * Decodes the events with ticks in [fromTick, toTick).
+     */
+    void scan(long fromTick, long toTick, TickConsumer consumer) {
+        long position = 0;
+        long tick = startTick;
+        long delta = 0;
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                delta += readDeltaOfDelta(position);
+                position += deltaOfDeltaLength(position);
+                tick += delta;
+            }
+            boolean active = readBits(position, 1) == 1;
+            position++;
+            if (tick >= toTick) {
+                return;
+            }
+            if (tick >= fromTick) {
+                consumer.accept(tick, active);
+            }
+        }
+    }
+
+    /**
+     * Drops the spare capacity once no more events will be appended.
+     */
+    void seal() {
+        words = Arrays.copyOf(words, (int) ((bitLength + 63) >>> 6));
+    }
+
+    long getStartTick() {
+        return startTick;
+    }
+
+    long getEndTick() {
+        return endTick;
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    int getActivations() {
+        return activations;
+    }
+
+    long getBitLength() {
+        return bitLength;
+    }
+
+    void writeTo(DataOutput out) throws IOException {
+        out.writeLong(startTick);
+        out.writeLong(endTick);
+        out.writeInt(count);
+        out.writeInt(activations);
+        out.writeLong(bitLength);
+        int usedWords = (int) ((bitLength + 63) >>> 6);
+        for (int i = 0; i < usedWords; i++) {
+            out.writeLong(words[i]);
+        }
+    }
+
+    /**
+     * Reads a sealed chunk written by {@link #writeTo(DataOutput)}.
+     */
+    static TelemetryChunk readFrom(DataInput in) throws IOException {
+        long startTick = in.readLong();
+        long endTick = in.readLong();
+        int count = in.readInt();
+        int activations = in.readInt();
+        long bitLength = in.readLong();
+        if (count < 0 || count > MAX_EVENTS || bitLength < 0 || bitLength > (long) MAX_EVENTS * 70) {
+            throw new IOException("Corrupt telemetry chunk");
+        }
+        long[] words = new long[(int) ((bitLength + 63) >>> 6)];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = in.readLong();
+        }
+        return new TelemetryChunk(startTick, endTick, count, activations, bitLength, words);
+    }
+
+    private void writeDeltaOfDelta(long dod) {
+        if (dod == 0) {
+            writeBits(0b0, 1);
+        } else if (dod >= -64 && dod <= 63) {
+            writeBits(0b10, 2);
+            writeBits(dod, 7);
+        } else if (dod >= -256 && dod <= 255) {
+            writeBits(0b110, 3);
+            writeBits(dod, 9);
+        } else if (dod >= -2048 && dod <= 2047) {
+            writeBits(0b1110, 4);
+            writeBits(dod, 12);
+        } else if (dod >= Integer.MIN_VALUE && dod <= Integer.MAX_VALUE) {
+            writeBits(0b11110, 5);
+            writeBits(dod, 32);
+        } else {
+            writeBits(0b11111, 5);
+            writeBits(dod, 64);
+        }
+    }
+
+    private long readDeltaOfDelta(long position) {
+        int prefix = prefixLength(position);
+        int bits = valueBits(prefix);
+        if (bits == 0) {
+            return 0;
+        }
+        long value = readBits(position + prefixBits(prefix), bits);
+        //sign extend
+        return bits == 64 ? value : (value << (64 - bits)) >> (64 - bits);
+    }
+
+    private long deltaOfDeltaLength(long position) {
+        int prefix = prefixLength(position);
+        return prefixBits(prefix) + valueBits(prefix);
+    }
+
+    /**
+     * @return how many 1 bits start the control prefix, at most 5
+     */
+    private int prefixLength(long position) {
+        int ones = 0;
+        while (ones < 5 && readBits(position + ones, 1) == 1) {
+            ones++;
+        }
+        return ones;
+    }
+
+    private static int prefixBits(int ones) {
+        return ones == 5 ? 5 : ones + 1;
+    }
+
+    private static int valueBits(int ones) {
+        switch (ones) {
+            case 0:
+                return 0;
+            case 1:
+                return 7;
+            case 2:
+                return 9;
+            case 3:
+                return 12;
+            case 4:
+                return 32;
+            default:
+                return 64;
+        }
+    }
+
+    /**
+     * Appends the low bits of the value, most significant first.
+     */
+    private void writeBits(long value, int bits) {
+        long needed = (bitLength + bits + 63) >>> 6;
+        if (needed > words.length) {
+            words = Arrays.copyOf(words, Math.max((int) needed, words.length * 2));
+        }
+        for (int remaining = bits; remaining > 0; ) {
+            int word = (int) (bitLength >>> 6);
+            int used = (int) (bitLength & 63);
+            int take = Math.min(64 - used, remaining);
+            long chunk = (value >>> (remaining - take)) & (take == 64 ? -1L : (1L << take) - 1);
+            words[word] |= chunk << (64 - used - take);
+            bitLength += take;
+            remaining -= take;
+        }
+    }
+
+    private long readBits(long position, int bits) {
+        long value = 0;
+        for (int remaining = bits; remaining > 0; ) {
+            int word = (int) (position >>> 6);
+            int offset = (int) (position & 63);
+            int take = Math.min(64 - offset, remaining);
+            long chunk = (words[word] >>> (64 - offset - take)) & (take == 64 ? -1L : (1L << take) - 1);
+            value = take == 64 ? chunk : (value << take) | chunk;
+            position += take;
+            remaining -= take;
+        }
+        return value;
+    }
+
+    interface TickConsumer {
+        void accept(long tick, boolean active);
+    }
+}
@@ -2,10 +2,14 @@ module com.udacity.securityservice {
     requires java.desktop;
     requires com.google.gson;
     requires java.prefs;
+    requires java.sql;
     requires miglayout;
-    requires com.google.common;
     requires com.udacity.imageservice;
-    opens com.udacity.securityservice.data to com.google.gson;
+    requires org.slf4j;
+    requires java.management;
+    requires java.net.http;
+    //only for the stand-in webhook server in NotificationDemo
+    requires static jdk.httpserver;
 
 
 
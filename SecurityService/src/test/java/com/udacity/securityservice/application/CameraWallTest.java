@@ -0,0 +1,122 @@
+package com.udacity.securityservice.application;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.ImageObserver;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+public class CameraWallTest {
+
+    private static final int WIDTH = 4;
+    private static final int HEIGHT = 3;
+
+    private CameraWall wall;
+
+    @AfterEach
+    void close() {
+        wall.close();
+    }
+
+    /**
+     * With room for two thumbnails, a third camera evicts the one updated least recently
+     */
+    @Test
+    void checkThatFullCacheEvictsLeastRecentlyUpdated() throws InterruptedException {
+        wall = new CameraWall(2, WIDTH, HEIGHT, 2 * 4L * WIDTH * HEIGHT, 30, 1);
+        show("a", Color.RED);
+        show("b", Color.GREEN);
+        show("a", Color.BLUE);
+        assertEquals(0, wall.getEvictions());
+
+        show("c", Color.WHITE);
+        assertEquals(1, wall.getEvictions());
+        assertNull(wall.getThumbnail("b"));
+        assertEquals(Color.BLUE.getRGB(), wall.getThumbnail("a").getRGB(0, 0));
+        assertEquals(Color.WHITE.getRGB(), wall.getThumbnail("c").getRGB(0, 0));
+
+        //an evicted camera keeps its cell and comes back with its next frame
+        assertEquals(2 * (HEIGHT + 16 + 4) + 4, wall.getPreferredSize().height);
+        show("b", Color.GREEN);
+        assertEquals(2, wall.getEvictions());
+        assertNull(wall.getThumbnail("a"));
+        assertEquals(Color.GREEN.getRGB(), wall.getThumbnail("b").getRGB(0, 0));
+    }
+
+    /**
+     * A frame that arrives while the previous one is being scaled is scaled on another thread and
+     * shown first; the older frame finishing afterwards is dropped rather than replacing it
+     */
+    @Test
+    void checkThatOlderFrameDoesNotReplaceNewerThumbnail() throws InterruptedException {
+        wall = new CameraWall(2, WIDTH, HEIGHT, 32L * 1024 * 1024, 30, 2);
+        SlowFrame older = new SlowFrame(Color.RED);
+        wall.updateFrame("camera", older);
+        assertTrue(older.scaling.await(10, TimeUnit.SECONDS));
+
+        wall.updateFrame("camera", frame(Color.BLUE));
+        await(() -> wall.getThumbnail("camera") != null);
+        assertEquals(Color.BLUE.getRGB(), wall.getThumbnail("camera").getRGB(0, 0));
+
+        older.release.countDown();
+        await(() -> wall.getScaled() == 2 && wall.getSkipped() == 1);
+        assertEquals(Color.BLUE.getRGB(), wall.getThumbnail("camera").getRGB(0, 0));
+    }
+
+    private void show(String cameraId, Color color) throws InterruptedException {
+        long scaled = wall.getScaled();
+        wall.updateFrame(cameraId, frame(color));
+        await(() -> wall.getScaled() > scaled && wall.getThumbnail(cameraId) != null
+                && wall.getThumbnail(cameraId).getRGB(0, 0) == color.getRGB());
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "timed out");
+            Thread.sleep(1);
+        }
+    }
+
+    private static BufferedImage frame(Color color) {
+        return fill(new BufferedImage(WIDTH * 2, HEIGHT * 2, BufferedImage.TYPE_INT_RGB), color);
+    }
+
+    private static <T extends BufferedImage> T fill(T image, Color color) {
+        Graphics2D g = image.createGraphics();
+        g.setColor(color);
+        g.fillRect(0, 0, image.getWidth(), image.getHeight());
+        g.dispose();
+        return image;
+    }
+
+    /**
+     * Frame whose scaling waits until the test releases it
+     */
+    private static class SlowFrame extends BufferedImage {
+        private final CountDownLatch scaling = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        SlowFrame(Color color) {
+            super(WIDTH * 2, HEIGHT * 2, BufferedImage.TYPE_INT_RGB);
+            fill(this, color);
+        }
+
+        @Override
+        public int getWidth(ImageObserver observer) {
+            //drawing the frame scaled asks for its size first
+            scaling.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return super.getWidth(observer);
+        }
+    }
+}
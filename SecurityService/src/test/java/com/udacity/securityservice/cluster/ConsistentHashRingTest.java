@@ -0,0 +1,103 @@
+package com.udacity.securityservice.cluster;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ConsistentHashRingTest {
+
+    private static final int NODES = 10;
+    private static final int VIRTUAL_NODES = 200;
+
+    private final List<String> sites = new ArrayList<>();
+    private ConsistentHashRing<String> ring;
+
+    @BeforeEach
+    void init() {
+        for (int i = 0; i < 100_000; i++) {
+            sites.add("site-" + i);
+        }
+        ring = ring(NODES);
+    }
+
+    /**
+     * Every node gets within a fifth of its fair share of sites
+     */
+    @Test
+    void checkThatSitesSpreadEvenly() {
+        Map<String, Integer> counts = new HashMap<>();
+        for (String site : sites) {
+            counts.merge(ring.owner(site), 1, Integer::sum);
+        }
+        assertEquals(NODES, counts.size());
+        double fair = sites.size() / (double) NODES;
+        counts.forEach((node, count) -> assertEquals(fair, count, fair * 0.2, node));
+    }
+
+    /**
+     * A new node takes about its share of sites, and every site that moves, moves to it
+     */
+    @Test
+    void checkThatAddingNodeOnlyMovesSitesToIt() {
+        ConsistentHashRing<String> grown = ring(NODES + 1);
+        List<String> moved = ring.moved(sites, grown);
+        for (String site : moved) {
+            assertEquals("node-" + NODES, grown.owner(site));
+        }
+        double share = sites.size() / (double) (NODES + 1);
+        assertEquals(share, moved.size(), share * 0.2);
+    }
+
+    /**
+     * Only the removed node's sites move, and adding it back puts every site where it was
+     */
+    @Test
+    void checkThatRemovingNodeOnlyMovesItsSites() {
+        ConsistentHashRing<String> shrunk = ring(NODES);
+        shrunk.remove("node-3");
+        List<String> moved = ring.moved(sites, shrunk);
+        for (String site : moved) {
+            assertEquals("node-3", ring.owner(site));
+        }
+        assertEquals(sites.stream().filter(site -> ring.owner(site).equals("node-3")).count(), moved.size());
+
+        shrunk.add("node-3");
+        assertEquals(List.of(), ring.moved(sites, shrunk));
+    }
+
+    @Test
+    void checkThatOwnershipDoesNotDependOnInsertionOrder() {
+        ConsistentHashRing<String> reversed = new ConsistentHashRing<>(VIRTUAL_NODES);
+        for (int i = NODES - 1; i >= 0; i--) {
+            reversed.add("node-" + i);
+        }
+        assertEquals(List.of(), ring.moved(sites, reversed));
+    }
+
+    @Test
+    void checkThatEmptyRingOwnsNothing() {
+        ConsistentHashRing<String> empty = new ConsistentHashRing<>(VIRTUAL_NODES);
+        assertNull(empty.owner("site-1"));
+        empty.add("node-0");
+        empty.remove("node-0");
+        assertNull(empty.owner("site-1"));
+        assertEquals(sites, empty.moved(sites, ring));
+    }
+
+    @Test
+    void checkThatNonPositiveVirtualNodesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new ConsistentHashRing<String>(0));
+    }
+
+    private static ConsistentHashRing<String> ring(int nodes) {
+        ConsistentHashRing<String> ring = new ConsistentHashRing<>(VIRTUAL_NODES);
+        for (int i = 0; i < nodes; i++) {
+            ring.add("node-" + i);
+        }
+        return ring;
+    }
+}
@@ -0,0 +1,90 @@
+package com.udacity.securityservice.data;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.prefs.BackingStoreException;
+import java.util.prefs.Preferences;
+
+public class PreferencesMigrationTest {
+
+    private static final Sensor DOOR = new Sensor(new UUID(0, 1), "Front door", SensorType.DOOR, true);
+    private static final Sensor WINDOW = new Sensor(new UUID(0, 2), "Kitchen window", SensorType.WINDOW, false);
+
+    //a node of its own, so the user's real preferences are left alone
+    private final Preferences preferences = Preferences.userRoot().node("catpoint-test-" + UUID.randomUUID());
+
+    @AfterEach
+    void removePreferences() throws BackingStoreException {
+        preferences.removeNode();
+    }
+
+    @Test
+    void checkThatSensorsAndStatusesAreCopied(@TempDir Path directory) throws SQLException {
+        PretendDatabaseSecurityRepositoryImpl seeded = new PretendDatabaseSecurityRepositoryImpl(preferences);
+        seeded.addSensor(DOOR.copy());
+        seeded.addSensor(WINDOW.copy());
+        seeded.setArmingStatus(ArmingStatus.ARMED_AWAY);
+        seeded.setAlarmStatus(AlarmStatus.PENDING_ALARM);
+
+        try (SqlSecurityRepositoryImpl repository = PreferencesMigration.migrate(directory.resolve("catpoint"), preferences)) {
+            assertEquals(states(DOOR, WINDOW), states(repository.getSensors()));
+            assertEquals(ArmingStatus.ARMED_AWAY, repository.getArmingStatus());
+            assertEquals(AlarmStatus.PENDING_ALARM, repository.getAlarmStatus());
+        }
+        //the preferences are left as they were
+        assertEquals(states(DOOR, WINDOW), states(new PretendDatabaseSecurityRepositoryImpl(preferences).getSensors()));
+    }
+
+    @Test
+    void checkThatLegacyJsonSensorsAreCopied(@TempDir Path directory) throws SQLException {
+        preferences.put("SENSORS", "[{\"sensorId\":\"00000000-0000-0000-0000-000000000001\",\"name\":\"Front door\","
+                + "\"sensorType\":\"DOOR\",\"active\":true}]");
+        preferences.put("ARMING_STATUS", ArmingStatus.ARMED_HOME.toString());
+
+        try (SqlSecurityRepositoryImpl repository = PreferencesMigration.migrate(directory.resolve("catpoint"), preferences)) {
+            assertEquals(states(DOOR), states(repository.getSensors()));
+            assertEquals(ArmingStatus.ARMED_HOME, repository.getArmingStatus());
+            assertEquals(AlarmStatus.NO_ALARM, repository.getAlarmStatus());
+        }
+    }
+
+    /**
+     * Migrating again replaces what the database held rather than adding to it
+     */
+    @Test
+    void checkThatMigratingAgainReplacesRows(@TempDir Path directory) throws SQLException {
+        Path database = directory.resolve("catpoint");
+        PretendDatabaseSecurityRepositoryImpl seeded = new PretendDatabaseSecurityRepositoryImpl(preferences);
+        seeded.addSensor(DOOR.copy());
+        PreferencesMigration.migrate(database, preferences).close();
+
+        seeded.removeSensor(DOOR);
+        seeded.addSensor(WINDOW.copy());
+        try (SqlSecurityRepositoryImpl repository = PreferencesMigration.migrate(database, preferences)) {
+            assertEquals(states(WINDOW), states(repository.getSensors()));
+        }
+    }
+
+    /**
+     * Sensors compare by id alone, so compare everything stored about them instead
+     */
+    private static Map<UUID, String> states(Sensor... sensors) {
+        return states(Arrays.asList(sensors));
+    }
+
+    private static Map<UUID, String> states(Iterable<Sensor> sensors) {
+        Map<UUID, String> states = new HashMap<>();
+        for (Sensor sensor : sensors) {
+            states.put(sensor.getSensorId(), sensor.getName() + " " + sensor.getSensorType() + " " + sensor.getActive());
+        }
+        return states;
+    }
+}
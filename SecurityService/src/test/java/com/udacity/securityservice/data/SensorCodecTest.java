@@ -0,0 +1,122 @@
+package com.udacity.securityservice.data;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+public class SensorCodecTest {
+
+    /**
+     * Every field of every sensor survives encoding and decoding, in order
+     */
+    @Test
+    void checkThatSensorsRoundTrip() {
+        List<Sensor> sensors = List.of(
+                new Sensor(UUID.randomUUID(), "Front door", SensorType.DOOR, true),
+                new Sensor(UUID.randomUUID(), "Fenêtre 窓", SensorType.WINDOW, false),
+                new Sensor(new UUID(0, 0), "", SensorType.MOTION, true));
+        List<Sensor> decoded = SensorCodec.decode(SensorCodec.encode(sensors));
+        assertEquals(sensors.size(), decoded.size());
+        for (int i = 0; i < sensors.size(); i++) {
+            assertSameSensor(sensors.get(i), decoded.get(i));
+        }
+    }
+
+    @Test
+    void checkThatNoSensorsRoundTrip() {
+        assertTrue(SensorCodec.decode(SensorCodec.encode(List.of())).isEmpty());
+    }
+
+    /**
+     * Names and counts past 127 take more than one varint byte
+     */
+    @Test
+    void checkThatLongNamesAndManySensorsRoundTrip() {
+        List<Sensor> sensors = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            sensors.add(new Sensor(UUID.randomUUID(), "s".repeat(i * 70), SensorType.values()[i % 3], i % 2 == 0));
+        }
+        byte[] encoded = SensorCodec.encode(sensors);
+        List<Sensor> decoded = SensorCodec.decode(encoded);
+        for (int i = 0; i < sensors.size(); i++) {
+            assertSameSensor(sensors.get(i), decoded.get(i));
+        }
+    }
+
+    /**
+     * The encoder sizes its output exactly, with no slack at the end
+     */
+    @Test
+    void checkThatEncodingIsSizedExactly() {
+        Sensor sensor = new Sensor(UUID.randomUUID(), "abc", SensorType.DOOR, false);
+        //version, count, 16-byte id, type, flags, name length and name
+        assertEquals(1 + 1 + 16 + 1 + 1 + 1 + 3, SensorCodec.encode(List.of(sensor)).length);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 10, 20, 25})
+    void checkThatTruncatedEncodingIsRejected(int length) {
+        byte[] encoded = SensorCodec.encode(List.of(new Sensor(UUID.randomUUID(), "Kitchen", SensorType.MOTION, true)));
+        byte[] truncated = Arrays.copyOf(encoded, length);
+        assertThrows(IllegalArgumentException.class, () -> SensorCodec.decode(truncated));
+    }
+
+    @Test
+    void checkThatUnknownVersionIsRejected() {
+        byte[] encoded = SensorCodec.encode(List.of());
+        encoded[0] = SensorCodec.VERSION + 1;
+        assertThrows(IllegalArgumentException.class, () -> SensorCodec.decode(encoded));
+    }
+
+    @Test
+    void checkThatUnknownSensorTypeIsRejected() {
+        byte[] encoded = SensorCodec.encode(List.of(new Sensor(UUID.randomUUID(), "x", SensorType.DOOR, false)));
+        //the type byte follows the version, count and id
+        encoded[18] = 42;
+        assertThrows(IllegalArgumentException.class, () -> SensorCodec.decode(encoded));
+    }
+
+    /**
+     * Sensors stored by older versions as a Gson array migrate with their id, name, type and state
+     */
+    @Test
+    void checkThatLegacyJsonMigrates() {
+        UUID door = UUID.randomUUID();
+        UUID window = UUID.randomUUID();
+        String json = "[{\"sensorId\":\"" + door + "\",\"name\":\"Door\",\"sensorType\":\"DOOR\",\"active\":true},"
+                + "{\"sensorId\":\"" + window + "\",\"name\":\"Window\",\"sensorType\":\"WINDOW\",\"active\":false}]";
+        List<Sensor> sensors = SensorCodec.fromLegacyJson(json);
+        assertSameSensor(new Sensor(door, "Door", SensorType.DOOR, true), sensors.get(0));
+        assertSameSensor(new Sensor(window, "Window", SensorType.WINDOW, false), sensors.get(1));
+    }
+
+    /**
+     * Gson leaves out fields holding their default, so an inactive sensor may have no active field
+     */
+    @Test
+    void checkThatLegacyJsonWithoutActiveMigratesAsInactive() {
+        UUID id = UUID.randomUUID();
+        List<Sensor> sensors = SensorCodec.fromLegacyJson(
+                "[{\"sensorId\":\"" + id + "\",\"name\":\"Hall\",\"sensorType\":\"MOTION\"}]");
+        assertSameSensor(new Sensor(id, "Hall", SensorType.MOTION, false), sensors.get(0));
+    }
+
+    @Test
+    void checkThatMigratedSensorsRoundTrip() {
+        List<Sensor> sensors = SensorCodec.fromLegacyJson(
+                "[{\"sensorId\":\"" + UUID.randomUUID() + "\",\"name\":\"Garage\",\"sensorType\":\"DOOR\",\"active\":true}]");
+        assertSameSensor(sensors.get(0), SensorCodec.decode(SensorCodec.encode(sensors)).get(0));
+    }
+
+    private static void assertSameSensor(Sensor expected, Sensor actual) {
+        assertEquals(expected.getSensorId(), actual.getSensorId());
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getSensorType(), actual.getSensorType());
+        assertEquals(expected.getActive(), actual.getActive());
+    }
+}
@@ -0,0 +1,148 @@
+package com.udacity.securityservice.data;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+public class SqlSecurityRepositoryImplTest {
+
+    private static final Sensor DOOR = new Sensor(new UUID(0, 1), "Front door", SensorType.DOOR, false);
+    private static final Sensor WINDOW = new Sensor(new UUID(0, 2), "Kitchen window", SensorType.WINDOW, false);
+    private static final Sensor MOTION = new Sensor(new UUID(0, 3), "Hall", SensorType.MOTION, false);
+
+    private String url;
+    private SqlSecurityRepositoryImpl repository;
+
+    /**
+     * A private in-memory database that outlives its connections, so it can be reopened
+     */
+    @BeforeEach
+    void init() throws SQLException {
+        url = "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1";
+        repository = new SqlSecurityRepositoryImpl(url, 2);
+    }
+
+    @AfterEach
+    void close() {
+        repository.close();
+    }
+
+    @Test
+    void checkThatNewDatabaseStartsEmptyAndDisarmed() {
+        assertTrue(repository.getSensors().isEmpty());
+        assertEquals(AlarmStatus.NO_ALARM, repository.getAlarmStatus());
+        assertEquals(ArmingStatus.DISARMED, repository.getArmingStatus());
+    }
+
+    /**
+     * Opening a database that is already migrated leaves its schema and rows alone
+     */
+    @Test
+    void checkThatMigratedDatabaseReopens() throws SQLException {
+        repository.addSensor(DOOR.copy());
+        repository.close();
+        repository = new SqlSecurityRepositoryImpl(url, 2);
+        repository.close();
+        repository = new SqlSecurityRepositoryImpl(url, 1);
+        assertEquals(states(DOOR.copy()), states(repository.getSensors()));
+    }
+
+    /**
+     * One batch with stored and new sensors updates the first and inserts the second
+     */
+    @Test
+    void checkThatUpdateBatchInsertsSensorsItDoesNotFind() throws SQLException {
+        repository.addSensors(Arrays.asList(DOOR.copy(), WINDOW.copy()));
+        Sensor door = DOOR.copy();
+        door.setActive(true);
+        repository.updateSensors(Arrays.asList(door, MOTION.copy()));
+
+        Sensor window = WINDOW.copy();
+        assertEquals(states(door, window, MOTION.copy()), states(repository.getSensors()));
+        assertEquals(Set.of(door), repository.getActiveSensors(SensorType.DOOR));
+        assertEquals(states(door, window, MOTION.copy()), states(reopen().getSensors()));
+    }
+
+    @Test
+    void checkThatAddingStoredSensorUpdatesIt() throws SQLException {
+        repository.addSensor(DOOR.copy());
+        Sensor door = DOOR.copy();
+        door.setActive(true);
+        repository.addSensor(door);
+        assertEquals(states(door), states(reopen().getSensors()));
+    }
+
+    @Test
+    void checkThatRemovedSensorStaysRemoved() throws SQLException {
+        repository.addSensors(Arrays.asList(DOOR.copy(), WINDOW.copy()));
+        repository.removeSensor(DOOR.copy());
+        assertEquals(states(WINDOW.copy()), states(repository.getSensors()));
+        assertEquals(states(WINDOW.copy()), states(reopen().getSensors()));
+    }
+
+    @Test
+    void checkThatStatusesSurviveReload() throws SQLException {
+        repository.setArmingStatus(ArmingStatus.ARMED_AWAY);
+        repository.setAlarmStatus(AlarmStatus.PENDING_ALARM);
+        repository.setAlarmStatus(AlarmStatus.ALARM);
+        SqlSecurityRepositoryImpl reloaded = reopen();
+        assertEquals(ArmingStatus.ARMED_AWAY, reloaded.getArmingStatus());
+        assertEquals(AlarmStatus.ALARM, reloaded.getAlarmStatus());
+    }
+
+    /**
+     * Importing replaces every stored sensor and status, as when the database is seeded from a
+     * newer snapshot
+     */
+    @Test
+    void checkThatImportReplacesWholeState() throws SQLException {
+        repository.addSensors(Arrays.asList(DOOR.copy(), WINDOW.copy()));
+        repository.setArmingStatus(ArmingStatus.ARMED_HOME);
+
+        InMemorySecurityRepositoryImpl source = new InMemorySecurityRepositoryImpl();
+        Sensor window = WINDOW.copy();
+        window.setActive(true);
+        source.addSensor(window);
+        source.addSensor(MOTION.copy());
+        source.setArmingStatus(ArmingStatus.ARMED_AWAY);
+        source.setAlarmStatus(AlarmStatus.PENDING_ALARM);
+        repository.importFrom(source);
+
+        for (SqlSecurityRepositoryImpl imported : Arrays.asList(repository, reopen())) {
+            assertEquals(states(window, MOTION.copy()), states(imported.getSensors()));
+            assertEquals(ArmingStatus.ARMED_AWAY, imported.getArmingStatus());
+            assertEquals(AlarmStatus.PENDING_ALARM, imported.getAlarmStatus());
+        }
+    }
+
+    /**
+     * Closes the repository and opens the same database again
+     */
+    private SqlSecurityRepositoryImpl reopen() throws SQLException {
+        repository.close();
+        repository = new SqlSecurityRepositoryImpl(url, 2);
+        return repository;
+    }
+
+    /**
+     * Sensors compare by id alone, so compare everything stored about them instead
+     */
+    private static Map<UUID, String> states(Sensor... sensors) {
+        return states(Arrays.asList(sensors));
+    }
+
+    private static Map<UUID, String> states(Iterable<Sensor> sensors) {
+        Map<UUID, String> states = new HashMap<>();
+        for (Sensor sensor : sensors) {
+            states.put(sensor.getSensorId(), sensor.getName() + " " + sensor.getSensorType() + " " + sensor.getActive());
+        }
+        return states;
+    }
+}
@@ -0,0 +1,110 @@
+package com.udacity.securityservice.data;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import java.util.Collection;
+import java.util.UUID;
+
+public class WriteBehindSecurityRepositoryTest {
+
+    private final FailingRepository storage = new FailingRepository();
+    //flushed only when a test asks
+    private final WriteBehindSecurityRepository repository =
+            new WriteBehindSecurityRepository(storage, WriteBehindSecurityRepository.DurabilityMode.ASYNC, 1000, 60_000);
+
+    @AfterEach
+    void close() {
+        storage.failing = false;
+        repository.close();
+    }
+
+    @Test
+    void checkThatChangesReachStorageOnFlush() {
+        Sensor door = new Sensor(new UUID(0, 1), "Front door", SensorType.DOOR, false);
+        repository.addSensor(door);
+        repository.setArmingStatus(ArmingStatus.ARMED_HOME);
+        assertTrue(storage.getSensors().isEmpty());
+
+        repository.flush();
+        assertEquals(1, storage.getSensors().size());
+        assertEquals(ArmingStatus.ARMED_HOME, storage.getArmingStatus());
+        assertEquals(0, repository.getPendingChanges());
+    }
+
+    /**
+     * A sensor removed while its batch was being written stays removed when the failed batch is
+     * put back for the retry
+     */
+    @Test
+    void checkThatRetriedBatchDoesNotBringBackRemovedSensor() {
+        Sensor door = new Sensor(new UUID(0, 1), "Front door", SensorType.DOOR, false);
+        repository.addSensor(door);
+        repository.flush();
+        door.setActive(true);
+        repository.updateSensor(door);
+        storage.failing = true;
+        storage.whileFailing = () -> repository.removeSensor(door);
+        assertThrows(IllegalStateException.class, repository::flush);
+
+        storage.failing = false;
+        repository.flush();
+        assertTrue(storage.getSensors().isEmpty());
+        assertTrue(repository.getSensors().isEmpty());
+    }
+
+    @Test
+    void checkThatRetriedBatchKeepsNewerSensorValue() {
+        Sensor door = new Sensor(new UUID(0, 1), "Front door", SensorType.DOOR, false);
+        repository.addSensor(door);
+        storage.failing = true;
+        assertThrows(IllegalStateException.class, repository::flush);
+
+        door.setActive(true);
+        repository.updateSensor(door);
+        storage.failing = false;
+        repository.flush();
+        assertTrue(storage.getSensor(door.getSensorId()).getActive());
+    }
+
+    /**
+     * A key changed again while its batch was failing is counted once, not once for the change and
+     * again for the retry
+     */
+    @Test
+    void checkThatFailedBatchIsNotCountedTwice() {
+        Sensor door = new Sensor(new UUID(0, 1), "Front door", SensorType.DOOR, false);
+        Sensor window = new Sensor(new UUID(0, 2), "Window", SensorType.WINDOW, false);
+        repository.addSensor(door);
+        repository.addSensor(window);
+        repository.setAlarmStatus(AlarmStatus.PENDING_ALARM);
+        storage.failing = true;
+        storage.whileFailing = () -> {
+            repository.updateSensor(door);
+            repository.setAlarmStatus(AlarmStatus.ALARM);
+        };
+        assertThrows(IllegalStateException.class, repository::flush);
+        assertEquals(3, repository.getPendingChanges());
+
+        storage.failing = false;
+        repository.flush();
+        assertEquals(0, repository.getPendingChanges());
+        assertEquals(2, storage.getSensors().size());
+        assertEquals(AlarmStatus.ALARM, storage.getAlarmStatus());
+    }
+
+    private static class FailingRepository extends InMemorySecurityRepositoryImpl {
+        private volatile boolean failing;
+        //changes made while the write is in progress, before it fails
+        private Runnable whileFailing = () -> { };
+
+        @Override
+        public void updateSensors(Collection<Sensor> sensors) {
+            if (failing) {
+                whileFailing.run();
+                throw new IllegalStateException("storage down");
+            }
+            super.updateSensors(sensors);
+        }
+    }
+}
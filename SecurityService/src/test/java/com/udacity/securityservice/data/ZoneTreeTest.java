@@ -0,0 +1,133 @@
+package com.udacity.securityservice.data;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class ZoneTreeTest {
+
+    private ZoneTree zoneTree;
+    private Zone groundFloor;
+    private Zone kitchen;
+    private Zone hall;
+    private Zone upstairs;
+
+    @BeforeEach
+    void init() {
+        zoneTree = new ZoneTree("Home");
+        groundFloor = zoneTree.addZone(zoneTree.getSite(), "Ground floor");
+        kitchen = zoneTree.addZone(groundFloor, "Kitchen");
+        hall = zoneTree.addZone(groundFloor, "Hall");
+        upstairs = zoneTree.addZone(zoneTree.getSite(), "Upstairs");
+    }
+
+    @Test
+    void checkThatCountsFollowSensorChanges() {
+        Sensor door = sensor("Door", true);
+        Sensor window = sensor("Window", false);
+        zoneTree.assign(door, kitchen);
+        zoneTree.assign(window, hall);
+        assertEquals(2, groundFloor.getSensorCount());
+        assertEquals(1, groundFloor.getActiveCount());
+
+        window.setActive(true);
+        zoneTree.update(window);
+        assertEquals(2, zoneTree.getSite().getActiveCount());
+
+        zoneTree.assign(door, upstairs);
+        assertEquals(1, groundFloor.getActiveCount());
+        assertEquals(1, upstairs.getActiveCount());
+
+        zoneTree.remove(door);
+        assertEquals(0, upstairs.getSensorCount());
+        assertEquals(1, zoneTree.getArmedActiveCount());
+    }
+
+    /**
+     * Taking a floor out of the arming takes out the rooms below it, and putting it back
+     * brings back only the rooms that were armed on their own
+     */
+    @Test
+    void checkThatDisarmedZonesLeaveTheArmedCount() {
+        zoneTree.assign(sensor("Kitchen door", true), kitchen);
+        zoneTree.assign(sensor("Hall motion", true), hall);
+        zoneTree.assign(sensor("Landing", true), upstairs);
+        zoneTree.update(sensor("Unassigned", true));
+        assertEquals(4, zoneTree.getArmedActiveCount());
+
+        hall.setArmed(false);
+        assertEquals(3, zoneTree.getArmedActiveCount());
+        groundFloor.setArmed(false);
+        assertEquals(2, zoneTree.getArmedActiveCount());
+        assertEquals(0, groundFloor.getArmedActiveCount());
+
+        groundFloor.setArmed(true);
+        assertEquals(3, zoneTree.getArmedActiveCount());
+        hall.setArmed(true);
+        assertEquals(4, zoneTree.getArmedActiveCount());
+    }
+
+    @Test
+    void checkThatChangesInsideDisarmedZoneDoNotReachTheArmedCount() {
+        Sensor door = sensor("Door", false);
+        zoneTree.assign(door, kitchen);
+        groundFloor.setArmed(false);
+        door.setActive(true);
+        zoneTree.update(door);
+        assertFalse(zoneTree.isArmedActive(door));
+        assertEquals(0, zoneTree.getArmedActiveCount());
+        assertEquals(1, groundFloor.getActiveCount());
+
+        groundFloor.setArmed(true);
+        assertTrue(zoneTree.isArmedActive(door));
+        assertEquals(1, zoneTree.getArmedActiveCount());
+    }
+
+    /**
+     * Random assignments, state changes and arming changes keep the counts equal to counting the
+     * sensors one by one
+     */
+    @Test
+    void checkThatCountsMatchBruteForce() {
+        Random random = new Random(40);
+        Zone[] zones = {null, zoneTree.getSite(), groundFloor, kitchen, hall, upstairs};
+        List<Sensor> sensors = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            sensors.add(sensor("S" + i, false));
+        }
+        for (int step = 0; step < 2000; step++) {
+            Sensor sensor = sensors.get(random.nextInt(sensors.size()));
+            switch (random.nextInt(4)) {
+                case 0 -> {
+                    Zone zone = zones[random.nextInt(zones.length)];
+                    if (zone == null) {
+                        zoneTree.remove(sensor);
+                        zoneTree.update(sensor);
+                    } else {
+                        zoneTree.assign(sensor, zone);
+                    }
+                }
+                case 1 -> {
+                    sensor.setActive(!sensor.getActive());
+                    zoneTree.update(sensor);
+                }
+                case 2 -> {
+                    Zone zone = zones[1 + random.nextInt(zones.length - 1)];
+                    zone.setArmed(random.nextBoolean());
+                }
+                default -> zoneTree.remove(sensor);
+            }
+            long expected = sensors.stream().filter(zoneTree::isArmedActive).count();
+            assertEquals(expected, zoneTree.getArmedActiveCount(), "step " + step);
+        }
+    }
+
+    private static Sensor sensor(String name, boolean active) {
+        Sensor sensor = new Sensor(name, SensorType.DOOR);
+        sensor.setActive(active);
+        return sensor;
+    }
+}
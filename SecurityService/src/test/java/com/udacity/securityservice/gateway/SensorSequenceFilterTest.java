@@ -0,0 +1,114 @@
+package com.udacity.securityservice.gateway;
+
+import com.udacity.imageservice.FakeImageService;
+import com.udacity.securityservice.data.InMemorySecurityRepositoryImpl;
+import com.udacity.securityservice.data.Sensor;
+import com.udacity.securityservice.data.SensorType;
+import com.udacity.securityservice.service.SecurityFlows;
+import com.udacity.securityservice.service.SecurityService;
+import com.udacity.securityservice.service.SensorReading;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+public class SensorSequenceFilterTest {
+
+    private static final UUID DOOR = new UUID(0, 1);
+    private static final UUID WINDOW = new UUID(0, 2);
+
+    @Test
+    void checkThatDuplicatedAndReorderedReadingsAreDropped() throws InterruptedException {
+        Collector collector = new Collector();
+        SensorSequenceFilter filter = new SensorSequenceFilter();
+        filter.subscribe(collector);
+        try (SensorReadingPublisher readings = new SensorReadingPublisher()) {
+            readings.subscribe(filter);
+            readings.onSensorEvent(0, 1, true, 10, 2);
+            readings.onSensorEvent(0, 1, false, 11, 2);
+            readings.onSensorEvent(0, 1, false, 12, 1);
+            //sequences are per sensor
+            readings.onSensorEvent(0, 2, true, 13, 1);
+            readings.onSensorEvent(0, 1, false, 14, 3);
+        }
+        assertTrue(collector.completed.await(10, TimeUnit.SECONDS));
+        assertEquals(List.of("1 true 10", "2 true 13", "1 false 14"), collector.items);
+        assertEquals(2, filter.getStaleReadings());
+    }
+
+    @Test
+    void checkThatReadingsWithoutSequenceAlwaysPass() throws InterruptedException {
+        Collector collector = new Collector();
+        SensorSequenceFilter filter = new SensorSequenceFilter();
+        filter.subscribe(collector);
+        try (SensorReadingPublisher readings = new SensorReadingPublisher()) {
+            readings.subscribe(filter);
+            readings.submit(new SensorReading(DOOR, true, 10));
+            readings.submit(new SensorReading(DOOR, false, 11));
+            readings.submit(new SensorReading(WINDOW, true, 12, 5));
+        }
+        assertTrue(collector.completed.await(10, TimeUnit.SECONDS));
+        assertEquals(List.of("1 true 10", "1 false 11", "2 true 12"), collector.items);
+        assertEquals(0, filter.getStaleReadings());
+    }
+
+    /**
+     * The gateway feeding the service through its flows drops a stale frame before the service
+     * sees it, as when the gateway feeds the service directly
+     */
+    @Test
+    void checkThatStaleFrameDoesNotReachTheService() throws InterruptedException {
+        SecurityService securityService = new SecurityService(new InMemorySecurityRepositoryImpl(), new FakeImageService());
+        Sensor door = new Sensor(DOOR, "Door", SensorType.DOOR, false);
+        securityService.addSensor(door);
+        CountDownLatch applied = new CountDownLatch(2);
+        SensorSequenceFilter filter = new SensorSequenceFilter();
+        try (SecurityFlows flows = new SecurityFlows(securityService, task -> {
+                    task.run();
+                    applied.countDown();
+                }, ForkJoinPool.commonPool(), 16);
+             SensorReadingPublisher readings = new SensorReadingPublisher()) {
+            readings.subscribe(filter);
+            filter.subscribe(flows.sensorInput());
+            readings.onSensorEvent(0, 1, true, 10, 2);
+            readings.onSensorEvent(0, 1, false, 11, 1);
+            readings.onSensorEvent(0, 1, false, 12, 2);
+            readings.onSensorEvent(0, 1, true, 13, 3);
+            assertTrue(applied.await(10, TimeUnit.SECONDS));
+            //any stale reading would have been applied before the last one
+            assertEquals(2, flows.getInputsApplied());
+            assertTrue(door.getActive());
+            assertEquals(2, filter.getStaleReadings());
+        }
+    }
+
+    private static class Collector implements Flow.Subscriber<SensorReading> {
+        private final List<String> items = new CopyOnWriteArrayList<>();
+        private final CountDownLatch completed = new CountDownLatch(1);
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(SensorReading item) {
+            items.add(item.getSensorId().getLeastSignificantBits() + " " + item.isActive() + " " + item.getTimestamp());
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onComplete() {
+            completed.countDown();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.udacity.securityservice.gateway;
+
+import com.udacity.imageservice.FakeImageService;
+import com.udacity.securityservice.data.InMemorySecurityRepositoryImpl;
+import com.udacity.securityservice.data.SecurityRepository;
+import com.udacity.securityservice.data.Sensor;
+import com.udacity.securityservice.data.SensorType;
+import com.udacity.securityservice.service.SecurityService;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.util.UUID;
+
+public class ServiceSensorEventHandlerTest {
+
+    private SecurityRepository repository;
+    private SecurityService securityService;
+    private ServiceSensorEventHandler handler;
+    private Sensor door;
+
+    @BeforeEach
+    void init() {
+        repository = new InMemorySecurityRepositoryImpl();
+        securityService = new SecurityService(repository, new FakeImageService());
+        door = new Sensor(UUID.randomUUID(), "Door", SensorType.DOOR, false);
+        securityService.addSensor(door);
+        handler = new ServiceSensorEventHandler(securityService);
+    }
+
+    @Test
+    void checkThatKnownSensorIsActivated() {
+        send(door, true, 1);
+        assertTrue(door.getActive());
+        assertEquals(0, handler.getUnknownSensors());
+    }
+
+    @Test
+    void checkThatStaleFrameIsDropped() {
+        send(door, true, 2);
+        send(door, false, 1);
+        assertTrue(door.getActive());
+        assertEquals(1, handler.getStaleFrames());
+    }
+
+    /**
+     * Swapping one sensor for another keeps the sensor count the same, but the handler must
+     * neither bring the removed sensor back nor treat the new one as unknown
+     */
+    @Test
+    void checkThatReplacedSensorIsNotReAddedAndNewSensorIsFound() {
+        send(door, true, 1);
+        Sensor window = new Sensor(UUID.randomUUID(), "Window", SensorType.WINDOW, false);
+        securityService.removeSensor(door);
+        securityService.addSensor(window);
+
+        send(door, false, 2);
+        send(window, true, 1);
+
+        assertNull(repository.getSensor(door.getSensorId()));
+        assertEquals(1, repository.getSensors().size());
+        assertTrue(window.getActive());
+        assertEquals(1, handler.getUnknownSensors());
+    }
+
+    /**
+     * Loading a snapshot puts new objects with the same ids in the repository, and those are the
+     * ones the handler must update
+     */
+    @Test
+    void checkThatSensorsReplacedBySnapshotAreUpdated() {
+        securityService.load(securityService.snapshot());
+        send(door, true, 1);
+        assertTrue(repository.getSensor(door.getSensorId()).getActive());
+    }
+
+    private void send(Sensor sensor, boolean active, long sequence) {
+        UUID id = sensor.getSensorId();
+        handler.onSensorEvent(id.getMostSignificantBits(), id.getLeastSignificantBits(), active, 0, sequence);
+    }
+}
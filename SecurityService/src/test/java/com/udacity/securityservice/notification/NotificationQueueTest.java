@@ -0,0 +1,60 @@
+package com.udacity.securityservice.notification;
+
+import com.udacity.securityservice.data.AlarmStatus;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.IOException;
+import java.nio.file.Path;
+
+public class NotificationQueueTest {
+
+    @Test
+    void checkThatUndeliveredNotificationsAreRecovered(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("notifications.bin");
+        try (NotificationQueue queue = new NotificationQueue(file)) {
+            queue.added("a", notification(1));
+            queue.added("b", notification(1));
+            queue.added("a", notification(2));
+            queue.delivered("a", 1);
+        }
+        try (NotificationQueue queue = new NotificationQueue(file)) {
+            assertEquals(2, queue.getRecovered().size());
+            assertEquals("b", queue.getRecovered().get(0).destination);
+            assertEquals(1, queue.getRecovered().get(0).notification.getId());
+            assertEquals(2, queue.getRecovered().get(1).notification.getId());
+            assertEquals(2, queue.getLastId());
+        }
+    }
+
+    /**
+     * Ids carry on after everything was delivered, through compaction on reopening as well as after
+     * the file was cleared
+     */
+    @Test
+    void checkThatIdsAreNotReusedAfterDelivery(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("notifications.bin");
+        try (NotificationQueue queue = new NotificationQueue(file)) {
+            queue.added("a", notification(7));
+            queue.delivered("a", 7);
+        }
+        try (NotificationQueue queue = new NotificationQueue(file)) {
+            assertEquals(7, queue.getLastId());
+        }
+        try (NotificationQueue queue = new NotificationQueue(file)) {
+            assertTrue(queue.getRecovered().isEmpty());
+            assertEquals(7, queue.getLastId());
+            queue.added("a", notification(8));
+            queue.delivered("a", 8);
+            queue.clear();
+        }
+        try (NotificationQueue queue = new NotificationQueue(file)) {
+            assertEquals(8, queue.getLastId());
+        }
+    }
+
+    private static Notification notification(long id) {
+        return new Notification(id, "home", AlarmStatus.ALARM, 1_700_000_000_000L + id);
+    }
+}
@@ -0,0 +1,208 @@
+package com.udacity.securityservice.replication;
+
+import com.udacity.imageservice.FakeImageService;
+import com.udacity.securityservice.data.ArmingStatus;
+import com.udacity.securityservice.data.InMemorySecurityRepositoryImpl;
+import com.udacity.securityservice.data.Sensor;
+import com.udacity.securityservice.data.SensorType;
+import com.udacity.securityservice.service.SecurityService;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A primary and standbys talking over localhost
+ */
+public class ReplicationTest {
+
+    private static final int FAILOVER_MILLIS = 500;
+
+    private final List<AutoCloseable> closeables = new ArrayList<>();
+    private Node primaryNode;
+    private ReplicationPrimary primary;
+
+    @BeforeEach
+    void init() throws Exception {
+        primaryNode = new Node();
+        primaryNode.call(() -> {
+            for (int n = 0; n < 10; n++) {
+                primaryNode.service.addSensor(new Sensor(new UUID(0, n), "sensor-" + n, SensorType.DOOR, false));
+            }
+            return null;
+        });
+    }
+
+    @AfterEach
+    void close() throws Exception {
+        //last opened first, so the nodes' threads outlive the replication using them
+        for (int i = closeables.size() - 1; i >= 0; i--) {
+            closeables.get(i).close();
+        }
+    }
+
+    @Test
+    void checkThatStandbyFollowsPrimary() throws Exception {
+        startPrimary(1000);
+        Node standbyNode = new Node();
+        ReplicationStandby standby = standby(standbyNode, new AtomicBoolean());
+        await(standby::isSynced);
+
+        toggleSensors(50);
+        primaryNode.call(() -> {
+            primaryNode.service.setArmingStatus(ArmingStatus.ARMED_AWAY);
+            return null;
+        });
+        long sequence = primaryNode.call(primaryNode.service::getEventSequence);
+        await(() -> standby.getAppliedSequence() == sequence);
+        assertEquals(ArmingStatus.ARMED_AWAY, standbyNode.call(standbyNode.service::getArmingStatus));
+        assertEquals(primaryNode.call(() -> active(primaryNode)), standbyNode.call(() -> active(standbyNode)));
+    }
+
+    /**
+     * A standby disconnected for lagging is told to resync, so it reconnects for a new snapshot
+     * instead of taking over from a primary that is still running
+     */
+    @Test
+    void checkThatLaggingStandbyResyncsInsteadOfTakingOver() throws Exception {
+        startPrimary(5);
+        Node standbyNode = new Node();
+        AtomicBoolean promoted = new AtomicBoolean();
+        ReplicationStandby standby = standby(standbyNode, promoted);
+        await(standby::isSynced);
+
+        //the standby can't apply anything until released, so it falls behind
+        CountDownLatch release = new CountDownLatch(1);
+        standbyNode.executor.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        toggleSensors(20);
+        await(() -> !primary.isStandbyConnected());
+        release.countDown();
+
+        await(primary::isStandbyConnected);
+        long sequence = primaryNode.call(primaryNode.service::getEventSequence);
+        await(() -> standby.getAppliedSequence() == sequence);
+        Thread.sleep(FAILOVER_MILLIS * 2);
+        assertFalse(standby.isPromoted());
+        assertFalse(promoted.get());
+        assertEquals(primaryNode.call(() -> active(primaryNode)), standbyNode.call(() -> active(standbyNode)));
+    }
+
+    /**
+     * A standby replaced by another steps aside without taking over and without taking the
+     * connection back
+     */
+    @Test
+    void checkThatReplacedStandbyStepsAside() throws Exception {
+        startPrimary(1000);
+        AtomicBoolean firstPromoted = new AtomicBoolean();
+        ReplicationStandby first = standby(new Node(), firstPromoted);
+        await(first::isSynced);
+        ReplicationStandby second = standby(new Node(), new AtomicBoolean());
+        await(second::isSynced);
+
+        toggleSensors(10);
+        long sequence = primaryNode.call(primaryNode.service::getEventSequence);
+        await(() -> second.getAppliedSequence() == sequence);
+        Thread.sleep(FAILOVER_MILLIS * 2);
+        assertFalse(first.isPromoted());
+        assertFalse(firstPromoted.get());
+        assertTrue(primary.isStandbyConnected());
+        assertEquals(sequence, second.getAppliedSequence());
+    }
+
+    @Test
+    void checkThatStandbyTakesOverWhenPrimaryGoesAway() throws Exception {
+        startPrimary(1000);
+        Node standbyNode = new Node();
+        AtomicBoolean promoted = new AtomicBoolean();
+        ReplicationStandby standby = standby(standbyNode, promoted);
+        await(standby::isSynced);
+        toggleSensors(10);
+        long sequence = primaryNode.call(primaryNode.service::getEventSequence);
+        await(() -> standby.getAppliedSequence() == sequence);
+
+        primary.close();
+        await(promoted::get);
+        assertTrue(standby.isPromoted());
+        assertEquals(sequence, standbyNode.call(standbyNode.service::getEventSequence));
+    }
+
+    private void startPrimary(long maxLag) throws IOException {
+        primary = new ReplicationPrimary(primaryNode.service, primaryNode.executor,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), maxLag);
+        closeables.add(primary);
+        primary.start();
+    }
+
+    private ReplicationStandby standby(Node node, AtomicBoolean promoted) {
+        ReplicationStandby standby = new ReplicationStandby(node.service, node.executor,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), primary.getPort()), FAILOVER_MILLIS,
+                () -> promoted.set(true));
+        closeables.add(standby);
+        standby.start();
+        return standby;
+    }
+
+    private void toggleSensors(int times) throws Exception {
+        primaryNode.call(() -> {
+            List<Sensor> sensors = new ArrayList<>(primaryNode.service.getSensors());
+            for (int i = 0; i < times; i++) {
+                Sensor sensor = sensors.get(i % sensors.size());
+                primaryNode.service.changeSensorActivationStatus(sensor, !sensor.getActive());
+            }
+            return null;
+        });
+    }
+
+    private static long active(Node node) {
+        return node.service.getSensors().stream().filter(Sensor::getActive).count();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() - deadline < 0, "timed out");
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * A SecurityService and the single thread that owns it
+     */
+    private class Node {
+        private final SecurityService service = new SecurityService(new InMemorySecurityRepositoryImpl(), new FakeImageService());
+        private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "security-service");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Node() {
+            closeables.add(executor::shutdownNow);
+        }
+
+        <T> T call(Callable<T> task) throws Exception {
+            return executor.submit(task).get(10, TimeUnit.SECONDS);
+        }
+    }
+}
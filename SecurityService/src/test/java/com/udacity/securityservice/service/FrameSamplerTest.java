@@ -0,0 +1,136 @@
+package com.udacity.securityservice.service;
+
+import com.udacity.imageservice.FakeImageService;
+import com.udacity.securityservice.data.AlarmStatus;
+import com.udacity.securityservice.data.ArmingStatus;
+import com.udacity.securityservice.data.InMemorySecurityRepositoryImpl;
+import com.udacity.securityservice.data.Sensor;
+import com.udacity.securityservice.data.SensorType;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.awt.image.BufferedImage;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class FrameSamplerTest {
+
+    private SecurityService securityService;
+    private FrameSampler sampler;
+
+    @BeforeEach
+    void init() {
+        securityService = new SecurityService(new InMemorySecurityRepositoryImpl(), new FakeImageService());
+        //a frame a minute disarmed, a second at home, five a second away, every frame for 10s after a sensor
+        sampler = new FrameSampler(securityService, 60_000, 1_000, 200, 10_000);
+        securityService.addStatusListener(sampler);
+    }
+
+    @Test
+    void checkThatDisarmedSamplesOneFrameAMinute() {
+        assertEquals(1, analyzed("camera", System.nanoTime(), 100, 50));
+        assertEquals(49, sampler.getSkipped());
+    }
+
+    @Test
+    void checkThatArmedHomeSamplesOneFrameASecond() {
+        securityService.setArmingStatus(ArmingStatus.ARMED_HOME);
+        //0.1s apart for 5s
+        assertEquals(5, analyzed("camera", System.nanoTime(), 100, 50));
+    }
+
+    @Test
+    void checkThatArmedAwaySamplesFiveFramesASecond() {
+        securityService.setArmingStatus(ArmingStatus.ARMED_AWAY);
+        assertEquals(25, analyzed("camera", System.nanoTime(), 100, 50));
+    }
+
+    @Test
+    void checkThatAlarmSamplesEveryFrame() {
+        securityService.setArmingStatus(ArmingStatus.ARMED_HOME);
+        securityService.setAlarmStatus(AlarmStatus.ALARM);
+        assertEquals(50, analyzed("camera", System.nanoTime(), 100, 50));
+    }
+
+    @Test
+    void checkThatCamerasAreSampledSeparately() {
+        securityService.setArmingStatus(ArmingStatus.ARMED_HOME);
+        long now = System.nanoTime();
+        assertTrue(sampler.shouldAnalyze("front", now));
+        assertTrue(sampler.shouldAnalyze("back", now));
+        assertFalse(sampler.shouldAnalyze("front", now + TimeUnit.MILLISECONDS.toNanos(100)));
+    }
+
+    /**
+     * Every frame is sampled for a while after a sensor activates, then the armed rate applies again
+     */
+    @Test
+    void checkThatSensorActivationBoostsSampling() {
+        securityService.setArmingStatus(ArmingStatus.ARMED_HOME);
+        long now = System.nanoTime();
+        assertTrue(sampler.shouldAnalyze("camera", now));
+        assertFalse(sampler.shouldAnalyze("camera", now + TimeUnit.MILLISECONDS.toNanos(100)));
+
+        Sensor door = new Sensor(new UUID(0, 1), "Door", SensorType.DOOR, false);
+        securityService.addSensor(door);
+        securityService.changeSensorActivationStatus(door, true);
+        //only the burst is left to make every frame due
+        securityService.setAlarmStatus(AlarmStatus.NO_ALARM);
+        long activated = System.nanoTime();
+        assertEquals(0, sampler.getInterval(activated));
+        assertEquals(50, analyzed("camera", activated, 100, 50));
+
+        long afterBurst = activated + TimeUnit.SECONDS.toNanos(11);
+        assertEquals(TimeUnit.SECONDS.toNanos(1), sampler.getInterval(afterBurst));
+        assertEquals(5, analyzed("camera", afterBurst, 100, 50));
+    }
+
+    /**
+     * A change of arming status makes the next frame due at once, whatever the old rate was
+     */
+    @Test
+    void checkThatArmingMakesNextFrameDue() {
+        long now = System.nanoTime();
+        assertTrue(sampler.shouldAnalyze("camera", now));
+        assertFalse(sampler.shouldAnalyze("camera", now + 1));
+
+        securityService.setArmingStatus(ArmingStatus.ARMED_AWAY);
+        assertTrue(sampler.shouldAnalyze("camera", System.nanoTime()));
+    }
+
+    /**
+     * Frames the sampler skips are never decoded or recognized
+     */
+    @Test
+    void checkThatSchedulerSkipsFramesBeforeDecoding() {
+        AtomicInteger decoded = new AtomicInteger();
+        try (PriorityScheduler scheduler = new PriorityScheduler(securityService, Runnable::run, 1, 4, 4)) {
+            scheduler.setFrameSampler(sampler);
+            assertTrue(scheduler.processFrame("camera", () -> {
+                decoded.incrementAndGet();
+                return new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+            }));
+            for (int i = 0; i < 10; i++) {
+                assertFalse(scheduler.processFrame("camera", () -> {
+                    decoded.incrementAndGet();
+                    return new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+                }));
+            }
+            assertEquals(1, decoded.get());
+            assertEquals(1, sampler.getAnalyzed());
+            assertEquals(10, sampler.getSkipped());
+        }
+    }
+
+    private int analyzed(String cameraId, long start, long stepMillis, int frames) {
+        int analyzed = 0;
+        for (int i = 0; i < frames; i++) {
+            if (sampler.shouldAnalyze(cameraId, start + TimeUnit.MILLISECONDS.toNanos(i * stepMillis))) {
+                analyzed++;
+            }
+        }
+        return analyzed;
+    }
+}
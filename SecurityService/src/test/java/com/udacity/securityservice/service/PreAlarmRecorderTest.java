@@ -0,0 +1,63 @@
+package com.udacity.securityservice.service;
+
+import com.udacity.securityservice.data.AlarmStatus;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class PreAlarmRecorderTest {
+
+    @Test
+    void checkThatSavedClipHoldsRecordedFrames(@TempDir Path directory) throws IOException {
+        try (PreAlarmRecorder recorder = new PreAlarmRecorder(directory, 4096, 60_000)) {
+            long now = System.currentTimeMillis();
+            recorder.record("door", new byte[]{1, 2, 3}, 3, now - 2);
+            recorder.record("door", new byte[]{4, 5}, 2, now - 1);
+            List<Path> clips = recorder.saveClips();
+            assertEquals(1, clips.size());
+
+            List<byte[]> frames = new ArrayList<>();
+            PreAlarmRecorder.readClip(clips.get(0), (timestamp, jpeg) -> frames.add(jpeg));
+            assertArrayEquals(new byte[]{1, 2, 3}, frames.get(0));
+            assertArrayEquals(new byte[]{4, 5}, frames.get(1));
+        }
+    }
+
+    /**
+     * The alarm notification comes in on the event dispatch thread, so it must hand the saving off
+     * rather than copy the footage before returning
+     */
+    @Test
+    void checkThatAlarmSavesClipsOffTheNotifyingThread(@TempDir Path directory) throws Exception {
+        CountDownLatch saving = new CountDownLatch(1);
+        Thread[] savedOn = new Thread[1];
+        PreAlarmRecorder recorder = new PreAlarmRecorder(directory, 4096, 60_000) {
+            @Override
+            public List<Path> saveClips() throws IOException {
+                savedOn[0] = Thread.currentThread();
+                saving.countDown();
+                return super.saveClips();
+            }
+        };
+        recorder.record("door", new byte[]{1}, 1, System.currentTimeMillis());
+        recorder.notify(AlarmStatus.ALARM);
+        assertTrue(saving.await(10, TimeUnit.SECONDS));
+        assertNotSame(Thread.currentThread(), savedOn[0]);
+
+        //close waits for the save to finish
+        recorder.close();
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.filter(p -> p.toString().endsWith(".clip")).collect(Collectors.toList()).size());
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.udacity.securityservice.service;
+
+import com.udacity.imageservice.FakeImageService;
+import com.udacity.securityservice.data.InMemorySecurityRepositoryImpl;
+import com.udacity.securityservice.data.Sensor;
+import com.udacity.securityservice.data.SensorType;
+import com.udacity.securityservice.telemetry.SensorTelemetry;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class PrioritySchedulerTest {
+
+    private static final BufferedImage CAT = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+    private static final BufferedImage EMPTY = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+
+    /**
+     * A slow verdict on an older frame must not undo the verdict on a newer frame that was
+     * recognized on another thread and applied first
+     */
+    @Test
+    void checkThatOlderVerdictIsNotAppliedAfterNewerOne() throws InterruptedException {
+        CountDownLatch newerApplied = new CountDownLatch(1);
+        List<Boolean> applied = new CopyOnWriteArrayList<>();
+        SecurityService securityService = new SecurityService(new InMemorySecurityRepositoryImpl(), new FakeImageService()) {
+            @Override
+            public boolean detectCat(BufferedImage currentCameraImage) {
+                if (currentCameraImage == CAT) {
+                    try {
+                        newerApplied.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return true;
+                }
+                return false;
+            }
+
+            @Override
+            public void applyCatDetection(boolean cat) {
+                applied.add(cat);
+                newerApplied.countDown();
+            }
+        };
+        try (PriorityScheduler scheduler = new PriorityScheduler(securityService, Runnable::run, 2, 4, 4)) {
+            scheduler.processImage(CAT);
+            scheduler.processImage(EMPTY);
+            assertTrue(newerApplied.await(10, TimeUnit.SECONDS));
+            //the older frame's verdict reaches the service executor once its recognition finishes
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (scheduler.getQueueDepth(PriorityScheduler.Lane.RECOGNITION) > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(0, scheduler.getQueueDepth(PriorityScheduler.Lane.RECOGNITION));
+            assertEquals(List.of(false), applied);
+            assertEquals(1, scheduler.getStaleVerdicts());
+        }
+    }
+
+    @Test
+    void checkThatVerdictsInFrameOrderAreAllApplied() throws InterruptedException {
+        List<Boolean> applied = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(3);
+        SecurityService securityService = new SecurityService(new InMemorySecurityRepositoryImpl(), new FakeImageService()) {
+            @Override
+            public boolean detectCat(BufferedImage currentCameraImage) {
+                return currentCameraImage == CAT;
+            }
+
+            @Override
+            public void applyCatDetection(boolean cat) {
+                applied.add(cat);
+                done.countDown();
+            }
+        };
+        try (PriorityScheduler scheduler = new PriorityScheduler(securityService, Runnable::run, 1, 4, 4)) {
+            scheduler.processImage(CAT);
+            scheduler.processImage(EMPTY);
+            scheduler.processImage(CAT);
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertEquals(List.of(true, false, true), applied);
+            assertEquals(0, scheduler.getStaleVerdicts());
+        }
+    }
+
+    /**
+     * A change queued while a verdict is waiting for the service thread is applied first
+     */
+    @Test
+    void checkThatCriticalWorkRunsBeforeQueuedVerdict() throws InterruptedException {
+        List<String> applied = new CopyOnWriteArrayList<>();
+        SecurityService securityService = new SecurityService(new InMemorySecurityRepositoryImpl(), new FakeImageService()) {
+            @Override
+            public boolean detectCat(BufferedImage currentCameraImage) {
+                return true;
+            }
+
+            @Override
+            public void applyCatDetection(boolean cat) {
+                applied.add("verdict");
+            }
+        };
+        //the service thread is busy until the test runs its tasks
+        BlockingQueue<Runnable> serviceTasks = new LinkedBlockingQueue<>();
+        try (PriorityScheduler scheduler = new PriorityScheduler(securityService, serviceTasks::add, 1, 4, 4)) {
+            scheduler.processImage(CAT);
+            Runnable drain = serviceTasks.poll(10, TimeUnit.SECONDS);
+            assertNotNull(drain);
+            scheduler.runCritical(() -> applied.add("critical"));
+            assertEquals(1, scheduler.getQueueDepth(PriorityScheduler.Lane.CRITICAL));
+
+            drain.run();
+            assertEquals(List.of("critical", "verdict"), applied);
+            assertTrue(serviceTasks.isEmpty());
+        }
+    }
+
+    /**
+     * With the only recognition thread busy and the queue full, the oldest waiting frame makes way
+     * for the new one
+     */
+    @Test
+    void checkThatFullRecognitionQueueDropsOldestFrame() throws InterruptedException {
+        CountDownLatch recognizing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<BufferedImage> recognized = new CopyOnWriteArrayList<>();
+        SecurityService securityService = new SecurityService(new InMemorySecurityRepositoryImpl(), new FakeImageService()) {
+            @Override
+            public boolean detectCat(BufferedImage currentCameraImage) {
+                recognizing.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                recognized.add(currentCameraImage);
+                return false;
+            }
+
+            @Override
+            public void applyCatDetection(boolean cat) {
+            }
+        };
+        List<BufferedImage> frames = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            frames.add(new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB));
+        }
+        try (PriorityScheduler scheduler = new PriorityScheduler(securityService, Runnable::run, 1, 2, 4)) {
+            scheduler.processImage(frames.get(0));
+            assertTrue(recognizing.await(10, TimeUnit.SECONDS));
+            for (int i = 1; i < 4; i++) {
+                scheduler.processImage(frames.get(i));
+            }
+            assertEquals(1, scheduler.getDropped(PriorityScheduler.Lane.RECOGNITION));
+            assertEquals(3, scheduler.getQueueDepth(PriorityScheduler.Lane.RECOGNITION));
+
+            release.countDown();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (scheduler.getQueueDepth(PriorityScheduler.Lane.RECOGNITION) > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(List.of(frames.get(0), frames.get(2), frames.get(3)), recognized);
+        }
+    }
+
+    /**
+     * Sensor changes are recorded as telemetry on the telemetry thread, not the service thread
+     */
+    @Test
+    void checkThatTelemetryIsRecordedInTheTelemetryLane() throws InterruptedException {
+        List<String> recordedOn = new CopyOnWriteArrayList<>();
+        CountDownLatch recorded = new CountDownLatch(2);
+        SensorTelemetry telemetry = new SensorTelemetry() {
+            @Override
+            public synchronized void record(UUID sensorId, SensorType sensorType, long timestamp, boolean active) {
+                super.record(sensorId, sensorType, timestamp, active);
+                recordedOn.add(Thread.currentThread().getName());
+                recorded.countDown();
+            }
+        };
+        SecurityService securityService = new SecurityService(new InMemorySecurityRepositoryImpl(), new FakeImageService());
+        Sensor door = new Sensor(new UUID(0, 1), "Door", SensorType.DOOR, false);
+        securityService.addSensor(door);
+        try (PriorityScheduler scheduler = new PriorityScheduler(securityService, Runnable::run, 1, 4, 4)) {
+            securityService.setSensorTelemetry(telemetry, scheduler.telemetryExecutor());
+            securityService.changeSensorActivationStatus(door, true);
+            securityService.changeSensorActivationStatus(door, false);
+            assertTrue(recorded.await(10, TimeUnit.SECONDS));
+
+            assertEquals(2, scheduler.getStarted(PriorityScheduler.Lane.TELEMETRY));
+            assertTrue(recordedOn.stream().allMatch(name -> name.startsWith("telemetry-")), recordedOn.toString());
+            assertEquals(1, telemetry.getActivations(door.getSensorId(), Long.MIN_VALUE, Long.MAX_VALUE));
+        }
+    }
+}
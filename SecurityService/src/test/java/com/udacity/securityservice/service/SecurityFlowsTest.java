@@ -0,0 +1,137 @@
+package com.udacity.securityservice.service;
+
+import com.udacity.imageservice.FakeImageService;
+import com.udacity.securityservice.data.AlarmStatus;
+import com.udacity.securityservice.data.InMemorySecurityRepositoryImpl;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+public class SecurityFlowsTest {
+
+    private final SecurityService securityService = new SecurityService(new InMemorySecurityRepositoryImpl(), new FakeImageService());
+
+    /**
+     * A subscriber that stops requesting loses cat detections instead of holding up the service
+     * thread
+     */
+    @Test
+    void checkThatStalledSubscriberDoesNotBlockTheService() {
+        try (SecurityFlows flows = new SecurityFlows(securityService, Runnable::run, ForkJoinPool.commonPool(), 4)) {
+            flows.catDetections().subscribe(new Collector<>(0));
+            assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+                for (int i = 0; i < 100; i++) {
+                    securityService.applyCatDetection(i % 2 == 0);
+                }
+            });
+            assertTrue(flows.getOutputsDropped() > 0);
+            assertTrue(flows.getOutputsDropped() <= 100);
+        }
+    }
+
+    /**
+     * Alarm statuses are never dropped, and a stalled subscriber still holds up neither the service
+     * nor closing
+     */
+    @Test
+    void checkThatStalledSubscriberLosesNoAlarmStatus() {
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            try (SecurityFlows flows = new SecurityFlows(securityService, Runnable::run, ForkJoinPool.commonPool(), 4)) {
+                flows.alarmStatuses().subscribe(new Collector<>(0));
+                for (int i = 0; i < 100; i++) {
+                    securityService.setAlarmStatus(AlarmStatus.values()[i % 3]);
+                }
+                assertEquals(0, flows.getOutputsDropped());
+            }
+        });
+    }
+
+    @Test
+    void checkThatSlowSubscriberGetsEveryAlarmTransition() throws InterruptedException {
+        Collector<AlarmStatus> collector = new Collector<>(1) {
+            @Override
+            public void onNext(AlarmStatus item) {
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.onNext(item);
+                subscription.request(1);
+            }
+        };
+        List<AlarmStatus> expected = new ArrayList<>();
+        try (SecurityFlows flows = new SecurityFlows(securityService, Runnable::run, ForkJoinPool.commonPool(), 2)) {
+            flows.alarmStatuses().subscribe(collector);
+            assertTimeoutPreemptively(Duration.ofSeconds(1), () -> {
+                for (int i = 0; i < 50; i++) {
+                    AlarmStatus status = AlarmStatus.values()[i % 3];
+                    securityService.setAlarmStatus(status);
+                    expected.add(status);
+                }
+            });
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (collector.items.size() < expected.size() && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(expected, collector.items);
+            assertEquals(0, flows.getOutputsDropped());
+        }
+    }
+
+    @Test
+    void checkThatKeepingUpSubscriberGetsEveryItem() throws InterruptedException {
+        Collector<AlarmStatus> collector = new Collector<>(Long.MAX_VALUE);
+        try (SecurityFlows flows = new SecurityFlows(securityService, Runnable::run, ForkJoinPool.commonPool(), 256)) {
+            flows.alarmStatuses().subscribe(collector);
+            for (int i = 0; i < 100; i++) {
+                securityService.setAlarmStatus(AlarmStatus.values()[i % 3]);
+            }
+            assertEquals(0, flows.getOutputsDropped());
+        }
+        assertTrue(collector.completed.await(10, TimeUnit.SECONDS));
+        assertEquals(100, collector.items.size());
+        assertEquals(AlarmStatus.values()[99 % 3], collector.items.get(99));
+    }
+
+    private static class Collector<T> implements Flow.Subscriber<T> {
+        private final long demand;
+        protected final List<T> items = new CopyOnWriteArrayList<>();
+        private final CountDownLatch completed = new CountDownLatch(1);
+        protected volatile Flow.Subscription subscription;
+
+        Collector(long demand) {
+            this.demand = demand;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (demand > 0) {
+                subscription.request(demand);
+            }
+        }
+
+        @Override
+        public void onNext(T item) {
+            items.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onComplete() {
+            completed.countDown();
+        }
+    }
+}
@@ -0,0 +1,373 @@
+package com.udacity.securityservice.service;
+
+import com.udacity.imageservice.IService;
+import com.udacity.securityservice.data.AlarmStatus;
+import com.udacity.securityservice.data.ArmingStatus;
+import com.udacity.securityservice.data.InMemorySecurityRepositoryImpl;
+import com.udacity.securityservice.data.Sensor;
+import com.udacity.securityservice.data.SensorType;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+
+/**
+ * SecurityService isn't thread safe; it belongs to one owner thread, and other threads reach it
+ * through {@link PriorityScheduler} or {@link SecurityFlows}. These tests start concurrent callers
+ * together on those paths and check two invariants on every run:
+ * <ul>
+ *     <li>the repository is only ever touched on the owner thread, however the calls race</li>
+ *     <li>the end state is one that running the same calls one after the other, in some order,
+ *     also reaches</li>
+ * </ul>
+ */
+public class SecurityServiceConcurrencyTest {
+
+    private static final int RUNS = 100;
+    private static final UUID DOOR = new UUID(0, 1);
+    private static final UUID WINDOW = new UUID(0, 2);
+    private static final BufferedImage CAT = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+    private static final BufferedImage NO_CAT = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+    private static final IService IMAGE_SERVICE = (image, threshold) -> image == CAT;
+
+    private final List<ExecutorService> owners = new ArrayList<>();
+
+    @AfterEach
+    void shutdown() {
+        owners.forEach(ExecutorService::shutdownNow);
+    }
+
+    @Test
+    void checkThatSensorActivationRacingCatFrameIsConfined() throws Exception {
+        assertScheduledRunsAcceptable(ArmingStatus.ARMED_HOME, AlarmStatus.NO_ALARM, false, false,
+                sensor(DOOR, true), frame(CAT));
+    }
+
+    /**
+     * Deactivating the last sensor takes it out of the repository and puts it back, which a racing
+     * frame mustn't see
+     */
+    @Test
+    void checkThatSensorDeactivationRacingFrameIsConfined() throws Exception {
+        assertScheduledRunsAcceptable(ArmingStatus.ARMED_AWAY, AlarmStatus.PENDING_ALARM, true, true,
+                sensor(DOOR, false), frame(NO_CAT));
+    }
+
+    @Test
+    void checkThatArmingRacingSensorAndFrameIsConfined() throws Exception {
+        assertScheduledRunsAcceptable(ArmingStatus.DISARMED, AlarmStatus.NO_ALARM, false, true,
+                arm(ArmingStatus.ARMED_HOME), sensor(WINDOW, true), frame(CAT));
+    }
+
+    /**
+     * Sensor readings and camera frames published from their own threads reach the service through
+     * its flows, which apply them on the owner thread
+     */
+    @Test
+    void checkThatConcurrentFlowInputsAreConfined() throws Exception {
+        Set<String> acceptable = acceptableOutcomes(ArmingStatus.ARMED_HOME, AlarmStatus.NO_ALARM, false, false,
+                List.of(sensor(DOOR, true), sensor(DOOR, false), frame(CAT)));
+        for (int run = 0; run < RUNS; run++) {
+            ExecutorService owner = owner();
+            ConfinedRepository repository = new ConfinedRepository();
+            SecurityService service = start(repository, ArmingStatus.ARMED_HOME, AlarmStatus.NO_ALARM, false, false);
+            repository.owner = threadOf(owner);
+            try (SecurityFlows flows = new SecurityFlows(service, owner, ForkJoinPool.commonPool(), 4);
+                 SubmissionPublisher<SensorReading> readings = new SubmissionPublisher<>();
+                 SubmissionPublisher<BufferedImage> frames = new SubmissionPublisher<>()) {
+                readings.subscribe(flows.sensorInput());
+                frames.subscribe(flows.frameInput());
+                CountDownLatch go = new CountDownLatch(1);
+                Thread gateway = actor(go, () -> {
+                    readings.submit(new SensorReading(DOOR, true, 1));
+                    readings.submit(new SensorReading(DOOR, false, 2));
+                });
+                Thread camera = actor(go, () -> frames.submit(CAT));
+                go.countDown();
+                gateway.join(TimeUnit.SECONDS.toMillis(10));
+                camera.join(TimeUnit.SECONDS.toMillis(10));
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+                while (flows.getInputsApplied() < 3 && System.nanoTime() < deadline) {
+                    Thread.sleep(1);
+                }
+                assertEquals(3, flows.getInputsApplied());
+                settle(owner);
+            }
+            assertConfined(repository, run);
+            assertTrue(acceptable.contains(outcome(repository)), "run " + run + ": " + outcome(repository)
+                    + " is not one of " + acceptable);
+        }
+    }
+
+    /**
+     * Runs the calls from their own threads, released together, through a scheduler whose service
+     * executor is a single owner thread, many times over.
+     */
+    private void assertScheduledRunsAcceptable(ArmingStatus arming, AlarmStatus alarm, boolean doorActive,
+                                               boolean catSeen, Call... calls) throws Exception {
+        Set<String> acceptable = acceptableOutcomes(arming, alarm, doorActive, catSeen, List.of(calls));
+        for (int run = 0; run < RUNS; run++) {
+            ExecutorService owner = owner();
+            ConfinedRepository repository = new ConfinedRepository();
+            SecurityService service = start(repository, arming, alarm, doorActive, catSeen);
+            repository.owner = threadOf(owner);
+            try (PriorityScheduler scheduler = new PriorityScheduler(service, owner, 2, 4, 4)) {
+                CountDownLatch go = new CountDownLatch(1);
+                List<Thread> actors = new ArrayList<>();
+                for (Call call : calls) {
+                    actors.add(actor(go, () -> call.scheduled.accept(scheduler, service)));
+                }
+                go.countDown();
+                for (Thread actor : actors) {
+                    actor.join(TimeUnit.SECONDS.toMillis(10));
+                    assertFalse(actor.isAlive(), "run " + run + ": caller never returned");
+                }
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+                while ((scheduler.getQueueDepth(PriorityScheduler.Lane.CRITICAL) > 0
+                        || scheduler.getQueueDepth(PriorityScheduler.Lane.RECOGNITION) > 0)
+                        && System.nanoTime() < deadline) {
+                    Thread.sleep(1);
+                }
+                settle(owner);
+                assertEquals(0, scheduler.getDropped(PriorityScheduler.Lane.RECOGNITION));
+            }
+            assertConfined(repository, run);
+            assertTrue(acceptable.contains(outcome(repository)), "run " + run + ": " + outcome(repository)
+                    + " is not one of " + acceptable);
+        }
+    }
+
+    /**
+     * @return the end states of running the calls directly, one after the other, in every order
+     */
+    private static Set<String> acceptableOutcomes(ArmingStatus arming, AlarmStatus alarm, boolean doorActive,
+                                                  boolean catSeen, List<Call> calls) {
+        Set<String> outcomes = new TreeSet<>();
+        for (List<Call> order : orders(calls)) {
+            InMemorySecurityRepositoryImpl repository = new InMemorySecurityRepositoryImpl();
+            SecurityService service = start(repository, arming, alarm, doorActive, catSeen);
+            order.forEach(call -> call.direct.accept(null, service));
+            outcomes.add(outcome(repository));
+        }
+        return outcomes;
+    }
+
+    private static SecurityService start(InMemorySecurityRepositoryImpl repository, ArmingStatus arming,
+                                         AlarmStatus alarm, boolean doorActive, boolean catSeen) {
+        SecurityService service = new SecurityService(repository, IMAGE_SERVICE);
+        service.addSensor(new Sensor(DOOR, "Door", SensorType.DOOR, doorActive));
+        service.addSensor(new Sensor(WINDOW, "Window", SensorType.WINDOW, false));
+        //the verdict sets catSeen, the statuses are then put back as the run wants them
+        service.processImage(catSeen ? CAT : NO_CAT);
+        repository.setArmingStatus(arming);
+        repository.setAlarmStatus(alarm);
+        return service;
+    }
+
+    /**
+     * Alarm and arming status and the active flag of each sensor, ? for a sensor that went missing
+     */
+    private static String outcome(InMemorySecurityRepositoryImpl repository) {
+        StringBuilder outcome = new StringBuilder()
+                .append(repository.getAlarmStatus()).append(' ').append(repository.getArmingStatus());
+        for (UUID id : List.of(DOOR, WINDOW)) {
+            Sensor sensor = repository.getSensor(id);
+            outcome.append(' ').append(sensor == null ? "?" : sensor.getActive());
+        }
+        return outcome.toString();
+    }
+
+    private static void assertConfined(ConfinedRepository repository, int run) {
+        assertTrue(repository.calls > 0, "run " + run + ": the owner thread never touched the repository");
+        assertEquals(List.of(), repository.strayThreads, "run " + run + ": repository used off the owner thread");
+    }
+
+    private ExecutorService owner() {
+        ExecutorService owner = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "owner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        owners.add(owner);
+        return owner;
+    }
+
+    private static Thread threadOf(ExecutorService owner) throws InterruptedException, ExecutionException {
+        return owner.submit(Thread::currentThread).get();
+    }
+
+    /**
+     * Waits for everything already handed to the owner thread to run.
+     */
+    private static void settle(ExecutorService owner) throws InterruptedException, ExecutionException, TimeoutException {
+        owner.submit(() -> { }).get(10, TimeUnit.SECONDS);
+        owner.shutdown();
+        assertTrue(owner.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    private static Thread actor(CountDownLatch go, Runnable call) {
+        Thread thread = new Thread(() -> {
+            try {
+                go.await();
+            } catch (InterruptedException e) {
+                return;
+            }
+            call.run();
+        }, "caller");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private static List<List<Call>> orders(List<Call> calls) {
+        List<List<Call>> orders = new ArrayList<>();
+        if (calls.size() <= 1) {
+            orders.add(new ArrayList<>(calls));
+            return orders;
+        }
+        for (int i = 0; i < calls.size(); i++) {
+            List<Call> rest = new ArrayList<>(calls);
+            Call first = rest.remove(i);
+            for (List<Call> order : orders(rest)) {
+                order.add(0, first);
+                orders.add(order);
+            }
+        }
+        return orders;
+    }
+
+    private static Call sensor(UUID sensorId, boolean active) {
+        BiConsumer<PriorityScheduler, SecurityService> change =
+                (scheduler, service) -> service.changeSensorActivationStatus(service.getSensor(sensorId), active);
+        return new Call((scheduler, service) -> scheduler.runCritical(() -> change.accept(scheduler, service)), change);
+    }
+
+    private static Call arm(ArmingStatus armingStatus) {
+        BiConsumer<PriorityScheduler, SecurityService> change =
+                (scheduler, service) -> service.setArmingStatus(armingStatus);
+        return new Call((scheduler, service) -> scheduler.runCritical(() -> change.accept(scheduler, service)), change);
+    }
+
+    private static Call frame(BufferedImage image) {
+        return new Call((scheduler, service) -> scheduler.processImage(image),
+                (scheduler, service) -> service.processImage(image));
+    }
+
+    /**
+     * One call, as a caller on another thread makes it and as the owner thread would make it directly
+     */
+    private static final class Call {
+        private final BiConsumer<PriorityScheduler, SecurityService> scheduled;
+        private final BiConsumer<PriorityScheduler, SecurityService> direct;
+
+        private Call(BiConsumer<PriorityScheduler, SecurityService> scheduled,
+                     BiConsumer<PriorityScheduler, SecurityService> direct) {
+            this.scheduled = scheduled;
+            this.direct = direct;
+        }
+    }
+
+    /**
+     * Notes every call made from a thread other than the owner, once the owner is set
+     */
+    private static class ConfinedRepository extends InMemorySecurityRepositoryImpl {
+        private volatile Thread owner;
+        private final List<String> strayThreads = new CopyOnWriteArrayList<>();
+        private volatile int calls;
+
+        private void check() {
+            Thread current = Thread.currentThread();
+            if (owner == null) {
+                return;
+            }
+            if (current == owner) {
+                calls++;
+            } else {
+                strayThreads.add(current.getName());
+            }
+        }
+
+        @Override
+        public void addSensor(Sensor sensor) {
+            check();
+            super.addSensor(sensor);
+        }
+
+        @Override
+        public void removeSensor(Sensor sensor) {
+            check();
+            super.removeSensor(sensor);
+        }
+
+        @Override
+        public void updateSensor(Sensor sensor) {
+            check();
+            super.updateSensor(sensor);
+        }
+
+        @Override
+        public void updateSensors(Collection<Sensor> sensors) {
+            check();
+            super.updateSensors(sensors);
+        }
+
+        @Override
+        public void setAlarmStatus(AlarmStatus alarmStatus) {
+            check();
+            super.setAlarmStatus(alarmStatus);
+        }
+
+        @Override
+        public void setArmingStatus(ArmingStatus armingStatus) {
+            check();
+            super.setArmingStatus(armingStatus);
+        }
+
+        @Override
+        public Set<Sensor> getSensors() {
+            check();
+            return super.getSensors();
+        }
+
+        @Override
+        public Sensor getSensor(UUID sensorId) {
+            check();
+            return super.getSensor(sensorId);
+        }
+
+        @Override
+        public Set<Sensor> getActiveSensors(SensorType sensorType) {
+            check();
+            return super.getActiveSensors(sensorType);
+        }
+
+        @Override
+        public AlarmStatus getAlarmStatus() {
+            check();
+            return super.getAlarmStatus();
+        }
+
+        @Override
+        public ArmingStatus getArmingStatus() {
+            check();
+            return super.getArmingStatus();
+        }
+    }
+}
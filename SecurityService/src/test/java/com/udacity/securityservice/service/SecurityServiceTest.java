@@ -15,7 +15,13 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.EnumSource;
 import org.mockito.ArgumentCaptor;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 @ExtendWith(MockitoExtension.class)
@@ -279,6 +285,130 @@ public class SecurityServiceTest {
 
     }
 
+    /**
+     * Replaying a recorded cat detection should apply the recorded verdict
+     * without sending anything to the image service
+     */
+    @Test
+    void checkThatReplayedCatDetectionUsesRecordedVerdict() {
+        when(securityRepository.getArmingStatus()).thenReturn(ArmingStatus.ARMED_HOME);
+        securityService.replay(List.of(SecurityEvent.catDetection(1, 0, true)));
+        verify(imageService, never()).imageContainsCat(any(), anyFloat());
+        verify(securityRepository, times(1)).setAlarmStatus(AlarmStatus.ALARM);
+        assertTrue(securityService.snapshot().isCatSeen());
+    }
+
+    /**
+     * An alarm status set directly is recorded, and replaying it sets the same status again
+     */
+    @Test
+    void checkThatDirectAlarmChangeIsRecordedAndReplayed() {
+        List<SecurityEvent> events = new ArrayList<>();
+        securityService.addEventListener(events::add);
+        securityService.setAlarmStatus(AlarmStatus.ALARM);
+        assertEquals(1, events.size());
+        assertEquals(SecurityEvent.Type.ALARM, events.get(0).getType());
+
+        SecurityRepository replayed = mock(SecurityRepository.class);
+        new SecurityService(replayed, imageService).replay(events);
+        verify(replayed, times(1)).setAlarmStatus(AlarmStatus.ALARM);
+    }
+
+    /**
+     * An active sensor in a zone taken out of the arming doesn't keep the alarm on once the cat is gone,
+     * while an active sensor without a zone still does
+     */
+    @Test
+    void checkThatOnlyArmedActiveSensorsHoldTheAlarm() {
+        ZoneTree zoneTree = new ZoneTree("Home");
+        Zone garage = zoneTree.addZone(zoneTree.getSite(), "Garage");
+        garage.setArmed(false);
+        securityService.setZoneTree(zoneTree);
+        sensor.setActive(true);
+        zoneTree.assign(sensor, garage);
+
+        securityService.applyCatDetection(false);
+        verify(securityRepository, times(1)).setAlarmStatus(NO_ALARM);
+
+        Sensor hallway = new Sensor("Hallway", SensorType.MOTION);
+        hallway.setActive(true);
+        zoneTree.update(hallway);
+        securityService.applyCatDetection(false);
+        verify(securityRepository, times(1)).setAlarmStatus(NO_ALARM);
+    }
+
+    /**
+     * Deactivating the last armed sensor ends a pending alarm even with sensors in a disarmed zone active
+     */
+    @Test
+    void checkThatPendingAlarmEndsWhenLastArmedSensorIsDeactivated() {
+        ZoneTree zoneTree = new ZoneTree("Home");
+        Zone garage = zoneTree.addZone(zoneTree.getSite(), "Garage");
+        garage.setArmed(false);
+        securityService.setZoneTree(zoneTree);
+        Sensor garageDoor = new Sensor("Garage door", SensorType.DOOR);
+        garageDoor.setActive(true);
+        zoneTree.assign(garageDoor, garage);
+        sensor.setActive(true);
+        zoneTree.update(sensor);
+        when(securityRepository.getAlarmStatus()).thenReturn(AlarmStatus.PENDING_ALARM);
+
+        securityService.changeSensorActivationStatus(sensor, false);
+        verify(securityRepository, times(1)).setAlarmStatus(NO_ALARM);
+        assertEquals(0, zoneTree.getArmedActiveCount());
+        assertEquals(1, garage.getActiveCount());
+    }
+
+    /**
+     * Loading a snapshot replaces the sensors but keeps their zones, which snapshots don't hold
+     */
+    @Test
+    void checkThatLoadKeepsZoneAssignments() {
+        ZoneTree zoneTree = new ZoneTree("Home");
+        Zone kitchen = zoneTree.addZone(zoneTree.getSite(), "Kitchen");
+        when(securityRepository.getSensors()).thenReturn(new HashSet<>(Set.of(sensor)));
+        securityService.setZoneTree(zoneTree);
+        zoneTree.assign(sensor, kitchen);
+
+        Sensor loaded = sensor.copy();
+        loaded.setActive(true);
+        Sensor added = new Sensor("New", SensorType.WINDOW);
+        added.setActive(true);
+        securityService.load(new StateSnapshot(Set.of(loaded, added), ArmingStatus.ARMED_AWAY, AlarmStatus.PENDING_ALARM, false, 5));
+
+        assertSame(kitchen, zoneTree.getZone(loaded));
+        assertEquals(1, kitchen.getSensorCount());
+        assertEquals(1, kitchen.getActiveCount());
+        assertNull(zoneTree.getZone(added));
+        assertEquals(2, zoneTree.getArmedActiveCount());
+    }
+
+    /**
+     * A corrupt journal entry is reported as an IOException, which startup knows how to handle
+     */
+    @ParameterizedTest
+    @ValueSource(ints = {6, 99, -1})
+    void checkThatCorruptEventTypeIsReportedAsIOException(int type) {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(new byte[]{(byte) type, 0, 0, 0}));
+        assertThrows(IOException.class, () -> SecurityEvent.readFrom(in));
+    }
+
+    /**
+     * A snapshot with an impossible sensor data length is reported as an IOException
+     */
+    @Test
+    void checkThatCorruptSnapshotIsReportedAsIOException() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new StateSnapshot(Set.of(sensor), ArmingStatus.ARMED_HOME, NO_ALARM, false, 1).writeTo(bytes);
+        byte[] corrupt = bytes.toByteArray();
+        //the sensor data length follows the 4-byte magic, version, sequence, statuses and cat flag
+        corrupt[16] = (byte) 0xFF;
+        assertThrows(IOException.class, () -> StateSnapshot.readFrom(new ByteArrayInputStream(corrupt)));
+        corrupt[16] = 0;
+        corrupt[13] = 42;
+        assertThrows(IOException.class, () -> StateSnapshot.readFrom(new ByteArrayInputStream(corrupt)));
+    }
+
 
 
 
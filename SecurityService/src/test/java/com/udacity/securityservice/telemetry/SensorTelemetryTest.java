@@ -0,0 +1,190 @@
+package com.udacity.securityservice.telemetry;
+
+import com.udacity.securityservice.data.SensorType;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+public class SensorTelemetryTest {
+
+    private static final long START = 1_700_000_000_000L;
+    private static final UUID DOOR = new UUID(0, 1);
+    private static final UUID WINDOW = new UUID(0, 2);
+
+    private SensorTelemetry telemetry;
+    private List<String> doorEvents;
+    private List<Long> doorTimes;
+
+    /**
+     * Three chunks' worth of door events with gaps from nothing to days, and a window sensor
+     * interleaved with them
+     */
+    @BeforeEach
+    void init() {
+        telemetry = new SensorTelemetry();
+        doorEvents = new ArrayList<>();
+        doorTimes = new ArrayList<>();
+        Random random = new Random(39);
+        long timestamp = START;
+        for (int i = 0; i < TelemetryChunk.MAX_EVENTS * 3 + 17; i++) {
+            switch (random.nextInt(4)) {
+                case 0:
+                    break;
+                case 1:
+                    timestamp += random.nextInt(10_000);
+                    break;
+                case 2:
+                    timestamp += 1000;
+                    break;
+                default:
+                    timestamp += random.nextInt(3 * 24 * 3600) * 1000L;
+            }
+            //stored at the resolution, one second
+            long stored = timestamp - timestamp % 1000;
+            boolean active = random.nextBoolean();
+            telemetry.record(DOOR, SensorType.DOOR, timestamp, active);
+            doorEvents.add(event(stored, active));
+            doorTimes.add(stored);
+            if (i % 3 == 0) {
+                telemetry.record(WINDOW, SensorType.WINDOW, timestamp, true);
+            }
+        }
+    }
+
+    @Test
+    void checkThatFullScanReturnsEveryEventInOrder() {
+        assertEquals(doorEvents, scan(telemetry, DOOR, Long.MIN_VALUE, Long.MAX_VALUE));
+        assertEquals(doorEvents.size() + (doorEvents.size() + 2) / 3, telemetry.getEventCount());
+    }
+
+    /**
+     * Ranges that start and end inside chunks, on chunk boundaries and on repeated timestamps match
+     * a filter over every event
+     */
+    @Test
+    void checkThatRangeScansMatchFilteredEvents() {
+        Random random = new Random(7);
+        long end = last();
+        List<Long> bounds = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            bounds.add(doorTimes.get(random.nextInt(doorTimes.size())));
+            //whole seconds, as stored timestamps are rounded down to the resolution
+            bounds.add((START + (long) (random.nextDouble() * (end - START))) / 1000 * 1000);
+        }
+        bounds.add(doorTimes.get(TelemetryChunk.MAX_EVENTS - 1));
+        bounds.add(doorTimes.get(TelemetryChunk.MAX_EVENTS));
+        bounds.add(doorTimes.get(TelemetryChunk.MAX_EVENTS));
+        bounds.add(doorTimes.get(TelemetryChunk.MAX_EVENTS) + 1000);
+        for (int i = 0; i + 1 < bounds.size(); i += 2) {
+            long from = Math.min(bounds.get(i), bounds.get(i + 1));
+            long to = Math.max(bounds.get(i), bounds.get(i + 1));
+            assertEquals(filter(from, to), scan(telemetry, DOOR, from, to), "range " + from + " to " + to);
+            long activations = filter(from, to).stream().filter(e -> e.endsWith("on")).count();
+            assertEquals(activations, telemetry.getActivations(DOOR, from, to), "range " + from + " to " + to);
+        }
+    }
+
+    @Test
+    void checkThatEmptyRangesAndUnknownSensorsScanNothing() {
+        assertEquals(List.of(), scan(telemetry, DOOR, START - 10_000, START));
+        assertEquals(List.of(), scan(telemetry, DOOR, START + 5000, START + 5000));
+        assertEquals(List.of(), scan(telemetry, new UUID(0, 3), Long.MIN_VALUE, Long.MAX_VALUE));
+        assertEquals(0, telemetry.getActivations(new UUID(0, 3), Long.MIN_VALUE, Long.MAX_VALUE));
+    }
+
+    @Test
+    void checkThatHourlyActivationsMatchEvents() {
+        long end = last() + 1;
+        long[] perHour = telemetry.getActivationsPerHour(SensorType.DOOR, START, end);
+        long firstHour = START / 3_600_000;
+        long[] expected = new long[perHour.length];
+        for (int i = 0; i < doorEvents.size(); i++) {
+            if (doorEvents.get(i).endsWith("on")) {
+                expected[(int) (doorTimes.get(i) / 3_600_000 - firstHour)]++;
+            }
+        }
+        assertArrayEquals(expected, perHour);
+    }
+
+    @Test
+    void checkThatHistorySurvivesWriteAndRead() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        telemetry.writeTo(bytes);
+        SensorTelemetry read = SensorTelemetry.readFrom(new ByteArrayInputStream(bytes.toByteArray()));
+
+        assertEquals(doorEvents, scan(read, DOOR, Long.MIN_VALUE, Long.MAX_VALUE));
+        assertEquals(scan(telemetry, WINDOW, Long.MIN_VALUE, Long.MAX_VALUE), scan(read, WINDOW, Long.MIN_VALUE, Long.MAX_VALUE));
+        assertEquals(telemetry.getEventCount(), read.getEventCount());
+        assertEquals(telemetry.getCompressedBytes(), read.getCompressedBytes());
+        long end = last() + 1;
+        assertArrayEquals(telemetry.getActivationsPerHour(SensorType.DOOR, START, end),
+                read.getActivationsPerHour(SensorType.DOOR, START, end));
+
+        //the read history keeps taking events after the last one
+        read.record(DOOR, SensorType.DOOR, last() + 60_000, true);
+        assertEquals(List.of(event(last() + 60_000, true)), scan(read, DOOR, last() + 1000, Long.MAX_VALUE));
+    }
+
+    @Test
+    void checkThatCorruptHistoryIsRejected() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        telemetry.writeTo(bytes);
+        byte[] data = bytes.toByteArray();
+
+        byte[] badResolution = data.clone();
+        //resolution follows the magic number and version
+        for (int i = 5; i < 13; i++) {
+            badResolution[i] = 0;
+        }
+        assertThrows(IOException.class, () -> SensorTelemetry.readFrom(new ByteArrayInputStream(badResolution)));
+
+        byte[] truncated = new byte[data.length / 2];
+        System.arraycopy(data, 0, truncated, 0, truncated.length);
+        assertThrows(IOException.class, () -> SensorTelemetry.readFrom(new ByteArrayInputStream(truncated)));
+    }
+
+    /**
+     * A late event is stored at the sensor's latest time rather than breaking the time order
+     */
+    @Test
+    void checkThatLateEventIsClampedToLatestTime() {
+        SensorTelemetry telemetry = new SensorTelemetry(1);
+        telemetry.record(DOOR, SensorType.DOOR, 1000, true);
+        telemetry.record(DOOR, SensorType.DOOR, 2000, false);
+        telemetry.record(DOOR, SensorType.DOOR, 1500, true);
+        assertEquals(List.of(event(1000, true), event(2000, false), event(2000, true)),
+                scan(telemetry, DOOR, Long.MIN_VALUE, Long.MAX_VALUE));
+    }
+
+    private long last() {
+        return doorTimes.get(doorTimes.size() - 1);
+    }
+
+    private List<String> filter(long from, long to) {
+        List<String> events = new ArrayList<>();
+        for (int i = 0; i < doorEvents.size(); i++) {
+            if (doorTimes.get(i) >= from && doorTimes.get(i) < to) {
+                events.add(doorEvents.get(i));
+            }
+        }
+        return events;
+    }
+
+    private static String event(long timestamp, boolean active) {
+        return timestamp + (active ? " on" : " off");
+    }
+
+    private static List<String> scan(SensorTelemetry telemetry, UUID sensorId, long from, long to) {
+        List<String> events = new ArrayList<>();
+        telemetry.scan(sensorId, from, to, (timestamp, active) -> events.add(event(timestamp, active)));
+        return events;
+    }
+}
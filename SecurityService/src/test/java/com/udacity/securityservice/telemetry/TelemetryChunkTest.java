@@ -0,0 +1,161 @@
+package com.udacity.securityservice.telemetry;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class TelemetryChunkTest {
+
+    /**
+     * Deltas of delta at both ends of every width in the encoding, and just past them
+     */
+    @ParameterizedTest
+    @ValueSource(longs = {0, 1, -1, 63, -64, 64, -65, 255, -256, 256, -257, 2047, -2048, 2048, -2049,
+            Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE + 1L, Integer.MIN_VALUE - 1L, 1L << 40})
+    void checkThatEveryDeltaOfDeltaWidthRoundTrips(long deltaOfDelta) {
+        //a steady delta large enough that adding a negative delta of delta keeps time moving forward
+        long base = 1L << 42;
+        long[] ticks = {1000, 1000 + base, 1000 + 2 * base, 1000 + 3 * base + deltaOfDelta, 1000 + 4 * base + 2 * deltaOfDelta};
+        boolean[] states = {true, false, true, true, false};
+        TelemetryChunk chunk = chunk(ticks, states);
+        assertEvents(ticks, states, chunk, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    @Test
+    void checkThatSteadyRhythmCostsTwoBitsPerEvent() {
+        TelemetryChunk chunk = new TelemetryChunk(0);
+        for (int i = 0; i < 100; i++) {
+            chunk.append(i * 5L, i % 2 == 0);
+        }
+        //the first event is only its state bit, the second also carries the first delta
+        assertEquals(1 + (2 + 7 + 1) + 98 * 2, chunk.getBitLength());
+    }
+
+    @Test
+    void checkThatEqualTimestampsRoundTrip() {
+        long[] ticks = {7, 7, 7, 7, 8, 8, 8};
+        boolean[] states = {true, false, true, false, true, true, false};
+        assertEvents(ticks, states, chunk(ticks, states), Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Events from random gaps, some huge, decode in order with their states
+     */
+    @Test
+    void checkThatRandomEventsRoundTrip() {
+        Random random = new Random(39);
+        long[] ticks = new long[TelemetryChunk.MAX_EVENTS];
+        boolean[] states = new boolean[ticks.length];
+        ticks[0] = random.nextInt();
+        for (int i = 1; i < ticks.length; i++) {
+            long gap;
+            switch (random.nextInt(4)) {
+                case 0:
+                    gap = 0;
+                    break;
+                case 1:
+                    gap = random.nextInt(100);
+                    break;
+                case 2:
+                    gap = random.nextInt(1 << 20);
+                    break;
+                default:
+                    gap = random.nextLong() >>> 20;
+            }
+            ticks[i] = ticks[i - 1] + gap;
+            states[i] = random.nextBoolean();
+        }
+        TelemetryChunk chunk = chunk(ticks, states);
+        assertTrue(chunk.isFull());
+        assertEvents(ticks, states, chunk, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * A scan includes events at its start and leaves out events at its end
+     */
+    @Test
+    void checkThatScanRangeIsHalfOpen() {
+        long[] ticks = {10, 20, 20, 30, 40};
+        boolean[] states = {true, false, true, false, true};
+        TelemetryChunk chunk = chunk(ticks, states);
+        assertEquals(List.of(20L, 20L, 30L), ticks(chunk, 20, 40));
+        assertEquals(List.of(), ticks(chunk, 41, 100));
+        assertEquals(List.of(), ticks(chunk, 0, 10));
+        assertEquals(List.of(10L), ticks(chunk, 0, 11));
+    }
+
+    @Test
+    void checkThatSealedChunkSurvivesWriteAndRead() throws IOException {
+        Random random = new Random(1);
+        long[] ticks = new long[300];
+        boolean[] states = new boolean[ticks.length];
+        for (int i = 1; i < ticks.length; i++) {
+            ticks[i] = ticks[i - 1] + random.nextInt(5000);
+            states[i] = random.nextBoolean();
+        }
+        TelemetryChunk chunk = chunk(ticks, states);
+        chunk.seal();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        chunk.writeTo(new DataOutputStream(bytes));
+        TelemetryChunk read = TelemetryChunk.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(chunk.getStartTick(), read.getStartTick());
+        assertEquals(chunk.getEndTick(), read.getEndTick());
+        assertEquals(chunk.getCount(), read.getCount());
+        assertEquals(chunk.getActivations(), read.getActivations());
+        assertEvents(ticks, states, read, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    @Test
+    void checkThatCorruptChunkIsRejected() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(0);
+            out.writeLong(0);
+            out.writeInt(TelemetryChunk.MAX_EVENTS + 1);
+            out.writeInt(0);
+            out.writeLong(0);
+        } catch (IOException e) {
+            fail(e);
+        }
+        assertThrows(IOException.class,
+                () -> TelemetryChunk.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+    }
+
+    private static TelemetryChunk chunk(long[] ticks, boolean[] states) {
+        TelemetryChunk chunk = new TelemetryChunk(ticks[0]);
+        for (int i = 0; i < ticks.length; i++) {
+            chunk.append(ticks[i], states[i]);
+        }
+        return chunk;
+    }
+
+    private static void assertEvents(long[] ticks, boolean[] states, TelemetryChunk chunk, long from, long to) {
+        List<Long> scannedTicks = new ArrayList<>();
+        List<Boolean> scannedStates = new ArrayList<>();
+        chunk.scan(from, to, (tick, active) -> {
+            scannedTicks.add(tick);
+            scannedStates.add(active);
+        });
+        assertEquals(ticks.length, scannedTicks.size());
+        for (int i = 0; i < ticks.length; i++) {
+            assertEquals(ticks[i], scannedTicks.get(i), "tick of event " + i);
+            assertEquals(states[i], scannedStates.get(i), "state of event " + i);
+        }
+    }
+
+    private static List<Long> ticks(TelemetryChunk chunk, long from, long to) {
+        List<Long> ticks = new ArrayList<>();
+        chunk.scan(from, to, (tick, active) -> ticks.add(tick));
+        return ticks;
+    }
+}